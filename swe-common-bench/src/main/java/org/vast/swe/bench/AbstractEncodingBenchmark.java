@@ -0,0 +1,117 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.cdm.common.DataStreamWriter;
+
+
+/**
+ * <p>
+ * Base for benchmarks measuring parsing and writing of record streams with
+ * a given encoding. Each benchmark invocation processes a whole stream, so
+ * scores are given per stream of {@link #numRecords} records (or per image).
+ * </p><p>
+ * Subclasses list the record shapes supported by the encoding.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractEncodingBenchmark
+{
+    @Param({"1000"})
+    public int numRecords;
+
+    DataComponent component;
+    DataEncoding encoding;
+    DataBlock[] records;
+    byte[] encodedStream;
+    ByteArrayOutputStream os;
+
+
+    protected abstract StreamFormat getFormat();
+
+
+    protected abstract RecordShape getShape();
+
+
+    @Setup
+    public void setup() throws IOException
+    {
+        StreamFormat format = getFormat();
+        RecordShape shape = getShape();
+        component = shape.createComponent();
+        encoding = format.createEncoding(component);
+
+        // images are much larger so use fewer of them
+        int count = (shape == RecordShape.IMAGE) ? Math.max(1, numRecords / 1000) : numRecords;
+        records = shape.createRecords(component, count);
+        encodedStream = format.encode(component, encoding, records);
+        os = new ByteArrayOutputStream(encodedStream.length);
+    }
+
+
+    @Benchmark
+    public void parse(Blackhole bh) throws IOException
+    {
+        DataStreamParser parser = getFormat().createParser(component.copy(), encoding);
+        parser.setInput(new ByteArrayInputStream(encodedStream));
+
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            bh.consume(data);
+    }
+
+
+    @Benchmark
+    public void write(Blackhole bh) throws IOException
+    {
+        os.reset();
+        DataStreamWriter writer = getFormat().createWriter(component.copy(), encoding);
+        writer.setOutput(os);
+        writer.startStream(true);
+        for (DataBlock data: records)
+            writer.write(data);
+        writer.endStream();
+        writer.flush();
+        bh.consume(os.size());
+    }
+}
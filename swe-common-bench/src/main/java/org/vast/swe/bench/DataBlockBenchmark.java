@@ -0,0 +1,140 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.bench;
+
+import java.util.concurrent.TimeUnit;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.DataBlockChunked;
+import org.vast.data.DataBlockDirectDouble;
+import org.vast.data.DataBlockDouble;
+import org.vast.data.DataBlockFloat;
+import org.vast.data.DataBlockInt;
+import org.vast.data.DataBlockMixed;
+
+
+/**
+ * <p>
+ * Measures indexed get/set access to the values of the different kinds
+ * of datablocks. Scores are given per value.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataBlockBenchmark
+{
+    static final int SIZE = 4096;
+
+
+    public enum BlockType
+    {
+        DOUBLE, FLOAT, INT, DIRECT_DOUBLE, MIXED, CHUNKED;
+
+        DataBlock createBlock(int size)
+        {
+            switch (this)
+            {
+                case FLOAT:
+                    return new DataBlockFloat(size);
+
+                case INT:
+                    return new DataBlockInt(size);
+
+                case DIRECT_DOUBLE:
+                    return new DataBlockDirectDouble(size);
+
+                case MIXED:
+                    // typical record made of several primitive blocks
+                    AbstractDataBlock[] children = new AbstractDataBlock[size / 4];
+                    for (int i = 0; i < children.length; i++)
+                        children[i] = (i % 2 == 0) ? new DataBlockDouble(4) : new DataBlockInt(4);
+                    return new DataBlockMixed(children);
+
+                case CHUNKED:
+                    return new DataBlockChunked(DataType.DOUBLE, size);
+
+                default:
+                    return new DataBlockDouble(size);
+            }
+        }
+    }
+
+
+    @Param({"DOUBLE", "FLOAT", "INT", "DIRECT_DOUBLE", "MIXED", "CHUNKED"})
+    public BlockType blockType;
+
+    DataBlock data;
+
+
+    @Setup
+    public void setup()
+    {
+        data = blockType.createBlock(SIZE);
+        for (int i = 0; i < SIZE; i++)
+            data.setDoubleValue(i, i);
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double getDouble()
+    {
+        double sum = 0;
+        for (int i = 0; i < SIZE; i++)
+            sum += data.getDoubleValue(i);
+        return sum;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long getInt()
+    {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++)
+            sum += data.getIntValue(i);
+        return sum;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public DataBlock setDouble()
+    {
+        for (int i = 0; i < SIZE; i++)
+            data.setDoubleValue(i, i * 0.5);
+        return data;
+    }
+}
@@ -0,0 +1,216 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.bench;
+
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.vast.swe.helper.GeoPosHelper;
+
+
+/**
+ * <p>
+ * Representative record structures used by benchmarks, with a way to
+ * generate records of each kind.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public enum RecordShape
+{
+    /** flat record of scalar fields of various types */
+    SCALAR_RECORD
+    {
+        @Override
+        protected DataComponent buildComponent()
+        {
+            DataRecord rec = fac.newDataRecord();
+            rec.addField("time", fac.newTimeStampIsoUTC());
+            rec.addField("temp", fac.newQuantity(null, null, null, "Cel", DataType.DOUBLE));
+            rec.addField("press", fac.newQuantity(null, null, null, "hPa", DataType.FLOAT));
+            rec.addField("count", fac.newCount());
+            rec.addField("valid", fac.newBoolean(null, null, null));
+            rec.addField("status", fac.newCategory(null, null, null, null));
+            return rec;
+        }
+    },
+
+    /** record of nested location, orientation and velocity vectors */
+    NESTED_VECTORS
+    {
+        @Override
+        protected DataComponent buildComponent()
+        {
+            DataRecord rec = fac.newDataRecord();
+            rec.addField("time", fac.newTimeStampIsoUTC());
+            rec.addField("location", fac.newLocationVectorLLA(null));
+            rec.addField("attitude", fac.newQuatOrientationNED(null));
+            rec.addField("velocity", fac.newVelocityVectorNED(null, "m/s"));
+            return rec;
+        }
+    },
+
+    /** record with an array whose size changes with each record */
+    VAR_SIZE_ARRAY
+    {
+        @Override
+        protected DataComponent buildComponent()
+        {
+            DataRecord rec = fac.newDataRecord();
+            rec.addField("time", fac.newTimeStampIsoUTC());
+            rec.addField("profile", fac.newArray(fac.newCount(), "val", fac.newQuantity(DataType.FLOAT)));
+            return rec;
+        }
+
+        @Override
+        public DataBlock createRecord(DataComponent component, int index)
+        {
+            DataComponent rec = component.copy();
+            rec.assignNewDataBlock();
+            ((DataArray)rec.getComponent("profile")).updateSize(10 + index % 20);
+
+            // skip array size
+            DataBlock data = rec.getData();
+            data.setDoubleValue(0, BASE_TIME + index);
+            fillValues(data, 2, index);
+            return data;
+        }
+    },
+
+    /** record with a choice between two items of different structure */
+    CHOICE
+    {
+        @Override
+        protected DataComponent buildComponent()
+        {
+            DataChoice choice = fac.newDataChoice();
+            choice.addItem("temp", fac.newQuantity(DataType.DOUBLE));
+            choice.addItem("location", fac.newLocationVectorLLA(null));
+
+            DataRecord rec = fac.newDataRecord();
+            rec.addField("time", fac.newTimeStampIsoUTC());
+            rec.addField("meas", choice);
+            return rec;
+        }
+
+        @Override
+        public DataBlock createRecord(DataComponent component, int index)
+        {
+            DataComponent rec = component.copy();
+            ((DataChoice)rec.getComponent("meas")).setSelectedItem(index % 2);
+            rec.assignNewDataBlock();
+
+            // skip choice selector
+            DataBlock data = rec.getData();
+            data.setDoubleValue(0, BASE_TIME + index);
+            fillValues(data, 2, index);
+            return data;
+        }
+    },
+
+    /** large RGB image */
+    IMAGE
+    {
+        @Override
+        protected DataComponent buildComponent()
+        {
+            return fac.newRgbImage(640, 480, DataType.BYTE);
+        }
+    };
+
+
+    static final GeoPosHelper fac = new GeoPosHelper();
+    static final double BASE_TIME = 1.5e9;
+
+
+    protected abstract DataComponent buildComponent();
+
+
+    /**
+     * @return A new component describing records of this shape
+     */
+    public DataComponent createComponent()
+    {
+        DataComponent component = buildComponent();
+        component.setName(name().toLowerCase());
+        return component;
+    }
+
+
+    /**
+     * Generates a record of this shape with values derived from its index
+     * @param component component created with {@link #createComponent()}
+     * @param index index of the record
+     * @return the new record
+     */
+    public DataBlock createRecord(DataComponent component, int index)
+    {
+        DataBlock data = component.createDataBlock();
+        fillValues(data, 0, index);
+        return data;
+    }
+
+
+    /**
+     * Generates several records of this shape
+     * @param component component created with {@link #createComponent()}
+     * @param numRecords number of records to generate
+     * @return the new records
+     */
+    public DataBlock[] createRecords(DataComponent component, int numRecords)
+    {
+        DataBlock[] records = new DataBlock[numRecords];
+        for (int i = 0; i < numRecords; i++)
+            records[i] = createRecord(component, i);
+        return records;
+    }
+
+
+    /*
+     * Assigns values compatible with each atom type, starting at the given index
+     */
+    static void fillValues(DataBlock data, int startIndex, int recordIndex)
+    {
+        for (int i = startIndex; i < data.getAtomCount(); i++)
+        {
+            switch (data.getDataType(i))
+            {
+                case BOOLEAN:
+                    data.setBooleanValue(i, (recordIndex + i) % 2 == 0);
+                    break;
+
+                case BYTE:
+                case UBYTE:
+                    data.setByteValue(i, (byte)(recordIndex + i));
+                    break;
+
+                case ASCII_STRING:
+                case UTF_STRING:
+                    data.setStringValue(i, (recordIndex % 2 == 0) ? "OK" : "WARN");
+                    break;
+
+                default:
+                    if (i == 0)
+                        data.setDoubleValue(i, BASE_TIME + recordIndex);
+                    else
+                        data.setDoubleValue(i, (recordIndex % 1000) * 0.25 + i);
+            }
+        }
+    }
+}
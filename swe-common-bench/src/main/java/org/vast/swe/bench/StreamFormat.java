@@ -0,0 +1,188 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.cdm.common.DataStreamWriter;
+import org.vast.data.JSONEncodingImpl;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+import org.vast.swe.fast.JsonDataParser;
+import org.vast.swe.fast.JsonDataWriter;
+import org.vast.swe.fast.TextDataParser;
+import org.vast.swe.fast.TextDataWriter;
+import org.vast.swe.fast.XmlDataParser;
+import org.vast.swe.fast.XmlDataWriter;
+
+
+/**
+ * <p>
+ * Encodings supported by benchmarks, with the fast parser and writer
+ * implementation for each of them.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public enum StreamFormat
+{
+    TEXT
+    {
+        @Override
+        public DataEncoding createEncoding(DataComponent component)
+        {
+            return fac.newTextEncoding(",", "\n");
+        }
+
+        @Override
+        public DataStreamParser createParser()
+        {
+            return new TextDataParser();
+        }
+
+        @Override
+        public DataStreamWriter createWriter()
+        {
+            return new TextDataWriter();
+        }
+    },
+
+    BINARY
+    {
+        @Override
+        public DataEncoding createEncoding(DataComponent component)
+        {
+            return SWEHelper.getDefaultBinaryEncoding(component);
+        }
+
+        @Override
+        public DataStreamParser createParser()
+        {
+            return new BinaryDataParser();
+        }
+
+        @Override
+        public DataStreamWriter createWriter()
+        {
+            return new BinaryDataWriter();
+        }
+    },
+
+    JSON
+    {
+        @Override
+        public DataEncoding createEncoding(DataComponent component)
+        {
+            return new JSONEncodingImpl();
+        }
+
+        @Override
+        public DataStreamParser createParser()
+        {
+            return new JsonDataParser();
+        }
+
+        @Override
+        public DataStreamWriter createWriter()
+        {
+            return new JsonDataWriter();
+        }
+    },
+
+    XML
+    {
+        @Override
+        public DataEncoding createEncoding(DataComponent component)
+        {
+            return fac.newXMLEncoding();
+        }
+
+        @Override
+        public DataStreamParser createParser()
+        {
+            return new XmlDataParser();
+        }
+
+        @Override
+        public DataStreamWriter createWriter()
+        {
+            return new XmlDataWriter();
+        }
+    };
+
+
+    static final SWEHelper fac = new SWEHelper();
+
+
+    public abstract DataEncoding createEncoding(DataComponent component);
+
+
+    public abstract DataStreamParser createParser();
+
+
+    public abstract DataStreamWriter createWriter();
+
+
+    /**
+     * Creates a writer ready to write records of the given structure
+     */
+    public DataStreamWriter createWriter(DataComponent component, DataEncoding encoding)
+    {
+        DataStreamWriter writer = createWriter();
+        writer.setDataComponents(component);
+        writer.setDataEncoding(encoding);
+        return writer;
+    }
+
+
+    /**
+     * Creates a parser ready to read records of the given structure
+     */
+    public DataStreamParser createParser(DataComponent component, DataEncoding encoding)
+    {
+        DataStreamParser parser = createParser();
+        parser.setDataComponents(component);
+        parser.setDataEncoding(encoding);
+        return parser;
+    }
+
+
+    /**
+     * Encodes records to a byte array
+     * @param component
+     * @param encoding
+     * @param records
+     * @return encoded stream
+     * @throws IOException
+     */
+    public byte[] encode(DataComponent component, DataEncoding encoding, DataBlock[] records) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataStreamWriter writer = createWriter(component, encoding);
+        writer.setOutput(os);
+        writer.startStream(true);
+        for (DataBlock data: records)
+            writer.write(data);
+        writer.endStream();
+        writer.close();
+        return os.toByteArray();
+    }
+}
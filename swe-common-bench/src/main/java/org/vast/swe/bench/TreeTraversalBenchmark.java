@@ -0,0 +1,145 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.cdm.common.DataStreamWriter;
+import org.vast.swe.AsciiDataParser;
+import org.vast.swe.AsciiDataWriter;
+import org.vast.swe.BinaryDataParser;
+import org.vast.swe.BinaryDataWriter;
+
+
+/**
+ * <p>
+ * Compares the original parsers and writers based on {@link org.vast.swe.DataTreeVisitor}
+ * with the ones based on {@link org.vast.swe.fast.DataBlockProcessor}, on the
+ * same streams of records.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeTraversalBenchmark
+{
+    public enum Traversal
+    {
+        VISITOR, PROCESSOR;
+
+        DataStreamParser createParser(StreamFormat format)
+        {
+            if (this == PROCESSOR)
+                return format.createParser();
+            else if (format == StreamFormat.BINARY)
+                return new BinaryDataParser();
+            else
+                return new AsciiDataParser();
+        }
+
+        DataStreamWriter createWriter(StreamFormat format)
+        {
+            if (this == PROCESSOR)
+                return format.createWriter();
+            else if (format == StreamFormat.BINARY)
+                return new BinaryDataWriter();
+            else
+                return new AsciiDataWriter();
+        }
+    }
+
+
+    @Param({"VISITOR", "PROCESSOR"})
+    public Traversal traversal;
+
+    @Param({"TEXT", "BINARY"})
+    public StreamFormat format;
+
+    @Param({"SCALAR_RECORD", "NESTED_VECTORS"})
+    public RecordShape shape;
+
+    @Param({"1000"})
+    public int numRecords;
+
+    DataComponent component;
+    DataEncoding encoding;
+    DataBlock[] records;
+    byte[] encodedStream;
+    ByteArrayOutputStream os;
+
+
+    @Setup
+    public void setup() throws IOException
+    {
+        component = shape.createComponent();
+        encoding = format.createEncoding(component);
+        records = shape.createRecords(component, numRecords);
+        encodedStream = format.encode(component, encoding, records);
+        os = new ByteArrayOutputStream(encodedStream.length);
+    }
+
+
+    @Benchmark
+    public void parse(Blackhole bh) throws IOException
+    {
+        DataStreamParser parser = traversal.createParser(format);
+        parser.setDataComponents(component.copy());
+        parser.setDataEncoding(encoding);
+        parser.setInput(new ByteArrayInputStream(encodedStream));
+
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            bh.consume(data);
+    }
+
+
+    @Benchmark
+    public void write(Blackhole bh) throws IOException
+    {
+        os.reset();
+        DataStreamWriter writer = traversal.createWriter(format);
+        writer.setDataComponents(component.copy());
+        writer.setDataEncoding(encoding);
+        writer.setOutput(os);
+        for (DataBlock data: records)
+            writer.write(data);
+        writer.flush();
+        bh.consume(os.size());
+    }
+}
@@ -0,0 +1,46 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+
+/**
+ * <p>
+ * Parse and write benchmarks for the XML encoding.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class XmlBenchmark extends AbstractEncodingBenchmark
+{
+    @Param({"SCALAR_RECORD", "NESTED_VECTORS", "VAR_SIZE_ARRAY", "CHOICE", "IMAGE"})
+    public RecordShape shape;
+
+
+    @Override
+    protected StreamFormat getFormat()
+    {
+        return StreamFormat.XML;
+    }
+
+
+    @Override
+    protected RecordShape getShape()
+    {
+        return shape;
+    }
+}
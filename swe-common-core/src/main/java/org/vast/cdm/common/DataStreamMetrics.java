@@ -0,0 +1,105 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.cdm.common;
+
+import java.util.Map;
+import javax.management.MXBean;
+
+
+/**
+ * <p>
+ * Throughput and latency statistics collected by data stream parsers
+ * and writers.<br/>
+ * This is also the management interface through which statistics are
+ * exposed via JMX. All durations are in nanoseconds.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+@MXBean
+public interface DataStreamMetrics
+{
+
+    /**
+     * @return Number of records successfully parsed or written
+     */
+    public long getRecordCount();
+
+
+    /**
+     * @return Number of bytes read from or written to the stream
+     */
+    public long getByteCount();
+
+
+    /**
+     * @return Number of records that could not be parsed or written
+     */
+    public long getErrorCount();
+
+
+    /**
+     * @return Mean time spent parsing or writing a single record
+     */
+    public double getMeanLatencyNanos();
+
+
+    /**
+     * @return Largest time spent parsing or writing a single record
+     */
+    public long getMaxLatencyNanos();
+
+
+    /**
+     * @param percentile percentage between 0 and 100
+     * @return Time below which the given percentage of records were processed
+     */
+    public long getLatencyPercentileNanos(double percentile);
+
+
+    /**
+     * @return Median time spent parsing or writing a single record
+     */
+    public long getLatencyP50Nanos();
+
+
+    /**
+     * @return Time below which 99% of records were processed
+     */
+    public long getLatencyP99Nanos();
+
+
+    /**
+     * @return Largest time spent parsing or writing a single record.<br/>
+     * This is the same as {@link #getMaxLatencyNanos()} but is listed
+     * next to the other latency attributes in JMX consoles.
+     */
+    public long getLatencyMaxNanos();
+
+
+    /**
+     * @return Total time spent in each top-level component of the records,
+     * keyed by component name. This is empty if the parser or writer cannot
+     * time components individually.
+     */
+    public Map<String, Long> getComponentTimeNanos();
+
+
+    /**
+     * Resets all counters to 0
+     */
+    public void reset();
+}
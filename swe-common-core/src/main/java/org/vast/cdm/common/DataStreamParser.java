@@ -91,6 +91,23 @@ public interface DataStreamParser
 	
 	
 	public DataBlock parseNextBlock() throws IOException;
+
+
+    /**
+     * Parses up to max records in a single call
+     * @param dst array receiving the parsed records
+     * @param max maximum number of records to parse
+     * @return number of records parsed, 0 if the end of stream was reached
+     * @throws IOException
+     */
+    public default int parseNextBlocks(DataBlock[] dst, int max) throws IOException
+    {
+        int count = 0;
+        DataBlock data;
+        while (count < max && (data = parseNextBlock()) != null)
+            dst[count++] = data;
+        return count;
+    }
 	
 	
 	public void close() throws IOException;
@@ -80,6 +80,22 @@ public interface DataStreamWriter
     
     
     public void write(DataBlock data) throws IOException;
+
+
+    /**
+     * Writes several records in a single call and flushes the output once
+     * all of them have been written
+     * @param src array containing the records to write
+     * @param off index of the first record to write
+     * @param len number of records to write
+     * @throws IOException
+     */
+    public default void write(DataBlock[] src, int off, int len) throws IOException
+    {
+        for (int i = off; i < off + len; i++)
+            write(src[i]);
+        flush();
+    }
     
     
     public void startStream(boolean multipleRecords) throws IOException;
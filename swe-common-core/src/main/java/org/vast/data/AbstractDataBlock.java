@@ -66,6 +66,17 @@ public abstract class AbstractDataBlock implements DataBlock
     public abstract void setUnderlyingObject(Object obj);
     
 	
+    /**
+     * Returns index of the first value of this DataBlock in the
+     * underlying object (non zero when datablock is a view on a
+     * larger primitive array)
+     */
+    public int getStartIndex()
+    {
+        return startIndex;
+    }
+    
+    
     /**
      * Returns number of scalar values in this DataBlock
      */
@@ -81,4 +92,27 @@ public abstract class AbstractDataBlock implements DataBlock
 	{
 		return new String(getDataType() + "[" + getAtomCount() + "]");
 	}
+	
+	
+	/*
+	 * Composite blocks return the child block index and the local index
+	 * of an atom packed in a long, rather than storing them in the block
+	 * itself, so the same block can be read by several threads
+	 */
+	protected static final long packIndex(int blockIndex, int localIndex)
+	{
+	    return ((long)blockIndex << 32) | (localIndex & 0xFFFFFFFFL);
+	}
+	
+	
+	protected static final int blockIndex(long sel)
+	{
+	    return (int)(sel >>> 32);
+	}
+	
+	
+	protected static final int localIndex(long sel)
+	{
+	    return (int)sel;
+	}
 }
@@ -0,0 +1,426 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * <p>
+ * Base class for primitive DataBlocks storing their values outside of the
+ * Java heap, in a direct (or memory mapped) ByteBuffer, so that large
+ * arrays don't add to garbage collection work.<br/>
+ * Values are accessed with the same conversion rules as the corresponding
+ * heap based DataBlocks (e.g. {@link DataBlockDirectDouble} behaves like
+ * {@link DataBlockDouble}).
+ * </p><p>
+ * Memory allocated by a block is freed when the block and all the copies
+ * sharing it are garbage collected, or immediately by calling
+ * {@link #release()}. Blocks wrapping a buffer provided by the caller never
+ * free it.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public abstract class AbstractDataBlockDirect extends AbstractDataBlock
+{
+    private static final long serialVersionUID = 4353617512045766208L;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final ByteBuffer RELEASED = ByteBuffer.allocate(0);
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private static final Method GET_CLEANER;
+    private static final Method CLEAN;
+
+    protected final int shift;
+    protected transient Memory mem;
+
+
+    /*
+     * Buffer shared by a block and its copies, so that releasing
+     * memory detaches it from all blocks at once
+     */
+    protected static final class Memory
+    {
+        ByteBuffer buf;
+        final boolean owned;
+
+        Memory(ByteBuffer buf, boolean owned)
+        {
+            this.buf = buf;
+            this.owned = owned;
+        }
+    }
+
+
+    static
+    {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method getCleaner = null;
+        Method clean = null;
+
+        try
+        {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+        }
+        catch (Exception e)
+        {
+            invokeCleaner = null;
+
+            try
+            {
+                // Java 8
+                getCleaner = ByteBuffer.allocateDirect(1).getClass().getMethod("cleaner");
+                getCleaner.setAccessible(true);
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            }
+            catch (Exception e1)
+            {
+                // memory will only be freed by the garbage collector
+                getCleaner = null;
+            }
+        }
+
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        GET_CLEANER = getCleaner;
+        CLEAN = clean;
+    }
+
+
+    /**
+     * @param shift Log2 of the size of one value, in bytes
+     */
+    protected AbstractDataBlockDirect(int shift)
+    {
+        this.shift = shift;
+        this.mem = new Memory(EMPTY, false);
+    }
+
+
+    /**
+     * @return A new empty block of the same type
+     */
+    protected abstract AbstractDataBlockDirect newBlock();
+
+
+    @Override
+    public AbstractDataBlockDirect copy()
+    {
+        AbstractDataBlockDirect newBlock = newBlock();
+        newBlock.mem = this.mem;
+        newBlock.startIndex = this.startIndex;
+        newBlock.atomCount = this.atomCount;
+        return newBlock;
+    }
+
+
+    @Override
+    public AbstractDataBlockDirect renew()
+    {
+        AbstractDataBlockDirect newBlock = newBlock();
+        newBlock.mem = new Memory(allocate(this.atomCount << shift), true);
+        newBlock.startIndex = this.startIndex;
+        newBlock.atomCount = this.atomCount;
+        return newBlock;
+    }
+
+
+    @Override
+    public AbstractDataBlockDirect clone()
+    {
+        AbstractDataBlockDirect newBlock = newBlock();
+        newBlock.mem = new Memory(allocate(this.atomCount << shift), true);
+        newBlock.mem.buf.put(slice());
+        newBlock.mem.buf.clear();
+        newBlock.atomCount = this.atomCount;
+        return newBlock;
+    }
+
+
+    /**
+     * @return The buffer holding the values, including values outside of
+     * this block if it is a view on a larger buffer (see {@link #getStartIndex()}).
+     * It must not be used after the block is released.
+     */
+    @Override
+    public ByteBuffer getUnderlyingObject()
+    {
+        return mem.buf;
+    }
+
+
+    /**
+     * Sets the buffer holding the values. The buffer is shared with the
+     * caller and will not be freed when this block is released.
+     * @param buf
+     */
+    public void setUnderlyingObject(ByteBuffer buf)
+    {
+        this.mem = new Memory(rebase(buf), false);
+        this.atomCount = mem.buf.capacity() >> shift;
+    }
+
+
+    @Override
+    public void setUnderlyingObject(Object obj)
+    {
+        this.mem = new Memory(rebase((ByteBuffer)obj), false);
+    }
+
+
+    @Override
+    public void resize(int size)
+    {
+        this.mem = new Memory(allocate(size << shift), true);
+        this.atomCount = size;
+    }
+
+
+    /**
+     * Frees the memory used by this block immediately, rather than waiting
+     * for the buffer to be garbage collected. Other blocks sharing the same
+     * memory (i.e. created with {@link #copy()}) are released too.<br/>
+     * Accessing the values of a released block throws an exception.
+     */
+    public void release()
+    {
+        Memory mem = this.mem;
+        ByteBuffer buf = mem.buf;
+        if (buf == RELEASED)
+            return;
+
+        mem.buf = RELEASED;
+        if (mem.owned)
+            free(buf);
+    }
+
+
+    /**
+     * @return true if the memory of this block was released
+     */
+    public boolean isReleased()
+    {
+        return mem.buf == RELEASED;
+    }
+
+
+    /*
+     * Returns a view of this block's values, positioned at the first value
+     */
+    protected ByteBuffer slice()
+    {
+        ByteBuffer buf = mem.buf.duplicate();
+        buf.limit((startIndex + atomCount) << shift);
+        buf.position(startIndex << shift);
+        return buf;
+    }
+
+
+    protected static ByteBuffer allocate(int numBytes)
+    {
+        return ByteBuffer.allocateDirect(numBytes).order(ByteOrder.nativeOrder());
+    }
+
+
+    /*
+     * Creates a view of the buffer starting at its current position so
+     * that values are accessed with absolute indexes
+     */
+    protected static ByteBuffer rebase(ByteBuffer buf)
+    {
+        if (buf.position() == 0 && buf.limit() == buf.capacity())
+            return buf;
+
+        ByteOrder byteOrder = buf.order();
+        return buf.slice().order(byteOrder);
+    }
+
+
+    protected static void free(ByteBuffer buf)
+    {
+        if (!buf.isDirect())
+            return;
+
+        try
+        {
+            if (INVOKE_CLEANER != null)
+            {
+                INVOKE_CLEANER.invoke(UNSAFE, buf);
+            }
+            else if (GET_CLEANER != null)
+            {
+                Object cleaner = GET_CLEANER.invoke(buf);
+                if (cleaner != null)
+                    CLEAN.invoke(cleaner);
+            }
+        }
+        catch (Exception e)
+        {
+            // memory will be freed by the garbage collector
+        }
+    }
+
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        int start = startIndex;
+        startIndex = 0;
+        out.defaultWriteObject();
+        startIndex = start;
+
+        ByteBuffer values = slice();
+        byte[] bytes = new byte[values.remaining()];
+        values.get(bytes);
+        out.writeBoolean(mem.buf.order() == ByteOrder.BIG_ENDIAN);
+        out.writeObject(bytes);
+    }
+
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        ByteOrder byteOrder = in.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        byte[] bytes = (byte[])in.readObject();
+        mem = new Memory(ByteBuffer.allocateDirect(bytes.length).order(byteOrder), true);
+        mem.buf.put(bytes);
+        mem.buf.clear();
+    }
+
+
+    @Override
+    public boolean getBooleanValue()
+    {
+        return getBooleanValue(0);
+    }
+
+
+    @Override
+    public byte getByteValue()
+    {
+        return getByteValue(0);
+    }
+
+
+    @Override
+    public short getShortValue()
+    {
+        return getShortValue(0);
+    }
+
+
+    @Override
+    public int getIntValue()
+    {
+        return getIntValue(0);
+    }
+
+
+    @Override
+    public long getLongValue()
+    {
+        return getLongValue(0);
+    }
+
+
+    @Override
+    public float getFloatValue()
+    {
+        return getFloatValue(0);
+    }
+
+
+    @Override
+    public double getDoubleValue()
+    {
+        return getDoubleValue(0);
+    }
+
+
+    @Override
+    public String getStringValue()
+    {
+        return getStringValue(0);
+    }
+
+
+    @Override
+    public void setBooleanValue(boolean value)
+    {
+        setBooleanValue(0, value);
+    }
+
+
+    @Override
+    public void setByteValue(byte value)
+    {
+        setByteValue(0, value);
+    }
+
+
+    @Override
+    public void setShortValue(short value)
+    {
+        setShortValue(0, value);
+    }
+
+
+    @Override
+    public void setIntValue(int value)
+    {
+        setIntValue(0, value);
+    }
+
+
+    @Override
+    public void setLongValue(long value)
+    {
+        setLongValue(0, value);
+    }
+
+
+    @Override
+    public void setFloatValue(float value)
+    {
+        setFloatValue(0, value);
+    }
+
+
+    @Override
+    public void setDoubleValue(double value)
+    {
+        setDoubleValue(0, value);
+    }
+
+
+    @Override
+    public void setStringValue(String value)
+    {
+        setStringValue(0, value);
+    }
+}
@@ -84,7 +84,13 @@ public abstract class AbstractRecordImpl<ComponentType extends DataComponent> ex
     protected void updateAtomCount(int childAtomCountDiff)
     {
         if (dataBlock != null)
+        {
             dataBlock.atomCount += childAtomCountDiff;
+            
+            // offsets of child blocks have changed
+            if (dataBlock instanceof DataBlockMixed)
+                ((DataBlockMixed)dataBlock).blockOffsets = null;
+        }
         
         if (parent != null)
             parent.updateAtomCount(childAtomCountDiff);
@@ -147,10 +153,28 @@ public abstract class AbstractRecordImpl<ComponentType extends DataComponent> ex
 		// also assign dataBlock to children
     	if (dataBlock instanceof DataBlockParallel)
     	{
+    	    // one child block per scalar, so nested records get a view
+    	    // on the child blocks of all their scalars
+    	    AbstractDataBlock[] blockArray = ((DataBlockParallel)dataBlock).blockArray;
+    	    int currentIndex = 0;
     		for (int i = 0; i < fieldList.size(); i++)
     		{
-    			AbstractDataBlock childBlock = ((DataBlockParallel)dataBlock).blockArray[i];
-    			((AbstractDataComponentImpl)fieldList.get(i)).setData(childBlock);
+    		    AbstractDataComponentImpl nextComponent = (AbstractDataComponentImpl)fieldList.get(i);
+    		    AbstractDataBlock childBlock;
+    		    
+    		    if (nextComponent instanceof AbstractRecordImpl)
+    		    {
+    		        DataBlockParallel parallelBlock = new DataBlockParallel();
+    		        parallelBlock.blockArray = Arrays.copyOfRange(blockArray, currentIndex, currentIndex + nextComponent.scalarCount);
+    		        parallelBlock.startIndex = this.dataBlock.startIndex;
+    		        parallelBlock.atomCount = nextComponent.scalarCount;
+    		        childBlock = parallelBlock;
+    		        currentIndex += nextComponent.scalarCount;
+    		    }
+    		    else
+    		        childBlock = blockArray[currentIndex++];
+    		    
+    			nextComponent.setData(childBlock);
     		}
     	}
         else if (dataBlock instanceof DataBlockMixed)
@@ -0,0 +1,149 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.vast.data.DataBlockChunked.Chunk;
+
+
+/**
+ * <p>
+ * Memory budget shared by {@link DataBlockChunked} instances.<br/>
+ * Keeps track of all decompressed chunks and evicts the least recently
+ * used ones when their total size exceeds the budget. Modified chunks are
+ * recompressed when they are evicted.
+ * </p><p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class ChunkCache
+{
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final ChunkCache DEFAULT = new ChunkCache(DEFAULT_MAX_BYTES);
+
+    final long maxBytes;
+    final LinkedHashMap<Chunk, Boolean> lru = new LinkedHashMap<>(64, 0.75f, true);
+    long usedBytes;
+    long loadCount;
+    long evictionCount;
+
+
+    /**
+     * @param maxBytes Maximum total size of decompressed chunks, in bytes
+     */
+    public ChunkCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * @return The cache used by chunked blocks when none is specified
+     */
+    public static ChunkCache getDefault()
+    {
+        return DEFAULT;
+    }
+
+
+    /*
+     * Registers a newly decompressed chunk and returns the chunks that
+     * must be evicted to stay within budget, or null if none.
+     * Eviction itself is done by the caller, outside of this lock.
+     */
+    synchronized List<Chunk> add(Chunk chunk)
+    {
+        lru.put(chunk, Boolean.TRUE);
+        usedBytes += chunk.sizeInBytes;
+        loadCount++;
+
+        List<Chunk> victims = null;
+        Iterator<Chunk> it = lru.keySet().iterator();
+        while (usedBytes > maxBytes && lru.size() > 1)
+        {
+            Chunk victim = it.next();
+            it.remove();
+            usedBytes -= victim.sizeInBytes;
+            evictionCount++;
+
+            if (victims == null)
+                victims = new ArrayList<>();
+            victims.add(victim);
+        }
+
+        return victims;
+    }
+
+
+    synchronized void touch(Chunk chunk)
+    {
+        lru.get(chunk);
+    }
+
+
+    synchronized boolean remove(Chunk chunk)
+    {
+        if (lru.remove(chunk) == null)
+            return false;
+
+        usedBytes -= chunk.sizeInBytes;
+        return true;
+    }
+
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+
+    /**
+     * @return Total size of decompressed chunks currently held in memory
+     */
+    public synchronized long getUsedBytes()
+    {
+        return usedBytes;
+    }
+
+
+    public synchronized int getChunkCount()
+    {
+        return lru.size();
+    }
+
+
+    /**
+     * @return Number of chunks decompressed since this cache was created
+     */
+    public synchronized long getLoadCount()
+    {
+        return loadCount;
+    }
+
+
+    /**
+     * @return Number of chunks evicted to stay within budget
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+}
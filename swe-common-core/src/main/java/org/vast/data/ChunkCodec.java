@@ -0,0 +1,52 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.io.Serializable;
+
+
+/**
+ * <p>
+ * Interface for codecs used to compress chunks of {@link DataBlockChunked}.<br/>
+ * Implementations must be thread-safe.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public interface ChunkCodec extends Serializable
+{
+
+    /**
+     * Compresses len bytes of the source buffer
+     * @param src
+     * @param off
+     * @param len
+     * @return New array containing compressed bytes
+     */
+    public byte[] compress(byte[] src, int off, int len);
+
+
+    /**
+     * Decompresses data into the destination buffer
+     * @param src buffer containing compressed bytes
+     * @param off offset of compressed bytes in source buffer
+     * @param srcLen number of compressed bytes
+     * @param dst destination buffer
+     * @param len exact number of uncompressed bytes expected
+     * @throws IllegalStateException if the compressed data is corrupted
+     */
+    public void decompress(byte[] src, int off, int srcLen, byte[] dst, int len);
+}
@@ -14,6 +14,7 @@ Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
 
 package org.vast.data;
 
+import java.util.ArrayList;
 import java.util.List;
 import net.opengis.swe.v20.BinaryBlock;
 import net.opengis.swe.v20.Count;
@@ -46,6 +47,7 @@ public class DataArrayImpl extends AbstractArrayImpl
     public static final String ARRAY_SIZE_FIELD = "elementCount";
     
     protected int currentSize;
+    protected boolean columnarLayout;
     
     
     /**
@@ -80,6 +82,7 @@ public class DataArrayImpl extends AbstractArrayImpl
     {
         super.copyTo(other);        
         other.currentSize = this.currentSize;
+        other.columnarLayout = this.columnarLayout;
         if (!isVariableSize())
             other.elementCount.getValue().setValue(getComponentCount());
     }
@@ -310,6 +313,18 @@ public class DataArrayImpl extends AbstractArrayImpl
                 newBlock = parallelBlock;
             }
             
+            // if child is mixed block made only of scalars and columnar
+            // layout is requested, create one primitive block per scalar
+            else if (childBlock instanceof DataBlockMixed && columnarLayout && isColumnarCompatible(getArrayComponent()))
+            {
+                List<AbstractDataBlock> columns = new ArrayList<>();
+                addColumnBlocks(getArrayComponent(), columns);
+                DataBlockParallel parallelBlock = new DataBlockParallel();
+                parallelBlock.blockArray = columns.toArray(new AbstractDataBlock[columns.size()]);
+                newSize = childBlock.atomCount * arraySize;
+                newBlock = parallelBlock;
+            }
+            
             // if child is mixed block, create list block
             else if (childBlock instanceof DataBlockMixed)
             {
@@ -334,6 +349,64 @@ public class DataArrayImpl extends AbstractArrayImpl
     }
 
 
+    /*
+     * Checks if the component is a scalar or a record containing only
+     * scalars or other such records, at any depth
+     */
+    protected static boolean isColumnarCompatible(DataComponent comp)
+    {
+        if (comp instanceof AbstractRecordImpl)
+        {
+            for (int i = 0; i < comp.getComponentCount(); i++)
+            {
+                if (!isColumnarCompatible(comp.getComponent(i)))
+                    return false;
+            }
+            
+            return true;
+        }
+        
+        return comp instanceof DataValue;
+    }
+    
+    
+    protected static void addColumnBlocks(AbstractDataComponentImpl comp, List<AbstractDataBlock> columns)
+    {
+        if (comp instanceof AbstractRecordImpl)
+        {
+            for (int i = 0; i < comp.getComponentCount(); i++)
+                addColumnBlocks(comp.getComponent(i), columns);
+        }
+        else
+            columns.add(comp.createDataBlock());
+    }
+    
+    
+    /**
+     * Selects how data blocks of arrays whose elements are records made only
+     * of scalars (possibly nested in other records) are created. When enabled,
+     * all values of each scalar are stored contiguously in a primitive block
+     * (see {@link DataBlockParallel#getColumn(int)}). Otherwise each element
+     * is stored as a separate mixed block.<br/>
+     * This only has effect on data blocks created after this call.
+     * @param columnar true to use columnar layout
+     */
+    public void setColumnarLayout(boolean columnar)
+    {
+        this.columnarLayout = columnar;
+    }
+    
+    
+    /**
+     * @return true if columnar layout is used for arrays of records
+     * @see #setColumnarLayout(boolean)
+     */
+    public boolean isColumnarLayout()
+    {
+        return columnarLayout;
+    }
+    
+    
     /**
      * Check that the integer index given is in range: 0 to size of array - 1
      * @param index int
@@ -0,0 +1,932 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataType;
+
+
+/**
+ * <p>
+ * Carries a large array of primitive values (e.g. an image or coverage)
+ * compressed in independent chunks of fixed size.<br/>
+ * Unlike {@link DataBlockCompressed}, which holds an opaque stream that has
+ * to be decoded as a whole, only the chunks containing the atoms being
+ * accessed are decompressed. Decompressed chunks are accounted for in a
+ * {@link ChunkCache} that evicts the least recently used ones when its
+ * memory budget is exceeded.
+ * </p><p>
+ * Values can be modified: a modified chunk is recompressed when it is
+ * evicted, or when {@link #flush()} is called. Values are accessed with the
+ * same conversion rules as the corresponding primitive DataBlocks.
+ * </p><p>
+ * Reading concurrently from several threads is safe. Copies obtained with
+ * {@link #copy()} share both compressed and decompressed chunks.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataBlockChunked extends AbstractDataBlock
+{
+    private static final long serialVersionUID = 2214871963318870394L;
+    public static final int DEFAULT_CHUNK_SIZE = 16384;
+
+    protected Storage storage;
+    protected transient int lastChunk = -1;
+
+
+    /*
+     * Compressed and decompressed chunks shared by a block and its copies
+     */
+    static final class Storage implements Serializable
+    {
+        private static final long serialVersionUID = -6450470627217863209L;
+
+        final DataType dataType;
+        final int size;
+        final int chunkSize;
+        final int shift;
+        final ChunkCodec codec;
+        final byte[][] compressed;
+        transient ChunkCache cache;
+        transient Chunk[] chunks;
+        transient List<Chunk> pending;
+
+
+        Storage(DataType dataType, int size, int chunkSize, ChunkCodec codec, ChunkCache cache)
+        {
+            this.dataType = dataType;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.shift = getShift(dataType);
+            this.codec = codec;
+            this.cache = cache;
+
+            int numChunks = (size + chunkSize - 1) / chunkSize;
+            this.compressed = new byte[numChunks][];
+            this.chunks = new Chunk[numChunks];
+        }
+
+
+        int getChunkLength(int ci)
+        {
+            return Math.min(chunkSize, size - ci * chunkSize);
+        }
+
+
+        /*
+         * Decompresses the chunk if needed and returns it.
+         * Must not be called while holding the lock.
+         */
+        Chunk load(int ci)
+        {
+            Chunk chunk;
+            synchronized (this)
+            {
+                chunk = chunks[ci];
+                if (chunk == null)
+                    chunk = install(ci);
+            }
+
+            evictPending();
+            return chunk;
+        }
+
+
+        /*
+         * Decompresses the chunk and registers it with the cache.
+         * Must be called while holding the lock. Chunks to evict are queued
+         * and must be processed with evictPending() once the lock is released
+         * so we never hold the locks of two storages at once.
+         */
+        Chunk install(int ci)
+        {
+            int len = getChunkLength(ci);
+            AbstractDataBlock data = DataBlockFactory.createBlock(dataType, len, false);
+            if (compressed[ci] != null)
+            {
+                byte[] bytes = new byte[len << shift];
+                codec.decompress(compressed[ci], 0, compressed[ci].length, bytes, bytes.length);
+                readBytes(bytes, data.getUnderlyingObject(), len);
+            }
+
+            Chunk chunk = new Chunk(this, ci, data, len << shift);
+            chunks[ci] = chunk;
+
+            List<Chunk> victims = cache.add(chunk);
+            if (victims != null)
+            {
+                if (pending == null)
+                    pending = victims;
+                else
+                    pending.addAll(victims);
+            }
+
+            return chunk;
+        }
+
+
+        void evictPending()
+        {
+            // unsynchronized check is fine since a thread always
+            // sees the victims it queued itself
+            if (pending == null)
+                return;
+
+            List<Chunk> victims;
+            synchronized (this)
+            {
+                victims = pending;
+                pending = null;
+            }
+
+            if (victims != null)
+            {
+                for (Chunk victim: victims)
+                    victim.owner.evict(victim);
+            }
+        }
+
+
+        synchronized void evict(Chunk chunk)
+        {
+            if (chunks[chunk.index] == chunk)
+            {
+                if (chunk.dirty)
+                    compress(chunk);
+                chunks[chunk.index] = null;
+            }
+        }
+
+
+        synchronized void flush()
+        {
+            for (Chunk chunk: chunks)
+            {
+                if (chunk != null && chunk.dirty)
+                {
+                    compress(chunk);
+                    chunk.dirty = false;
+                }
+            }
+        }
+
+
+        synchronized void evictAll()
+        {
+            for (int ci = 0; ci < chunks.length; ci++)
+            {
+                Chunk chunk = chunks[ci];
+                if (chunk != null)
+                {
+                    if (chunk.dirty)
+                        compress(chunk);
+                    cache.remove(chunk);
+                    chunks[ci] = null;
+                }
+            }
+        }
+
+
+        void compress(Chunk chunk)
+        {
+            byte[] bytes = writeBytes(chunk.data.getUnderlyingObject(), chunk.data.atomCount, shift);
+            compressed[chunk.index] = codec.compress(bytes, 0, bytes.length);
+        }
+
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            this.chunks = new Chunk[compressed.length];
+            this.cache = ChunkCache.getDefault();
+        }
+    }
+
+
+    /*
+     * Decompressed chunk, tracked by the cache
+     */
+    static final class Chunk
+    {
+        final Storage owner;
+        final int index;
+        final AbstractDataBlock data;
+        final int sizeInBytes;
+        boolean dirty;
+
+        Chunk(Storage owner, int index, AbstractDataBlock data, int sizeInBytes)
+        {
+            this.owner = owner;
+            this.index = index;
+            this.data = data;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
+
+    protected DataBlockChunked()
+    {
+    }
+
+
+    /**
+     * Creates a block of the given size with all values set to 0, using
+     * the default chunk size, codec and cache
+     * @param dataType primitive data type of values
+     * @param size number of atoms
+     */
+    public DataBlockChunked(DataType dataType, int size)
+    {
+        this(dataType, size, DEFAULT_CHUNK_SIZE, DeflateChunkCodec.DEFAULT, ChunkCache.getDefault());
+    }
+
+
+    /**
+     * Creates a block of the given size with all values set to 0
+     * @param dataType primitive data type of values
+     * @param size number of atoms
+     * @param chunkSize number of atoms per chunk
+     * @param codec codec used to compress chunks
+     * @param cache cache accounting for decompressed chunks
+     */
+    public DataBlockChunked(DataType dataType, int size, int chunkSize, ChunkCodec codec, ChunkCache cache)
+    {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be > 0");
+
+        this.storage = new Storage(dataType, size, chunkSize, codec, cache);
+        this.atomCount = size;
+    }
+
+
+    /**
+     * Creates a chunked block with the content of another block, using
+     * the default codec and cache
+     * @param src block with values of a single primitive type
+     * @param chunkSize number of atoms per chunk
+     * @return the new chunked block
+     */
+    public static DataBlockChunked compress(DataBlock src, int chunkSize)
+    {
+        return compress(src, src.getDataType(), chunkSize, DeflateChunkCodec.DEFAULT, ChunkCache.getDefault());
+    }
+
+
+    /**
+     * Creates a chunked block with the content of another block.<br/>
+     * Chunks are compressed directly so they don't count against the
+     * cache budget until they are accessed.
+     * @param src source block
+     * @param dataType data type to store values with
+     * @param chunkSize number of atoms per chunk
+     * @param codec codec used to compress chunks
+     * @param cache cache accounting for decompressed chunks
+     * @return the new chunked block
+     */
+    public static DataBlockChunked compress(DataBlock src, DataType dataType, int chunkSize, ChunkCodec codec, ChunkCache cache)
+    {
+        DataBlockChunked newBlock = new DataBlockChunked(dataType, src.getAtomCount(), chunkSize, codec, cache);
+        Storage s = newBlock.storage;
+
+        for (int ci = 0; ci < s.compressed.length; ci++)
+        {
+            int len = s.getChunkLength(ci);
+            AbstractDataBlock data = DataBlockFactory.createBlock(dataType, len, false);
+            copyValues(src, ci * chunkSize, data, 0, len, dataType);
+            s.compress(new Chunk(s, ci, data, len << s.shift));
+        }
+
+        return newBlock;
+    }
+
+
+    @Override
+    public DataBlockChunked copy()
+    {
+        DataBlockChunked newBlock = new DataBlockChunked();
+        newBlock.storage = this.storage;
+        newBlock.startIndex = this.startIndex;
+        newBlock.atomCount = this.atomCount;
+        return newBlock;
+    }
+
+
+    @Override
+    public DataBlockChunked renew()
+    {
+        return new DataBlockChunked(storage.dataType, atomCount, storage.chunkSize, storage.codec, storage.cache);
+    }
+
+
+    @Override
+    public DataBlockChunked clone()
+    {
+        Storage s = this.storage;
+
+        // compressed chunks are never modified in place so they can be shared
+        if (startIndex == 0 && atomCount == s.size)
+        {
+            DataBlockChunked newBlock = renew();
+            synchronized (s)
+            {
+                s.flush();
+                System.arraycopy(s.compressed, 0, newBlock.storage.compressed, 0, s.compressed.length);
+            }
+            return newBlock;
+        }
+
+        return compress(this, s.dataType, s.chunkSize, s.codec, s.cache);
+    }
+
+
+    /**
+     * Recompresses all modified chunks, flushing changes to the arrays
+     * returned by {@link #getUnderlyingObject()}
+     */
+    public void flush()
+    {
+        storage.flush();
+    }
+
+
+    /**
+     * Recompresses modified chunks and frees memory used by all decompressed
+     * chunks of this block and its copies
+     */
+    public void evictChunks()
+    {
+        storage.evictAll();
+    }
+
+
+    /**
+     * @return The compressed chunks, after modified chunks have been recompressed.
+     * Null elements correspond to chunks that have never been written to and
+     * only contain zeros.
+     */
+    @Override
+    public byte[][] getUnderlyingObject()
+    {
+        storage.flush();
+        return storage.compressed;
+    }
+
+
+    /**
+     * Replaces all compressed chunks, discarding decompressed ones
+     * @param obj array of compressed chunks, as returned by {@link #getUnderlyingObject()}
+     */
+    @Override
+    public void setUnderlyingObject(Object obj)
+    {
+        byte[][] chunks = (byte[][])obj;
+        Storage s = this.storage;
+
+        synchronized (s)
+        {
+            if (chunks.length != s.compressed.length)
+                throw new IllegalArgumentException("Expected " + s.compressed.length + " chunks");
+
+            for (int ci = 0; ci < s.chunks.length; ci++)
+            {
+                if (s.chunks[ci] != null)
+                {
+                    s.cache.remove(s.chunks[ci]);
+                    s.chunks[ci] = null;
+                }
+            }
+
+            System.arraycopy(chunks, 0, s.compressed, 0, chunks.length);
+        }
+    }
+
+
+    public int getChunkSize()
+    {
+        return storage.chunkSize;
+    }
+
+
+    public int getChunkCount()
+    {
+        return storage.compressed.length;
+    }
+
+
+    /**
+     * @return Total size of compressed chunks in bytes, after modified chunks
+     * have been recompressed
+     */
+    public long getCompressedSize()
+    {
+        long size = 0;
+        for (byte[] chunk: getUnderlyingObject())
+        {
+            if (chunk != null)
+                size += chunk.length;
+        }
+        return size;
+    }
+
+
+    public ChunkCache getCache()
+    {
+        return storage.cache;
+    }
+
+
+    @Override
+    public DataType getDataType()
+    {
+        return storage.dataType;
+    }
+
+
+    @Override
+    public DataType getDataType(int index)
+    {
+        return storage.dataType;
+    }
+
+
+    @Override
+    public void resize(int size)
+    {
+        Storage s = this.storage;
+        this.storage = new Storage(s.dataType, size, s.chunkSize, s.codec, s.cache);
+        this.startIndex = 0;
+        this.atomCount = size;
+    }
+
+
+    /*
+     * Gets the decompressed chunk containing the atom at the absolute index i
+     */
+    protected final AbstractDataBlock readChunk(int i)
+    {
+        Storage s = this.storage;
+        int ci = i / s.chunkSize;
+        Chunk chunk = s.chunks[ci];
+
+        if (chunk == null)
+            chunk = s.load(ci);
+        else if (ci != lastChunk)
+            s.cache.touch(chunk);
+
+        lastChunk = ci;
+        return chunk.data;
+    }
+
+
+    /*
+     * Same as readChunk() but also marks the chunk as modified.
+     * Must be called while holding the storage lock, and followed by a
+     * call to evictPending() once the lock is released.
+     */
+    protected final AbstractDataBlock writeChunk(int i)
+    {
+        Storage s = this.storage;
+        int ci = i / s.chunkSize;
+        Chunk chunk = s.chunks[ci];
+
+        if (chunk == null)
+            chunk = s.install(ci);
+        else if (ci != lastChunk)
+            s.cache.touch(chunk);
+
+        lastChunk = ci;
+        chunk.dirty = true;
+        return chunk.data;
+    }
+
+
+    @Override
+    public boolean getBooleanValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getBooleanValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public byte getByteValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getByteValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public short getShortValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getShortValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public int getIntValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getIntValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public long getLongValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getLongValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public float getFloatValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getFloatValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public double getDoubleValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getDoubleValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public String getStringValue(int index)
+    {
+        int i = startIndex + index;
+        return readChunk(i).getStringValue(i % storage.chunkSize);
+    }
+
+
+    @Override
+    public boolean getBooleanValue()
+    {
+        return getBooleanValue(0);
+    }
+
+
+    @Override
+    public byte getByteValue()
+    {
+        return getByteValue(0);
+    }
+
+
+    @Override
+    public short getShortValue()
+    {
+        return getShortValue(0);
+    }
+
+
+    @Override
+    public int getIntValue()
+    {
+        return getIntValue(0);
+    }
+
+
+    @Override
+    public long getLongValue()
+    {
+        return getLongValue(0);
+    }
+
+
+    @Override
+    public float getFloatValue()
+    {
+        return getFloatValue(0);
+    }
+
+
+    @Override
+    public double getDoubleValue()
+    {
+        return getDoubleValue(0);
+    }
+
+
+    @Override
+    public String getStringValue()
+    {
+        return getStringValue(0);
+    }
+
+
+    @Override
+    public void setBooleanValue(int index, boolean value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setBooleanValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setByteValue(int index, byte value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setByteValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setShortValue(int index, short value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setShortValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setIntValue(int index, int value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setIntValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setLongValue(int index, long value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setLongValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setFloatValue(int index, float value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setFloatValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setDoubleValue(int index, double value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setDoubleValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setStringValue(int index, String value)
+    {
+        Storage s = this.storage;
+        int i = startIndex + index;
+        synchronized (s)
+        {
+            writeChunk(i).setStringValue(i % s.chunkSize, value);
+        }
+        s.evictPending();
+    }
+
+
+    @Override
+    public void setBooleanValue(boolean value)
+    {
+        setBooleanValue(0, value);
+    }
+
+
+    @Override
+    public void setByteValue(byte value)
+    {
+        setByteValue(0, value);
+    }
+
+
+    @Override
+    public void setShortValue(short value)
+    {
+        setShortValue(0, value);
+    }
+
+
+    @Override
+    public void setIntValue(int value)
+    {
+        setIntValue(0, value);
+    }
+
+
+    @Override
+    public void setLongValue(long value)
+    {
+        setLongValue(0, value);
+    }
+
+
+    @Override
+    public void setFloatValue(float value)
+    {
+        setFloatValue(0, value);
+    }
+
+
+    @Override
+    public void setDoubleValue(double value)
+    {
+        setDoubleValue(0, value);
+    }
+
+
+    @Override
+    public void setStringValue(String value)
+    {
+        setStringValue(0, value);
+    }
+
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        storage.flush();
+        out.defaultWriteObject();
+    }
+
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        lastChunk = -1;
+    }
+
+
+    static int getShift(DataType dataType)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+            case BYTE:
+            case UBYTE:
+                return 0;
+
+            case SHORT:
+            case USHORT:
+                return 1;
+
+            case INT:
+            case UINT:
+            case FLOAT:
+                return 2;
+
+            case LONG:
+            case ULONG:
+            case DOUBLE:
+                return 3;
+
+            default:
+                throw new IllegalArgumentException("Unsupported data type for chunked block: " + dataType);
+        }
+    }
+
+
+    static void copyValues(DataBlock src, int srcIndex, DataBlock dst, int dstIndex, int len, DataType dataType)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+                for (int i = 0; i < len; i++)
+                    dst.setBooleanValue(dstIndex + i, src.getBooleanValue(srcIndex + i));
+                break;
+
+            case UINT:
+            case LONG:
+            case ULONG:
+                for (int i = 0; i < len; i++)
+                    dst.setLongValue(dstIndex + i, src.getLongValue(srcIndex + i));
+                break;
+
+            case FLOAT:
+                for (int i = 0; i < len; i++)
+                    dst.setFloatValue(dstIndex + i, src.getFloatValue(srcIndex + i));
+                break;
+
+            case DOUBLE:
+                for (int i = 0; i < len; i++)
+                    dst.setDoubleValue(dstIndex + i, src.getDoubleValue(srcIndex + i));
+                break;
+
+            default:
+                for (int i = 0; i < len; i++)
+                    dst.setIntValue(dstIndex + i, src.getIntValue(srcIndex + i));
+                break;
+        }
+    }
+
+
+    static byte[] writeBytes(Object array, int len, int shift)
+    {
+        byte[] bytes = new byte[len << shift];
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (array instanceof byte[])
+            System.arraycopy(array, 0, bytes, 0, len);
+        else if (array instanceof boolean[])
+        {
+            boolean[] values = (boolean[])array;
+            for (int i = 0; i < len; i++)
+                bytes[i] = (byte)(values[i] ? 1 : 0);
+        }
+        else if (array instanceof short[])
+            buf.asShortBuffer().put((short[])array, 0, len);
+        else if (array instanceof int[])
+            buf.asIntBuffer().put((int[])array, 0, len);
+        else if (array instanceof long[])
+            buf.asLongBuffer().put((long[])array, 0, len);
+        else if (array instanceof float[])
+            buf.asFloatBuffer().put((float[])array, 0, len);
+        else if (array instanceof double[])
+            buf.asDoubleBuffer().put((double[])array, 0, len);
+
+        return bytes;
+    }
+
+
+    static void readBytes(byte[] bytes, Object array, int len)
+    {
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (array instanceof byte[])
+            System.arraycopy(bytes, 0, array, 0, len);
+        else if (array instanceof boolean[])
+        {
+            boolean[] values = (boolean[])array;
+            for (int i = 0; i < len; i++)
+                values[i] = bytes[i] != 0;
+        }
+        else if (array instanceof short[])
+            buf.asShortBuffer().get((short[])array, 0, len);
+        else if (array instanceof int[])
+            buf.asIntBuffer().get((int[])array, 0, len);
+        else if (array instanceof long[])
+            buf.asLongBuffer().get((long[])array, 0, len);
+        else if (array instanceof float[])
+            buf.asFloatBuffer().get((float[])array, 0, len);
+        else if (array instanceof double[])
+            buf.asDoubleBuffer().get((double[])array, 0, len);
+    }
+}
@@ -0,0 +1,471 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import net.opengis.swe.v20.DataType;
+
+
+/**
+ * <p>
+ * Carries an array of String values encoded as 16-bit codes of a
+ * {@link StringDictionary} shared by all blocks of the same component.
+ * All data is casted to other types when requested, in the same way as
+ * {@link DataBlockString}.<br/>
+ * String values are always returned as the canonical instances held by
+ * the dictionary. Values that don't fit in the dictionary once it is
+ * full are stored separately as regular strings.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataBlockDictString extends AbstractDataBlock
+{
+    private static final long serialVersionUID = 6208379265301856618L;
+    static final char ESCAPE_CODE = (char)StringDictionary.MAX_SIZE;
+
+    protected StringDictionary dictionary;
+    protected char[] codes;
+    protected String[] overflow;
+
+
+    public DataBlockDictString(StringDictionary dictionary)
+    {
+        this.dictionary = dictionary;
+    }
+
+
+    public DataBlockDictString(StringDictionary dictionary, int size)
+    {
+        this.dictionary = dictionary;
+        resize(size);
+    }
+
+
+    @Override
+    public DataBlockDictString copy()
+    {
+        DataBlockDictString newBlock = new DataBlockDictString(dictionary);
+        newBlock.codes = this.codes;
+        newBlock.overflow = this.overflow;
+        newBlock.startIndex = this.startIndex;
+        newBlock.atomCount = this.atomCount;
+        return newBlock;
+    }
+
+
+    @Override
+    public DataBlockDictString renew()
+    {
+        DataBlockDictString newBlock = new DataBlockDictString(dictionary);
+        newBlock.codes = new char[this.atomCount];
+        newBlock.startIndex = this.startIndex;
+        newBlock.atomCount = this.atomCount;
+        return newBlock;
+    }
+
+
+    @Override
+    public DataBlockDictString clone()
+    {
+        DataBlockDictString newBlock = new DataBlockDictString(dictionary);
+        newBlock.codes = new char[this.atomCount];
+        System.arraycopy(this.codes, this.startIndex, newBlock.codes, 0, this.atomCount);
+        if (this.overflow != null)
+        {
+            newBlock.overflow = new String[this.atomCount];
+            System.arraycopy(this.overflow, this.startIndex, newBlock.overflow, 0, this.atomCount);
+        }
+        newBlock.atomCount = this.atomCount;
+        return newBlock;
+    }
+
+
+    /**
+     * @return The array of codes, including codes outside of this block if
+     * it is a view on a larger array (see {@link #getStartIndex()})
+     */
+    @Override
+    public char[] getUnderlyingObject()
+    {
+        return codes;
+    }
+
+
+    public void setUnderlyingObject(char[] codes)
+    {
+        this.codes = codes;
+        this.overflow = null;
+        this.atomCount = codes.length;
+    }
+
+
+    @Override
+    public void setUnderlyingObject(Object obj)
+    {
+        this.codes = (char[])obj;
+        this.overflow = null;
+    }
+
+
+    public StringDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+
+    /**
+     * @param index
+     * @return The dictionary code of the value at the given index, or
+     * {@link StringDictionary#NO_CODE} if the value is not in the dictionary
+     */
+    public int getCode(int index)
+    {
+        char code = codes[startIndex + index];
+        return (code == ESCAPE_CODE) ? StringDictionary.NO_CODE : code;
+    }
+
+
+    /**
+     * Sets the value at the given index using its dictionary code
+     * @param index
+     * @param code code obtained from this block's dictionary
+     */
+    public void setCode(int index, int code)
+    {
+        int i = startIndex + index;
+        if (overflow != null)
+            overflow[i] = null;
+        codes[i] = (char)code;
+    }
+
+
+    @Override
+    public DataType getDataType()
+    {
+        return DataType.UTF_STRING;
+    }
+
+
+    @Override
+    public DataType getDataType(int index)
+    {
+        return DataType.UTF_STRING;
+    }
+
+
+    @Override
+    public void resize(int size)
+    {
+        codes = new char[size];
+        overflow = null;
+        this.atomCount = size;
+    }
+
+
+    protected final String get(int index)
+    {
+        int i = startIndex + index;
+        char code = codes[i];
+        return (code == ESCAPE_CODE) ? overflow[i] : dictionary.getString(code);
+    }
+
+
+    protected final void set(int index, String value)
+    {
+        int i = startIndex + index;
+        int code = dictionary.getCode(value);
+
+        if (code == StringDictionary.NO_CODE)
+        {
+            if (overflow == null)
+                overflow = new String[codes.length];
+            overflow[i] = value;
+            codes[i] = ESCAPE_CODE;
+        }
+        else
+        {
+            if (overflow != null)
+                overflow[i] = null;
+            codes[i] = (char)code;
+        }
+    }
+
+
+    @Override
+    public boolean getBooleanValue(int index)
+    {
+        return Boolean.parseBoolean(get(index));
+    }
+
+
+    @Override
+    public byte getByteValue(int index)
+    {
+        return Byte.parseByte(get(index));
+    }
+
+
+    @Override
+    public short getShortValue(int index)
+    {
+        return Short.parseShort(get(index));
+    }
+
+
+    @Override
+    public int getIntValue(int index)
+    {
+        return Integer.parseInt(get(index));
+    }
+
+
+    @Override
+    public long getLongValue(int index)
+    {
+        return Long.parseLong(get(index));
+    }
+
+
+    @Override
+    public float getFloatValue(int index)
+    {
+        return Float.parseFloat(get(index));
+    }
+
+
+    @Override
+    public double getDoubleValue(int index)
+    {
+        return Double.parseDouble(get(index));
+    }
+
+
+    @Override
+    public String getStringValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public boolean getBooleanValue()
+    {
+        return Boolean.parseBoolean(get(0));
+    }
+
+
+    @Override
+    public byte getByteValue()
+    {
+        try
+        {
+            return Byte.parseByte(get(0));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+
+    @Override
+    public short getShortValue()
+    {
+        try
+        {
+            return Short.parseShort(get(0));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+
+    @Override
+    public int getIntValue()
+    {
+        try
+        {
+            return Integer.parseInt(get(0));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+
+    @Override
+    public long getLongValue()
+    {
+        try
+        {
+            return Long.parseLong(get(0));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+
+    @Override
+    public float getFloatValue()
+    {
+        try
+        {
+            return Float.parseFloat(get(0));
+        }
+        catch (NumberFormatException e)
+        {
+            return Float.NaN;
+        }
+    }
+
+
+    @Override
+    public double getDoubleValue()
+    {
+        try
+        {
+            return Double.parseDouble(get(0));
+        }
+        catch (NumberFormatException e)
+        {
+            return Double.NaN;
+        }
+    }
+
+
+    @Override
+    public String getStringValue()
+    {
+        return get(0);
+    }
+
+
+    @Override
+    public void setBooleanValue(int index, boolean value)
+    {
+        set(index, Boolean.toString(value));
+    }
+
+
+    @Override
+    public void setByteValue(int index, byte value)
+    {
+        set(index, Byte.toString(value));
+    }
+
+
+    @Override
+    public void setShortValue(int index, short value)
+    {
+        set(index, Short.toString(value));
+    }
+
+
+    @Override
+    public void setIntValue(int index, int value)
+    {
+        set(index, Integer.toString(value));
+    }
+
+
+    @Override
+    public void setLongValue(int index, long value)
+    {
+        set(index, Long.toString(value));
+    }
+
+
+    @Override
+    public void setFloatValue(int index, float value)
+    {
+        set(index, Float.toString(value));
+    }
+
+
+    @Override
+    public void setDoubleValue(int index, double value)
+    {
+        set(index, Double.toString(value));
+    }
+
+
+    @Override
+    public void setStringValue(int index, String value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setBooleanValue(boolean value)
+    {
+        set(0, Boolean.toString(value));
+    }
+
+
+    @Override
+    public void setByteValue(byte value)
+    {
+        set(0, Byte.toString(value));
+    }
+
+
+    @Override
+    public void setShortValue(short value)
+    {
+        set(0, Short.toString(value));
+    }
+
+
+    @Override
+    public void setIntValue(int value)
+    {
+        set(0, Integer.toString(value));
+    }
+
+
+    @Override
+    public void setLongValue(long value)
+    {
+        set(0, Long.toString(value));
+    }
+
+
+    @Override
+    public void setFloatValue(float value)
+    {
+        set(0, Float.toString(value));
+    }
+
+
+    @Override
+    public void setDoubleValue(double value)
+    {
+        set(0, Double.toString(value));
+    }
+
+
+    @Override
+    public void setStringValue(String value)
+    {
+        set(0, value);
+    }
+}
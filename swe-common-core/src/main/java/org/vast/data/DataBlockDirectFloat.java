@@ -0,0 +1,192 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import net.opengis.swe.v20.DataType;
+
+
+/**
+ * <p>
+ * Carries an array of float values outside of the Java heap.
+ * All data is casted to other types when requested, in the same way as
+ * {@link DataBlockFloat}.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataBlockDirectFloat extends AbstractDataBlockDirect
+{
+    private static final long serialVersionUID = 7418185519979618395L;
+
+
+    public DataBlockDirectFloat()
+    {
+        super(2);
+    }
+
+
+    public DataBlockDirectFloat(int size)
+    {
+        super(2);
+        resize(size);
+    }
+
+
+    @Override
+    protected DataBlockDirectFloat newBlock()
+    {
+        return new DataBlockDirectFloat();
+    }
+
+
+    @Override
+    public DataType getDataType()
+    {
+        return DataType.FLOAT;
+    }
+
+
+    @Override
+    public DataType getDataType(int index)
+    {
+        return DataType.FLOAT;
+    }
+
+
+    protected final float get(int index)
+    {
+        return mem.buf.getFloat((startIndex + index) << 2);
+    }
+
+
+    protected final void set(int index, float value)
+    {
+        mem.buf.putFloat((startIndex + index) << 2, value);
+    }
+
+
+    @Override
+    public boolean getBooleanValue(int index)
+    {
+        float val = get(index);
+        return (Math.abs(val) < Math.ulp(0.0)) ? false : true;
+    }
+
+
+    @Override
+    public byte getByteValue(int index)
+    {
+        return (byte)get(index);
+    }
+
+
+    @Override
+    public short getShortValue(int index)
+    {
+        return (short)get(index);
+    }
+
+
+    @Override
+    public int getIntValue(int index)
+    {
+        return (int)get(index);
+    }
+
+
+    @Override
+    public long getLongValue(int index)
+    {
+        return (long)get(index);
+    }
+
+
+    @Override
+    public float getFloatValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public double getDoubleValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public String getStringValue(int index)
+    {
+        return Double.toString(get(index));
+    }
+
+
+    @Override
+    public void setBooleanValue(int index, boolean value)
+    {
+        set(index, value ? DataBlockBoolean.TRUE_VAL : DataBlockBoolean.FALSE_VAL);
+    }
+
+
+    @Override
+    public void setByteValue(int index, byte value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setShortValue(int index, short value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setIntValue(int index, int value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setLongValue(int index, long value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setFloatValue(int index, float value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setDoubleValue(int index, double value)
+    {
+        set(index, (float)value);
+    }
+
+
+    @Override
+    public void setStringValue(int index, String value)
+    {
+        set(index, Float.parseFloat(value));
+    }
+}
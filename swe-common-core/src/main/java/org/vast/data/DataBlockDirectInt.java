@@ -0,0 +1,191 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import net.opengis.swe.v20.DataType;
+
+
+/**
+ * <p>
+ * Carries an array of int values outside of the Java heap.
+ * All data is casted to other types when requested, in the same way as
+ * {@link DataBlockInt}.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataBlockDirectInt extends AbstractDataBlockDirect
+{
+    private static final long serialVersionUID = 7171324758591583503L;
+
+
+    public DataBlockDirectInt()
+    {
+        super(2);
+    }
+
+
+    public DataBlockDirectInt(int size)
+    {
+        super(2);
+        resize(size);
+    }
+
+
+    @Override
+    protected DataBlockDirectInt newBlock()
+    {
+        return new DataBlockDirectInt();
+    }
+
+
+    @Override
+    public DataType getDataType()
+    {
+        return DataType.INT;
+    }
+
+
+    @Override
+    public DataType getDataType(int index)
+    {
+        return DataType.INT;
+    }
+
+
+    protected final int get(int index)
+    {
+        return mem.buf.getInt((startIndex + index) << 2);
+    }
+
+
+    protected final void set(int index, int value)
+    {
+        mem.buf.putInt((startIndex + index) << 2, value);
+    }
+
+
+    @Override
+    public boolean getBooleanValue(int index)
+    {
+        return (get(index) == 0) ? false : true;
+    }
+
+
+    @Override
+    public byte getByteValue(int index)
+    {
+        return (byte)get(index);
+    }
+
+
+    @Override
+    public short getShortValue(int index)
+    {
+        return (short)get(index);
+    }
+
+
+    @Override
+    public int getIntValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public long getLongValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public float getFloatValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public double getDoubleValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public String getStringValue(int index)
+    {
+        return Integer.toString(get(index));
+    }
+
+
+    @Override
+    public void setBooleanValue(int index, boolean value)
+    {
+        set(index, value ? DataBlockBoolean.TRUE_VAL : DataBlockBoolean.FALSE_VAL);
+    }
+
+
+    @Override
+    public void setByteValue(int index, byte value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setShortValue(int index, short value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setIntValue(int index, int value)
+    {
+        set(index, value);
+    }
+
+
+    @Override
+    public void setLongValue(int index, long value)
+    {
+        set(index, (int)value);
+    }
+
+
+    @Override
+    public void setFloatValue(int index, float value)
+    {
+        set(index, Math.round(value));
+    }
+
+
+    @Override
+    public void setDoubleValue(int index, double value)
+    {
+        set(index, (int)Math.round(value));
+    }
+
+
+    @Override
+    public void setStringValue(int index, String value)
+    {
+        set(index, Integer.parseInt(value));
+    }
+}
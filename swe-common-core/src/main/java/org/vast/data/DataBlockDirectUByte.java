@@ -0,0 +1,192 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import net.opengis.swe.v20.DataType;
+
+
+/**
+ * <p>
+ * Carries an array of unsigned byte values outside of the Java heap.
+ * All data is casted to other types when requested, in the same way as
+ * {@link DataBlockUByte}.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataBlockDirectUByte extends AbstractDataBlockDirect
+{
+    private static final long serialVersionUID = 6770502638967457350L;
+
+
+    public DataBlockDirectUByte()
+    {
+        super(0);
+    }
+
+
+    public DataBlockDirectUByte(int size)
+    {
+        super(0);
+        resize(size);
+    }
+
+
+    @Override
+    protected DataBlockDirectUByte newBlock()
+    {
+        return new DataBlockDirectUByte();
+    }
+
+
+    @Override
+    public DataType getDataType()
+    {
+        return DataType.UBYTE;
+    }
+
+
+    @Override
+    public DataType getDataType(int index)
+    {
+        return DataType.UBYTE;
+    }
+
+
+    protected final byte get(int index)
+    {
+        return mem.buf.get(startIndex + index);
+    }
+
+
+    protected final void set(int index, byte value)
+    {
+        mem.buf.put(startIndex + index, value);
+    }
+
+
+    @Override
+    public boolean getBooleanValue(int index)
+    {
+        return (get(index) == 0) ? false : true;
+    }
+
+
+    @Override
+    public byte getByteValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public short getShortValue(int index)
+    {
+        return (short)(get(index) & 0xff);
+    }
+
+
+    @Override
+    public int getIntValue(int index)
+    {
+        return get(index) & 0xff;
+    }
+
+
+    @Override
+    public long getLongValue(int index)
+    {
+        return get(index) & 0xff;
+    }
+
+
+    @Override
+    public float getFloatValue(int index)
+    {
+        return get(index) & 0xff;
+    }
+
+
+    @Override
+    public double getDoubleValue(int index)
+    {
+        return get(index) & 0xff;
+    }
+
+
+    @Override
+    public String getStringValue(int index)
+    {
+        return Integer.toString((get(index) & 0xff));
+    }
+
+
+    @Override
+    public void setBooleanValue(int index, boolean value)
+    {
+        set(index, value ? DataBlockBoolean.TRUE_VAL : DataBlockBoolean.FALSE_VAL);
+    }
+
+
+    @Override
+    public void setByteValue(int index, byte value)
+    {
+        set(index, value < 0 ? 0 : value);
+    }
+
+
+    @Override
+    public void setShortValue(int index, short value)
+    {
+        set(index, value < 0 ? 0 : (byte)value);
+    }
+
+
+    @Override
+    public void setIntValue(int index, int value)
+    {
+        set(index, value < 0 ? 0 : (byte)value);
+    }
+
+
+    @Override
+    public void setLongValue(int index, long value)
+    {
+        set(index, value < 0 ? 0 : (byte)value);
+    }
+
+
+    @Override
+    public void setFloatValue(int index, float value)
+    {
+        set(index, value < 0 ? 0 : (byte)Math.round(value));
+    }
+
+
+    @Override
+    public void setDoubleValue(int index, double value)
+    {
+        set(index, value < 0 ? 0 : (byte)Math.round(value));
+    }
+
+
+    @Override
+    public void setStringValue(int index, String value)
+    {
+        byte val = Byte.parseByte(value);
+        set(index, val < 0 ? 0 : val);
+    }
+}
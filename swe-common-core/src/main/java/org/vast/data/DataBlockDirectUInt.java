@@ -0,0 +1,193 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import net.opengis.swe.v20.DataType;
+
+
+/**
+ * <p>
+ * Carries an array of unsigned int values outside of the Java heap.
+ * All data is casted to other types when requested, in the same way as
+ * {@link DataBlockUInt}.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataBlockDirectUInt extends AbstractDataBlockDirect
+{
+    private static final long serialVersionUID = -2059266442506129460L;
+
+
+    public DataBlockDirectUInt()
+    {
+        super(2);
+    }
+
+
+    public DataBlockDirectUInt(int size)
+    {
+        super(2);
+        resize(size);
+    }
+
+
+    @Override
+    protected DataBlockDirectUInt newBlock()
+    {
+        return new DataBlockDirectUInt();
+    }
+
+
+    @Override
+    public DataType getDataType()
+    {
+        return DataType.UINT;
+    }
+
+
+    @Override
+    public DataType getDataType(int index)
+    {
+        return DataType.UINT;
+    }
+
+
+    protected final int get(int index)
+    {
+        return mem.buf.getInt((startIndex + index) << 2);
+    }
+
+
+    protected final void set(int index, int value)
+    {
+        mem.buf.putInt((startIndex + index) << 2, value);
+    }
+
+
+    @Override
+    public boolean getBooleanValue(int index)
+    {
+        return (get(index) == 0) ? false : true;
+    }
+
+
+    @Override
+    public byte getByteValue(int index)
+    {
+        return (byte)get(index);
+    }
+
+
+    @Override
+    public short getShortValue(int index)
+    {
+        return (short)get(index);
+    }
+
+
+    @Override
+    public int getIntValue(int index)
+    {
+        return get(index);
+    }
+
+
+    @Override
+    public long getLongValue(int index)
+    {
+        return ((long)get(index) << 32) >>> 32;
+    }
+
+
+    @Override
+    public float getFloatValue(int index)
+    {
+        return ((long)get(index) << 32) >>> 32;
+    }
+
+
+    @Override
+    public double getDoubleValue(int index)
+    {
+        return ((long)get(index) << 32) >>> 32;
+    }
+
+
+    @Override
+    public String getStringValue(int index)
+    {
+        return Long.toString(((long)get(index) << 32) >>> 32);
+    }
+
+
+    @Override
+    public void setBooleanValue(int index, boolean value)
+    {
+        set(index, value ? DataBlockBoolean.TRUE_VAL : DataBlockBoolean.FALSE_VAL);
+    }
+
+
+    @Override
+    public void setByteValue(int index, byte value)
+    {
+        set(index, value < 0 ? 0 : (int)value);
+    }
+
+
+    @Override
+    public void setShortValue(int index, short value)
+    {
+        set(index, value < 0 ? 0 : (int)value);
+    }
+
+
+    @Override
+    public void setIntValue(int index, int value)
+    {
+        set(index, value < 0 ? 0 : value);
+    }
+
+
+    @Override
+    public void setLongValue(int index, long value)
+    {
+        set(index, value < 0 ? 0 : (int)value);
+    }
+
+
+    @Override
+    public void setFloatValue(int index, float value)
+    {
+        // force conversion to long first so that it is not truncated to 2.XXe9
+        set(index, value < 0 ? 0 : (int)Math.round((double)value));
+    }
+
+
+    @Override
+    public void setDoubleValue(int index, double value)
+    {
+        set(index, value < 0 ? 0 : (int)Math.round(value));
+    }
+
+
+    @Override
+    public void setStringValue(int index, String value)
+    {
+        int val = Integer.parseInt(value);
+        set(index, val < 0 ? 0 : val);
+    }
+}
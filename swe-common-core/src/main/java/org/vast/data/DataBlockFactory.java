@@ -14,6 +14,7 @@ Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
 
 package org.vast.data;
 
+import java.nio.ByteBuffer;
 import net.opengis.swe.v20.DataBlock;
 import net.opengis.swe.v20.DataType;
 
@@ -74,6 +75,94 @@ public class DataBlockFactory
 	}
 
 
+	/**
+	 * Creates a primitive block of the given type and size
+	 * @param dataType
+	 * @param size number of values
+	 * @param direct if true, values are stored outside of the Java heap
+	 * (see {@link AbstractDataBlockDirect}), except for strings that are
+	 * always stored on the heap
+	 * @return the new data block
+	 */
+	public static AbstractDataBlock createBlock(DataType dataType, int size, boolean direct)
+	{
+		AbstractDataBlock block;
+		
+		if (direct && dataType != DataType.UTF_STRING && dataType != DataType.ASCII_STRING)
+			block = createDirectBlock(dataType);
+		else
+			block = (AbstractDataBlock)createBlock(dataType);
+		
+		block.resize(size);
+		return block;
+	}
+	
+	
+	/**
+	 * Creates an empty block of the given type storing its values
+	 * outside of the Java heap
+	 * @param dataType
+	 * @return the new data block
+	 */
+	public static AbstractDataBlockDirect createDirectBlock(DataType dataType)
+	{
+		switch (dataType)
+		{
+			case BOOLEAN:
+				return new DataBlockDirectBoolean();
+
+			case BYTE:
+				return new DataBlockDirectByte();
+
+			case UBYTE:
+				return new DataBlockDirectUByte();
+
+			case SHORT:
+				return new DataBlockDirectShort();
+
+			case USHORT:
+				return new DataBlockDirectUShort();
+
+			case INT:
+				return new DataBlockDirectInt();
+
+			case UINT:
+				return new DataBlockDirectUInt();
+
+			case LONG:
+			case ULONG:
+				return new DataBlockDirectLong();
+
+			case FLOAT:
+				return new DataBlockDirectFloat();
+
+			case DOUBLE:
+				return new DataBlockDirectDouble();
+
+			default:
+				throw new IllegalArgumentException("Unsupported Data Type for direct block: " + dataType);
+		}
+	}
+	
+	
+	/**
+	 * Creates a block using the values contained in the given buffer, from
+	 * its current position to its limit, with the buffer byte order.<br/>
+	 * This can be used to access memory mapped data without copying it.
+	 * The buffer is never freed by the block.
+	 * @param dataType
+	 * @param data
+	 * @return the new data block
+	 */
+	public static AbstractDataBlockDirect createBlock(DataType dataType, ByteBuffer data)
+	{
+		AbstractDataBlockDirect block = createDirectBlock(dataType);
+		block.setUnderlyingObject(data);
+		block.startIndex = 0;
+		return block;
+	}
+
+
 	public static DataBlockBoolean createBlock(boolean[] data)
 	{
 		DataBlockBoolean block = new DataBlockBoolean();
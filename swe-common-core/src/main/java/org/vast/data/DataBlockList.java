@@ -37,8 +37,6 @@ public class DataBlockList extends AbstractDataBlock
     private static final long serialVersionUID = -413032909256132305L;
     protected List<DataBlock> blockList; // either ArrayList or LinkedList so it's serializable
 	protected int blockAtomCount = -1;
-	protected int blockIndex;
-	protected int localIndex;
 	protected boolean equalBlockSize;
     
     
@@ -137,8 +135,8 @@ public class DataBlockList extends AbstractDataBlock
     @Override
     public DataType getDataType(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getDataType();
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getDataType();
 	}
 	
 	
@@ -160,14 +158,15 @@ public class DataBlockList extends AbstractDataBlock
 	}
 
     
-	protected final void selectBlock(int index)
+	protected final long selectBlock(int index)
 	{
 		int desiredIndex = index + startIndex;
 		
 		if (equalBlockSize)
 		{
-			blockIndex = desiredIndex / blockAtomCount;
-	        localIndex = desiredIndex % blockAtomCount;
+			int blockIndex = desiredIndex / blockAtomCount;
+	        int localIndex = desiredIndex % blockAtomCount;
+	        return packIndex(blockIndex, localIndex);
 		}
 		else
 		{
@@ -183,8 +182,7 @@ public class DataBlockList extends AbstractDataBlock
 			}
 			while (desiredIndex >= cumul);
 	
-			blockIndex = i - 1;
-			localIndex = desiredIndex - (cumul - size);
+			return packIndex(i - 1, desiredIndex - (cumul - size));
 		}
 	}
     
@@ -269,255 +267,255 @@ public class DataBlockList extends AbstractDataBlock
 	@Override
     public boolean getBooleanValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getBooleanValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getBooleanValue(localIndex(sel));
 	}
 
 
 	@Override
     public byte getByteValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getByteValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getByteValue(localIndex(sel));
 	}
 
 
 	@Override
     public short getShortValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getShortValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getShortValue(localIndex(sel));
 	}
 
 
 	@Override
 	public int getIntValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getIntValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getIntValue(localIndex(sel));
 	}
 
 
 	@Override
     public long getLongValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getLongValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getLongValue(localIndex(sel));
 	}
 
 
 	@Override
     public float getFloatValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getFloatValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getFloatValue(localIndex(sel));
 	}
 
 
 	@Override
     public double getDoubleValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getDoubleValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getDoubleValue(localIndex(sel));
 	}
 
 
 	@Override
     public String getStringValue(int index)
 	{
-		selectBlock(index);
-		return blockList.get(blockIndex).getStringValue(localIndex);
+		long sel = selectBlock(index);
+		return blockList.get(blockIndex(sel)).getStringValue(localIndex(sel));
 	}
 
 
 	@Override
     public boolean getBooleanValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getBooleanValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getBooleanValue(localIndex(sel));
 	}
 
 
 	@Override
     public byte getByteValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getByteValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getByteValue(localIndex(sel));
 	}
 
 
 	@Override
     public short getShortValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getShortValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getShortValue(localIndex(sel));
 	}
 
 
 	@Override
     public int getIntValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getIntValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getIntValue(localIndex(sel));
 	}
 
 
 	@Override
     public long getLongValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getLongValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getLongValue(localIndex(sel));
 	}
 
 
 	@Override
     public float getFloatValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getFloatValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getFloatValue(localIndex(sel));
 	}
 
 
 	@Override
     public double getDoubleValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getDoubleValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getDoubleValue(localIndex(sel));
 	}
 
 
 	@Override
     public String getStringValue()
 	{
-		selectBlock(0);
-		return blockList.get(blockIndex).getStringValue(localIndex);
+		long sel = selectBlock(0);
+		return blockList.get(blockIndex(sel)).getStringValue(localIndex(sel));
 	}
 
 
 	@Override
     public void setBooleanValue(int index, boolean value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setBooleanValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setBooleanValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setByteValue(int index, byte value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setByteValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setByteValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setShortValue(int index, short value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setShortValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setShortValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setIntValue(int index, int value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setIntValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setIntValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setLongValue(int index, long value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setLongValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setLongValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setFloatValue(int index, float value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setFloatValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setFloatValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setDoubleValue(int index, double value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setDoubleValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setDoubleValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setStringValue(int index, String value)
 	{
-		selectBlock(index);
-		blockList.get(blockIndex).setStringValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockList.get(blockIndex(sel)).setStringValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setBooleanValue(boolean value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setBooleanValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setBooleanValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setByteValue(byte value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setByteValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setByteValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setShortValue(short value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setShortValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setShortValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setIntValue(int value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setIntValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setIntValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setLongValue(long value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setLongValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setLongValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setFloatValue(float value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setFloatValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setFloatValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setDoubleValue(double value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setDoubleValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setDoubleValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setStringValue(String value)
 	{
-		selectBlock(0);
-		blockList.get(blockIndex).setStringValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockList.get(blockIndex(sel)).setStringValue(localIndex(sel), value);
 	}
 }
\ No newline at end of file
@@ -23,6 +23,11 @@ import net.opengis.swe.v20.DataType;
  * Uses the composite pattern to carry a fixed size array
  * of mixed types DataBlocks. If dynamic size is needed, use DataBlockList.
  * Children datablocks will be read sequentially.
+ * </p><p>
+ * The child block containing a given atom is found using a table of block
+ * offsets that is rebuilt when the atom count changes. If a child block is
+ * resized directly rather than through its component, setUnderlyingObject()
+ * must be called to update the atom count and reset the table.
  * </p>
  *
  * @author Alex Robin
@@ -31,9 +36,63 @@ public class DataBlockMixed extends AbstractDataBlock
 {
 	private static final long serialVersionUID = 4082289189930783352L;
     protected AbstractDataBlock[] blockArray;
-	protected int blockIndex;
-	protected int localIndex;
-    //protected int lastBlockIndex, lastIndex, lastCumulIndex;
+	protected transient BlockOffsets blockOffsets;
+	
+	
+	/*
+	 * Index of first atom of each child block, computed once and rebuilt
+	 * only if child blocks are replaced or resized. It is immutable so that
+	 * concurrent readers at worst rebuild an identical table.
+	 */
+	static final class BlockOffsets
+	{
+	    final AbstractDataBlock[] blockArray;
+	    final int atomCount;
+	    final int[] offsets;
+	    final int uniformSize;
+	    
+	    BlockOffsets(AbstractDataBlock[] blockArray, int atomCount)
+	    {
+	        this.blockArray = blockArray;
+	        this.atomCount = atomCount;
+	        this.offsets = new int[blockArray.length + 1];
+	        
+	        int size = -1;
+	        for (int i = 0; i < blockArray.length; i++)
+	        {
+	            int blockSize = (blockArray[i] != null) ? blockArray[i].atomCount : 0;
+	            offsets[i+1] = offsets[i] + blockSize;
+	            
+	            if (size == -1)
+	                size = blockSize;
+	            else if (size != blockSize)
+	                size = 0;
+	        }
+	        
+	        // if all blocks have the same size, we can compute block index directly
+	        this.uniformSize = Math.max(size, 0);
+	    }
+	    
+	    int findBlock(int desiredIndex)
+	    {
+	        if (uniformSize > 0)
+	            return desiredIndex / uniformSize;
+	        
+	        // binary search for last block starting at or before desired index
+	        int low = 0;
+	        int high = offsets.length - 2;
+	        while (low < high)
+	        {
+	            int mid = (low + high + 1) >>> 1;
+	            if (offsets[mid] <= desiredIndex)
+	                low = mid;
+	            else
+	                high = mid - 1;
+	        }
+	        
+	        return low;
+	    }
+	}
 
 
 	public DataBlockMixed()
@@ -121,11 +180,15 @@ public class DataBlockMixed extends AbstractDataBlock
     public void setUnderlyingObject(AbstractDataBlock[] blockArray)
     {
         this.blockArray = blockArray;
+        this.blockOffsets = null;
         
         // init atom count to the whole size
         this.atomCount = 0;
         for (AbstractDataBlock block: blockArray)
-            this.atomCount += block.atomCount;
+        {
+            if (block != null)
+                this.atomCount += block.atomCount;
+        }
     }
     
     
@@ -146,8 +209,8 @@ public class DataBlockMixed extends AbstractDataBlock
 	@Override
     public DataType getDataType(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getDataType();
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getDataType();
 	}
 
 
@@ -158,53 +221,62 @@ public class DataBlockMixed extends AbstractDataBlock
 	}
 	
 	
-	protected void selectBlock(int index)
+	protected final long selectBlock(int index)
 	{
-        int i = 0;
-        int cumul = 0;
-        int size;
         int desiredIndex = startIndex + index;
-        
-        do
-        {
-            size = blockArray[i].atomCount;
-            cumul += size;
-            i++;
-        }
-        while (desiredIndex >= cumul);
-
-        blockIndex = i - 1;
-        localIndex = desiredIndex - (cumul - size);
-        
-//		int i, size, cumul;
-//		int desiredIndex = startIndex + index;
-//		
-//        if (index > lastIndex)
-//        {
-//            i = lastBlockIndex;
-//            cumul = lastCumulIndex;
-//        }
-//        else
-//        {
-//            i = 0;
-//            cumul = 0;
-//        }
-//            
-//		do
-//		{
-//			size = blockArray[i].atomCount;
-//			cumul += size;
-//			i++;
-//		}
-//		while (desiredIndex >= cumul);
-//
-//		blockIndex = i - 1;
-//        lastCumulIndex = cumul - size;
-//		localIndex = desiredIndex - lastCumulIndex;
-//        
-//        lastIndex = index;
-//        lastBlockIndex = blockIndex;
-//        lastCumulIndex = cumul - size;
+        BlockOffsets offsets = getBlockOffsets();
+        int i = offsets.findBlock(desiredIndex);
+        return packIndex(i, desiredIndex - offsets.offsets[i]);
+	}
+	
+	
+	protected BlockOffsets getBlockOffsets()
+	{
+	    BlockOffsets offsets = blockOffsets;
+	    if (offsets == null || offsets.blockArray != blockArray || offsets.atomCount != atomCount)
+	        offsets = blockOffsets = new BlockOffsets(blockArray, atomCount);
+	    return offsets;
+	}
+	
+	
+	/**
+	 * @return number of child blocks
+	 */
+	public int getBlockCount()
+	{
+	    return blockArray.length;
+	}
+	
+	
+	/**
+	 * Gets a child block so it can be accessed directly, without resolving
+	 * the child block and local index of each atom
+	 * @param blockIndex index of child block
+	 * @return child block at the given index
+	 */
+	public AbstractDataBlock getBlock(int blockIndex)
+	{
+	    return blockArray[blockIndex];
+	}
+	
+	
+	/**
+	 * @param blockIndex index of child block
+	 * @return index of first atom of the child block relative to this block
+	 */
+	public int getBlockOffset(int blockIndex)
+	{
+	    return getBlockOffsets().offsets[blockIndex] - startIndex;
+	}
+	
+	
+	/**
+	 * @param index atom index relative to this block
+	 * @return index of the child block containing the atom
+	 */
+	public int getBlockIndex(int index)
+	{
+	    return getBlockOffsets().findBlock(startIndex + index);
 	}
 
 
@@ -218,10 +290,8 @@ public class DataBlockMixed extends AbstractDataBlock
 
 		if (atomCount > 0)
 		{
-			selectBlock(0);
-			int start = blockIndex;
-			selectBlock(getAtomCount() - 1);
-			int stop = blockIndex + 1;
+			int start = getBlockIndex(0);
+			int stop = getBlockIndex(getAtomCount() - 1) + 1;
 			
 			for (int i = start; i < stop; i++)
 			{
@@ -239,129 +309,128 @@ public class DataBlockMixed extends AbstractDataBlock
 	@Override
     public boolean getBooleanValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getBooleanValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getBooleanValue(localIndex(sel));
 	}
 
 
 	@Override
     public byte getByteValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getByteValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getByteValue(localIndex(sel));
 	}
 
 
 	@Override
     public short getShortValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getShortValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getShortValue(localIndex(sel));
 	}
 
 
 	@Override
     public int getIntValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getIntValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getIntValue(localIndex(sel));
 	}
 
 
 	@Override
     public long getLongValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getLongValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getLongValue(localIndex(sel));
 	}
 
 
 	@Override
     public float getFloatValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getFloatValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getFloatValue(localIndex(sel));
 	}
 
 
 	@Override
     public double getDoubleValue(int index)
 	{
-		selectBlock(index);
-        //System.out.println(blockIndex + " " + localIndex);
-		return blockArray[blockIndex].getDoubleValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getDoubleValue(localIndex(sel));
 	}
 
 
 	@Override
     public String getStringValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getStringValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getStringValue(localIndex(sel));
 	}
 
 
 	@Override
     public boolean getBooleanValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getBooleanValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getBooleanValue(localIndex(sel));
 	}
 
 
 	@Override
     public byte getByteValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getByteValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getByteValue(localIndex(sel));
 	}
 
 
 	@Override
     public short getShortValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getShortValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getShortValue(localIndex(sel));
 	}
 
 
 	@Override
     public int getIntValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getIntValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getIntValue(localIndex(sel));
 	}
 
 
 	@Override
     public long getLongValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getLongValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getLongValue(localIndex(sel));
 	}
 
 
 	@Override
     public float getFloatValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getFloatValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getFloatValue(localIndex(sel));
 	}
 
 
 	@Override
     public double getDoubleValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getDoubleValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getDoubleValue(localIndex(sel));
 	}
 
 
 	@Override
     public String getStringValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getStringValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getStringValue(localIndex(sel));
 	}
 	
 
@@ -375,133 +444,134 @@ public class DataBlockMixed extends AbstractDataBlock
         
         // set actual child block
         blockArray[blockIndex] = dataBlock;
+        blockOffsets = null;
 	}
 	
 	
 	@Override
     public void setBooleanValue(int index, boolean value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setBooleanValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setBooleanValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setByteValue(int index, byte value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setByteValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setByteValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setShortValue(int index, short value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setShortValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setShortValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setIntValue(int index, int value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setIntValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setIntValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setLongValue(int index, long value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setLongValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setLongValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setFloatValue(int index, float value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setFloatValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setFloatValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setDoubleValue(int index, double value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setDoubleValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setDoubleValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setStringValue(int index, String value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setStringValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setStringValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setBooleanValue(boolean value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setBooleanValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setBooleanValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setByteValue(byte value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setByteValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setByteValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setShortValue(short value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setShortValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setShortValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setIntValue(int value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setIntValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setIntValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setLongValue(long value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setLongValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setLongValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setFloatValue(float value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setFloatValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setFloatValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setDoubleValue(double value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setDoubleValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setDoubleValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setStringValue(String value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setStringValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setStringValue(localIndex(sel), value);
 	}
 }
@@ -30,8 +30,6 @@ public class DataBlockParallel extends AbstractDataBlock
 {
 	private static final long serialVersionUID = 6492226220927792777L;
     protected AbstractDataBlock[] blockArray;
-	protected int blockIndex;
-	protected int localIndex;
 
 
 	public DataBlockParallel()
@@ -138,6 +136,27 @@ public class DataBlockParallel extends AbstractDataBlock
     }
 	
 	
+	/**
+	 * @return number of columns (i.e. child blocks)
+	 */
+	public int getColumnCount()
+	{
+	    return blockArray.length;
+	}
+	
+	
+	/**
+	 * Gets the child block holding all values of one column. Its underlying
+	 * object is a primitive array that is shared with this block (no copy).
+	 * @param index index of column
+	 * @return block containing all values of the column
+	 */
+	public AbstractDataBlock getColumn(int index)
+	{
+	    return blockArray[index];
+	}
+	
+	
 	@Override
     public DataType getDataType()
 	{
@@ -148,8 +167,8 @@ public class DataBlockParallel extends AbstractDataBlock
 	@Override
     public DataType getDataType(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getDataType();
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getDataType();
 	}
 
 
@@ -164,11 +183,12 @@ public class DataBlockParallel extends AbstractDataBlock
 	}
 
 
-	protected void selectBlock(int index)
+	protected final long selectBlock(int index)
 	{
-		blockIndex = index % blockArray.length;
-        localIndex = startIndex + index / blockArray.length;
+		int blockIndex = index % blockArray.length;
+        int localIndex = startIndex + index / blockArray.length;
         localIndex -= blockArray[blockIndex].startIndex;
+        return packIndex(blockIndex, localIndex);
 	}
 
 
@@ -179,10 +199,8 @@ public class DataBlockParallel extends AbstractDataBlock
 		buffer.append("PARALLEL: ");
 		buffer.append('[');
 
-		selectBlock(0);
-		int start = blockIndex;
-		selectBlock(getAtomCount() - 1);
-		int stop = blockIndex + 1;
+		int start = blockIndex(selectBlock(0));
+		int stop = blockIndex(selectBlock(getAtomCount() - 1)) + 1;
 		
 		for (int i = start; i < stop; i++)
 		{
@@ -199,256 +217,255 @@ public class DataBlockParallel extends AbstractDataBlock
 	@Override
     public boolean getBooleanValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getBooleanValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getBooleanValue(localIndex(sel));
 	}
 
 
 	@Override
     public byte getByteValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getByteValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getByteValue(localIndex(sel));
 	}
 
 
 	@Override
     public short getShortValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getShortValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getShortValue(localIndex(sel));
 	}
 
 
 	@Override
     public int getIntValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getIntValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getIntValue(localIndex(sel));
 	}
 
 
 	@Override
     public long getLongValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getLongValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getLongValue(localIndex(sel));
 	}
 
 
 	@Override
     public float getFloatValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getFloatValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getFloatValue(localIndex(sel));
 	}
 
 
 	@Override
     public double getDoubleValue(int index)
 	{
-		selectBlock(index);
-        //System.out.println(blockIndex + " " + localIndex);
-		return blockArray[blockIndex].getDoubleValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getDoubleValue(localIndex(sel));
 	}
 
 
 	@Override
     public String getStringValue(int index)
 	{
-		selectBlock(index);
-		return blockArray[blockIndex].getStringValue(localIndex);
+		long sel = selectBlock(index);
+		return blockArray[blockIndex(sel)].getStringValue(localIndex(sel));
 	}
 
 
 	@Override
     public boolean getBooleanValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getBooleanValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getBooleanValue(localIndex(sel));
 	}
 
 
 	@Override
     public byte getByteValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getByteValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getByteValue(localIndex(sel));
 	}
 
 
 	@Override
     public short getShortValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getShortValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getShortValue(localIndex(sel));
 	}
 
 
 	@Override
     public int getIntValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getIntValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getIntValue(localIndex(sel));
 	}
 
 
 	@Override
     public long getLongValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getLongValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getLongValue(localIndex(sel));
 	}
 
 
 	@Override
     public float getFloatValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getFloatValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getFloatValue(localIndex(sel));
 	}
 
 
 	@Override
     public double getDoubleValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getDoubleValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getDoubleValue(localIndex(sel));
 	}
 
 
 	@Override
     public String getStringValue()
 	{
-		selectBlock(0);
-		return blockArray[blockIndex].getStringValue(localIndex);
+		long sel = selectBlock(0);
+		return blockArray[blockIndex(sel)].getStringValue(localIndex(sel));
 	}
 
 
 	@Override
     public void setBooleanValue(int index, boolean value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setBooleanValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setBooleanValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setByteValue(int index, byte value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setByteValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setByteValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setShortValue(int index, short value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setShortValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setShortValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setIntValue(int index, int value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setIntValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setIntValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setLongValue(int index, long value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setLongValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setLongValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setFloatValue(int index, float value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setFloatValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setFloatValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setDoubleValue(int index, double value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setDoubleValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setDoubleValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setStringValue(int index, String value)
 	{
-		selectBlock(index);
-		blockArray[blockIndex].setStringValue(localIndex, value);
+		long sel = selectBlock(index);
+		blockArray[blockIndex(sel)].setStringValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setBooleanValue(boolean value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setBooleanValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setBooleanValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setByteValue(byte value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setByteValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setByteValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setShortValue(short value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setShortValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setShortValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setIntValue(int value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setIntValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setIntValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setLongValue(long value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setLongValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setLongValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setFloatValue(float value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setFloatValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setFloatValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setDoubleValue(double value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setDoubleValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setDoubleValue(localIndex(sel), value);
 	}
 
 
 	@Override
     public void setStringValue(String value)
 	{
-		selectBlock(0);
-		blockArray[blockIndex].setStringValue(localIndex, value);
+		long sel = selectBlock(0);
+		blockArray[blockIndex(sel)].setStringValue(localIndex(sel), value);
 	}
 }
@@ -0,0 +1,308 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import net.opengis.swe.v20.DataBlock;
+
+
+/**
+ * <p>
+ * Pool of recycled DataBlocks, organized by block structure, so that
+ * parsers can reuse blocks that were handed back by consumers instead of
+ * allocating a new block for each record.<br/>
+ * Blocks obtained from the pool contain values left over from their
+ * previous use, so they must be fully overwritten.
+ * </p><p>
+ * A consumer hands a block back by calling {@link #release(DataBlock)}
+ * once it doesn't use it anymore. If a block is shared by several
+ * consumers, each additional owner must call {@link #retain(DataBlock)}
+ * and the block is recycled only when all of them have released it.
+ * Blocks that are never released are simply garbage collected.
+ * </p><p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataBlockPool
+{
+    public static final int DEFAULT_MAX_BLOCKS = 16;
+
+    final Map<Long, Bucket> freeBlocks = new HashMap<>();
+    final Map<DataBlock, int[]> extraRefs = new IdentityHashMap<>();
+    final int maxBlocksPerStructure;
+    long hitCount;
+    long missCount;
+    long recycledCount;
+    long discardedCount;
+    int pooledCount;
+
+
+    /*
+     * Stack of free blocks sharing the same structure
+     */
+    static final class Bucket
+    {
+        DataBlock[] blocks;
+        int size;
+
+        Bucket(int maxSize)
+        {
+            blocks = new DataBlock[maxSize];
+        }
+
+        boolean contains(DataBlock blk)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (blocks[i] == blk)
+                    return true;
+            }
+
+            return false;
+        }
+    }
+
+
+    public DataBlockPool()
+    {
+        this(DEFAULT_MAX_BLOCKS);
+    }
+
+
+    /**
+     * @param maxBlocksPerStructure Maximum number of free blocks kept for
+     * each block structure. Blocks released beyond this are discarded.
+     */
+    public DataBlockPool(int maxBlocksPerStructure)
+    {
+        this.maxBlocksPerStructure = maxBlocksPerStructure;
+    }
+
+
+    /**
+     * Gets a free block with the given structure.<br/>
+     * Since keys are hashes, the type and size of recycled blocks are also
+     * checked against the template before they are returned.
+     * @param structureKey key computed with {@link #getStructureKey(DataBlock)}
+     * @param template block with the same structure, used for checking
+     * @return A recycled block or null if none is available
+     */
+    public synchronized DataBlock acquire(long structureKey, DataBlock template)
+    {
+        Bucket bucket = freeBlocks.get(structureKey);
+        if (bucket != null)
+        {
+            for (int i = bucket.size - 1; i >= 0; i--)
+            {
+                DataBlock blk = bucket.blocks[i];
+                if (blk.getClass() == template.getClass() && blk.getAtomCount() == template.getAtomCount())
+                {
+                    bucket.blocks[i] = bucket.blocks[--bucket.size];
+                    bucket.blocks[bucket.size] = null;
+                    pooledCount--;
+                    hitCount++;
+                    return blk;
+                }
+            }
+        }
+
+        missCount++;
+        return null;
+    }
+
+
+    /**
+     * Gets a free block with the same structure as the given block, or
+     * a new block if none is available
+     * @param template block whose structure is used
+     * @return A recycled block or a clone of the template
+     */
+    public DataBlock acquire(DataBlock template)
+    {
+        DataBlock blk = acquire(getStructureKey(template), template);
+        return (blk != null) ? blk : template.clone();
+    }
+
+
+    /**
+     * Registers an additional owner of the block, so that one more call
+     * to {@link #release(DataBlock)} is needed before it is recycled
+     * @param blk
+     */
+    public synchronized void retain(DataBlock blk)
+    {
+        int[] refCount = extraRefs.get(blk);
+        if (refCount == null)
+            extraRefs.put(blk, new int[] {1});
+        else
+            refCount[0]++;
+    }
+
+
+    /**
+     * Hands back a block to the pool. The block is recycled if this was
+     * the last owner of the block and must not be used by the caller anymore.
+     * @param blk
+     */
+    public void release(DataBlock blk)
+    {
+        long structureKey = getStructureKey(blk);
+
+        synchronized (this)
+        {
+            int[] refCount = extraRefs.get(blk);
+            if (refCount != null)
+            {
+                if (--refCount[0] == 0)
+                    extraRefs.remove(blk);
+                return;
+            }
+
+            Bucket bucket = freeBlocks.get(structureKey);
+            if (bucket == null)
+            {
+                bucket = new Bucket(maxBlocksPerStructure);
+                freeBlocks.put(structureKey, bucket);
+            }
+
+            // ignore blocks released twice
+            if (bucket.contains(blk))
+                return;
+
+            if (bucket.size < maxBlocksPerStructure)
+            {
+                bucket.blocks[bucket.size++] = blk;
+                pooledCount++;
+                recycledCount++;
+            }
+            else
+                discardedCount++;
+        }
+    }
+
+
+    /**
+     * Removes all free blocks from the pool and resets statistics
+     */
+    public synchronized void clear()
+    {
+        freeBlocks.clear();
+        extraRefs.clear();
+        pooledCount = 0;
+        hitCount = 0;
+        missCount = 0;
+        recycledCount = 0;
+        discardedCount = 0;
+    }
+
+
+    /**
+     * @return Number of blocks successfully obtained from the pool
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+
+    /**
+     * @return Number of requests for which no free block was available
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+
+    /**
+     * @return Number of released blocks that were kept for reuse
+     */
+    public synchronized long getRecycledCount()
+    {
+        return recycledCount;
+    }
+
+
+    /**
+     * @return Number of released blocks that were dropped because the pool was full
+     */
+    public synchronized long getDiscardedCount()
+    {
+        return discardedCount;
+    }
+
+
+    /**
+     * @return Number of free blocks currently held by the pool
+     */
+    public synchronized int getPooledCount()
+    {
+        return pooledCount;
+    }
+
+
+    /**
+     * Computes a key identifying the structure of a block, i.e. the types
+     * and sizes of the block and all its children.<br/>
+     * Blocks with the same key can be used interchangeably.
+     * @param blk
+     * @return 64-bit structure key
+     */
+    public static long getStructureKey(DataBlock blk)
+    {
+        long key = blk.getClass().getName().hashCode();
+        key = mix(key, blk.getAtomCount());
+
+        if (blk instanceof AbstractDataBlock)
+            key = mix(key, ((AbstractDataBlock)blk).startIndex);
+
+        if (blk instanceof DataBlockMixed)
+            key = mixChildren(key, ((DataBlockMixed)blk).blockArray);
+        else if (blk instanceof DataBlockParallel)
+            key = mixChildren(key, ((DataBlockParallel)blk).blockArray);
+        else if (blk instanceof DataBlockTuple)
+            key = mixChildren(key, ((DataBlockTuple)blk).blockArray);
+        else if (blk instanceof DataBlockList)
+        {
+            DataBlockList list = (DataBlockList)blk;
+            key = mix(key, list.blockList.size());
+            for (DataBlock child: list.blockList)
+                key = mix(key, getStructureKey(child));
+        }
+
+        return key;
+    }
+
+
+    private static long mixChildren(long key, AbstractDataBlock[] children)
+    {
+        key = mix(key, children.length);
+        for (AbstractDataBlock child: children)
+            key = mix(key, (child != null) ? getStructureKey(child) : 0);
+        return key;
+    }
+
+
+    private static long mix(long key, long val)
+    {
+        long h = (key ^ val) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
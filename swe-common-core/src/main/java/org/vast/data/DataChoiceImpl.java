@@ -81,7 +81,13 @@ public class DataChoiceImpl extends AbstractDataComponentImpl implements DataCho
     protected void updateAtomCount(int childAtomCountDiff)
     {
         if (dataBlock != null)
+        {
             dataBlock.atomCount += childAtomCountDiff;
+            
+            // offsets of child blocks have changed
+            if (dataBlock instanceof DataBlockMixed)
+                ((DataBlockMixed)dataBlock).blockOffsets = null;
+        }
         
         if (parent != null)
             parent.updateAtomCount(childAtomCountDiff);
@@ -30,6 +30,7 @@ import net.opengis.swe.v20.ScalarComponent;
 public abstract class DataValue extends AbstractSimpleComponentImpl implements ScalarComponent
 {
     private static final long serialVersionUID = 1377464329731768275L;
+    protected StringDictionary stringDictionary;
 
 
     public DataValue()
@@ -50,6 +51,41 @@ public abstract class DataValue extends AbstractSimpleComponentImpl implements S
     public abstract DataValue copy();
     
     
+    @Override
+    protected void copyTo(AbstractSimpleComponentImpl other)
+    {
+        super.copyTo(other);
+        
+        // dictionary is shared so that all copies use the same codes
+        if (other instanceof DataValue)
+            ((DataValue)other).stringDictionary = stringDictionary;
+    }
+    
+    
+    /**
+     * Sets the dictionary used to store values of this component in
+     * compact form (see {@link DataBlockDictString}).<br/>
+     * This is useful for string components that take a small number of
+     * distinct values, like a Category with allowed tokens. It only has
+     * effect on data blocks created after this call.
+     * @param dictionary dictionary to use, or null to store plain strings
+     */
+    public void setStringDictionary(StringDictionary dictionary)
+    {
+        this.stringDictionary = dictionary;
+    }
+    
+    
+    /**
+     * @return The dictionary used to encode string values or null if none
+     * @see #setStringDictionary(StringDictionary)
+     */
+    public StringDictionary getStringDictionary()
+    {
+        return stringDictionary;
+    }
+    
+    
     @Override
     public int getComponentCount()
     {
@@ -115,6 +151,8 @@ public abstract class DataValue extends AbstractSimpleComponentImpl implements S
                 
             case UTF_STRING:
             case ASCII_STRING:
+                if (stringDictionary != null)
+                    return new DataBlockDictString(stringDictionary, 1);
             	return new DataBlockString(1);
                 
             default:
@@ -0,0 +1,129 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * <p>
+ * Chunk codec using raw deflate (i.e. zlib without header).<br/>
+ * Deflater and inflater instances are reused by each thread.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DeflateChunkCodec implements ChunkCodec
+{
+    private static final long serialVersionUID = -3081768297591528547L;
+    public static final DeflateChunkCodec DEFAULT = new DeflateChunkCodec(Deflater.BEST_SPEED);
+
+    final int level;
+    transient ThreadLocal<Deflater> deflaters;
+    transient ThreadLocal<Inflater> inflaters;
+
+
+    /**
+     * @param level Deflate compression level (0-9)
+     */
+    public DeflateChunkCodec(int level)
+    {
+        this.level = level;
+    }
+
+
+    @Override
+    public byte[] compress(byte[] src, int off, int len)
+    {
+        Deflater deflater = getDeflater();
+        deflater.reset();
+        deflater.setInput(src, off, len);
+        deflater.finish();
+
+        // deflate can expand incompressible data slightly
+        byte[] buf = new byte[len + (len >>> 10) + 64];
+        int n = 0;
+        while (!deflater.finished())
+        {
+            if (n == buf.length)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            n += deflater.deflate(buf, n, buf.length - n);
+        }
+
+        return Arrays.copyOf(buf, n);
+    }
+
+
+    @Override
+    public void decompress(byte[] src, int off, int srcLen, byte[] dst, int len)
+    {
+        Inflater inflater = getInflater();
+        inflater.reset();
+        inflater.setInput(src, off, srcLen);
+
+        try
+        {
+            int n = 0;
+            while (n < len)
+            {
+                int count = inflater.inflate(dst, n, len - n);
+                if (count == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+                n += count;
+            }
+
+            if (n != len)
+                throw new IllegalStateException("Truncated compressed chunk");
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalStateException("Corrupted compressed chunk", e);
+        }
+    }
+
+
+    private Deflater getDeflater()
+    {
+        if (deflaters == null)
+        {
+            synchronized (this)
+            {
+                if (deflaters == null)
+                    deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+            }
+        }
+
+        return deflaters.get();
+    }
+
+
+    private Inflater getInflater()
+    {
+        if (inflaters == null)
+        {
+            synchronized (this)
+            {
+                if (inflaters == null)
+                    inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+            }
+        }
+
+        return inflaters.get();
+    }
+}
@@ -0,0 +1,211 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.util.Arrays;
+
+
+/**
+ * <p>
+ * Chunk codec producing data in the LZ4 block format.<br/>
+ * This is a simple greedy implementation trading compression ratio for
+ * speed. Its output can be decoded by any LZ4 block decoder, provided the
+ * uncompressed size is known.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class LZ4ChunkCodec implements ChunkCodec
+{
+    private static final long serialVersionUID = 8254319035785311240L;
+    public static final LZ4ChunkCodec DEFAULT = new LZ4ChunkCodec();
+
+    static final int MIN_MATCH = 4;
+    static final int MF_LIMIT = 12; // last match must start before this many bytes from the end
+    static final int LAST_LITERALS = 5; // last bytes are always encoded as literals
+    static final int MAX_OFFSET = 65535;
+    static final int HASH_LOG = 12;
+    static final int SKIP_TRIGGER = 6;
+
+    // hash tables are not cleared between calls since matches are always verified
+    private static final ThreadLocal<int[]> hashTables = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+
+    @Override
+    public byte[] compress(byte[] src, int off, int len)
+    {
+        byte[] dst = new byte[len + len / 255 + 16];
+        int[] table = hashTables.get();
+        int end = off + len;
+        int anchor = off;
+        int ip = off;
+        int op = 0;
+
+        if (len > MF_LIMIT)
+        {
+            int mfLimit = end - MF_LIMIT;
+            int matchLimit = end - LAST_LITERALS;
+
+            while (ip < mfLimit)
+            {
+                int seq = readInt(src, ip);
+                int h = (seq * -1640531535) >>> (32 - HASH_LOG);
+                int ref = table[h];
+                table[h] = ip;
+
+                if (ref >= off && ref < ip && ip - ref <= MAX_OFFSET && readInt(src, ref) == seq)
+                {
+                    int matchLen = MIN_MATCH;
+                    while (ip + matchLen < matchLimit && src[ref + matchLen] == src[ip + matchLen])
+                        matchLen++;
+
+                    op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLen, dst, op);
+                    ip += matchLen;
+                    anchor = ip;
+                }
+                else
+                {
+                    // move faster through data that doesn't compress
+                    ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+                }
+            }
+        }
+
+        op = writeLastLiterals(src, anchor, end - anchor, dst, op);
+        return Arrays.copyOf(dst, op);
+    }
+
+
+    @Override
+    public void decompress(byte[] src, int off, int srcLen, byte[] dst, int len)
+    {
+        int ip = off;
+        int srcEnd = off + srcLen;
+        int op = 0;
+
+        try
+        {
+            while (ip < srcEnd)
+            {
+                int token = src[ip++] & 0xFF;
+
+                // literals
+                int litLen = token >>> 4;
+                if (litLen == 15)
+                {
+                    int b;
+                    do
+                    {
+                        b = src[ip++] & 0xFF;
+                        litLen += b;
+                    }
+                    while (b == 255);
+                }
+
+                if (op + litLen > len || ip + litLen > srcEnd)
+                    throw new IllegalStateException("Corrupted compressed chunk");
+                System.arraycopy(src, ip, dst, op, litLen);
+                ip += litLen;
+                op += litLen;
+
+                // last sequence has no match
+                if (ip >= srcEnd)
+                    break;
+
+                // match
+                int offset = (src[ip++] & 0xFF) | ((src[ip++] & 0xFF) << 8);
+                int matchLen = token & 0x0F;
+                if (matchLen == 15)
+                {
+                    int b;
+                    do
+                    {
+                        b = src[ip++] & 0xFF;
+                        matchLen += b;
+                    }
+                    while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + matchLen > len)
+                    throw new IllegalStateException("Corrupted compressed chunk");
+
+                // overlapping matches must be copied byte by byte
+                if (offset >= matchLen)
+                    System.arraycopy(dst, ref, dst, op, matchLen);
+                else
+                {
+                    for (int i = 0; i < matchLen; i++)
+                        dst[op + i] = dst[ref + i];
+                }
+                op += matchLen;
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            throw new IllegalStateException("Truncated compressed chunk", e);
+        }
+
+        if (op != len)
+            throw new IllegalStateException("Truncated compressed chunk");
+    }
+
+
+    private static int writeSequence(byte[] src, int litOff, int litLen, int offset, int matchLen, byte[] dst, int op)
+    {
+        int ml = matchLen - MIN_MATCH;
+        dst[op++] = (byte)((Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+        op = writeLength(litLen, dst, op);
+        System.arraycopy(src, litOff, dst, op, litLen);
+        op += litLen;
+        dst[op++] = (byte)offset;
+        dst[op++] = (byte)(offset >>> 8);
+        return writeLength(ml, dst, op);
+    }
+
+
+    private static int writeLastLiterals(byte[] src, int litOff, int litLen, byte[] dst, int op)
+    {
+        dst[op++] = (byte)(Math.min(litLen, 15) << 4);
+        op = writeLength(litLen, dst, op);
+        System.arraycopy(src, litOff, dst, op, litLen);
+        return op + litLen;
+    }
+
+
+    private static int writeLength(int len, byte[] dst, int op)
+    {
+        if (len >= 15)
+        {
+            len -= 15;
+            while (len >= 255)
+            {
+                dst[op++] = (byte)255;
+                len -= 255;
+            }
+            dst[op++] = (byte)len;
+        }
+
+        return op;
+    }
+
+
+    private static int readInt(byte[] buf, int i)
+    {
+        return (buf[i] & 0xFF) | ((buf[i+1] & 0xFF) << 8) | ((buf[i+2] & 0xFF) << 16) | (buf[i+3] << 24);
+    }
+}
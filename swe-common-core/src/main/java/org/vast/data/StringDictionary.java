@@ -0,0 +1,227 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.data;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+
+/**
+ * <p>
+ * Dictionary assigning small integer codes to strings, used to store
+ * repeated string values (e.g. category codes or quality flags) in compact
+ * form in {@link DataBlockDictString}.<br/>
+ * Entries are never removed so the dictionary always returns the same
+ * canonical String instance for a given code. Code 0 is reserved for null.
+ * </p><p>
+ * This class is thread-safe so a dictionary can be shared by all data
+ * blocks carrying values of the same component.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class StringDictionary implements Serializable
+{
+    private static final long serialVersionUID = -4431568104738016342L;
+    public static final int MAX_SIZE = 0xFFFF;
+    public static final int NULL_CODE = 0;
+    public static final int NO_CODE = -1;
+
+    final int maxSize;
+    volatile String[] strings;
+    int size;
+    int[] hashTable;
+
+
+    /**
+     * Creates a dictionary that can hold the maximum number of strings
+     */
+    public StringDictionary()
+    {
+        this(MAX_SIZE);
+    }
+
+
+    /**
+     * Creates a dictionary that can hold at most maxSize strings (including null)
+     * @param maxSize
+     */
+    public StringDictionary(int maxSize)
+    {
+        this.maxSize = Math.min(Math.max(maxSize, 2), MAX_SIZE);
+        this.strings = new String[16];
+        this.hashTable = new int[32];
+        this.size = 1;
+    }
+
+
+    /**
+     * Creates a dictionary initialized with the given strings, for instance
+     * the tokens allowed by a Category constraint
+     * @param values
+     */
+    public StringDictionary(Collection<String> values)
+    {
+        this();
+        for (String val: values)
+            getCode(val);
+    }
+
+
+    /**
+     * Gets the code of the given string, adding it to the dictionary if needed
+     * @param s
+     * @return The string code, or {@link #NO_CODE} if the dictionary is full
+     */
+    public int getCode(String s)
+    {
+        if (s == null)
+            return NULL_CODE;
+
+        synchronized (this)
+        {
+            int mask = hashTable.length - 1;
+            int slot = s.hashCode() & mask;
+            int code;
+
+            while ((code = hashTable[slot]) != 0)
+            {
+                if (strings[code].equals(s))
+                    return code;
+                slot = (slot + 1) & mask;
+            }
+
+            return add(s, slot);
+        }
+    }
+
+
+    /**
+     * Gets the code of the string made of the given chars, adding it to the
+     * dictionary if needed. No String object is created if the string is
+     * already in the dictionary.
+     * @param buf
+     * @param off
+     * @param len
+     * @return The string code, or {@link #NO_CODE} if the dictionary is full
+     */
+    public int getCode(char[] buf, int off, int len)
+    {
+        // same hash as String.hashCode()
+        int h = 0;
+        for (int i = off; i < off + len; i++)
+            h = 31 * h + buf[i];
+
+        synchronized (this)
+        {
+            int mask = hashTable.length - 1;
+            int slot = h & mask;
+            int code;
+
+            while ((code = hashTable[slot]) != 0)
+            {
+                if (regionEquals(strings[code], buf, off, len))
+                    return code;
+                slot = (slot + 1) & mask;
+            }
+
+            return add(new String(buf, off, len), slot);
+        }
+    }
+
+
+    /**
+     * @param code
+     * @return The canonical string with the given code
+     */
+    public String getString(int code)
+    {
+        return strings[code];
+    }
+
+
+    /**
+     * @return Number of codes in use, including the null code
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+
+    private int add(String s, int slot)
+    {
+        if (size >= maxSize)
+            return NO_CODE;
+
+        int code = size++;
+        if (code >= strings.length)
+        {
+            String[] newStrings = new String[Math.min(strings.length * 2, maxSize)];
+            System.arraycopy(strings, 0, newStrings, 0, code);
+            newStrings[code] = s;
+            strings = newStrings;
+        }
+        else
+            strings[code] = s;
+
+        hashTable[slot] = code;
+
+        // keep load factor below 1/2
+        if (size * 2 > hashTable.length)
+            rehash();
+
+        return code;
+    }
+
+
+    private void rehash()
+    {
+        int[] newTable = new int[hashTable.length * 2];
+        int mask = newTable.length - 1;
+
+        for (int code = 1; code < size; code++)
+        {
+            int slot = strings[code].hashCode() & mask;
+            while (newTable[slot] != 0)
+                slot = (slot + 1) & mask;
+            newTable[slot] = code;
+        }
+
+        hashTable = newTable;
+    }
+
+
+    private static boolean regionEquals(String s, char[] buf, int off, int len)
+    {
+        if (s.length() != len)
+            return false;
+
+        for (int i = 0; i < len; i++)
+        {
+            if (s.charAt(i) != buf[off + i])
+                return false;
+        }
+
+        return true;
+    }
+}
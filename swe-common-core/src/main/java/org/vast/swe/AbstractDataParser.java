@@ -44,6 +44,7 @@ public abstract class AbstractDataParser extends DataTreeVisitor implements Data
 	protected SWEDataTypeUtils dataTypeUtils = new SWEDataTypeUtils();
 	protected boolean stopParsing = false;
 	protected boolean renewDataBlock = true;
+	protected StreamMetrics metrics;
 	
 	
 	public AbstractDataParser()
@@ -106,6 +107,8 @@ public abstract class AbstractDataParser extends DataTreeVisitor implements Data
 	{
 		try
         {
+            long t0 = (metrics != null) ? System.nanoTime() : 0;
+            
             do
             {
                 if (!moreData())
@@ -115,10 +118,15 @@ public abstract class AbstractDataParser extends DataTreeVisitor implements Data
             }
             while (!componentStack.isEmpty());
             
+            if (metrics != null)
+                metrics.recordProcessed(System.nanoTime() - t0);
+            
             return dataComponents.getData();
         }
         catch (Exception e)
         {
+            if (metrics != null)
+                metrics.recordError();
             throw new ReaderException(e);
         }
 	}
@@ -140,4 +148,31 @@ public abstract class AbstractDataParser extends DataTreeVisitor implements Data
 	    
 	    this.renewDataBlock = renewDataBlock;
     }
+	
+	
+	/**
+	 * Enables collection of statistics about parsed records.<br/>
+	 * This must be called before the input is set for bytes to be counted.
+	 * Time spent in each component is not available with this parser.
+	 * @param metrics object collecting the statistics or null to disable collection
+	 */
+	public void setMetrics(StreamMetrics metrics)
+	{
+	    this.metrics = metrics;
+	}
+	
+	
+	public StreamMetrics getMetrics()
+	{
+	    return metrics;
+	}
+	
+	
+	/*
+	 * Wraps the input stream to count bytes read, if metrics are enabled
+	 */
+	protected InputStream instrument(InputStream is)
+	{
+	    return (metrics != null) ? metrics.instrument(is) : is;
+	}
 }
\ No newline at end of file
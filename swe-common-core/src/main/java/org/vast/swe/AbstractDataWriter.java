@@ -45,6 +45,7 @@ public abstract class AbstractDataWriter extends DataTreeVisitor implements Data
 	
 	protected SWEDataTypeUtils dataTypeUtils = new SWEDataTypeUtils();
     protected boolean stopWriting = false;
+    protected StreamMetrics metrics;
 	
 	
 	public AbstractDataWriter()
@@ -105,11 +106,18 @@ public abstract class AbstractDataWriter extends DataTreeVisitor implements Data
         
         try
         {
+            long t0 = (metrics != null) ? System.nanoTime() : 0;
+            
             do processNextElement();
             while(!isEndOfDataBlock());
+            
+            if (metrics != null)
+                metrics.recordProcessed(System.nanoTime() - t0);
         }
         catch (Exception e)
         {
+            if (metrics != null)
+                metrics.recordError();
             throw new WriterException(STREAM_ERROR, e);
         }
         finally
@@ -143,4 +151,31 @@ public abstract class AbstractDataWriter extends DataTreeVisitor implements Data
     {
         this.dataComponents = dataInfo.copy();
     }
+	
+	
+	/**
+	 * Enables collection of statistics about written records.<br/>
+	 * This must be called before the output is set for bytes to be counted.
+	 * Time spent in each component is not available with this writer.
+	 * @param metrics object collecting the statistics or null to disable collection
+	 */
+	public void setMetrics(StreamMetrics metrics)
+	{
+	    this.metrics = metrics;
+	}
+	
+	
+	public StreamMetrics getMetrics()
+	{
+	    return metrics;
+	}
+	
+	
+	/*
+	 * Wraps the output stream to count bytes written, if metrics are enabled
+	 */
+	protected OutputStream instrument(OutputStream os)
+	{
+	    return (metrics != null) ? metrics.instrument(os) : os;
+	}
 }
@@ -51,7 +51,7 @@ public class AsciiDataParser extends AbstractDataParser
 	@Override
     public void setInput(InputStream inputStream) throws IOException
 	{
-		reader = inputStream;
+		reader = instrument(inputStream);
 		tokenSep = ((TextEncoding)dataEncoding).getTokenSeparator().toCharArray();
 		blockSep = ((TextEncoding)dataEncoding).getBlockSeparator().toCharArray();
 		decimalSep = ((TextEncoding)dataEncoding).getDecimalSeparator().charAt(0);
@@ -57,7 +57,7 @@ public class AsciiDataWriter extends AbstractDataWriter
 	@Override
     public void setOutput(OutputStream outputStream) throws IOException
     {
-	    outputWriter = new OutputStreamWriter(outputStream);
+	    outputWriter = new OutputStreamWriter(instrument(outputStream));
         tokenSep = ((TextEncoding)dataEncoding).getTokenSeparator().toCharArray();
         blockSep = ((TextEncoding)dataEncoding).getBlockSeparator().toCharArray();
     }
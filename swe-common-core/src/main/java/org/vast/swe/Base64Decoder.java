@@ -186,6 +186,10 @@ public class Base64Decoder extends FilterInputStream
             //    break;
         }       
 
+        // signal end of stream if nothing could be decoded
+        if (numDecodedByte == 0 && length > 0)
+            return -1;
+        
         return numDecodedByte;
     }
 
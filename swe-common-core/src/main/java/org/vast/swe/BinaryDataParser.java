@@ -66,6 +66,7 @@ public class BinaryDataParser extends AbstractDataParser
     public void setInput(InputStream inputStream) throws IOException
 	{
 		InputStream dataIn = null;
+		inputStream = instrument(inputStream);
 		
 		// use Base64 converter
 		switch (((BinaryEncoding)dataEncoding).getByteEncoding())
@@ -65,6 +65,7 @@ public class BinaryDataWriter extends AbstractDataWriter
 	public void setOutput(OutputStream outputStream) throws IOException
 	{
 	    ByteEncoding byteEnc = ((BinaryEncoding)dataEncoding).getByteEncoding();
+	    outputStream = instrument(outputStream);
 	    
 	    switch (byteEnc)
         {
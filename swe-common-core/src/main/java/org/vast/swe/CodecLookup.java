@@ -10,15 +10,41 @@
 
 package org.vast.swe;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import net.opengis.swe.v20.BinaryBlock;
+import net.opengis.swe.v20.DataComponent;
+import org.vast.cdm.common.CDMException;
 import org.vast.cdm.common.CompressedStreamParser;
 import org.vast.cdm.common.CompressedStreamWriter;
+import org.vast.cdm.common.DataInputExt;
+import org.vast.cdm.common.DataOutputExt;
 
 
 /**
  * <p>
- * Class for looking up codecs in the classpath
+ * Registry of codecs found in the classpath.<br/>
+ * All codec factories found are aggregated. When several factories support
+ * the same compression type, the first one found is used. More factories
+ * can be registered programmatically.
+ * </p><p>
+ * Codecs that factories declare as stateless are created once per
+ * compression type and shared. Other codecs are pooled, so they should be
+ * handed back with {@link #releaseDecoder(CompressedStreamParser)} or
+ * {@link #releaseEncoder(CompressedStreamWriter)} when they are not needed
+ * anymore. Usage and timing statistics are collected for each compression
+ * type.
+ * </p><p>
+ * This class is thread-safe.
  * </p>
  *
  * @author Alex Robin
@@ -26,53 +52,378 @@ import org.vast.cdm.common.CompressedStreamWriter;
  */
 public class CodecLookup
 {
-    private static CodecLookup singleton;
-    ICodecFactory factory;
+    public static final int MAX_POOLED_CODECS = 8;
+
+    final List<ICodecFactory> factories = new CopyOnWriteArrayList<>();
+    final Map<String, CodecEntry> decoders = new ConcurrentHashMap<>();
+    final Map<String, CodecEntry> encoders = new ConcurrentHashMap<>();
+    final Map<String, CodecStats> stats = new ConcurrentHashMap<>();
+
+
+    /*
+     * Lazy initialization on first access, guaranteed thread-safe by the JVM
+     */
+    private static class Holder
+    {
+        static final CodecLookup INSTANCE = new CodecLookup();
+    }
+
+
+    /**
+     * <p>
+     * Usage statistics of codecs for one compression type
+     * </p>
+     */
+    public static class CodecStats
+    {
+        final LongAdder createCount = new LongAdder();
+        final LongAdder reuseCount = new LongAdder();
+        final LongAdder decodeCount = new LongAdder();
+        final LongAdder decodeTime = new LongAdder();
+        final LongAdder encodeCount = new LongAdder();
+        final LongAdder encodeTime = new LongAdder();
+
+        /**
+         * @return Number of codec instances created by factories
+         */
+        public long getCreateCount()
+        {
+            return createCount.sum();
+        }
+
+        /**
+         * @return Number of requests served with a shared or pooled codec
+         */
+        public long getReuseCount()
+        {
+            return reuseCount.sum();
+        }
+
+        public long getDecodeCount()
+        {
+            return decodeCount.sum();
+        }
+
+        /**
+         * @return Total time spent decoding blocks, in nanoseconds
+         */
+        public long getDecodeTimeNanos()
+        {
+            return decodeTime.sum();
+        }
+
+        public long getEncodeCount()
+        {
+            return encodeCount.sum();
+        }
+
+        /**
+         * @return Total time spent encoding blocks, in nanoseconds
+         */
+        public long getEncodeTimeNanos()
+        {
+            return encodeTime.sum();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "created=" + getCreateCount() + ", reused=" + getReuseCount() +
+                ", decoded=" + getDecodeCount() + " in " + getDecodeTimeNanos()/1000 + "us" +
+                ", encoded=" + getEncodeCount() + " in " + getEncodeTimeNanos()/1000 + "us";
+        }
+    }
+
+
+    /*
+     * Shared instance or pool of codecs for one compression type
+     */
+    static class CodecEntry
+    {
+        final Supplier<Object> creator;
+        final CodecStats stats;
+        final Object shared;
+        final ArrayDeque<Object> pool;
+
+        CodecEntry(Supplier<Object> creator, CodecStats stats, Object shared)
+        {
+            this.creator = creator;
+            this.stats = stats;
+            this.shared = shared;
+            this.pool = (shared == null) ? new ArrayDeque<>() : null;
+        }
+
+        Object acquire()
+        {
+            if (shared != null)
+            {
+                stats.reuseCount.increment();
+                return shared;
+            }
+
+            synchronized (pool)
+            {
+                Object codec = pool.poll();
+                if (codec != null)
+                {
+                    stats.reuseCount.increment();
+                    return codec;
+                }
+            }
+
+            stats.createCount.increment();
+            return creator.get();
+        }
+
+        void release(Object codec)
+        {
+            if (pool == null)
+                return;
+
+            synchronized (pool)
+            {
+                if (pool.size() < MAX_POOLED_CODECS && !pool.contains(codec))
+                    pool.push(codec);
+            }
+        }
+    }
+
+
+    /*
+     * Decoder wrapper collecting statistics
+     */
+    static class DecoderProxy implements CompressedStreamParser
+    {
+        final String compressionType;
+        final CompressedStreamParser decoder;
+        final CodecStats stats;
+
+        DecoderProxy(String compressionType, CompressedStreamParser decoder, CodecStats stats)
+        {
+            this.compressionType = compressionType;
+            this.decoder = decoder;
+            this.stats = stats;
+        }
+
+        @Override
+        public void init(DataComponent blockComponent, BinaryBlock binaryBlock) throws CDMException
+        {
+            decoder.init(blockComponent, binaryBlock);
+        }
+
+        @Override
+        public void decode(DataInputExt inputStream, DataComponent blockComponent) throws CDMException
+        {
+            long t0 = System.nanoTime();
+            decoder.decode(inputStream, blockComponent);
+            stats.decodeTime.add(System.nanoTime() - t0);
+            stats.decodeCount.increment();
+        }
+    }
+
+
+    /*
+     * Encoder wrapper collecting statistics
+     */
+    static class EncoderProxy implements CompressedStreamWriter
+    {
+        final String compressionType;
+        final CompressedStreamWriter encoder;
+        final CodecStats stats;
+
+        EncoderProxy(String compressionType, CompressedStreamWriter encoder, CodecStats stats)
+        {
+            this.compressionType = compressionType;
+            this.encoder = encoder;
+            this.stats = stats;
+        }
+
+        @Override
+        public void init(DataComponent blockComponent, BinaryBlock binaryBlock) throws CDMException
+        {
+            encoder.init(blockComponent, binaryBlock);
+        }
+
+        @Override
+        public void encode(DataOutputExt outputStream, DataComponent blockComponent) throws CDMException
+        {
+            long t0 = System.nanoTime();
+            encoder.encode(outputStream, blockComponent);
+            stats.encodeTime.add(System.nanoTime() - t0);
+            stats.encodeCount.increment();
+        }
+    }
     
     
     public static CodecLookup getInstance()
     {
-        if (singleton == null)
-            singleton = new CodecLookup();
-        return singleton;
+        return Holder.INSTANCE;
     }
     
     
     private CodecLookup()
     {
-        // for now we get the first factory we find
         for (ICodecFactory factory: ServiceLoader.load(ICodecFactory.class))
-        {
-            this.factory = factory;
-            break;
-        }
+            factories.add(factory);
+    }
+    
+    
+    /**
+     * Adds a codec factory to the registry.<br/>
+     * It has lower priority than factories registered before it.
+     * @param factory
+     */
+    public void registerFactory(ICodecFactory factory)
+    {
+        factories.add(factory);
     }
     
     
     public Map<String, Class<?>> getAvailableDecoders()
     {
-        return factory.getAvailableDecoders();
+        Map<String, Class<?>> decoders = new LinkedHashMap<>();
+        for (ICodecFactory factory: factories)
+        {
+            for (Map.Entry<String, Class<?>> entry: factory.getAvailableDecoders().entrySet())
+                decoders.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        return decoders;
     }
 
     
     public Map<String, Class<?>> getAvailableEncoders()
     {
-        return factory.getAvailableEncoders();
+        Map<String, Class<?>> encoders = new LinkedHashMap<>();
+        for (ICodecFactory factory: factories)
+        {
+            for (Map.Entry<String, Class<?>> entry: factory.getAvailableEncoders().entrySet())
+                encoders.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        return encoders;
     }
 
     
+    /**
+     * Gets a decoder for the given compression type, either shared, taken
+     * from the pool or newly created
+     * @param compressionType
+     * @return the decoder, or null if no factory supports this compression type
+     */
     public CompressedStreamParser createDecoder(String compressionType)
     {
-        if (factory == null)
+        if (compressionType == null)
             return null;
-        return factory.createDecoder(compressionType);
+        
+        CodecEntry entry = decoders.get(compressionType);
+        if (entry != null)
+            return (CompressedStreamParser)entry.acquire();
+        
+        for (ICodecFactory factory: factories)
+        {
+            CompressedStreamParser decoder = factory.createDecoder(compressionType);
+            if (decoder != null)
+            {
+                CodecStats codecStats = getStatistics(compressionType);
+                codecStats.createCount.increment();
+                DecoderProxy proxy = new DecoderProxy(compressionType, decoder, codecStats);
+                
+                Supplier<Object> creator = () -> new DecoderProxy(compressionType, factory.createDecoder(compressionType), codecStats);
+                entry = new CodecEntry(creator, codecStats, factory.isStateless(compressionType) ? proxy : null);
+                CodecEntry prevEntry = decoders.putIfAbsent(compressionType, entry);
+                if (prevEntry != null && prevEntry.shared != null)
+                    return (CompressedStreamParser)prevEntry.shared;
+                return proxy;
+            }
+        }
+        
+        return null;
     }
 
     
+    /**
+     * Gets an encoder for the given compression type, either shared, taken
+     * from the pool or newly created
+     * @param compressionType
+     * @return the encoder, or null if no factory supports this compression type
+     */
     public CompressedStreamWriter createEncoder(String compressionType)
     {
-        if (factory == null)
+        if (compressionType == null)
             return null;
-        return factory.createEncoder(compressionType);
-    }    
+        
+        CodecEntry entry = encoders.get(compressionType);
+        if (entry != null)
+            return (CompressedStreamWriter)entry.acquire();
+        
+        for (ICodecFactory factory: factories)
+        {
+            CompressedStreamWriter encoder = factory.createEncoder(compressionType);
+            if (encoder != null)
+            {
+                CodecStats codecStats = getStatistics(compressionType);
+                codecStats.createCount.increment();
+                EncoderProxy proxy = new EncoderProxy(compressionType, encoder, codecStats);
+                
+                Supplier<Object> creator = () -> new EncoderProxy(compressionType, factory.createEncoder(compressionType), codecStats);
+                entry = new CodecEntry(creator, codecStats, factory.isStateless(compressionType) ? proxy : null);
+                CodecEntry prevEntry = encoders.putIfAbsent(compressionType, entry);
+                if (prevEntry != null && prevEntry.shared != null)
+                    return (CompressedStreamWriter)prevEntry.shared;
+                return proxy;
+            }
+        }
+        
+        return null;
+    }
+    
+    
+    /**
+     * Hands back a decoder obtained from {@link #createDecoder(String)} so
+     * it can be reused
+     * @param decoder
+     */
+    public void releaseDecoder(CompressedStreamParser decoder)
+    {
+        if (decoder instanceof DecoderProxy)
+        {
+            CodecEntry entry = decoders.get(((DecoderProxy)decoder).compressionType);
+            if (entry != null)
+                entry.release(decoder);
+        }
+    }
+    
+    
+    /**
+     * Hands back an encoder obtained from {@link #createEncoder(String)} so
+     * it can be reused
+     * @param encoder
+     */
+    public void releaseEncoder(CompressedStreamWriter encoder)
+    {
+        if (encoder instanceof EncoderProxy)
+        {
+            CodecEntry entry = encoders.get(((EncoderProxy)encoder).compressionType);
+            if (entry != null)
+                entry.release(encoder);
+        }
+    }
+    
+    
+    /**
+     * @param compressionType
+     * @return Usage statistics of codecs for the given compression type
+     */
+    public CodecStats getStatistics(String compressionType)
+    {
+        return stats.computeIfAbsent(compressionType, k -> new CodecStats());
+    }
+    
+    
+    /**
+     * @return Usage statistics of codecs for all compression types used so far
+     */
+    public Map<String, CodecStats> getStatistics()
+    {
+        return Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
 }
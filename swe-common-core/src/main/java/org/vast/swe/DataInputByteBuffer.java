@@ -0,0 +1,514 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import org.vast.cdm.common.DataInputExt;
+
+
+/**
+ * <p>
+ * Implementation of DataInputExt backed by a NIO ByteBuffer.<br/>
+ * The buffer can either wrap data already in memory (e.g. a memory mapped
+ * file) or be refilled from a channel as data is consumed. Byte order is
+ * configurable and bulk methods are provided to read arrays of primitive
+ * values with a single copy.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 12, 2018
+ */
+public class DataInputByteBuffer extends InputStream implements DataInputExt
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    protected ByteBuffer buf;
+    protected ReadableByteChannel channel;
+    protected int markPos = -1;
+    protected int markLimit;
+    protected long discarded;
+
+
+    /**
+     * Creates a data input reading directly from the given buffer, from its
+     * current position to its limit
+     * @param buf
+     * @param byteOrder
+     */
+    public DataInputByteBuffer(ByteBuffer buf, ByteOrder byteOrder)
+    {
+        this.buf = buf;
+        this.buf.order(byteOrder);
+    }
+
+
+    /**
+     * Creates a data input reading from the given channel through
+     * a direct buffer of default size
+     * @param channel
+     * @param byteOrder
+     */
+    public DataInputByteBuffer(ReadableByteChannel channel, ByteOrder byteOrder)
+    {
+        this(channel, byteOrder, DEFAULT_BUFFER_SIZE);
+    }
+
+
+    /**
+     * Creates a data input reading from the given channel through
+     * a direct buffer of the specified size
+     * @param channel
+     * @param byteOrder
+     * @param bufferSize
+     */
+    public DataInputByteBuffer(ReadableByteChannel channel, ByteOrder byteOrder, int bufferSize)
+    {
+        this.channel = channel;
+        this.buf = ByteBuffer.allocateDirect(bufferSize);
+        this.buf.order(byteOrder);
+        this.buf.limit(0);
+    }
+
+
+    /**
+     * Creates a data input reading from the given input stream
+     * @param is
+     * @param byteOrder
+     */
+    public DataInputByteBuffer(InputStream is, ByteOrder byteOrder)
+    {
+        this(Channels.newChannel(is), byteOrder);
+    }
+
+
+    /*
+     * Makes sure at least n bytes are available in buffer, reading more
+     * from the channel if needed.
+     * Returns false if the end of stream was reached before.
+     */
+    protected boolean ensureAvailable(int n) throws IOException
+    {
+        if (buf.remaining() >= n)
+            return true;
+
+        if (channel == null)
+            return false;
+
+        // discard mark if it prevents us from reading enough data
+        int startPos = buf.position();
+        if (markPos >= 0)
+        {
+            if (startPos - markPos + n > markLimit)
+                markPos = -1;
+            else
+                startPos = markPos;
+        }
+
+        // keep unread (or marked) bytes and refill the rest of the buffer
+        int offset = buf.position() - startPos;
+        discarded += startPos;
+        buf.position(startPos);
+        buf.compact();
+        while (buf.position() < offset + n)
+        {
+            if (channel.read(buf) < 0)
+                break;
+        }
+        buf.flip();
+        buf.position(offset);
+        if (markPos >= 0)
+            markPos = 0;
+
+        return buf.remaining() >= n;
+    }
+
+
+    protected void require(int n) throws IOException
+    {
+        if (!ensureAvailable(n))
+            throw new EOFException();
+    }
+
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!ensureAvailable(1))
+            return -1;
+        return buf.get() & 0xff;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+
+        if (!buf.hasRemaining() && !ensureAvailable(1))
+            return -1;
+
+        len = Math.min(len, buf.remaining());
+        buf.get(b, off, len);
+        return len;
+    }
+
+
+    @Override
+    public int available() throws IOException
+    {
+        return buf.remaining();
+    }
+
+
+    @Override
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+
+    @Override
+    public void mark(int readLimit)
+    {
+        this.markPos = buf.position();
+        this.markLimit = Math.min(readLimit, buf.capacity());
+    }
+
+
+    @Override
+    public void reset() throws IOException
+    {
+        if (markPos < 0)
+            throw new IOException("Resetting to invalid mark");
+        buf.position(markPos);
+    }
+
+
+    @Override
+    public boolean readBoolean() throws IOException
+    {
+        require(1);
+        return buf.get() != 0;
+    }
+
+
+    @Override
+    public byte readByte() throws IOException
+    {
+        require(1);
+        return buf.get();
+    }
+
+
+    @Override
+    public int readUnsignedByte() throws IOException
+    {
+        require(1);
+        return buf.get() & 0xff;
+    }
+
+
+    @Override
+    public short readShort() throws IOException
+    {
+        require(2);
+        return buf.getShort();
+    }
+
+
+    @Override
+    public int readUnsignedShort() throws IOException
+    {
+        require(2);
+        return buf.getShort() & 0xffff;
+    }
+
+
+    @Override
+    public char readChar() throws IOException
+    {
+        require(2);
+        return buf.getChar();
+    }
+
+
+    @Override
+    public int readInt() throws IOException
+    {
+        require(4);
+        return buf.getInt();
+    }
+
+
+    @Override
+    public long readUnsignedInt() throws IOException
+    {
+        require(4);
+        return buf.getInt() & 0xffffffffL;
+    }
+
+
+    @Override
+    public long readLong() throws IOException
+    {
+        require(8);
+        return buf.getLong();
+    }
+
+
+    @Override
+    public long readUnsignedLong() throws IOException
+    {
+        return readLong();
+    }
+
+
+    @Override
+    public float readFloat() throws IOException
+    {
+        require(4);
+        return buf.getFloat();
+    }
+
+
+    @Override
+    public double readDouble() throws IOException
+    {
+        require(8);
+        return buf.getDouble();
+    }
+
+
+    @Override
+    public String readLine() throws IOException
+    {
+        return null;
+    }
+
+
+    @Override
+    public String readUTF() throws IOException
+    {
+        return DataInputStream.readUTF(this);
+    }
+
+
+    @Override
+    public String readASCII() throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+
+        byte val;
+        while ((val = readByte()) != 0)
+            sb.append((char)(val & 0xff));
+
+        return sb.toString();
+    }
+
+
+    @Override
+    public void readFully(byte[] b) throws IOException
+    {
+        readFully(b, 0, b.length);
+    }
+
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException
+    {
+        if (len < 0)
+            throw new IndexOutOfBoundsException();
+
+        while (len > 0)
+        {
+            require(1);
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Reads len short values into the destination array in one bulk operation
+     * @param dst
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void readFully(short[] dst, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            require(2);
+            int n = Math.min(len, buf.remaining() / 2);
+            buf.asShortBuffer().get(dst, off, n);
+            buf.position(buf.position() + n*2);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Reads len int values into the destination array in one bulk operation
+     * @param dst
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void readFully(int[] dst, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            require(4);
+            int n = Math.min(len, buf.remaining() / 4);
+            buf.asIntBuffer().get(dst, off, n);
+            buf.position(buf.position() + n*4);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Reads len long values into the destination array in one bulk operation
+     * @param dst
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void readFully(long[] dst, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            require(8);
+            int n = Math.min(len, buf.remaining() / 8);
+            buf.asLongBuffer().get(dst, off, n);
+            buf.position(buf.position() + n*8);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Reads len float values into the destination array in one bulk operation
+     * @param dst
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void readFully(float[] dst, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            require(4);
+            int n = Math.min(len, buf.remaining() / 4);
+            buf.asFloatBuffer().get(dst, off, n);
+            buf.position(buf.position() + n*4);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Reads len double values into the destination array in one bulk operation
+     * @param dst
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void readFully(double[] dst, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            require(8);
+            int n = Math.min(len, buf.remaining() / 8);
+            buf.asDoubleBuffer().get(dst, off, n);
+            buf.position(buf.position() + n*8);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    @Override
+    public int skipBytes(int n) throws IOException
+    {
+        int total = 0;
+        while (total < n && ensureAvailable(1))
+        {
+            int count = Math.min(n - total, buf.remaining());
+            buf.position(buf.position() + count);
+            total += count;
+        }
+
+        return total;
+    }
+
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        return skipBytes((int)Math.min(n, Integer.MAX_VALUE));
+    }
+
+
+    /**
+     * @return The position of the next byte to be read, counted from the
+     * start of the channel, or from the beginning of the buffer
+     */
+    public long getPosition()
+    {
+        return discarded + buf.position();
+    }
+
+
+    public ByteOrder getByteOrder()
+    {
+        return buf.order();
+    }
+
+
+    public void setByteOrder(ByteOrder byteOrder)
+    {
+        buf.order(byteOrder);
+    }
+
+
+    public ByteBuffer getBuffer()
+    {
+        return buf;
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        if (channel != null)
+            channel.close();
+    }
+}
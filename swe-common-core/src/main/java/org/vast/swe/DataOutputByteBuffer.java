@@ -0,0 +1,458 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import org.vast.cdm.common.DataOutputExt;
+
+
+/**
+ * <p>
+ * Implementation of DataOutputExt backed by a NIO ByteBuffer.<br/>
+ * The buffer can either be filled directly (e.g. a memory mapped file) or
+ * be drained to a channel when full or flushed. Byte order is configurable
+ * and bulk methods are provided to write arrays of primitive values with a
+ * single copy.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 12, 2018
+ */
+public class DataOutputByteBuffer extends OutputStream implements DataOutputExt
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    protected ByteBuffer buf;
+    protected WritableByteChannel channel;
+    protected OutputStream os;
+
+
+    /**
+     * Creates a data output writing directly to the given buffer,
+     * starting at its current position
+     * @param buf
+     * @param byteOrder
+     */
+    public DataOutputByteBuffer(ByteBuffer buf, ByteOrder byteOrder)
+    {
+        this.buf = buf;
+        this.buf.order(byteOrder);
+    }
+
+
+    /**
+     * Creates a data output writing to the given channel through
+     * a direct buffer of default size
+     * @param channel
+     * @param byteOrder
+     */
+    public DataOutputByteBuffer(WritableByteChannel channel, ByteOrder byteOrder)
+    {
+        this(channel, byteOrder, DEFAULT_BUFFER_SIZE);
+    }
+
+
+    /**
+     * Creates a data output writing to the given channel through
+     * a direct buffer of the specified size
+     * @param channel
+     * @param byteOrder
+     * @param bufferSize
+     */
+    public DataOutputByteBuffer(WritableByteChannel channel, ByteOrder byteOrder, int bufferSize)
+    {
+        this.channel = channel;
+        this.buf = ByteBuffer.allocateDirect(bufferSize);
+        this.buf.order(byteOrder);
+    }
+
+
+    /**
+     * Creates a data output writing to the given output stream
+     * @param os
+     * @param byteOrder
+     */
+    public DataOutputByteBuffer(OutputStream os, ByteOrder byteOrder)
+    {
+        this(Channels.newChannel(os), byteOrder);
+        this.os = os;
+    }
+
+
+    /*
+     * Makes sure at least n bytes can be written to the buffer,
+     * draining it to the channel if needed
+     */
+    protected void ensureCapacity(int n) throws IOException
+    {
+        if (buf.remaining() >= n)
+            return;
+
+        if (channel == null)
+            throw new IOException("Output buffer is full", new BufferOverflowException());
+
+        drain();
+    }
+
+
+    /**
+     * Writes buffered bytes to the channel without flushing the underlying stream
+     * @throws IOException
+     */
+    public void drain() throws IOException
+    {
+        if (channel == null)
+            return;
+        
+        buf.flip();
+        while (buf.hasRemaining())
+            channel.write(buf);
+        buf.clear();
+    }
+
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensureCapacity(1);
+        buf.put((byte)b);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            ensureCapacity(1);
+            int n = Math.min(len, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException
+    {
+        ensureCapacity(1);
+        buf.put(v ? (byte)1 : (byte)0);
+    }
+
+
+    @Override
+    public void writeByte(int v) throws IOException
+    {
+        ensureCapacity(1);
+        buf.put((byte)v);
+    }
+
+
+    @Override
+    public void writeUnsignedByte(short v) throws IOException
+    {
+        ensureCapacity(1);
+        buf.put((byte)(0xff & v));
+    }
+
+
+    @Override
+    public void writeShort(int v) throws IOException
+    {
+        ensureCapacity(2);
+        buf.putShort((short)v);
+    }
+
+
+    @Override
+    public void writeUnsignedShort(int v) throws IOException
+    {
+        ensureCapacity(2);
+        buf.putShort((short)(0xffff & v));
+    }
+
+
+    @Override
+    public void writeChar(int v) throws IOException
+    {
+        ensureCapacity(2);
+        buf.putChar((char)v);
+    }
+
+
+    @Override
+    public void writeInt(int v) throws IOException
+    {
+        ensureCapacity(4);
+        buf.putInt(v);
+    }
+
+
+    @Override
+    public void writeUnsignedInt(long v) throws IOException
+    {
+        ensureCapacity(4);
+        buf.putInt((int)(0xffffffffL & v));
+    }
+
+
+    @Override
+    public void writeLong(long v) throws IOException
+    {
+        ensureCapacity(8);
+        buf.putLong(v);
+    }
+
+
+    @Override
+    public void writeUnsignedLong(long v) throws IOException
+    {
+        writeLong(v);
+    }
+
+
+    @Override
+    public void writeFloat(float v) throws IOException
+    {
+        ensureCapacity(4);
+        buf.putFloat(v);
+    }
+
+
+    @Override
+    public void writeDouble(double v) throws IOException
+    {
+        ensureCapacity(8);
+        buf.putDouble(v);
+    }
+
+
+    @Override
+    public void writeBytes(String s) throws IOException
+    {
+        int len = s.length();
+        for (int i = 0; i < len; i++)
+            write(0xff & s.charAt(i));
+    }
+
+
+    @Override
+    public void writeChars(String s) throws IOException
+    {
+        int len = s.length();
+        for (int i = 0; i < len; i++)
+            writeChar(s.charAt(i));
+    }
+
+
+    @Override
+    public void writeASCII(String s) throws IOException
+    {
+        writeBytes(s);
+        write(0);
+    }
+
+
+    /**
+     * Writes string using modified UTF-8 encoding, preceded by its
+     * length in bytes as an unsigned short, so that it can be read
+     * back with {@link java.io.DataInputStream#readUTF(java.io.DataInput)}
+     */
+    @Override
+    public void writeUTF(String s) throws IOException
+    {
+        int strLen = s.length();
+        int utfLen = 0;
+
+        // compute encoded length first
+        for (int i = 0; i < strLen; i++)
+        {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)
+                utfLen++;
+            else if (c > 0x07FF)
+                utfLen += 3;
+            else
+                utfLen += 2;
+        }
+
+        if (utfLen > 65535)
+            throw new UTFDataFormatException("Encoded string too long: " + utfLen + " bytes");
+
+        writeUnsignedShort(utfLen);
+        for (int i = 0; i < strLen; i++)
+        {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)
+            {
+                write(c);
+            }
+            else if (c > 0x07FF)
+            {
+                write(0xE0 | ((c >> 12) & 0x0F));
+                write(0x80 | ((c >>  6) & 0x3F));
+                write(0x80 | (c & 0x3F));
+            }
+            else
+            {
+                write(0xC0 | ((c >>  6) & 0x1F));
+                write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+
+    /**
+     * Writes len short values from the source array in one bulk operation
+     * @param src
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void write(short[] src, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            ensureCapacity(2);
+            int n = Math.min(len, buf.remaining() / 2);
+            buf.asShortBuffer().put(src, off, n);
+            buf.position(buf.position() + n*2);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Writes len int values from the source array in one bulk operation
+     * @param src
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void write(int[] src, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            ensureCapacity(4);
+            int n = Math.min(len, buf.remaining() / 4);
+            buf.asIntBuffer().put(src, off, n);
+            buf.position(buf.position() + n*4);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Writes len long values from the source array in one bulk operation
+     * @param src
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void write(long[] src, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            ensureCapacity(8);
+            int n = Math.min(len, buf.remaining() / 8);
+            buf.asLongBuffer().put(src, off, n);
+            buf.position(buf.position() + n*8);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Writes len float values from the source array in one bulk operation
+     * @param src
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void write(float[] src, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            ensureCapacity(4);
+            int n = Math.min(len, buf.remaining() / 4);
+            buf.asFloatBuffer().put(src, off, n);
+            buf.position(buf.position() + n*4);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Writes len double values from the source array in one bulk operation
+     * @param src
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void write(double[] src, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            ensureCapacity(8);
+            int n = Math.min(len, buf.remaining() / 8);
+            buf.asDoubleBuffer().put(src, off, n);
+            buf.position(buf.position() + n*8);
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    public ByteOrder getByteOrder()
+    {
+        return buf.order();
+    }
+
+
+    public ByteBuffer getBuffer()
+    {
+        return buf;
+    }
+
+
+    @Override
+    public void flush() throws IOException
+    {
+        drain();
+        if (os != null)
+            os.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        if (channel != null)
+            channel.close();
+    }
+}
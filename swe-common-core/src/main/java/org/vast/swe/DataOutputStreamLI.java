@@ -20,6 +20,8 @@
 
 package org.vast.swe;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -184,8 +186,12 @@ public class DataOutputStreamLI extends FilterOutputStream implements DataOutput
 	@Override
     public void writeUTF(String s) throws IOException
 	{
-	    this.writeInt(s.length());
-	    this.write(s.getBytes());
+	    // use same format as DataInputStream.readUTF() but with little endian length
+	    ByteArrayOutputStream buf = new ByteArrayOutputStream(s.length() + 2);
+	    new DataOutputStream(buf).writeUTF(s);
+	    byte[] utf = buf.toByteArray();
+	    this.writeUnsignedShort(utf.length - 2);
+	    this.write(utf, 2, utf.length - 2);
 	}
 
 
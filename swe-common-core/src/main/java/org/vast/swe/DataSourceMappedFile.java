@@ -0,0 +1,199 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import org.vast.cdm.common.DataSource;
+
+
+/**
+ * <p>
+ * Data source reading binary encoded records from a local file mapped in
+ * memory. The file is mapped by windows so that files larger than 2GB are
+ * supported, and values are decoded directly from the mapped pages without
+ * intermediate copies.<br/>
+ * Each call to {@link #getDataStream(long)} opens an independent stream so
+ * several threads can read disjoint ranges of the same file concurrently.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 14, 2018
+ */
+public class DataSourceMappedFile implements DataSource
+{
+    public static final int DEFAULT_WINDOW_SIZE = 64*1024*1024;
+
+    File file;
+    int windowSize;
+
+
+    /**
+     * Data input reading from successive mapped windows of a file
+     */
+    public static class MappedFileInput extends DataInputByteBuffer
+    {
+        FileChannel channel;
+        long fileSize;
+        long windowStart;
+        int windowSize;
+
+        protected MappedFileInput(FileChannel channel, long offset, int windowSize) throws IOException
+        {
+            super(map(channel, offset, windowSize), ByteOrder.BIG_ENDIAN);
+            this.channel = channel;
+            this.fileSize = channel.size();
+            this.windowStart = offset;
+            this.windowSize = windowSize;
+        }
+
+        protected static MappedByteBuffer map(FileChannel channel, long offset, int windowSize) throws IOException
+        {
+            long size = Math.min(windowSize, channel.size() - offset);
+            if (size < 0)
+                throw new IOException("Offset " + offset + " is beyond end of file");
+            return channel.map(MapMode.READ_ONLY, offset, size);
+        }
+
+        @Override
+        protected boolean ensureAvailable(int n) throws IOException
+        {
+            if (buf.remaining() >= n)
+                return true;
+
+            long pos = getPosition();
+            if (pos + n > fileSize)
+                return false;
+
+            // map next window, keeping marked bytes if possible
+            long start = pos;
+            if (markPos >= 0 && pos - (windowStart + markPos) + n <= markLimit)
+                start = windowStart + markPos;
+            else
+                markPos = -1;
+
+            ByteOrder byteOrder = buf.order();
+            buf = map(channel, start, windowSize);
+            buf.order(byteOrder);
+            buf.position((int)(pos - start));
+            windowStart = start;
+            if (markPos >= 0)
+                markPos = 0;
+
+            return buf.remaining() >= n;
+        }
+
+        /**
+         * @return The absolute position in the file of the next byte to be read
+         */
+        @Override
+        public long getPosition()
+        {
+            return windowStart + buf.position();
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int)Math.min(fileSize - getPosition(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+
+
+    public DataSourceMappedFile(File file)
+    {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+
+    /**
+     * @param file Binary file to read from
+     * @param windowSize Size of file regions mapped in memory at once.
+     * Must be larger than the largest record
+     */
+    public DataSourceMappedFile(File file, int windowSize)
+    {
+        this.file = file;
+        this.windowSize = windowSize;
+    }
+
+
+    @Override
+    public MappedFileInput getDataStream() throws IOException
+    {
+        return getDataStream(0);
+    }
+
+
+    /**
+     * Opens a new stream starting at the given offset in the file.<br/>
+     * This can be used to access record N directly when the record size
+     * is fixed, e.g. using {@link org.vast.swe.fast.BinaryDataParser#getRecordSize()}
+     * @param offset Offset of first byte to read, in bytes
+     * @return The new input stream
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedFileInput getDataStream(long offset) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try
+        {
+            return new MappedFileInput(channel, offset, windowSize);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Maps a range of the file in memory, for direct zero-copy access
+     * @param offset Offset of first byte, in bytes
+     * @param length Number of bytes to map
+     * @return Read-only buffer
+     * @throws IOException if the range cannot be mapped
+     */
+    public ByteBuffer map(long offset, int length) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            // behavior of read-only mappings past EOF is unspecified
+            if (offset + length > channel.size())
+                throw new IOException("Range " + offset + "-" + (offset + length) + " is beyond end of file");
+            return channel.map(MapMode.READ_ONLY, offset, length);
+        }
+    }
+
+
+    public File getFile()
+    {
+        return file;
+    }
+}
@@ -38,4 +38,17 @@ public interface ICodecFactory
     
     public CompressedStreamWriter createEncoder(String compressionType);    
     
+    
+    /**
+     * Checks if codecs for the given compression type keep no state between
+     * calls, in which case a single instance can be shared by all parsers
+     * and writers
+     * @param compressionType
+     * @return true if codecs are stateless and thread-safe, false otherwise
+     */
+    public default boolean isStateless(String compressionType)
+    {
+        return false;
+    }
+    
 }
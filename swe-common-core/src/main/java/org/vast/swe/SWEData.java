@@ -21,15 +21,18 @@
 package org.vast.swe;
 
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataEncoding;
 import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.TextEncoding;
 import net.opengis.swe.v20.XMLEncoding;
 import org.vast.cdm.common.DataSink;
 import org.vast.cdm.common.DataSource;
 import org.vast.cdm.common.DataStreamParser;
 import org.vast.cdm.common.DataStreamWriter;
 import org.vast.data.DataList;
+import org.vast.swe.fast.ParallelTextDataParser;
 
 
 /**
@@ -166,6 +169,31 @@ public class SWEData extends DataList implements ISweInputDataStream, ISweOutput
     }
     
     
+    /**
+     * Parses data from the given data source stream using several threads
+     * and stores data blocks in the DataList, in stream order.<br/>
+     * This is only possible with text encodings that have a block separator,
+     * other encodings are parsed sequentially.
+     * @param dataSource
+     * @param pool fork-join pool used to parse chunks of the stream
+     * @throws IOException
+     */
+    public void parseDataParallel(DataSource dataSource, ForkJoinPool pool) throws IOException
+    {
+        DataEncoding encoding = getEncoding();
+        
+        if (dataSource instanceof DataSourceDOM || !ParallelTextDataParser.isSupported(encoding))
+        {
+            parseData(dataSource);
+            return;
+        }
+        
+        ParallelTextDataParser parser = new ParallelTextDataParser(getElementType(), (TextEncoding)encoding);
+        parser.setForkJoinPool(pool);
+        parser.parse(dataSource.getDataStream(), this::addData);
+    }
+    
+    
     /**
      * Writes data blocks to the data stream specified
      * @param dataSink
@@ -26,7 +26,7 @@
 package org.vast.swe;
 
 import java.text.ParseException;
-import org.vast.util.DateTimeFormat;
+import org.vast.util.IsoDateTimeCodec;
 import net.opengis.swe.v20.DataBlock;
 import net.opengis.swe.v20.DataType;
 import net.opengis.swe.v20.ScalarComponent;
@@ -43,7 +43,7 @@ import net.opengis.swe.v20.Time;
  */
 public class SWEDataTypeUtils
 {
-    DateTimeFormat timeFormat = new DateTimeFormat();
+    IsoDateTimeCodec timeCodec = new IsoDateTimeCodec();
     
     
     /**
@@ -104,7 +104,7 @@ public class SWEDataTypeUtils
         {
             try
             {
-                val = timeFormat.parseIso(text);
+                val = timeCodec.parse(text);
             }
             catch (ParseException e1)
             {
@@ -121,7 +121,7 @@ public class SWEDataTypeUtils
     
     public final double parseIsoTime(String text) throws ParseException
     {
-        return timeFormat.parseIso(text);
+        return timeCodec.parse(text);
     }
     
     
@@ -132,7 +132,7 @@ public class SWEDataTypeUtils
         else if (val == Double.NEGATIVE_INFINITY)
             return "-INF";
         else if (useIso)
-            return timeFormat.formatIso(val, 0);
+            return timeCodec.format(val);
         else
             return Double.toString(val);
     }
@@ -59,7 +59,11 @@ import org.vast.data.DataValue;
 import org.vast.data.SWEFactory;
 import org.vast.data.ScalarIterator;
 import org.vast.data.TextEncodingImpl;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+import org.vast.swe.fast.JsonDataParser;
 import org.vast.swe.fast.JsonDataWriter;
+import org.vast.swe.fast.XmlDataParser;
 import org.vast.util.Asserts;
 
 
@@ -525,6 +529,8 @@ public class SWEHelper extends SWEFactory
             parser = new BinaryDataParser();
         else if (encoding instanceof XMLEncoding)
             parser = new XmlDataParser();
+        else if (encoding instanceof JSONEncoding)
+            parser = new JsonDataParser();
         
         parser.setDataEncoding(encoding);
         return parser;
@@ -0,0 +1,326 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.vast.cdm.common.DataStreamMetrics;
+import org.vast.util.Asserts;
+import org.vast.util.LatencyHistogram;
+
+
+/**
+ * <p>
+ * Collects statistics about records processed by data stream parsers or
+ * writers. Collection is enabled by setting an instance of this class on a
+ * parser or writer before it is used.<br/>
+ * The same instance can be shared by several parsers or writers, possibly
+ * running in different threads, to get aggregated statistics (e.g. for
+ * all connections of a given data feed).
+ * </p><p>
+ * Recording is allocation-free so it can be left enabled in production.
+ * Statistics can be read programmatically or through JMX once the instance
+ * has been registered with {@link #registerMBean(String)}.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class StreamMetrics implements DataStreamMetrics
+{
+    public static final String JMX_DOMAIN = "org.vast.swe";
+
+    final LongAdder recordCount = new LongAdder();
+    final LongAdder byteCount = new LongAdder();
+    final LongAdder errorCount = new LongAdder();
+    final LatencyHistogram latencies = new LatencyHistogram();
+    final Map<String, LongAdder> componentTimes = new LinkedHashMap<>();
+    ObjectName mbeanName;
+
+
+    class CountingInputStream extends FilterInputStream
+    {
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = in.read();
+            if (b >= 0)
+                byteCount.increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = in.read(b, off, len);
+            if (n > 0)
+                byteCount.add(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = in.skip(n);
+            byteCount.add(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+
+
+    class CountingOutputStream extends FilterOutputStream
+    {
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            byteCount.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            byteCount.add(len);
+        }
+    }
+
+
+    /**
+     * Wraps the input stream of a parser so that bytes read are counted
+     * @param is stream to wrap
+     * @return the wrapped stream
+     */
+    public InputStream instrument(InputStream is)
+    {
+        if (is == null || is instanceof CountingInputStream)
+            return is;
+        return new CountingInputStream(is);
+    }
+
+
+    /**
+     * Wraps the output stream of a writer so that bytes written are counted
+     * @param os stream to wrap
+     * @return the wrapped stream
+     */
+    public OutputStream instrument(OutputStream os)
+    {
+        if (os == null || os instanceof CountingOutputStream)
+            return os;
+        return new CountingOutputStream(os);
+    }
+
+
+    /**
+     * Records bytes read or written without going through an instrumented
+     * stream (e.g. when reading directly from a memory buffer)
+     * @param count number of bytes
+     */
+    public void recordBytes(long count)
+    {
+        byteCount.add(count);
+    }
+
+
+    /**
+     * Records that a record was processed successfully
+     * @param latencyNanos time spent processing the record
+     */
+    public void recordProcessed(long latencyNanos)
+    {
+        recordCount.increment();
+        latencies.record(latencyNanos);
+    }
+
+
+    /**
+     * Records that a record could not be processed
+     */
+    public void recordError()
+    {
+        errorCount.increment();
+    }
+
+
+    /**
+     * Gets the accumulator of time spent in the given component.<br/>
+     * This is meant to be called once when a parser or writer is initialized
+     * so that it can later record times without any lookup.
+     * @param name name of top-level component
+     * @return the accumulator for this component
+     */
+    public LongAdder getComponentTimer(String name)
+    {
+        Asserts.checkNotNull(name, "name");
+
+        synchronized (componentTimes)
+        {
+            return componentTimes.computeIfAbsent(name, k -> new LongAdder());
+        }
+    }
+
+
+    /**
+     * Registers these metrics with the platform MBean server
+     * @param name name identifying the data stream (e.g. feed or connection name)
+     * @return the object name under which the MBean was registered
+     * @throws JMException if the MBean cannot be registered, for instance
+     * if another one is already registered with the same name
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException
+    {
+        Asserts.checkState(mbeanName == null, "Metrics are already registered as %s", mbeanName);
+
+        ObjectName objName = new ObjectName(JMX_DOMAIN + ":type=DataStreamMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objName);
+        mbeanName = objName;
+        return objName;
+    }
+
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if they were registered
+     * @throws JMException if the MBean cannot be unregistered
+     */
+    public synchronized void unregisterMBean() throws JMException
+    {
+        if (mbeanName == null)
+            return;
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        if (mbs.isRegistered(mbeanName))
+            mbs.unregisterMBean(mbeanName);
+        mbeanName = null;
+    }
+
+
+    @Override
+    public long getRecordCount()
+    {
+        return recordCount.sum();
+    }
+
+
+    @Override
+    public long getByteCount()
+    {
+        return byteCount.sum();
+    }
+
+
+    @Override
+    public long getErrorCount()
+    {
+        return errorCount.sum();
+    }
+
+
+    @Override
+    public double getMeanLatencyNanos()
+    {
+        return latencies.getMean();
+    }
+
+
+    @Override
+    public long getMaxLatencyNanos()
+    {
+        return latencies.getMax();
+    }
+
+
+    @Override
+    public long getLatencyPercentileNanos(double percentile)
+    {
+        return latencies.getValueAtPercentile(percentile);
+    }
+
+
+    @Override
+    public long getLatencyP50Nanos()
+    {
+        return latencies.getValueAtPercentile(50.0);
+    }
+
+
+    @Override
+    public long getLatencyP99Nanos()
+    {
+        return latencies.getValueAtPercentile(99.0);
+    }
+
+
+    @Override
+    public long getLatencyMaxNanos()
+    {
+        return latencies.getMax();
+    }
+
+
+    @Override
+    public Map<String, Long> getComponentTimeNanos()
+    {
+        Map<String, Long> times = new LinkedHashMap<>();
+        synchronized (componentTimes)
+        {
+            for (Map.Entry<String, LongAdder> entry: componentTimes.entrySet())
+                times.put(entry.getKey(), entry.getValue().sum());
+        }
+        return times;
+    }
+
+
+    @Override
+    public void reset()
+    {
+        recordCount.reset();
+        byteCount.reset();
+        errorCount.reset();
+        latencies.reset();
+
+        synchronized (componentTimes)
+        {
+            for (LongAdder timer: componentTimes.values())
+                timer.reset();
+        }
+    }
+}
@@ -62,7 +62,7 @@ public class XmlDataWriter extends AbstractDataWriter
 	    try
         {
     	    XMLOutputFactory factory = XMLOutputFactory.newInstance();
-            xmlWriter = factory.createXMLStreamWriter(outputStream);
+            xmlWriter = factory.createXMLStreamWriter(instrument(outputStream));
             
             namespace = ((XMLEncodingImpl)dataEncoding).getNamespace();
             prefix = ((XMLEncodingImpl)dataEncoding).getPrefix();
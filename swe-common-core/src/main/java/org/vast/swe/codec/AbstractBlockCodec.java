@@ -0,0 +1,153 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.codec;
+
+import java.io.IOException;
+import net.opengis.swe.v20.BinaryBlock;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataType;
+import org.vast.cdm.common.CDMException;
+import org.vast.cdm.common.CompressedStreamParser;
+import org.vast.cdm.common.CompressedStreamWriter;
+import org.vast.cdm.common.DataInputExt;
+import org.vast.cdm.common.DataOutputExt;
+import org.vast.data.AbstractDataBlock;
+
+
+/**
+ * <p>
+ * Base class for lossless codecs that compress the whole content of a
+ * binary block at once. Compressed data is framed with its length, like
+ * compressed blocks that are kept as-is, so that the stream can still be
+ * read by parsers that don't have the codec.<br/>
+ * The structure of the block (i.e. array sizes) must be known before the
+ * block is decoded.
+ * </p><p>
+ * Codecs don't keep any state between calls so they can be shared.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public abstract class AbstractBlockCodec implements CompressedStreamParser, CompressedStreamWriter
+{
+
+    @Override
+    public void init(DataComponent blockComponent, BinaryBlock binaryBlock) throws CDMException
+    {
+    }
+
+
+    @Override
+    public void decode(DataInputExt inputStream, DataComponent blockComponent) throws CDMException
+    {
+        byte[] bytes;
+
+        try
+        {
+            int blockSize = inputStream.readInt();
+            bytes = new byte[blockSize];
+            inputStream.readFully(bytes);
+        }
+        catch (IOException e)
+        {
+            throw new CDMException("Error while reading compressed block " + blockComponent.getName(), e);
+        }
+
+        try
+        {
+            decode(bytes, blockComponent, blockComponent.getData());
+        }
+        catch (RuntimeException e)
+        {
+            throw new CDMException("Cannot decode compressed block " + blockComponent.getName(), e);
+        }
+    }
+
+
+    @Override
+    public void encode(DataOutputExt outputStream, DataComponent blockComponent) throws CDMException
+    {
+        byte[] bytes;
+
+        try
+        {
+            bytes = encode(blockComponent, blockComponent.getData());
+        }
+        catch (RuntimeException e)
+        {
+            throw new CDMException("Cannot encode compressed block " + blockComponent.getName(), e);
+        }
+
+        try
+        {
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+        catch (IOException e)
+        {
+            throw new CDMException("Error while writing compressed block " + blockComponent.getName(), e);
+        }
+    }
+
+
+    /**
+     * Compresses all values of the datablock
+     * @param blockComponent
+     * @param data
+     * @return compressed bytes
+     * @throws CDMException if the datablock cannot be encoded with this codec
+     */
+    protected abstract byte[] encode(DataComponent blockComponent, DataBlock data) throws CDMException;
+
+
+    /**
+     * Decompresses values and assigns them to the datablock
+     * @param bytes compressed bytes
+     * @param blockComponent
+     * @param data datablock already sized to receive all values
+     * @throws CDMException if the datablock cannot be decoded with this codec
+     */
+    protected abstract void decode(byte[] bytes, DataComponent blockComponent, DataBlock data) throws CDMException;
+
+
+    /*
+     * Gets the type shared by all values of the datablock, or null if
+     * values have different types
+     */
+    protected static DataType getUniformDataType(DataBlock data)
+    {
+        DataType dataType = data.getDataType();
+        return (dataType == DataType.MIXED || dataType == null) ? null : dataType;
+    }
+
+
+    /*
+     * Gets the primitive array backing the datablock if it is stored on heap
+     */
+    protected static Object getPrimitiveArray(DataBlock data)
+    {
+        if (!(data instanceof AbstractDataBlock))
+            return null;
+
+        Object array = data.getUnderlyingObject();
+        if (array instanceof byte[] || array instanceof short[] || array instanceof int[] ||
+            array instanceof long[] || array instanceof float[] || array instanceof double[])
+            return array;
+
+        return null;
+    }
+}
@@ -0,0 +1,293 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataType;
+import org.vast.cdm.common.CDMException;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.ChunkCodec;
+
+
+/**
+ * <p>
+ * Block codec serializing all values of the block in big endian order and
+ * compressing them with a general purpose {@link ChunkCodec}
+ * (e.g. deflate or LZ4).<br/>
+ * Compressed data starts with the uncompressed size as a 32-bit integer.
+ * Strings are serialized as their UTF-8 byte length followed by the
+ * bytes, or -1 for null values.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class ChunkBlockCodec extends AbstractBlockCodec
+{
+    protected final ChunkCodec codec;
+
+
+    public ChunkBlockCodec(ChunkCodec codec)
+    {
+        this.codec = codec;
+    }
+
+
+    @Override
+    protected byte[] encode(DataComponent blockComponent, DataBlock data) throws CDMException
+    {
+        ByteBuffer raw = writeValues(data);
+        byte[] compressed = codec.compress(raw.array(), 0, raw.position());
+
+        byte[] bytes = new byte[compressed.length + 4];
+        ByteBuffer.wrap(bytes).putInt(raw.position());
+        System.arraycopy(compressed, 0, bytes, 4, compressed.length);
+        return bytes;
+    }
+
+
+    @Override
+    protected void decode(byte[] bytes, DataComponent blockComponent, DataBlock data) throws CDMException
+    {
+        int rawSize = ByteBuffer.wrap(bytes).getInt();
+        byte[] raw = new byte[rawSize];
+        codec.decompress(bytes, 4, bytes.length - 4, raw, rawSize);
+        readValues(ByteBuffer.wrap(raw), data);
+    }
+
+
+    protected static ByteBuffer writeValues(DataBlock data)
+    {
+        int numAtoms = data.getAtomCount();
+        DataType dataType = getUniformDataType(data);
+        Object array = getPrimitiveArray(data);
+
+        // bulk copy if values are all of the same type
+        if (array != null && dataType != null)
+        {
+            int start = ((AbstractDataBlock)data).getStartIndex();
+            ByteBuffer buf = ByteBuffer.allocate(numAtoms * getSize(dataType));
+
+            if (array instanceof byte[])
+                buf.put((byte[])array, start, numAtoms);
+            else if (array instanceof short[])
+                buf.asShortBuffer().put((short[])array, start, numAtoms);
+            else if (array instanceof int[])
+                buf.asIntBuffer().put((int[])array, start, numAtoms);
+            else if (array instanceof long[])
+                buf.asLongBuffer().put((long[])array, start, numAtoms);
+            else if (array instanceof float[])
+                buf.asFloatBuffer().put((float[])array, start, numAtoms);
+            else if (array instanceof double[])
+                buf.asDoubleBuffer().put((double[])array, start, numAtoms);
+
+            buf.position(buf.capacity());
+            return buf;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(Math.max(numAtoms * 8, 64));
+        for (int i = 0; i < numAtoms; i++)
+        {
+            DataType atomType = (dataType != null) ? dataType : data.getDataType(i);
+
+            if (atomType == DataType.ASCII_STRING || atomType == DataType.UTF_STRING)
+            {
+                String val = data.getStringValue(i);
+                byte[] utf8 = (val != null) ? val.getBytes(StandardCharsets.UTF_8) : null;
+                buf = ensureCapacity(buf, 4 + (utf8 != null ? utf8.length : 0));
+                buf.putInt(utf8 != null ? utf8.length : -1);
+                if (utf8 != null)
+                    buf.put(utf8);
+                continue;
+            }
+
+            buf = ensureCapacity(buf, 8);
+            switch (atomType)
+            {
+                case BOOLEAN:
+                    buf.put((byte)(data.getBooleanValue(i) ? 1 : 0));
+                    break;
+
+                case BYTE:
+                case UBYTE:
+                    buf.put(data.getByteValue(i));
+                    break;
+
+                case SHORT:
+                case USHORT:
+                    buf.putShort(data.getShortValue(i));
+                    break;
+
+                case INT:
+                    buf.putInt(data.getIntValue(i));
+                    break;
+
+                case UINT:
+                    buf.putInt((int)data.getLongValue(i));
+                    break;
+
+                case LONG:
+                case ULONG:
+                    buf.putLong(data.getLongValue(i));
+                    break;
+
+                case FLOAT:
+                    buf.putFloat(data.getFloatValue(i));
+                    break;
+
+                case DOUBLE:
+                    buf.putDouble(data.getDoubleValue(i));
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unsupported data type: " + atomType);
+            }
+        }
+
+        return buf;
+    }
+
+
+    protected static void readValues(ByteBuffer buf, DataBlock data)
+    {
+        int numAtoms = data.getAtomCount();
+        DataType dataType = getUniformDataType(data);
+        Object array = getPrimitiveArray(data);
+
+        // bulk copy if values are all of the same type
+        if (array != null && dataType != null)
+        {
+            int start = ((AbstractDataBlock)data).getStartIndex();
+
+            if (array instanceof byte[])
+                buf.get((byte[])array, start, numAtoms);
+            else if (array instanceof short[])
+                buf.asShortBuffer().get((short[])array, start, numAtoms);
+            else if (array instanceof int[])
+                buf.asIntBuffer().get((int[])array, start, numAtoms);
+            else if (array instanceof long[])
+                buf.asLongBuffer().get((long[])array, start, numAtoms);
+            else if (array instanceof float[])
+                buf.asFloatBuffer().get((float[])array, start, numAtoms);
+            else if (array instanceof double[])
+                buf.asDoubleBuffer().get((double[])array, start, numAtoms);
+
+            return;
+        }
+
+        for (int i = 0; i < numAtoms; i++)
+        {
+            DataType atomType = (dataType != null) ? dataType : data.getDataType(i);
+
+            switch (atomType)
+            {
+                case BOOLEAN:
+                    data.setBooleanValue(i, buf.get() != 0);
+                    break;
+
+                case BYTE:
+                    data.setByteValue(i, buf.get());
+                    break;
+
+                case UBYTE:
+                    data.setIntValue(i, buf.get() & 0xFF);
+                    break;
+
+                case SHORT:
+                    data.setShortValue(i, buf.getShort());
+                    break;
+
+                case USHORT:
+                    data.setIntValue(i, buf.getShort() & 0xFFFF);
+                    break;
+
+                case INT:
+                    data.setIntValue(i, buf.getInt());
+                    break;
+
+                case UINT:
+                    data.setLongValue(i, buf.getInt() & 0xFFFFFFFFL);
+                    break;
+
+                case LONG:
+                case ULONG:
+                    data.setLongValue(i, buf.getLong());
+                    break;
+
+                case FLOAT:
+                    data.setFloatValue(i, buf.getFloat());
+                    break;
+
+                case DOUBLE:
+                    data.setDoubleValue(i, buf.getDouble());
+                    break;
+
+                case ASCII_STRING:
+                case UTF_STRING:
+                    int len = buf.getInt();
+                    if (len >= 0)
+                    {
+                        data.setStringValue(i, new String(buf.array(), buf.position(), len, StandardCharsets.UTF_8));
+                        buf.position(buf.position() + len);
+                    }
+                    else
+                        data.setStringValue(i, null);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unsupported data type: " + atomType);
+            }
+        }
+    }
+
+
+    protected static int getSize(DataType dataType)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+            case BYTE:
+            case UBYTE:
+                return 1;
+
+            case SHORT:
+            case USHORT:
+                return 2;
+
+            case INT:
+            case UINT:
+            case FLOAT:
+                return 4;
+
+            default:
+                return 8;
+        }
+    }
+
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buf, int size)
+    {
+        if (buf.remaining() >= size)
+            return buf;
+
+        ByteBuffer newBuf = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + size));
+        buf.flip();
+        newBuf.put(buf);
+        return newBuf;
+    }
+}
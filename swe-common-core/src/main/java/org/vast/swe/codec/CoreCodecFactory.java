@@ -0,0 +1,136 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.codec;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.vast.cdm.common.CompressedStreamParser;
+import org.vast.cdm.common.CompressedStreamWriter;
+import org.vast.data.DeflateChunkCodec;
+import org.vast.data.LZ4ChunkCodec;
+import org.vast.swe.ICodecFactory;
+
+
+/**
+ * <p>
+ * Factory for the lossless codecs included in the core library:
+ * <ul>
+ * <li>deflate: zlib compression, with an optional level (e.g. "deflate:9")</li>
+ * <li>lz4: fast LZ4 compression</li>
+ * <li>delta-varint: delta and variable length integer encoding for
+ * counters and time stamps</li>
+ * </ul>
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class CoreCodecFactory implements ICodecFactory
+{
+    public static final String DEFLATE = "deflate";
+    public static final String LZ4 = "lz4";
+    public static final String DELTA_VARINT = "delta-varint";
+    public static final int DEFAULT_DEFLATE_LEVEL = 6;
+
+    private static final DeflateChunkCodec[] deflateCodecs = new DeflateChunkCodec[10];
+    private static final Map<String, Class<?>> codecClasses;
+
+    static
+    {
+        for (int i = 0; i < deflateCodecs.length; i++)
+            deflateCodecs[i] = new DeflateChunkCodec(i);
+
+        Map<String, Class<?>> classes = new LinkedHashMap<>();
+        classes.put(DEFLATE, ChunkBlockCodec.class);
+        classes.put(LZ4, ChunkBlockCodec.class);
+        classes.put(DELTA_VARINT, DeltaVarintCodec.class);
+        codecClasses = Collections.unmodifiableMap(classes);
+    }
+
+
+    @Override
+    public Map<String, Class<?>> getAvailableDecoders()
+    {
+        return codecClasses;
+    }
+
+
+    @Override
+    public Map<String, Class<?>> getAvailableEncoders()
+    {
+        return codecClasses;
+    }
+
+
+    @Override
+    public CompressedStreamParser createDecoder(String compressionType)
+    {
+        return createCodec(compressionType);
+    }
+
+
+    @Override
+    public CompressedStreamWriter createEncoder(String compressionType)
+    {
+        return createCodec(compressionType);
+    }
+
+
+    @Override
+    public boolean isStateless(String compressionType)
+    {
+        // built-in codecs don't keep any state between calls
+        return createCodec(compressionType) != null;
+    }
+
+
+    /**
+     * Creates a codec for the given compression type
+     * @param compressionType
+     * @return the new codec, or null if the compression type is not supported
+     */
+    public AbstractBlockCodec createCodec(String compressionType)
+    {
+        if (compressionType == null)
+            return null;
+
+        String type = compressionType.trim().toLowerCase();
+        if (LZ4.equals(type))
+            return new ChunkBlockCodec(LZ4ChunkCodec.DEFAULT);
+
+        if (DELTA_VARINT.equals(type))
+            return new DeltaVarintCodec();
+
+        if (DEFLATE.equals(type))
+            return new ChunkBlockCodec(deflateCodecs[DEFAULT_DEFLATE_LEVEL]);
+
+        if (type.startsWith(DEFLATE + ':'))
+        {
+            try
+            {
+                int level = Integer.parseInt(type.substring(DEFLATE.length() + 1));
+                if (level >= 0 && level < deflateCodecs.length)
+                    return new ChunkBlockCodec(deflateCodecs[level]);
+            }
+            catch (NumberFormatException e)
+            {
+                // unsupported level
+            }
+        }
+
+        return null;
+    }
+}
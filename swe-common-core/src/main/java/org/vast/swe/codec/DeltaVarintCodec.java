@@ -0,0 +1,195 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.codec;
+
+import java.util.Arrays;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataType;
+import org.vast.cdm.common.CDMException;
+
+
+/**
+ * <p>
+ * Block codec for arrays of slowly varying numbers such as counters or
+ * time stamps. Each value is encoded as the difference with the same field
+ * in the previous array element, mapped to an unsigned number with zigzag
+ * encoding and written as a variable length integer (7 bits per byte).
+ * </p><p>
+ * Floating point values are processed as their raw IEEE 754 bits, so the
+ * codec stays lossless but is only effective on smooth series.
+ * String values are not supported.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DeltaVarintCodec extends AbstractBlockCodec
+{
+
+    @Override
+    protected byte[] encode(DataComponent blockComponent, DataBlock data) throws CDMException
+    {
+        int numAtoms = data.getAtomCount();
+        int stride = getStride(blockComponent, numAtoms);
+        DataType dataType = getUniformDataType(data);
+        long[] previous = new long[stride];
+        byte[] buf = new byte[numAtoms * 10];
+        int pos = 0;
+        int col = 0;
+
+        for (int i = 0; i < numAtoms; i++)
+        {
+            long val = getBits(data, i, (dataType != null) ? dataType : data.getDataType(i));
+            long delta = val - previous[col];
+            previous[col] = val;
+            if (++col == stride)
+                col = 0;
+
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0)
+            {
+                buf[pos++] = (byte)((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[pos++] = (byte)zigzag;
+        }
+
+        return Arrays.copyOf(buf, pos);
+    }
+
+
+    @Override
+    protected void decode(byte[] bytes, DataComponent blockComponent, DataBlock data) throws CDMException
+    {
+        int numAtoms = data.getAtomCount();
+        int stride = getStride(blockComponent, numAtoms);
+        DataType dataType = getUniformDataType(data);
+        long[] previous = new long[stride];
+        int pos = 0;
+        int col = 0;
+
+        for (int i = 0; i < numAtoms; i++)
+        {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = bytes[pos++];
+                zigzag |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            }
+            while (b < 0);
+
+            long val = previous[col] + ((zigzag >>> 1) ^ -(zigzag & 1));
+            previous[col] = val;
+            if (++col == stride)
+                col = 0;
+
+            setBits(data, i, (dataType != null) ? dataType : data.getDataType(i), val);
+        }
+    }
+
+
+    /*
+     * Number of values in each array element, so that each field is
+     * only compared with the same field in the previous element
+     */
+    protected int getStride(DataComponent blockComponent, int numAtoms)
+    {
+        if (blockComponent instanceof DataArray)
+        {
+            int arraySize = ((DataArray)blockComponent).getComponentCount();
+            if (arraySize > 0 && numAtoms % arraySize == 0)
+                return numAtoms / arraySize;
+        }
+
+        return 1;
+    }
+
+
+    protected static long getBits(DataBlock data, int index, DataType dataType)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+                return data.getBooleanValue(index) ? 1 : 0;
+
+            case BYTE:
+                return data.getByteValue(index);
+
+            case UBYTE:
+            case SHORT:
+            case USHORT:
+            case INT:
+                return data.getIntValue(index);
+
+            case UINT:
+            case LONG:
+            case ULONG:
+                return data.getLongValue(index);
+
+            case FLOAT:
+                return Float.floatToRawIntBits(data.getFloatValue(index));
+
+            case DOUBLE:
+                return Double.doubleToRawLongBits(data.getDoubleValue(index));
+
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + dataType);
+        }
+    }
+
+
+    protected static void setBits(DataBlock data, int index, DataType dataType, long val)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+                data.setBooleanValue(index, val != 0);
+                break;
+
+            case BYTE:
+                data.setByteValue(index, (byte)val);
+                break;
+
+            case UBYTE:
+            case SHORT:
+            case USHORT:
+            case INT:
+                data.setIntValue(index, (int)val);
+                break;
+
+            case UINT:
+            case LONG:
+            case ULONG:
+                data.setLongValue(index, val);
+                break;
+
+            case FLOAT:
+                data.setFloatValue(index, Float.intBitsToFloat((int)val));
+                break;
+
+            case DOUBLE:
+                data.setDoubleValue(index, Double.longBitsToDouble(val));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + dataType);
+        }
+    }
+}
@@ -14,16 +14,28 @@ Copyright (C) 2012-2016 Sensia Software LLC. All Rights Reserved.
 
 package org.vast.swe.fast;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import org.vast.cdm.common.DataHandler;
 import org.vast.cdm.common.DataStreamParser;
 import org.vast.cdm.common.ErrorHandler;
 import org.vast.cdm.common.RawDataHandler;
+import org.vast.data.DataBlockPool;
+import org.vast.data.DataChoiceImpl;
+import org.vast.data.DataIterator;
+import org.vast.data.DataList;
+import org.vast.swe.StreamMetrics;
+import org.vast.swe.URIStreamHandler;
 import org.vast.util.Asserts;
 import net.opengis.swe.v20.BlockComponent;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.DataArray;
 import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
 import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataEncoding;
 
@@ -48,7 +60,20 @@ public abstract class AbstractDataParser extends DataBlockProcessor implements D
     
     DataEncoding dataEncoding;
     DataBlock dataBlk;    
-    boolean renewDataBlock;    
+    boolean renewDataBlock = true;
+    DataHandler dataHandler;
+    RawDataHandler rawHandler;
+    ErrorHandler errorHandler;
+    boolean bindComponents;
+    DataBlockPool blockPool;
+    DataBlock templateBlk;
+    long blockKey;
+    boolean blockKeyValid;
+    boolean trackStructure;
+    DataComponent[] structureComponents;
+    int[] structureState;
+    StreamMetrics metrics;
+    volatile boolean stopParsing;
     
     
     protected abstract boolean moreData() throws IOException;
@@ -59,33 +84,97 @@ public abstract class AbstractDataParser extends DataBlockProcessor implements D
     {
         try
         {
-            if (!processorTreeReady)
-            {
-                dataComponents.accept(this);
-                processorTreeReady = true;
-                init();
-            }
+            initProcessorTree();
             
             if (!moreData())
                 return null;
             
-            // get datablock object
-            if (dataBlk == null || renewDataBlock)
-                getNextDataBlock();
+            return parseRecord();
+        }
+        catch (Exception e)
+        {
+            if (metrics != null)
+                metrics.recordError();
+            throw new IOException("Error while parsing record", e);
+        }
+    }
+    
+    
+    /**
+     * Parses several records in a single call.<br/>
+     * A new datablock is used for each record unless renewDataBlock is false,
+     * in which case all entries refer to the same datablock.
+     * @param dst array receiving the parsed records
+     * @param max maximum number of records to parse
+     * @return number of records parsed, 0 if the end of stream was reached
+     * @throws IOException if a record cannot be parsed. Records parsed
+     * before the error are lost
+     */
+    @Override
+    public int parseNextBlocks(DataBlock[] dst, int max) throws IOException
+    {
+        Asserts.checkArgument(max >= 0 && max <= dst.length, "Invalid batch size: %s", max);
+        int count = 0;
+        
+        try
+        {
+            initProcessorTree();
             
-            // go once through the tree of parser atoms
-            int index = rootProcessor.process(dataBlk, 0);
-            Asserts.checkState(index == dataBlk.getAtomCount(), "Data block wasn't fully deserialized");
+            while (count < max && moreData())
+                dst[count++] = parseRecord();
             
-            return dataBlk;
+            return count;
         }
         catch (Exception e)
         {
-            throw new IOException("Error while parsing text record", e);
+            if (metrics != null)
+                metrics.recordError();
+            throw new IOException("Error while parsing record", e);
         }
     }
     
     
+    protected void initProcessorTree()
+    {
+        if (!processorTreeReady)
+        {
+            dataComponents.accept(this);
+            if (metrics != null)
+                addComponentTimers(metrics);
+            processorTreeReady = true;
+            structureComponents = null;
+            blockKeyValid = false;
+            init();
+        }
+    }
+    
+    
+    /*
+     * Parses the next record, once we know there is one
+     */
+    protected DataBlock parseRecord() throws IOException
+    {
+        long t0 = (metrics != null) ? System.nanoTime() : 0;
+        
+        // get datablock object
+        if (dataBlk == null || renewDataBlock)
+            getNextDataBlock();
+        
+        // go once through the tree of parser atoms
+        int index = rootProcessor.process(dataBlk, 0);
+        Asserts.checkState(index == dataBlk.getAtomCount(), "Data block wasn't fully deserialized");
+        
+        // remember structure before the block is handed out
+        if (blockPool != null)
+            updateBlockKey();
+        
+        if (metrics != null)
+            metrics.recordProcessed(System.nanoTime() - t0);
+        
+        return dataBlk;
+    }
+    
+    
     @Override
     public void reset()
     {
@@ -97,14 +186,164 @@ public abstract class AbstractDataParser extends DataBlockProcessor implements D
     {
         // depends if parsing to array block
         if (dataBlk != null)
-            dataBlk = dataBlk.clone();
+        {
+            // reuse a block handed back to the pool if possible
+            // the previous block is not cloned in this case since
+            // it may already have been recycled by another parser
+            DataBlock recycledBlk = (blockPool != null) ? blockPool.acquire(blockKey, dataBlk) : null;
+            if (recycledBlk != null)
+                dataBlk = recycledBlk;
+            else if (blockPool != null && templateBlk != null)
+                dataBlk = templateBlk.clone();
+            else
+                dataBlk = dataBlk.clone();
+        }
         else
+        {
+            if (bindComponents)
+                initArraySizes();
             dataBlk = dataComponents.createDataBlock();
+            templateBlk = (blockPool != null) ? dataBlk.renew() : null;
+        }
+        
+        // bind component tree to new datablock so that array sizes
+        // and choice items can be updated in place while parsing
+        if (bindComponents)
+            dataComponents.setData(dataBlk);
         
         return dataBlk;
     }
     
     
+    /*
+     * Updates the structure key of the last parsed block. Since the key is
+     * costly to compute, it is only recomputed when the size of a variable
+     * size array or the selected item of a choice has changed
+     */
+    protected void updateBlockKey()
+    {
+        if (structureComponents == null)
+        {
+            // state can only be tracked if the component tree is bound and
+            // no array element can change structure independently
+            List<DataComponent> comps = new ArrayList<>();
+            trackStructure = bindComponents && collectStructureComponents(dataComponents, false, comps);
+            structureComponents = comps.toArray(new DataComponent[comps.size()]);
+            structureState = new int[structureComponents.length];
+        }
+
+        boolean changed = !blockKeyValid || !trackStructure;
+        for (int i = 0; i < structureComponents.length; i++)
+        {
+            DataComponent comp = structureComponents[i];
+            int state = (comp instanceof DataChoice) ? ((DataChoiceImpl)comp).getSelected() : comp.getComponentCount();
+            if (state != structureState[i])
+            {
+                structureState[i] = state;
+                changed = true;
+            }
+        }
+
+        if (changed)
+        {
+            blockKey = DataBlockPool.getStructureKey(dataBlk);
+            blockKeyValid = true;
+        }
+    }
+
+
+    /*
+     * Collects variable size arrays and choices that determine the block structure.
+     * Returns false if one of them is nested in an array
+     */
+    private boolean collectStructureComponents(DataComponent comp, boolean inArray, List<DataComponent> comps)
+    {
+        boolean isArray = comp instanceof DataArray;
+        if ((isArray && ((DataArray)comp).isVariableSize()) || comp instanceof DataChoice)
+        {
+            if (inArray)
+                return false;
+            comps.add(comp);
+        }
+
+        if (isArray)
+            return collectStructureComponents(((DataArray)comp).getElementType(), true, comps);
+
+        for (int i = 0; i < comp.getComponentCount(); i++)
+        {
+            if (!collectStructureComponents(comp.getComponent(i), inArray, comps))
+                return false;
+        }
+
+        return true;
+    }
+
+
+    /*
+     * Makes sure size components of variable size arrays carry a value
+     * so that the first datablock is consistent with the actual array sizes
+     */
+    protected void initArraySizes()
+    {
+        for (DataComponent comp: new DataIterator(dataComponents))
+        {
+            if (comp instanceof DataArray && ((DataArray)comp).isVariableSize())
+            {
+                Count sizeComp = ((DataArray)comp).getArraySizeComponent();
+                if (!sizeComp.hasData())
+                    sizeComp.renewDataBlock();
+            }
+        }
+    }
+    
+    
+    /**
+     * Sets the pool from which new data blocks are obtained when
+     * renewDataBlock is true, instead of cloning the previous block.<br/>
+     * Consumers should hand blocks back with {@link DataBlockPool#release(DataBlock)}
+     * when they are done with them. The same pool can be shared by several
+     * parsers, including ones running in different threads.
+     * @param blockPool pool to use or null to allocate a new block for each record
+     */
+    public void setDataBlockPool(DataBlockPool blockPool)
+    {
+        this.blockPool = blockPool;
+    }
+    
+    
+    public DataBlockPool getDataBlockPool()
+    {
+        return blockPool;
+    }
+    
+    
+    /**
+     * Enables collection of statistics about parsed records.<br/>
+     * This must be called before the input is set for bytes to be counted.
+     * @param metrics object collecting the statistics or null to disable collection
+     */
+    public void setMetrics(StreamMetrics metrics)
+    {
+        this.metrics = metrics;
+        this.processorTreeReady = false;
+    }
+    
+    
+    public StreamMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    
+    /*
+     * Wraps the input stream to count bytes read, if metrics are enabled
+     */
+    protected InputStream instrument(InputStream is)
+    {
+        return (metrics != null) ? metrics.instrument(is) : is;
+    }
+    
+    
     @Override
     public void setDataEncoding(DataEncoding encoding)
     {
@@ -124,9 +363,24 @@ public abstract class AbstractDataParser extends DataBlockProcessor implements D
     public void setParentArray(BlockComponent parentArray)
     {
         this.parentArray = parentArray;
-        this.dataComponents = parentArray.getElementType();
         ((DataComponent)parentArray).renewDataBlock();
         parentArrayIndex = 0;
+        
+        // records are appended one by one to data lists but
+        // fixed size arrays are parsed in one pass, directly to the array datablock
+        if (parentArray instanceof DataList)
+        {
+            this.dataComponents = parentArray.getElementType();
+            this.renewDataBlock = true;
+        }
+        else
+        {
+            this.dataComponents = (DataComponent)parentArray;
+            this.dataBlk = dataComponents.getData();
+            this.renewDataBlock = false;
+        }
+        
+        this.processorTreeReady = false;
     }
     
     
@@ -144,69 +398,97 @@ public abstract class AbstractDataParser extends DataBlockProcessor implements D
     @Override
     public void parse(String uri) throws IOException
     {
-        throw new UnsupportedOperationException();
+        InputStream in = URIStreamHandler.openStream(uri);
+        parse(new BufferedInputStream(in));
     }
 
     
     @Override
     public void parse(URI uri) throws IOException
     {
-        throw new UnsupportedOperationException();
+        InputStream in = URIStreamHandler.openStream(uri);
+        parse(new BufferedInputStream(in));
     }
     
     
     @Override
     public void parse(InputStream inputStream) throws IOException
     {
-        throw new UnsupportedOperationException();
+        stopParsing = false;
+        
+        try
+        {
+            setInput(inputStream);
+            
+            if (dataHandler != null)
+                dataHandler.startData(dataComponents);
+            
+            DataBlock data;
+            while (!stopParsing && (data = parseNextBlock()) != null)
+            {
+                if (parentArray instanceof DataList)
+                    ((DataList)parentArray).addData(data);
+                
+                if (dataHandler != null)
+                    dataHandler.endData(dataComponents, data);
+                
+                // whole array is parsed at once if not a list
+                if (parentArray != null && !(parentArray instanceof DataList))
+                    break;
+            }
+        }
+        finally
+        {
+            close();
+        }
     }
     
     
     @Override
     public DataHandler getDataHandler()
     {
-        throw new UnsupportedOperationException();
+        return dataHandler;
     }
 
 
     @Override
     public RawDataHandler getRawDataHandler()
     {
-        throw new UnsupportedOperationException();
+        return rawHandler;
     }
 
 
     @Override
     public ErrorHandler getErrorHandler()
     {
-        throw new UnsupportedOperationException();
+        return errorHandler;
     }
 
 
     @Override
     public void setDataHandler(DataHandler handler)
     {
-        throw new UnsupportedOperationException();
+        this.dataHandler = handler;
     }
 
 
     @Override
     public void setRawDataHandler(RawDataHandler handler)
     {
-        throw new UnsupportedOperationException();
+        this.rawHandler = handler;
     }
 
 
     @Override
     public void setErrorHandler(ErrorHandler handler)
     {
-        throw new UnsupportedOperationException();
+        this.errorHandler = handler;
     }
 
 
     @Override
     public void stop()
     {
-        throw new UnsupportedOperationException();
+        stopParsing = true;
     }
 }
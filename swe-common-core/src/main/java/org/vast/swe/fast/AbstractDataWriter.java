@@ -20,9 +20,12 @@ import org.vast.cdm.common.DataHandler;
 import org.vast.cdm.common.DataStreamWriter;
 import org.vast.cdm.common.ErrorHandler;
 import org.vast.cdm.common.RawDataHandler;
+import org.vast.data.DataList;
+import org.vast.swe.StreamMetrics;
 import org.vast.util.Asserts;
 import net.opengis.swe.v20.BlockComponent;
 import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataEncoding;
 
 
@@ -39,30 +42,114 @@ public abstract class AbstractDataWriter extends DataBlockProcessor implements D
     BlockComponent parentArray;
     int parentArrayIndex;    
     DataEncoding dataEncoding;
+    DataHandler dataHandler;
+    RawDataHandler rawHandler;
+    ErrorHandler errorHandler;
+    StreamMetrics metrics;
+    volatile boolean stopWriting;
     
         
     @Override
     public void write(DataBlock data) throws IOException
     {
         Asserts.checkNotNull(data, "DataBlock");
+        beforeRecord(data);
         
         try
         {
-            if (!processorTreeReady)
+            processRecord(data);
+        }
+        catch (Exception e)
+        {
+            if (metrics != null)
+                metrics.recordError();
+            throw new IOException("Error while writing record", e);
+        }
+        
+        afterRecord(data);
+    }
+    
+    
+    /**
+     * Writes several records in a single call.<br/>
+     * Records are encoded one after the other within a single error handling
+     * block and the output is only flushed once all of them have been written.
+     */
+    @Override
+    public void write(DataBlock[] src, int off, int len) throws IOException
+    {
+        Asserts.checkPositionIndexes(off, off + len, src.length);
+        int i = off;
+        
+        try
+        {
+            for (; i < off + len; i++)
             {
-                checkEnabled(dataComponents);
-                dataComponents.accept(this);
-                processorTreeReady = true;
-                init();
+                DataBlock data = Asserts.checkNotNull(src[i], "DataBlock");
+                beforeRecord(data);
+                processRecord(data);
+                afterRecord(data);
             }
-            
-            // go once through the tree of parser atoms
-            int index = rootProcessor.process(data, 0);
-            Asserts.checkState(index == data.getAtomCount(), "Data block wasn't fully serialized");
         }
         catch (Exception e)
         {
-            throw new IOException("Error while writing record", e);
+            if (metrics != null)
+                metrics.recordError();
+            throw new IOException("Error while writing record " + i + " of batch", e);
+        }
+        
+        flush();
+    }
+    
+    
+    /*
+     * Encodes a single record by going through the tree of processors
+     */
+    protected void processRecord(DataBlock data) throws IOException
+    {
+        initProcessorTree();
+        long t0 = (metrics != null) ? System.nanoTime() : 0;
+        
+        // go once through the tree of parser atoms
+        int index = rootProcessor.process(data, 0);
+        Asserts.checkState(index == data.getAtomCount(), "Data block wasn't fully serialized");
+        
+        if (metrics != null)
+            metrics.recordProcessed(System.nanoTime() - t0);
+    }
+    
+    
+    /**
+     * Called before each record is encoded, including records written in batch.<br/>
+     * Subclasses can override to write separators or bind components to the record.
+     * @param data record about to be written
+     * @throws IOException
+     */
+    protected void beforeRecord(DataBlock data) throws IOException
+    {
+    }
+    
+    
+    /**
+     * Called after each record has been encoded, including records written in batch
+     * @param data record that was just written
+     * @throws IOException
+     */
+    protected void afterRecord(DataBlock data) throws IOException
+    {
+    }
+    
+    
+    protected void initProcessorTree()
+    {
+        if (!processorTreeReady)
+        {
+            checkEnabled(dataComponents);
+            dataComponents.accept(this);
+            if (metrics != null)
+                addComponentTimers(metrics);
+            processorTreeReady = true;
+            init();
         }
     }
     
@@ -106,62 +193,128 @@ public abstract class AbstractDataWriter extends DataBlockProcessor implements D
     {
         this.parentArray = parentArray;
         parentArrayIndex = 0;
+        
+        // records of data lists are written one by one but
+        // fixed size arrays are written in one pass
+        if (parentArray instanceof DataList)
+            this.dataComponents = parentArray.getElementType();
+        else
+            this.dataComponents = (DataComponent)parentArray;
+        
+        this.processorTreeReady = false;
+    }
+    
+    
+    /**
+     * Enables collection of statistics about written records.<br/>
+     * This must be called before the output is set for bytes to be counted.
+     * @param metrics object collecting the statistics or null to disable collection
+     */
+    public void setMetrics(StreamMetrics metrics)
+    {
+        this.metrics = metrics;
+        this.processorTreeReady = false;
+    }
+    
+    
+    public StreamMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    
+    /*
+     * Wraps the output stream to count bytes written, if metrics are enabled
+     */
+    protected OutputStream instrument(OutputStream os)
+    {
+        return (metrics != null) ? metrics.instrument(os) : os;
     }
     
     
     @Override
     public void write(OutputStream outputStream) throws IOException
     {
-        throw new UnsupportedOperationException();
+        Asserts.checkState(dataHandler != null || parentArray != null, "A DataHandler or parent array must be set");
+        stopWriting = false;
+        setOutput(outputStream);
+        
+        if (parentArray instanceof DataList)
+        {
+            DataList dataList = (DataList)parentArray;
+            while (!stopWriting && parentArrayIndex < dataList.getComponentCount())
+            {
+                DataBlock data = dataList.getComponent(parentArrayIndex++).getData();
+                write(data);
+                
+                if (dataHandler != null)
+                    dataHandler.endData(dataComponents, data);
+            }
+        }
+        else if (parentArray != null)
+        {
+            write(((DataComponent)parentArray).getData());
+        }
+        else
+        {
+            // let handler provide records until told to stop
+            while (!stopWriting)
+            {
+                dataHandler.startData(dataComponents);
+                DataBlock data = dataComponents.getData();
+                write(data);
+                dataHandler.endData(dataComponents, data);
+            }
+        }
     }
     
     
     @Override
     public DataHandler getDataHandler()
     {
-        throw new UnsupportedOperationException();
+        return dataHandler;
     }
 
 
     @Override
     public RawDataHandler getRawDataHandler()
     {
-        throw new UnsupportedOperationException();
+        return rawHandler;
     }
 
 
     @Override
     public ErrorHandler getErrorHandler()
     {
-        throw new UnsupportedOperationException();
+        return errorHandler;
     }
     
 
     @Override
     public void setDataHandler(DataHandler handler)
     {
-        throw new UnsupportedOperationException();
+        this.dataHandler = handler;
     }
 
 
     @Override
     public void setRawDataHandler(RawDataHandler handler)
     {
-        throw new UnsupportedOperationException();
+        this.rawHandler = handler;
     }
 
 
     @Override
     public void setErrorHandler(ErrorHandler handler)
     {
-        throw new UnsupportedOperationException();
+        this.errorHandler = handler;
     }
 
 
     @Override
     public void stop()
     {
-        throw new UnsupportedOperationException();
+        stopWriting = true;
     }
 
 }
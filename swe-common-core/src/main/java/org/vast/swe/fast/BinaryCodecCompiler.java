@@ -0,0 +1,961 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import net.opengis.swe.v20.BinaryMember;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.RangeComponent;
+import net.opengis.swe.v20.ScalarComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.AbstractDataComponentImpl;
+import org.vast.data.BinaryComponentImpl;
+import org.vast.data.DataBlockBoolean;
+import org.vast.data.DataBlockByte;
+import org.vast.data.DataBlockDouble;
+import org.vast.data.DataBlockFloat;
+import org.vast.data.DataBlockInt;
+import org.vast.data.DataBlockLong;
+import org.vast.data.DataBlockMixed;
+import org.vast.data.DataBlockShort;
+import org.vast.data.DataBlockString;
+import org.vast.data.DataBlockTuple;
+import org.vast.swe.DataInputByteBuffer;
+import org.vast.swe.DataOutputByteBuffer;
+
+
+/**
+ * <p>
+ * Generates and compiles binary codecs specialized for a given record
+ * structure, as an alternative to the generic processor tree used by
+ * {@link BinaryDataParser} and {@link BinaryDataWriter}.
+ * </p><p>
+ * The generated class reads or writes all values with straight-line code
+ * (fields are unrolled and only arrays are kept as loops), so there is no
+ * dispatch through {@link DataBlockProcessor.AtomProcessor} objects. Since
+ * each class only sees records of one structure, calls to the datablock
+ * stay monomorphic and can be inlined by the JIT. The code is also
+ * specialized for the layout of datablocks created for the structure: child
+ * blocks of mixed records and tuples are accessed with their concrete class
+ * and the primitive arrays backing them are read and written directly.
+ * Datablocks with another layout are processed through the
+ * {@link DataBlock} interface.
+ * </p><p>
+ * Source code is compiled in memory with the system Java compiler, so this
+ * is only available when running on a JDK. Codecs are stateless and cached
+ * by structure fingerprint so each structure is only compiled once.
+ * Structures with choices, variable size arrays or compressed blocks
+ * are not supported.
+ * </p><p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class BinaryCodecCompiler
+{
+    static final Logger log = LoggerFactory.getLogger(BinaryCodecCompiler.class);
+    static final String GEN_PACKAGE = "org.vast.swe.fast.gen";
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final Map<String, Optional<RecordCodec>> codecs = new ConcurrentHashMap<>();
+    final AtomicInteger classCount = new AtomicInteger();
+    final AtomicBoolean unavailableLogged = new AtomicBoolean();
+
+
+    /**
+     * <p>
+     * Interface implemented by generated codecs
+     * </p>
+     */
+    public interface RecordCodec
+    {
+        /**
+         * Reads all values of a record
+         * @param in input to read from
+         * @param data datablock receiving the values
+         * @param index index of the first value in the datablock
+         * @return index following the last value read
+         * @throws IOException if values cannot be read
+         */
+        public int read(DataInputByteBuffer in, DataBlock data, int index) throws IOException;
+
+
+        /**
+         * Writes all values of a record
+         * @param out output to write to
+         * @param data datablock containing the values
+         * @param index index of the first value in the datablock
+         * @return index following the last value written
+         * @throws IOException if values cannot be written
+         */
+        public int write(DataOutputByteBuffer out, DataBlock data, int index) throws IOException;
+    }
+
+
+    /*
+     * Simplified structure, only keeping what affects generated code
+     */
+    static abstract class Node
+    {
+        abstract int getAtomCount();
+        abstract void collectScalars(List<Node> scalars);
+    }
+
+
+    static class ScalarNode extends Node
+    {
+        final DataType dataType;
+
+        ScalarNode(DataType dataType)
+        {
+            this.dataType = dataType;
+        }
+
+        @Override
+        int getAtomCount()
+        {
+            return 1;
+        }
+
+        @Override
+        void collectScalars(List<Node> scalars)
+        {
+            scalars.add(this);
+        }
+
+        @Override
+        public String toString()
+        {
+            return dataType.name();
+        }
+    }
+
+
+    static class GroupNode extends Node
+    {
+        final List<Node> children = new ArrayList<>();
+
+        @Override
+        int getAtomCount()
+        {
+            int count = 0;
+            for (Node child: children)
+                count += child.getAtomCount();
+            return count;
+        }
+
+        @Override
+        void collectScalars(List<Node> scalars)
+        {
+            for (Node child: children)
+                child.collectScalars(scalars);
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder buf = new StringBuilder("{");
+            for (Node child: children)
+                buf.append(child).append(',');
+            if (!children.isEmpty())
+                buf.setLength(buf.length() - 1);
+            return buf.append('}').toString();
+        }
+    }
+
+
+    static class ArrayNode extends Node
+    {
+        final int size;
+        final Node eltNode;
+
+        ArrayNode(int size, Node eltNode)
+        {
+            this.size = size;
+            this.eltNode = eltNode;
+        }
+
+        @Override
+        int getAtomCount()
+        {
+            return size * eltNode.getAtomCount();
+        }
+
+        @Override
+        void collectScalars(List<Node> scalars)
+        {
+            for (int i = 0; i < size; i++)
+                eltNode.collectScalars(scalars);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[" + size + ":" + eltNode + "]";
+        }
+    }
+
+
+    /*
+     * Layout of datablocks created for the structure, i.e. concrete class
+     * and size of each block, down to blocks holding the values
+     */
+    static class BlockLayout
+    {
+        final Class<?> blockClass;
+        final int atomCount;
+        final List<BlockLayout> children = new ArrayList<>();
+
+        BlockLayout(Class<?> blockClass, int atomCount)
+        {
+            this.blockClass = blockClass;
+            this.atomCount = atomCount;
+        }
+
+        boolean isComposite()
+        {
+            return blockClass == DataBlockMixed.class || blockClass == DataBlockTuple.class;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder buf = new StringBuilder(blockClass.getSimpleName());
+            buf.append('[').append(atomCount).append(']');
+            if (isComposite())
+            {
+                buf.append('{');
+                for (BlockLayout child: children)
+                    buf.append(child).append(',');
+                buf.setLength(buf.length() - 1);
+                buf.append('}');
+            }
+            return buf.toString();
+        }
+    }
+
+
+    /*
+     * Keeps class files produced by the compiler in memory
+     */
+    static class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager>
+    {
+        final Map<String, ByteArrayOutputStream> classFiles = new HashMap<>();
+
+        MemoryFileManager(JavaFileManager fileManager)
+        {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling)
+        {
+            URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind)
+            {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    classFiles.put(className, os);
+                    return os;
+                }
+            };
+        }
+    }
+
+
+    /*
+     * Loads generated classes, delegating to the class loader of this
+     * library so they link with the same datablock and stream classes
+     */
+    static class MemoryClassLoader extends ClassLoader
+    {
+        final Map<String, ByteArrayOutputStream> classFiles;
+
+        MemoryClassLoader(Map<String, ByteArrayOutputStream> classFiles)
+        {
+            super(BinaryCodecCompiler.class.getClassLoader());
+            this.classFiles = classFiles;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException
+        {
+            ByteArrayOutputStream os = classFiles.get(name);
+            if (os == null)
+                throw new ClassNotFoundException(name);
+
+            byte[] bytes = os.toByteArray();
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+
+    /*
+     * Lazy initialization on first access, guaranteed thread-safe by the JVM
+     */
+    private static class Holder
+    {
+        static final BinaryCodecCompiler INSTANCE = new BinaryCodecCompiler();
+    }
+
+
+    public static BinaryCodecCompiler getInstance()
+    {
+        return Holder.INSTANCE;
+    }
+
+
+    /**
+     * @return true if codecs can be compiled in the current runtime
+     */
+    public boolean isAvailable()
+    {
+        return compiler != null;
+    }
+
+
+    /**
+     * Gets the codec for the given structure, generating it if needed.<br/>
+     * Binary encoding info must have been assigned to all components.
+     * @param dataComponents root of the component tree describing records
+     * @return the codec or null if the structure is not supported or the
+     * codec cannot be compiled
+     */
+    public RecordCodec getCodec(DataComponent dataComponents)
+    {
+        if (compiler == null)
+        {
+            if (unavailableLogged.compareAndSet(false, true))
+                log.warn("No Java compiler available in this runtime, binary codecs will not be compiled");
+            return null;
+        }
+
+        Node schema = buildNode(dataComponents);
+        if (schema == null)
+            return null;
+
+        BlockLayout layout = buildLayout(schema, dataComponents);
+        String key = (layout != null) ? schema + " " + layout : schema.toString();
+        return codecs.computeIfAbsent(key, k -> Optional.ofNullable(compile(schema, layout))).orElse(null);
+    }
+
+
+    /**
+     * Generates the source code of the codec for the given structure,
+     * without compiling it. This is mainly useful for debugging.
+     * @param dataComponents root of the component tree describing records
+     * @return the source code or null if the structure is not supported
+     */
+    public String getSource(DataComponent dataComponents)
+    {
+        Node schema = buildNode(dataComponents);
+        if (schema == null)
+            return null;
+
+        return generateSource("BinaryCodec", schema, buildLayout(schema, dataComponents));
+    }
+
+
+    /**
+     * @return Number of structures for which a codec was requested
+     */
+    public int getCacheSize()
+    {
+        return codecs.size();
+    }
+
+
+    /*
+     * Returns null if some components are not supported
+     */
+    protected Node buildNode(DataComponent comp)
+    {
+        BinaryMember binaryInfo = ((AbstractDataComponentImpl)comp).getEncodingInfo();
+
+        if (comp instanceof ScalarComponent || comp instanceof RangeComponent)
+        {
+            if (!(binaryInfo instanceof BinaryComponentImpl))
+                return null;
+
+            ScalarNode node = new ScalarNode(((BinaryComponentImpl)binaryInfo).getCdmDataType());
+            if (comp instanceof ScalarComponent)
+                return node;
+
+            // both range values are encoded with the range data type
+            GroupNode range = new GroupNode();
+            range.children.add(node);
+            range.children.add(node);
+            return range;
+        }
+
+        // compressed blocks and dynamic structures are not supported
+        if (BinaryEncodingUtils.getCompression(comp) != null || comp instanceof DataChoice)
+            return null;
+
+        if (comp instanceof DataArray)
+        {
+            DataArray array = (DataArray)comp;
+            if (array.isVariableSize())
+                return null;
+
+            Node eltNode = buildNode(array.getElementType());
+            return eltNode != null ? new ArrayNode(array.getComponentCount(), eltNode) : null;
+        }
+
+        GroupNode group = new GroupNode();
+        for (int i = 0; i < comp.getComponentCount(); i++)
+        {
+            Node child = buildNode(comp.getComponent(i));
+            if (child == null)
+                return null;
+            group.children.add(child);
+        }
+
+        return group;
+    }
+
+
+    /*
+     * Returns null if datablocks created for the structure don't have a
+     * layout that lines up with the simplified structure
+     */
+    protected BlockLayout buildLayout(Node schema, DataComponent comp)
+    {
+        BlockLayout layout = buildLayout((AbstractDataBlock)comp.createDataBlock());
+        return (layout != null && matches(schema, layout)) ? layout : null;
+    }
+
+
+    protected BlockLayout buildLayout(AbstractDataBlock data)
+    {
+        if (data == null)
+            return null;
+
+        // generated code must be able to reference the block class
+        Class<?> blockClass = data.getClass();
+        if (!Modifier.isPublic(blockClass.getModifiers()) || blockClass.getCanonicalName() == null)
+            return null;
+
+        BlockLayout layout = new BlockLayout(blockClass, data.getAtomCount());
+        if (layout.isComposite())
+        {
+            AbstractDataBlock[] children = (AbstractDataBlock[])data.getUnderlyingObject();
+            if (data.getStartIndex() != 0 || children.length == 0)
+                return null;
+
+            for (AbstractDataBlock child: children)
+            {
+                BlockLayout childLayout = buildLayout(child);
+                if (childLayout == null)
+                    return null;
+                layout.children.add(childLayout);
+            }
+        }
+
+        return layout;
+    }
+
+
+    /*
+     * Checks that each block holds the values of the corresponding node.
+     * Mixed blocks have one child per group member while tuples have one
+     * single value child per scalar
+     */
+    protected boolean matches(Node node, BlockLayout layout)
+    {
+        if (node.getAtomCount() != layout.atomCount)
+            return false;
+
+        if (layout.blockClass == DataBlockMixed.class)
+        {
+            if (!(node instanceof GroupNode) || ((GroupNode)node).children.size() != layout.children.size())
+                return false;
+
+            for (int i = 0; i < layout.children.size(); i++)
+            {
+                if (!matches(((GroupNode)node).children.get(i), layout.children.get(i)))
+                    return false;
+            }
+        }
+        else if (layout.blockClass == DataBlockTuple.class)
+        {
+            List<Node> scalars = new ArrayList<>();
+            node.collectScalars(scalars);
+            if (scalars.size() != layout.children.size())
+                return false;
+
+            for (BlockLayout child: layout.children)
+            {
+                if (child.isComposite() || child.atomCount != 1)
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    protected RecordCodec compile(Node schema, BlockLayout layout)
+    {
+        String className = "BinaryCodec" + classCount.incrementAndGet();
+        String source = generateSource(className, schema, layout);
+
+        URI uri = URI.create("string:///" + GEN_PACKAGE.replace('.', '/') + '/' + className + Kind.SOURCE.extension);
+        JavaFileObject sourceFile = new SimpleJavaFileObject(uri, Kind.SOURCE)
+        {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors)
+            {
+                return source;
+            }
+        };
+
+        try (MemoryFileManager fileManager = new MemoryFileManager(compiler.getStandardFileManager(null, null, null)))
+        {
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            List<String> options = Arrays.asList("-classpath", getClassPath(), "-g:none");
+            boolean ok = compiler.getTask(null, fileManager, diagnostics, options, null, Collections.singletonList(sourceFile)).call();
+
+            if (!ok)
+            {
+                for (Diagnostic<? extends JavaFileObject> d: diagnostics.getDiagnostics())
+                    log.debug("{}", d);
+                log.warn("Cannot compile binary codec for structure {}", schema);
+                return null;
+            }
+
+            ClassLoader classLoader = new MemoryClassLoader(fileManager.classFiles);
+            Class<?> codecClass = classLoader.loadClass(GEN_PACKAGE + '.' + className);
+            log.debug("Compiled binary codec {} for structure {}", className, schema);
+            return (RecordCodec)codecClass.getDeclaredConstructor().newInstance();
+        }
+        catch (Exception e)
+        {
+            log.warn("Cannot compile binary codec for structure {}", schema, e);
+            return null;
+        }
+    }
+
+
+    /*
+     * Includes locations this library was loaded from, in case it is not
+     * in the system classpath
+     */
+    protected String getClassPath()
+    {
+        StringBuilder classPath = new StringBuilder(System.getProperty("java.class.path", ""));
+
+        for (Class<?> c: new Class<?>[] {DataBlock.class, BinaryCodecCompiler.class})
+        {
+            try
+            {
+                CodeSource src = c.getProtectionDomain().getCodeSource();
+                if (src != null && src.getLocation() != null)
+                    classPath.append(File.pathSeparatorChar).append(new File(src.getLocation().toURI()).getPath());
+            }
+            catch (Exception e)
+            {
+                log.trace("Cannot get location of {}", c, e);
+            }
+        }
+
+        return classPath.toString();
+    }
+
+
+    protected String generateSource(String className, Node schema, BlockLayout layout)
+    {
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(GEN_PACKAGE).append(";\n\n");
+        src.append("import java.io.IOException;\n");
+        src.append("import net.opengis.swe.v20.DataBlock;\n");
+        src.append("import org.vast.data.*;\n");
+        src.append("import org.vast.swe.DataInputByteBuffer;\n");
+        src.append("import org.vast.swe.DataOutputByteBuffer;\n\n");
+        src.append("// codec for structure ").append(schema).append('\n');
+        if (layout != null)
+            src.append("// specialized for datablock layout ").append(layout).append('\n');
+        src.append("public final class ").append(className).append(" implements ")
+           .append(RecordCodec.class.getCanonicalName()).append("\n{\n");
+
+        if (layout != null)
+        {
+            src.append("    static boolean is(DataBlock b, Class<?> c, int atomCount)\n    {\n");
+            src.append("        return b != null && b.getClass() == c && b.getAtomCount() == atomCount;\n");
+            src.append("    }\n\n");
+
+            // check that the datablock has the layout the code was generated for
+            src.append("    static boolean hasLayout(DataBlock data, int index)\n    {\n");
+            src.append("        return ");
+            if (layout.isComposite())
+            {
+                src.append("index == 0\n            && ");
+                appendLayoutCheck(src, "data", layout);
+            }
+            else
+            {
+                src.append("data != null && data.getClass() == ").append(getClassName(layout.blockClass)).append(".class");
+                src.append(" && index + ").append(schema.getAtomCount()).append(" <= data.getAtomCount()");
+            }
+            src.append(";\n    }\n\n");
+        }
+
+        for (boolean read: new boolean[] {true, false})
+        {
+            if (read)
+                src.append("    public int read(DataInputByteBuffer in, DataBlock data, int index) throws IOException\n    {\n");
+            else
+                src.append("    public int write(DataOutputByteBuffer out, DataBlock data, int index) throws IOException\n    {\n");
+
+            if (layout != null)
+            {
+                src.append("        if (hasLayout(data, index))\n");
+                src.append("        {\n");
+                appendBlock(src, schema, layout, "data", layout.isComposite() ? "0" : "index", read, 3, new AtomicInteger());
+                src.append("            return index + ").append(schema.getAtomCount()).append(";\n");
+                src.append("        }\n\n");
+            }
+
+            // generic code for datablocks with another layout
+            src.append("        int i = index;\n");
+            appendNode(src, schema, read, "data", "i", null, null, 2, 0);
+            src.append("        return i;\n");
+            src.append("    }\n\n");
+        }
+
+        src.setLength(src.length() - 1);
+        src.append("}\n");
+        return src.toString();
+    }
+
+
+    /*
+     * Appends condition checking the concrete class and size of a block
+     * and all its children
+     */
+    protected void appendLayoutCheck(StringBuilder src, String blockExpr, BlockLayout layout)
+    {
+        String className = getClassName(layout.blockClass);
+        src.append("is(").append(blockExpr).append(", ").append(className).append(".class, ").append(layout.atomCount).append(')');
+        if (!layout.isComposite())
+            return;
+
+        src.append("\n            && ((AbstractDataBlock)").append(blockExpr).append(").getStartIndex() == 0");
+        if (layout.blockClass == DataBlockMixed.class)
+        {
+            String mixedExpr = "((DataBlockMixed)" + blockExpr + ")";
+            src.append("\n            && ").append(mixedExpr).append(".getBlockCount() == ").append(layout.children.size());
+            for (int i = 0; i < layout.children.size(); i++)
+            {
+                src.append("\n            && ");
+                appendLayoutCheck(src, mixedExpr + ".getBlock(" + i + ")", layout.children.get(i));
+            }
+        }
+        else
+        {
+            String arrayExpr = "((DataBlockTuple)" + blockExpr + ").getUnderlyingObject()";
+            src.append("\n            && ").append(arrayExpr).append(".length == ").append(layout.children.size());
+            for (int i = 0; i < layout.children.size(); i++)
+            {
+                src.append("\n            && ");
+                appendLayoutCheck(src, arrayExpr + "[" + i + "]", layout.children.get(i));
+            }
+        }
+    }
+
+
+    /*
+     * Appends code processing the values of a node stored in the given block,
+     * starting at the given index (relative to the block start index)
+     */
+    protected void appendBlock(StringBuilder src, Node node, BlockLayout layout, String blockExpr, String index, boolean read, int indent, AtomicInteger varCount)
+    {
+        int v = varCount.getAndIncrement();
+        String className = getClassName(layout.blockClass);
+
+        if (layout.blockClass == DataBlockMixed.class)
+        {
+            String b = "m" + v;
+            indent(src, indent);
+            src.append("DataBlockMixed ").append(b).append(" = (DataBlockMixed)").append(blockExpr).append(";\n");
+            for (int k = 0; k < layout.children.size(); k++)
+                appendBlock(src, ((GroupNode)node).children.get(k), layout.children.get(k), b + ".getBlock(" + k + ")", "0", read, indent, varCount);
+        }
+        else if (layout.blockClass == DataBlockTuple.class)
+        {
+            String t = "t" + v;
+            indent(src, indent);
+            src.append("AbstractDataBlock[] ").append(t).append(" = ((DataBlockTuple)").append(blockExpr).append(").getUnderlyingObject();\n");
+            List<Node> scalars = new ArrayList<>();
+            node.collectScalars(scalars);
+            for (int k = 0; k < layout.children.size(); k++)
+                appendBlock(src, scalars.get(k), layout.children.get(k), t + "[" + k + "]", "0", read, indent, varCount);
+        }
+        else
+        {
+            String b = "b" + v;
+            String i = "i" + v;
+            indent(src, indent);
+            src.append(className).append(' ').append(b).append(" = (").append(className).append(')').append(blockExpr).append(";\n");
+
+            // expose the primitive array when its type allows direct access
+            String arrayElt = null;
+            String arraySuffix = getArraySuffix(layout.blockClass);
+            if (arraySuffix != null)
+            {
+                String a = "a" + v;
+                String start = "s" + v;
+                indent(src, indent);
+                src.append(getJavaType(arraySuffix)).append("[] ").append(a).append(" = ").append(b).append(".getUnderlyingObject();\n");
+                indent(src, indent);
+                src.append("int ").append(start).append(" = ").append(b).append(".getStartIndex();\n");
+                arrayElt = a + "[" + start + " + " + i + "++]";
+            }
+
+            indent(src, indent);
+            src.append("int ").append(i).append(" = ").append(index).append(";\n");
+            appendNode(src, node, read, b, i, arrayElt, arraySuffix, indent, 0);
+        }
+    }
+
+
+    /*
+     * Appends code processing values of a node, either through the block
+     * get/set methods or directly with the array element expression when
+     * it is not null and has the same type as the values
+     */
+    protected void appendNode(StringBuilder src, Node node, boolean read, String block, String index, String arrayElt, String arraySuffix, int indent, int depth)
+    {
+        if (node instanceof ScalarNode)
+        {
+            indent(src, indent);
+            DataType dataType = ((ScalarNode)node).dataType;
+            String valueSuffix = getValueSuffix(dataType, read);
+            String ioSuffix = getIoSuffix(dataType, read);
+            if (arrayElt != null && valueSuffix.equals(arraySuffix))
+                src.append(read ? arrayElt + " = in.read" + ioSuffix + "();" : "out.write" + ioSuffix + "(" + arrayElt + ");");
+            else if (read)
+                src.append(block).append(".set").append(valueSuffix).append("Value(").append(index).append("++, in.read").append(ioSuffix).append("());");
+            else
+                src.append("out.write").append(ioSuffix).append('(').append(block).append(".get").append(valueSuffix).append("Value(").append(index).append("++));");
+            src.append('\n');
+        }
+        else if (node instanceof ArrayNode)
+        {
+            String k = "k" + depth;
+            indent(src, indent);
+            src.append("for (int ").append(k).append(" = 0; ").append(k).append(" < ").append(((ArrayNode)node).size).append("; ").append(k).append("++)\n");
+            indent(src, indent);
+            src.append("{\n");
+            appendNode(src, ((ArrayNode)node).eltNode, read, block, index, arrayElt, arraySuffix, indent + 1, depth + 1);
+            indent(src, indent);
+            src.append("}\n");
+        }
+        else
+        {
+            for (Node child: ((GroupNode)node).children)
+                appendNode(src, child, read, block, index, arrayElt, arraySuffix, indent, depth);
+        }
+    }
+
+
+    protected void indent(StringBuilder src, int indent)
+    {
+        for (int i = 0; i < indent; i++)
+            src.append("    ");
+    }
+
+
+    /*
+     * Suffix of the get/set methods whose type is the type of the array
+     * backing blocks of the given class, or null if the array cannot be
+     * accessed directly (e.g. unsigned or off-heap values)
+     */
+    protected String getArraySuffix(Class<?> blockClass)
+    {
+        if (blockClass == DataBlockBoolean.class)
+            return "Boolean";
+        else if (blockClass == DataBlockByte.class)
+            return "Byte";
+        else if (blockClass == DataBlockShort.class)
+            return "Short";
+        else if (blockClass == DataBlockInt.class)
+            return "Int";
+        else if (blockClass == DataBlockLong.class)
+            return "Long";
+        else if (blockClass == DataBlockFloat.class)
+            return "Float";
+        else if (blockClass == DataBlockDouble.class)
+            return "Double";
+        else if (blockClass == DataBlockString.class)
+            return "String";
+        else
+            return null;
+    }
+
+
+    /*
+     * Java type of values accessed with get/set methods of the given suffix
+     */
+    protected String getJavaType(String valueSuffix)
+    {
+        return "String".equals(valueSuffix) ? valueSuffix : valueSuffix.toLowerCase();
+    }
+
+
+    /*
+     * Name of the class in generated code, which imports org.vast.data
+     */
+    protected String getClassName(Class<?> blockClass)
+    {
+        if (blockClass.getPackage() == AbstractDataBlock.class.getPackage() && blockClass.getEnclosingClass() == null)
+            return blockClass.getSimpleName();
+        return blockClass.getCanonicalName();
+    }
+
+
+    /*
+     * Suffix of the DataInputByteBuffer/DataOutputByteBuffer method used
+     * for each type, consistent with BinaryDataParser and BinaryDataWriter
+     */
+    protected String getIoSuffix(DataType dataType, boolean read)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+                return "Boolean";
+
+            case BYTE:
+                return "Byte";
+
+            case UBYTE:
+                return "UnsignedByte";
+
+            case SHORT:
+                return "Short";
+
+            case USHORT:
+                return "UnsignedShort";
+
+            case INT:
+                return "Int";
+
+            case UINT:
+                return "UnsignedInt";
+
+            case LONG:
+                return "Long";
+
+            case ULONG:
+                return read ? "UnsignedLong" : "Long";
+
+            case FLOAT:
+                return "Float";
+
+            case DOUBLE:
+                return "Double";
+
+            case UTF_STRING:
+                return "UTF";
+
+            case ASCII_STRING:
+                return "ASCII";
+
+            default:
+                throw new IllegalStateException("Unsupported datatype " + dataType);
+        }
+    }
+
+
+    /*
+     * Suffix of the DataBlock get/set method used for each type,
+     * consistent with BinaryDataParser and BinaryDataWriter
+     */
+    protected String getValueSuffix(DataType dataType, boolean read)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+                return "Boolean";
+
+            case BYTE:
+                return "Byte";
+
+            case UBYTE:
+                return read ? "Int" : "Short";
+
+            case SHORT:
+                return "Short";
+
+            case USHORT:
+            case INT:
+                return "Int";
+
+            case UINT:
+            case LONG:
+            case ULONG:
+                return "Long";
+
+            case FLOAT:
+                return "Float";
+
+            case DOUBLE:
+                return "Double";
+
+            case UTF_STRING:
+            case ASCII_STRING:
+                return "String";
+
+            default:
+                throw new IllegalStateException("Unsupported datatype " + dataType);
+        }
+    }
+}
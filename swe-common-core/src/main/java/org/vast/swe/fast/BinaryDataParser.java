@@ -0,0 +1,978 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import net.opengis.swe.v20.BinaryBlock;
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.BinaryMember;
+import net.opengis.swe.v20.Boolean;
+import net.opengis.swe.v20.BlockComponent;
+import net.opengis.swe.v20.ByteEncoding;
+import net.opengis.swe.v20.ByteOrder;
+import net.opengis.swe.v20.Category;
+import net.opengis.swe.v20.CategoryRange;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.CountRange;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.Quantity;
+import net.opengis.swe.v20.QuantityRange;
+import net.opengis.swe.v20.RangeComponent;
+import net.opengis.swe.v20.Text;
+import net.opengis.swe.v20.Time;
+import net.opengis.swe.v20.TimeRange;
+import org.vast.cdm.common.CDMException;
+import org.vast.cdm.common.CompressedStreamParser;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.AbstractDataComponentImpl;
+import org.vast.data.BinaryComponentImpl;
+import org.vast.data.DataArrayImpl;
+import org.vast.data.DataBlockCompressed;
+import org.vast.data.DataChoiceImpl;
+import org.vast.data.DataIterator;
+import org.vast.swe.Base64Decoder;
+import org.vast.swe.CodecLookup;
+import org.vast.swe.DataInputByteBuffer;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.BinaryCodecCompiler.RecordCodec;
+import org.vast.util.ReaderException;
+
+
+/**
+ * <p>
+ * New implementation of binary data parser with better efficiency since the
+ * parsing tree (including data types and byte order of each member) is
+ * pre-computed during init instead of being re-evaluated while iterating
+ * through the component tree.<br/>
+ * Decoded values are written directly to the target datablock by index.
+ * The component tree is only used to resize variable size arrays, select
+ * choice items and access compressed blocks.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 5, 2018
+ */
+public class BinaryDataParser extends AbstractDataParser
+{
+    DataInputByteBuffer dataInput;
+    boolean componentEncodingResolved;
+    boolean ownComponents;
+    Set<DataComponent> bulkArrays = Collections.newSetFromMap(new IdentityHashMap<DataComponent, java.lang.Boolean>());
+    Map<DataComponent, CompressedStreamParser> blockDecoders = new IdentityHashMap<>();
+    boolean useCompiledCodec;
+    boolean countInputBytes;
+
+
+    protected class BooleanParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setBooleanValue(index, dataInput.readBoolean());
+            return ++index;
+        }
+    }
+
+
+    protected class ByteParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setByteValue(index, dataInput.readByte());
+            return ++index;
+        }
+    }
+
+
+    protected class UByteParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setIntValue(index, dataInput.readUnsignedByte());
+            return ++index;
+        }
+    }
+
+
+    protected class ShortParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setShortValue(index, dataInput.readShort());
+            return ++index;
+        }
+    }
+
+
+    protected class UShortParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setIntValue(index, dataInput.readUnsignedShort());
+            return ++index;
+        }
+    }
+
+
+    protected class IntParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setIntValue(index, dataInput.readInt());
+            return ++index;
+        }
+    }
+
+
+    protected class UIntParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setLongValue(index, dataInput.readUnsignedInt());
+            return ++index;
+        }
+    }
+
+
+    protected class LongParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setLongValue(index, dataInput.readLong());
+            return ++index;
+        }
+    }
+
+
+    protected class ULongParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setLongValue(index, dataInput.readUnsignedLong());
+            return ++index;
+        }
+    }
+
+
+    protected class FloatParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setFloatValue(index, dataInput.readFloat());
+            return ++index;
+        }
+    }
+
+
+    protected class DoubleParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setDoubleValue(index, dataInput.readDouble());
+            return ++index;
+        }
+    }
+
+
+    protected class UTFStringParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setStringValue(index, dataInput.readUTF());
+            return ++index;
+        }
+    }
+
+
+    protected class ASCIIStringParser extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            data.setStringValue(index, dataInput.readASCII());
+            return ++index;
+        }
+    }
+
+
+    protected class VarSizeArrayParser extends ArrayProcessor
+    {
+        DataArrayImpl array;
+        AtomProcessor implicitSizeParser;
+        boolean dynamicElements;
+        DataType bulkDataType;
+
+        public VarSizeArrayParser(DataArrayImpl array)
+        {
+            this.array = array;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            // read implicit size or get it from size component already parsed
+            // and resize array datablock if needed
+            if (implicitSizeParser != null)
+            {
+                Count sizeComp = array.getArraySizeComponent();
+                if (!sizeComp.hasData())
+                    sizeComp.renewDataBlock();
+                implicitSizeParser.process(sizeComp.getData(), 0);
+                array.updateSize(sizeComp.getData().getIntValue());
+            }
+            else
+                array.updateSize();
+
+            arraySize = array.getComponentCount();
+
+            if (bulkDataType != null && readBulk(array.getData(), bulkDataType))
+                return index + array.getData().getAtomCount();
+
+            if (!dynamicElements)
+                return super.process(data, index);
+
+            // if array elements can change structure, parse each of them
+            // to its own datablock since their sizes may differ
+            for (int i = 0; i < arraySize; i++)
+            {
+                DataBlock eltData = array.getComponent(i).getData();
+                eltProcessor.process(eltData, 0);
+                index += eltData.getAtomCount();
+            }
+
+            return index;
+        }
+    }
+
+
+    protected class BulkArrayParser extends ArrayProcessor
+    {
+        DataArrayImpl array;
+        DataType bulkDataType;
+
+        public BulkArrayParser(DataArrayImpl array, DataType bulkDataType)
+        {
+            this.array = array;
+            this.bulkDataType = bulkDataType;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            // read all values at once if array datablock is a primitive block
+            if (readBulk(array.getData(), bulkDataType))
+                return index + array.getData().getAtomCount();
+
+            return super.process(data, index);
+        }
+    }
+
+
+    protected class ChoiceParser extends ChoiceProcessor
+    {
+        DataChoiceImpl choice;
+
+        public ChoiceParser(DataChoiceImpl choice)
+        {
+            this.choice = choice;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            int selectedIndex = dataInput.readByte();
+            if (selectedIndex < 0 || selectedIndex >= choice.getNumItems())
+                throw new ReaderException(INVALID_CHOICE_MSG + selectedIndex);
+
+            // regenerate choice datablock only if selected item has changed
+            if (choice.getSelected() != selectedIndex)
+                choice.setSelectedItem(selectedIndex);
+
+            return super.process(data, ++index, selectedIndex);
+        }
+    }
+
+
+    protected class CompressedBlockParser extends BaseProcessor
+    {
+        DataComponent blockComponent;
+        CompressedStreamParser decoder;
+
+        public CompressedBlockParser(DataComponent blockComponent, CompressedStreamParser decoder)
+        {
+            this.blockComponent = blockComponent;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            DataBlock blockData = blockComponent.getData();
+
+            // keep compressed data as-is if requested
+            if (blockData instanceof DataBlockCompressed)
+            {
+                int blockSize = dataInput.readInt();
+                byte[] bytes = new byte[blockSize];
+                dataInput.readFully(bytes);
+                blockData.setUnderlyingObject(bytes);
+            }
+
+            // otherwise uncompress on-the-fly
+            else if (decoder != null)
+            {
+                try
+                {
+                    decoder.decode(dataInput, blockComponent);
+                    blockData = blockComponent.getData();
+                }
+                catch (CDMException e)
+                {
+                    throw new ReaderException("Cannot parse binary block " + blockComponent.getName(), e);
+                }
+            }
+
+            else
+                throw new ReaderException("No decoder available for binary block " + blockComponent.getName());
+
+            return index + blockData.getAtomCount();
+        }
+    }
+
+
+    protected class CompiledRecordParser extends BaseProcessor
+    {
+        RecordCodec codec;
+
+        public CompiledRecordParser(RecordCodec codec)
+        {
+            this.codec = codec;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            return codec.read(dataInput, data, index);
+        }
+    }
+
+
+    @Override
+    protected DataBlock parseRecord() throws IOException
+    {
+        if (!countInputBytes)
+            return super.parseRecord();
+
+        long startPos = dataInput.getPosition();
+        DataBlock data = super.parseRecord();
+        metrics.recordBytes(dataInput.getPosition() - startPos);
+        return data;
+    }
+
+
+    @Override
+    public DataBlock parseNextBlock() throws IOException
+    {
+        // assign encoding info to components before the processor tree
+        // and the first datablock are created
+        if (!componentEncodingResolved)
+            resolveComponentEncodings();
+
+        return super.parseNextBlock();
+    }
+
+
+    @Override
+    public int parseNextBlocks(DataBlock[] dst, int max) throws IOException
+    {
+        if (!componentEncodingResolved)
+            resolveComponentEncodings();
+
+        return super.parseNextBlocks(dst, max);
+    }
+
+
+    /**
+     * If a raw data handler is set, the bytes of each record are sent to it
+     * without being decoded. This is only possible with fixed size records.
+     */
+    @Override
+    public void parse(InputStream inputStream) throws IOException
+    {
+        if (rawHandler == null)
+        {
+            super.parse(inputStream);
+            return;
+        }
+
+        stopParsing = false;
+
+        try
+        {
+            setInput(inputStream);
+
+            int recordSize = getRecordSize();
+            if (recordSize <= 0)
+                throw new ReaderException("Raw data handler can only be used with fixed size records");
+
+            rawHandler.startData(dataComponents);
+            while (!stopParsing && moreData())
+            {
+                byte[] buffer = new byte[recordSize];
+                dataInput.readFully(buffer);
+                rawHandler.endData(dataComponents, buffer);
+            }
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+
+    protected void resolveComponentEncodings() throws IOException
+    {
+        try
+        {
+            SWEHelper.assignBinaryEncoding(dataComponents, (BinaryEncoding)dataEncoding);
+            bulkArrays.clear();
+            BinaryEncodingUtils.findBulkArrays(dataComponents, bulkArrays);
+            // also bind component tree if array values can be read in bulk
+            bindComponents = BinaryEncodingUtils.isDynamic(dataComponents) || !bulkArrays.isEmpty();
+            initBlockDecoders();
+            componentEncodingResolved = true;
+        }
+        catch (CDMException e)
+        {
+            throw new ReaderException("Invalid binary encoding mapping", e);
+        }
+    }
+
+
+    /*
+     * Reads all values of a primitive datablock in one bulk transfer.
+     * Returns false if the datablock type doesn't match the binary data type
+     */
+    protected boolean readBulk(DataBlock blk, DataType dataType) throws IOException
+    {
+        Object array = BinaryEncodingUtils.getBulkArray(blk, dataType);
+        if (array == null)
+            return false;
+
+        int off = ((AbstractDataBlock)blk).getStartIndex();
+        int len = blk.getAtomCount();
+
+        if (array instanceof double[])
+            dataInput.readFully((double[])array, off, len);
+        else if (array instanceof float[])
+            dataInput.readFully((float[])array, off, len);
+        else if (array instanceof int[])
+            dataInput.readFully((int[])array, off, len);
+        else if (array instanceof short[])
+            dataInput.readFully((short[])array, off, len);
+        else if (array instanceof long[])
+            dataInput.readFully((long[])array, off, len);
+        else
+            dataInput.readFully((byte[])array, off, len);
+
+        return true;
+    }
+
+
+    protected AtomProcessor getParserForDataType(DataType dataType)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+                return new BooleanParser();
+
+            case BYTE:
+                return new ByteParser();
+
+            case UBYTE:
+                return new UByteParser();
+
+            case SHORT:
+                return new ShortParser();
+
+            case USHORT:
+                return new UShortParser();
+
+            case INT:
+                return new IntParser();
+
+            case UINT:
+                return new UIntParser();
+
+            case LONG:
+                return new LongParser();
+
+            case ULONG:
+                return new ULongParser();
+
+            case FLOAT:
+                return new FloatParser();
+
+            case DOUBLE:
+                return new DoubleParser();
+
+            case UTF_STRING:
+                return new UTFStringParser();
+
+            case ASCII_STRING:
+                return new ASCIIStringParser();
+
+            default:
+                throw new IllegalStateException("Unsupported datatype " + dataType);
+        }
+    }
+
+
+    protected AtomProcessor getParserForComponent(DataComponent comp)
+    {
+        BinaryMember binaryInfo = ((AbstractDataComponentImpl)comp).getEncodingInfo();
+        if (!(binaryInfo instanceof BinaryComponentImpl))
+            throw new IllegalStateException("No binary encoding specified for component " + comp.getName());
+
+        return getParserForDataType(((BinaryComponentImpl)binaryInfo).getCdmDataType());
+    }
+
+
+    /*
+     * Gets a decoder for each compressed block for which one is available.
+     * These blocks are then decoded on-the-fly, the others are kept as-is
+     */
+    protected void initBlockDecoders() throws CDMException
+    {
+        releaseBlockDecoders();
+
+        // block encodings are detached from components when decoding on-the-fly
+        // so only do it if components are our own copy
+        if (!ownComponents)
+            return;
+
+        for (DataComponent comp: new DataIterator(dataComponents))
+        {
+            String compression = BinaryEncodingUtils.getCompression(comp);
+            if (compression == null)
+                continue;
+
+            CompressedStreamParser decoder = CodecLookup.getInstance().createDecoder(compression);
+            if (decoder != null)
+            {
+                blockDecoders.put(comp, decoder);
+                decoder.init(comp, (BinaryBlock)((AbstractDataComponentImpl)comp).getEncodingInfo());
+
+                // so that regular datablocks are created instead of compressed ones
+                ((AbstractDataComponentImpl)comp).setEncodingInfo(null);
+            }
+        }
+    }
+
+
+    protected void releaseBlockDecoders()
+    {
+        // hand back codecs so they can be reused
+        for (CompressedStreamParser decoder: blockDecoders.values())
+            CodecLookup.getInstance().releaseDecoder(decoder);
+        blockDecoders.clear();
+    }
+
+
+    protected boolean addCompressedBlockParser(DataComponent comp)
+    {
+        CompressedStreamParser decoder = blockDecoders.get(comp);
+        if (decoder == null && BinaryEncodingUtils.getCompression(comp) == null)
+            return false;
+
+        addToProcessorTree(new CompressedBlockParser(comp, decoder));
+        return true;
+    }
+
+
+    @Override
+    protected void init()
+    {
+        // replace processor tree by generated code if possible
+        if (useCompiledCodec && !bindComponents && filter == null)
+        {
+            RecordCodec codec = BinaryCodecCompiler.getInstance().getCodec(dataComponents);
+            if (codec != null)
+                rootProcessor = new CompiledRecordParser(codec);
+        }
+    }
+
+
+    /**
+     * Enables parsing with code generated specifically for the record structure.<br/>
+     * This is only done if the structure has no choice, variable size array,
+     * compressed block or array that can be read in bulk, and if a Java compiler
+     * is available at runtime. Otherwise, the generic processor tree is used.
+     * Time spent in each component is not recorded with generated code.
+     * @param useCompiledCodec true to use generated code when possible
+     * @see BinaryCodecCompiler
+     */
+    public void setUseCompiledCodec(boolean useCompiledCodec)
+    {
+        this.useCompiledCodec = useCompiledCodec;
+        this.processorTreeReady = false;
+    }
+
+
+    /**
+     * @return true if generated code is used to parse records. This is
+     * only known once the first record has been parsed.
+     */
+    public boolean isUsingCompiledCodec()
+    {
+        return processorTreeReady && rootProcessor instanceof CompiledRecordParser;
+    }
+
+
+    @Override
+    protected boolean moreData() throws IOException
+    {
+        dataInput.mark(1);
+        int result = dataInput.read();
+
+        if (result == -1)
+            return false;
+
+        dataInput.reset();
+        return true;
+    }
+
+
+    @Override
+    public void setInput(InputStream is) throws IOException
+    {
+        java.nio.ByteOrder byteOrder = ((BinaryEncoding)dataEncoding).getByteOrder() == ByteOrder.LITTLE_ENDIAN ?
+            java.nio.ByteOrder.LITTLE_ENDIAN : java.nio.ByteOrder.BIG_ENDIAN;
+
+        // read directly from buffer if possible (e.g. mapped file)
+        // bytes are then counted from the buffer position since wrapping
+        // the input to count them would prevent zero-copy reads
+        countInputBytes = false;
+        if (is instanceof DataInputByteBuffer && ((BinaryEncoding)dataEncoding).getByteEncoding() == ByteEncoding.RAW)
+        {
+            dataInput = (DataInputByteBuffer)is;
+            dataInput.setByteOrder(byteOrder);
+            countInputBytes = (metrics != null);
+            return;
+        }
+
+        // count bytes before any decoding
+        is = instrument(is);
+
+        // use Base64 decoder if needed
+        switch (((BinaryEncoding)dataEncoding).getByteEncoding())
+        {
+            case BASE_64:
+                is = new Base64Decoder(is);
+                break;
+
+            case RAW:
+                break;
+
+            default:
+                throw new ReaderException("Unsupported byte encoding");
+        }
+
+        // create buffered data input with proper byte order
+        dataInput = new DataInputByteBuffer(is, byteOrder);
+    }
+
+
+    /**
+     * Computes the size of encoded records when it is fixed.<br/>
+     * This can be used to directly seek to the Nth record in a file
+     * @return the size of each record in bytes, or -1 if records
+     * have variable size
+     * @throws IOException if the binary encoding is invalid
+     */
+    public int getRecordSize() throws IOException
+    {
+        if (!componentEncodingResolved)
+            resolveComponentEncodings();
+
+        return getEncodedSize(dataComponents);
+    }
+
+
+    protected int getEncodedSize(DataComponent comp)
+    {
+        if (comp instanceof DataChoice || BinaryEncodingUtils.getCompression(comp) != null || blockDecoders.containsKey(comp))
+            return -1;
+
+        if (comp instanceof DataArray)
+        {
+            DataArray array = (DataArray)comp;
+            if (array.isVariableSize())
+                return -1;
+
+            int eltSize = getEncodedSize(array.getElementType());
+            return eltSize < 0 ? -1 : eltSize * array.getComponentCount();
+        }
+
+        BinaryMember binaryInfo = ((AbstractDataComponentImpl)comp).getEncodingInfo();
+        if (binaryInfo instanceof BinaryComponentImpl)
+        {
+            int valSize = getEncodedSize(((BinaryComponentImpl)binaryInfo).getCdmDataType());
+            if (valSize < 0)
+                return -1;
+
+            // range components have two values of the same type
+            return comp instanceof RangeComponent ? 2*valSize : valSize;
+        }
+
+        // aggregate components
+        int size = 0;
+        for (int i = 0; i < comp.getComponentCount(); i++)
+        {
+            int childSize = getEncodedSize(comp.getComponent(i));
+            if (childSize < 0)
+                return -1;
+            size += childSize;
+        }
+
+        return size;
+    }
+
+
+    protected int getEncodedSize(DataType dataType)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+            case BYTE:
+            case UBYTE:
+                return 1;
+
+            case SHORT:
+            case USHORT:
+                return 2;
+
+            case INT:
+            case UINT:
+            case FLOAT:
+                return 4;
+
+            case LONG:
+            case ULONG:
+            case DOUBLE:
+                return 8;
+
+            default:
+                return -1;
+        }
+    }
+
+
+    @Override
+    public void setDataComponents(DataComponent components)
+    {
+        // work on a copy since encoding info is assigned to components
+        super.setDataComponents(components.copy());
+        this.componentEncodingResolved = false;
+        this.ownComponents = true;
+    }
+
+
+    @Override
+    public void setDataEncoding(DataEncoding encoding)
+    {
+        super.setDataEncoding(encoding);
+        this.componentEncodingResolved = false;
+    }
+
+
+    @Override
+    public void setParentArray(BlockComponent parentArray)
+    {
+        super.setParentArray(parentArray);
+        this.componentEncodingResolved = false;
+        this.ownComponents = false;
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        // released decoders may be handed to other parsers so make
+        // sure new ones are obtained if this parser is used again
+        releaseBlockDecoders();
+        componentEncodingResolved = false;
+        processorTreeReady = false;
+
+        if (dataInput != null)
+            ((InputStream)dataInput).close();
+    }
+
+
+    @Override
+    public void visit(Boolean comp)
+    {
+        addToProcessorTree(getParserForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Count comp)
+    {
+        addToProcessorTree(getParserForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Quantity comp)
+    {
+        addToProcessorTree(getParserForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Time comp)
+    {
+        addToProcessorTree(getParserForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Category comp)
+    {
+        addToProcessorTree(getParserForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Text comp)
+    {
+        addToProcessorTree(getParserForComponent(comp));
+    }
+
+
+    protected void visitRange(DataComponent range)
+    {
+        // both range values are encoded with the range data type
+        addToProcessorTree(new RecordProcessor());
+        addToProcessorTree(getParserForComponent(range));
+        addToProcessorTree(getParserForComponent(range));
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(CountRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(QuantityRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(TimeRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(CategoryRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(DataRecord rec)
+    {
+        if (!addCompressedBlockParser(rec))
+            super.visit(rec);
+    }
+
+
+    @Override
+    public void visit(DataArray array)
+    {
+        if (addCompressedBlockParser(array))
+            return;
+
+        DataType bulkDataType = null;
+        if (bulkArrays.contains(array))
+            bulkDataType = BinaryEncodingUtils.getBulkDataType(array.getElementType());
+
+        if (array.isVariableSize())
+        {
+            VarSizeArrayParser arrayParser = new VarSizeArrayParser((DataArrayImpl)array);
+            if (array.isImplicitSize())
+                arrayParser.implicitSizeParser = getParserForComponent(array.getArraySizeComponent());
+            arrayParser.dynamicElements = BinaryEncodingUtils.isDynamic(array.getElementType());
+            arrayParser.bulkDataType = bulkDataType;
+            addToProcessorTree(arrayParser);
+        }
+        else if (bulkDataType != null)
+        {
+            BulkArrayParser arrayParser = new BulkArrayParser((DataArrayImpl)array, bulkDataType);
+            arrayParser.setArraySize(array.getComponentCount());
+            addToProcessorTree(arrayParser);
+        }
+        else
+        {
+            super.visit(array);
+            return;
+        }
+
+        array.getElementType().accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataChoice choice)
+    {
+        addToProcessorTree(new ChoiceParser((DataChoiceImpl)choice));
+        for (DataComponent item: choice.getItemList())
+            item.accept(this);
+        processorStack.pop();
+    }
+}
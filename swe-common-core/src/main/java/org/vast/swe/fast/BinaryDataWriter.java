@@ -0,0 +1,785 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import net.opengis.swe.v20.BinaryBlock;
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.BinaryMember;
+import net.opengis.swe.v20.BlockComponent;
+import net.opengis.swe.v20.Boolean;
+import net.opengis.swe.v20.ByteOrder;
+import net.opengis.swe.v20.Category;
+import net.opengis.swe.v20.CategoryRange;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.CountRange;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.Quantity;
+import net.opengis.swe.v20.QuantityRange;
+import net.opengis.swe.v20.Text;
+import net.opengis.swe.v20.Time;
+import net.opengis.swe.v20.TimeRange;
+import org.vast.cdm.common.CDMException;
+import org.vast.cdm.common.CompressedStreamWriter;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.AbstractDataComponentImpl;
+import org.vast.data.BinaryComponentImpl;
+import org.vast.data.DataArrayImpl;
+import org.vast.data.DataBlockCompressed;
+import org.vast.swe.Base64Encoder;
+import org.vast.swe.CodecLookup;
+import org.vast.swe.DataOutputByteBuffer;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.BinaryCodecCompiler.RecordCodec;
+import org.vast.util.WriterException;
+
+
+/**
+ * <p>
+ * New implementation of binary data writer with better efficiency since the
+ * write tree (including data types and byte order of each member) is
+ * pre-computed during init instead of being re-evaluated while iterating
+ * through the component tree.<br/>
+ * Values are read directly from the datablock by index. The component tree
+ * is only used to get the size of variable size arrays and to access
+ * compressed blocks.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 6, 2018
+ */
+public class BinaryDataWriter extends AbstractDataWriter
+{
+    DataOutputByteBuffer dataOutput;
+    boolean componentEncodingResolved;
+    boolean bindComponents;
+    boolean writingBatch;
+    Set<DataComponent> bulkArrays = Collections.newSetFromMap(new IdentityHashMap<DataComponent, java.lang.Boolean>());
+    List<CompressedStreamWriter> blockEncoders = new ArrayList<>();
+    boolean useCompiledCodec;
+
+
+    protected class BooleanWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeBoolean(data.getBooleanValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class ByteWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeByte(data.getByteValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class UByteWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeUnsignedByte(data.getShortValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class ShortWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeShort(data.getShortValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class UShortWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeUnsignedShort(data.getIntValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class IntWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeInt(data.getIntValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class UIntWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeUnsignedInt(data.getLongValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class LongWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeLong(data.getLongValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class FloatWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeFloat(data.getFloatValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class DoubleWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeDouble(data.getDoubleValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class UTFStringWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeUTF(data.getStringValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class ASCIIStringWriter extends BaseProcessor
+    {
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            dataOutput.writeASCII(data.getStringValue(index));
+            return ++index;
+        }
+    }
+
+
+    protected class VarSizeArrayWriter extends ArrayProcessor
+    {
+        DataArrayImpl array;
+        AtomProcessor implicitSizeWriter;
+        boolean dynamicElements;
+        DataType bulkDataType;
+
+        public VarSizeArrayWriter(DataArrayImpl array)
+        {
+            this.array = array;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            // array size is known from component tree bound to the datablock
+            arraySize = array.getComponentCount();
+
+            // write implicit size first
+            if (implicitSizeWriter != null)
+                implicitSizeWriter.process(array.getArraySizeComponent().getData(), 0);
+
+            if (bulkDataType != null && writeBulk(array.getData(), bulkDataType))
+                return index + array.getData().getAtomCount();
+
+            if (!dynamicElements)
+                return super.process(data, index);
+
+            // if array elements can change structure, write each of them
+            // from its own datablock since their sizes may differ
+            for (int i = 0; i < arraySize; i++)
+            {
+                DataBlock eltData = array.getComponent(i).getData();
+                eltProcessor.process(eltData, 0);
+                index += eltData.getAtomCount();
+            }
+
+            return index;
+        }
+    }
+
+
+    protected class BulkArrayWriter extends ArrayProcessor
+    {
+        DataArrayImpl array;
+        DataType bulkDataType;
+
+        public BulkArrayWriter(DataArrayImpl array, DataType bulkDataType)
+        {
+            this.array = array;
+            this.bulkDataType = bulkDataType;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            // write all values at once if array datablock is a primitive block
+            if (writeBulk(array.getData(), bulkDataType))
+                return index + array.getData().getAtomCount();
+
+            return super.process(data, index);
+        }
+    }
+
+
+    protected class ChoiceWriter extends ChoiceProcessor
+    {
+        int numItems;
+
+        public ChoiceWriter(DataChoice choice)
+        {
+            this.numItems = choice.getNumItems();
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            int selectedIndex = data.getIntValue(index);
+            if (selectedIndex < 0 || selectedIndex >= numItems)
+                throw new WriterException(AbstractDataParser.INVALID_CHOICE_MSG + selectedIndex);
+
+            dataOutput.writeByte((byte)selectedIndex);
+            return super.process(data, ++index, selectedIndex);
+        }
+    }
+
+
+    protected class CompressedBlockWriter extends BaseProcessor
+    {
+        DataComponent blockComponent;
+        CompressedStreamWriter encoder;
+
+        public CompressedBlockWriter(DataComponent blockComponent, CompressedStreamWriter encoder)
+        {
+            this.blockComponent = blockComponent;
+            this.encoder = encoder;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            DataBlock blockData = blockComponent.getData();
+
+            // write already compressed data as-is
+            if (blockData instanceof DataBlockCompressed)
+            {
+                byte[] bytes = (byte[])blockData.getUnderlyingObject();
+                dataOutput.writeInt(bytes.length);
+                dataOutput.write(bytes);
+            }
+
+            // otherwise compress on-the-fly
+            else if (encoder != null)
+            {
+                try
+                {
+                    encoder.encode(dataOutput, blockComponent);
+                }
+                catch (CDMException e)
+                {
+                    throw new WriterException("Cannot write binary block " + blockComponent.getName(), e);
+                }
+            }
+
+            else
+                throw new WriterException("No encoder available for binary block " + blockComponent.getName());
+
+            return index + blockData.getAtomCount();
+        }
+    }
+
+
+    protected class CompiledRecordWriter extends BaseProcessor
+    {
+        RecordCodec codec;
+
+        public CompiledRecordWriter(RecordCodec codec)
+        {
+            this.codec = codec;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            return codec.write(dataOutput, data, index);
+        }
+    }
+
+
+    @Override
+    protected void beforeRecord(DataBlock data) throws IOException
+    {
+        // assign encoding info to components before the processor tree is created
+        if (!componentEncodingResolved)
+            resolveComponentEncodings();
+
+        // bind component tree to datablock so that array sizes, compressed
+        // blocks and primitive array blocks can be accessed while writing
+        if (bindComponents)
+            dataComponents.setData(data);
+    }
+
+
+    @Override
+    protected void afterRecord(DataBlock data) throws IOException
+    {
+        // send each record to the underlying stream as soon as it's encoded
+        // except when writing a batch, which is flushed as a whole
+        if (!writingBatch)
+            dataOutput.drain();
+    }
+
+
+    @Override
+    public void write(DataBlock[] src, int off, int len) throws IOException
+    {
+        writingBatch = true;
+
+        try
+        {
+            super.write(src, off, len);
+        }
+        finally
+        {
+            writingBatch = false;
+        }
+    }
+
+
+    protected void resolveComponentEncodings() throws IOException
+    {
+        try
+        {
+            SWEHelper.assignBinaryEncoding(dataComponents, (BinaryEncoding)dataEncoding);
+            bulkArrays.clear();
+            BinaryEncodingUtils.findBulkArrays(dataComponents, bulkArrays);
+            bindComponents = BinaryEncodingUtils.isDynamic(dataComponents) || !bulkArrays.isEmpty();
+            componentEncodingResolved = true;
+        }
+        catch (CDMException e)
+        {
+            throw new WriterException("Invalid binary encoding mapping", e);
+        }
+    }
+
+
+    /*
+     * Writes all values of a primitive datablock in one bulk transfer.
+     * Returns false if the datablock type doesn't match the binary data type
+     */
+    protected boolean writeBulk(DataBlock blk, DataType dataType) throws IOException
+    {
+        Object array = BinaryEncodingUtils.getBulkArray(blk, dataType);
+        if (array == null)
+            return false;
+
+        int off = ((AbstractDataBlock)blk).getStartIndex();
+        int len = blk.getAtomCount();
+
+        if (array instanceof double[])
+            dataOutput.write((double[])array, off, len);
+        else if (array instanceof float[])
+            dataOutput.write((float[])array, off, len);
+        else if (array instanceof int[])
+            dataOutput.write((int[])array, off, len);
+        else if (array instanceof short[])
+            dataOutput.write((short[])array, off, len);
+        else if (array instanceof long[])
+            dataOutput.write((long[])array, off, len);
+        else
+            dataOutput.write((byte[])array, off, len);
+
+        return true;
+    }
+
+
+    protected AtomProcessor getWriterForDataType(DataType dataType)
+    {
+        switch (dataType)
+        {
+            case BOOLEAN:
+                return new BooleanWriter();
+
+            case BYTE:
+                return new ByteWriter();
+
+            case UBYTE:
+                return new UByteWriter();
+
+            case SHORT:
+                return new ShortWriter();
+
+            case USHORT:
+                return new UShortWriter();
+
+            case INT:
+                return new IntWriter();
+
+            case UINT:
+                return new UIntWriter();
+
+            case LONG:
+            case ULONG:
+                return new LongWriter();
+
+            case FLOAT:
+                return new FloatWriter();
+
+            case DOUBLE:
+                return new DoubleWriter();
+
+            case UTF_STRING:
+                return new UTFStringWriter();
+
+            case ASCII_STRING:
+                return new ASCIIStringWriter();
+
+            default:
+                throw new IllegalStateException("Unsupported datatype " + dataType);
+        }
+    }
+
+
+    protected AtomProcessor getWriterForComponent(DataComponent comp)
+    {
+        BinaryMember binaryInfo = ((AbstractDataComponentImpl)comp).getEncodingInfo();
+        if (!(binaryInfo instanceof BinaryComponentImpl))
+            throw new IllegalStateException("No binary encoding specified for component " + comp.getName());
+
+        return getWriterForDataType(((BinaryComponentImpl)binaryInfo).getCdmDataType());
+    }
+
+
+    protected boolean addCompressedBlockWriter(DataComponent comp)
+    {
+        String compression = BinaryEncodingUtils.getCompression(comp);
+        if (compression == null)
+            return false;
+
+        CompressedStreamWriter encoder = CodecLookup.getInstance().createEncoder(compression);
+        if (encoder != null)
+        {
+            blockEncoders.add(encoder);
+            try
+            {
+                encoder.init(comp, (BinaryBlock)((AbstractDataComponentImpl)comp).getEncodingInfo());
+            }
+            catch (CDMException e)
+            {
+                throw new IllegalStateException("Cannot initialize encoder for " + compression, e);
+            }
+        }
+
+        addToProcessorTree(new CompressedBlockWriter(comp, encoder));
+        return true;
+    }
+
+
+    @Override
+    protected void init()
+    {
+        // replace processor tree by generated code if possible
+        if (useCompiledCodec && !bindComponents && filter == null)
+        {
+            RecordCodec codec = BinaryCodecCompiler.getInstance().getCodec(dataComponents);
+            if (codec != null)
+                rootProcessor = new CompiledRecordWriter(codec);
+        }
+    }
+
+
+    /**
+     * Enables writing with code generated specifically for the record structure.<br/>
+     * This is only done if the structure has no choice, variable size array,
+     * compressed block or array that can be written in bulk, and if a Java compiler
+     * is available at runtime. Otherwise, the generic processor tree is used.
+     * Time spent in each component is not recorded with generated code.
+     * @param useCompiledCodec true to use generated code when possible
+     * @see BinaryCodecCompiler
+     */
+    public void setUseCompiledCodec(boolean useCompiledCodec)
+    {
+        this.useCompiledCodec = useCompiledCodec;
+        this.processorTreeReady = false;
+    }
+
+
+    /**
+     * @return true if generated code is used to write records. This is
+     * only known once the first record has been written.
+     */
+    public boolean isUsingCompiledCodec()
+    {
+        return processorTreeReady && rootProcessor instanceof CompiledRecordWriter;
+    }
+
+
+    @Override
+    public void setOutput(OutputStream os) throws IOException
+    {
+        // count bytes after any encoding
+        os = instrument(os);
+
+        // use Base64 encoder if needed
+        switch (((BinaryEncoding)dataEncoding).getByteEncoding())
+        {
+            case BASE_64:
+                os = new Base64Encoder(os);
+                break;
+
+            case RAW:
+                break;
+
+            default:
+                throw new WriterException("Unsupported byte encoding");
+        }
+
+        // create buffered data output with proper byte order
+        if (((BinaryEncoding)dataEncoding).getByteOrder() == ByteOrder.LITTLE_ENDIAN)
+            dataOutput = new DataOutputByteBuffer(os, java.nio.ByteOrder.LITTLE_ENDIAN);
+        else
+            dataOutput = new DataOutputByteBuffer(os, java.nio.ByteOrder.BIG_ENDIAN);
+    }
+
+
+    @Override
+    public void setDataComponents(DataComponent components)
+    {
+        // work on a copy since encoding info is assigned to components
+        super.setDataComponents(components.copy());
+        this.componentEncodingResolved = false;
+    }
+
+
+    @Override
+    public void setDataEncoding(DataEncoding encoding)
+    {
+        super.setDataEncoding(encoding);
+        this.componentEncodingResolved = false;
+    }
+
+
+    @Override
+    public void setParentArray(BlockComponent parentArray)
+    {
+        super.setParentArray(parentArray);
+        this.componentEncodingResolved = false;
+    }
+
+
+    @Override
+    public void flush() throws IOException
+    {
+        if (dataOutput != null)
+            dataOutput.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        // hand back codecs so they can be reused
+        for (CompressedStreamWriter encoder: blockEncoders)
+            CodecLookup.getInstance().releaseEncoder(encoder);
+        blockEncoders.clear();
+        processorTreeReady = false;
+
+        if (dataOutput != null)
+        {
+            dataOutput.flush();
+            dataOutput.close();
+        }
+    }
+
+
+    @Override
+    public void visit(Boolean comp)
+    {
+        addToProcessorTree(getWriterForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Count comp)
+    {
+        addToProcessorTree(getWriterForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Quantity comp)
+    {
+        addToProcessorTree(getWriterForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Time comp)
+    {
+        addToProcessorTree(getWriterForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Category comp)
+    {
+        addToProcessorTree(getWriterForComponent(comp));
+    }
+
+
+    @Override
+    public void visit(Text comp)
+    {
+        addToProcessorTree(getWriterForComponent(comp));
+    }
+
+
+    protected void visitRange(DataComponent range)
+    {
+        // both range values are encoded with the range data type
+        addToProcessorTree(new RecordProcessor());
+        addToProcessorTree(getWriterForComponent(range));
+        addToProcessorTree(getWriterForComponent(range));
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(CountRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(QuantityRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(TimeRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(CategoryRange range)
+    {
+        visitRange(range);
+    }
+
+
+    @Override
+    public void visit(DataRecord rec)
+    {
+        if (!addCompressedBlockWriter(rec))
+            super.visit(rec);
+    }
+
+
+    @Override
+    public void visit(DataArray array)
+    {
+        if (addCompressedBlockWriter(array))
+            return;
+
+        DataType bulkDataType = null;
+        if (bulkArrays.contains(array))
+            bulkDataType = BinaryEncodingUtils.getBulkDataType(array.getElementType());
+
+        if (array.isVariableSize())
+        {
+            VarSizeArrayWriter arrayWriter = new VarSizeArrayWriter((DataArrayImpl)array);
+            if (array.isImplicitSize())
+                arrayWriter.implicitSizeWriter = getWriterForComponent(array.getArraySizeComponent());
+            arrayWriter.dynamicElements = BinaryEncodingUtils.isDynamic(array.getElementType());
+            arrayWriter.bulkDataType = bulkDataType;
+            addToProcessorTree(arrayWriter);
+        }
+        else if (bulkDataType != null)
+        {
+            BulkArrayWriter arrayWriter = new BulkArrayWriter((DataArrayImpl)array, bulkDataType);
+            arrayWriter.setArraySize(array.getComponentCount());
+            addToProcessorTree(arrayWriter);
+        }
+        else
+        {
+            super.visit(array);
+            return;
+        }
+
+        array.getElementType().accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataChoice choice)
+    {
+        addToProcessorTree(new ChoiceWriter(choice));
+        for (DataComponent item: choice.getItemList())
+            item.accept(this);
+        processorStack.pop();
+    }
+}
@@ -0,0 +1,166 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.util.Set;
+import net.opengis.swe.v20.BinaryBlock;
+import net.opengis.swe.v20.BinaryMember;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.ScalarComponent;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.AbstractDataComponentImpl;
+import org.vast.data.BinaryComponentImpl;
+import org.vast.data.DataIterator;
+
+
+/**
+ * <p>
+ * Helper methods shared by binary parser and writer to analyze the
+ * component tree once binary encoding info has been assigned to it.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 16, 2018
+ */
+class BinaryEncodingUtils
+{
+
+    private BinaryEncodingUtils()
+    {
+    }
+
+
+    /*
+     * Checks if the datablock structure can change from one record to the
+     * next, or if the component tree is needed to access compressed data
+     */
+    static boolean isDynamic(DataComponent comp)
+    {
+        if (DataBlockProcessor.hasVariableStructure(comp))
+            return true;
+
+        for (DataComponent c: new DataIterator(comp))
+        {
+            if (getCompression(c) != null)
+                return true;
+        }
+
+        return false;
+    }
+
+
+    static String getCompression(DataComponent comp)
+    {
+        BinaryMember binaryInfo = ((AbstractDataComponentImpl)comp).getEncodingInfo();
+        if (binaryInfo instanceof BinaryBlock)
+            return ((BinaryBlock)binaryInfo).getCompression();
+        return null;
+    }
+
+
+    /*
+     * Collects arrays that are not nested in other arrays and whose values
+     * all have the same numeric type, so they can be processed in bulk
+     */
+    static void findBulkArrays(DataComponent comp, Set<DataComponent> bulkArrays)
+    {
+        if (getCompression(comp) != null)
+            return;
+
+        if (comp instanceof DataArray)
+        {
+            if (getBulkDataType(((DataArray)comp).getElementType()) != null)
+                bulkArrays.add(comp);
+            return;
+        }
+
+        for (int i = 0; i < comp.getComponentCount(); i++)
+            findBulkArrays(comp.getComponent(i), bulkArrays);
+    }
+
+
+    /*
+     * Gets the common numeric type of all values in an array element,
+     * or null if values have different types or an array has variable size
+     */
+    static DataType getBulkDataType(DataComponent eltType)
+    {
+        if (getCompression(eltType) != null)
+            return null;
+
+        if (eltType instanceof DataArray)
+        {
+            if (((DataArray)eltType).isVariableSize())
+                return null;
+            return getBulkDataType(((DataArray)eltType).getElementType());
+        }
+
+        if (eltType instanceof ScalarComponent)
+        {
+            BinaryMember binaryInfo = ((AbstractDataComponentImpl)eltType).getEncodingInfo();
+            if (!(binaryInfo instanceof BinaryComponentImpl))
+                return null;
+
+            DataType dataType = ((BinaryComponentImpl)binaryInfo).getCdmDataType();
+            if (dataType.isIntegralType() || dataType == DataType.FLOAT || dataType == DataType.DOUBLE)
+                return dataType;
+        }
+
+        return null;
+    }
+
+
+    /*
+     * Gets the primitive array backing the datablock if it is compatible
+     * with the given binary data type, null otherwise
+     */
+    static Object getBulkArray(DataBlock blk, DataType dataType)
+    {
+        if (!(blk instanceof AbstractDataBlock))
+            return null;
+
+        Object array = blk.getUnderlyingObject();
+        switch (dataType)
+        {
+            case BYTE:
+            case UBYTE:
+                return array instanceof byte[] ? array : null;
+
+            case SHORT:
+            case USHORT:
+                return array instanceof short[] ? array : null;
+
+            case INT:
+            case UINT:
+                return array instanceof int[] ? array : null;
+
+            case LONG:
+            case ULONG:
+                return array instanceof long[] ? array : null;
+
+            case FLOAT:
+                return array instanceof float[] ? array : null;
+
+            case DOUBLE:
+                return array instanceof double[] ? array : null;
+
+            default:
+                return null;
+        }
+    }
+}
@@ -18,11 +18,15 @@ import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.vast.data.DataIterator;
 import org.vast.swe.IComponentFilter;
+import org.vast.swe.StreamMetrics;
 import net.opengis.swe.v20.CategoryRange;
 import net.opengis.swe.v20.CountRange;
 import net.opengis.swe.v20.DataArray;
 import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
 import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataComponentVisitor;
 import net.opengis.swe.v20.DataRecord;
@@ -146,9 +150,74 @@ public abstract class DataBlockProcessor implements DataComponentVisitor
     }
     
     
+    /*
+     * Accumulates time spent in the wrapped processor
+     */
+    static class TimedProcessor implements AtomProcessor
+    {
+        final AtomProcessor processor;
+        final LongAdder timer;
+        
+        TimedProcessor(AtomProcessor processor, LongAdder timer)
+        {
+            this.processor = processor;
+            this.timer = timer;
+        }
+        
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            long t0 = System.nanoTime();
+            index = processor.process(data, index);
+            timer.add(System.nanoTime() - t0);
+            return index;
+        }
+        
+        @Override
+        public void setEnabled(boolean enabled)
+        {
+            processor.setEnabled(enabled);
+        }
+        
+        @Override
+        public boolean isEnabled()
+        {
+            return processor.isEnabled();
+        }
+    }
+    
+    
     protected abstract void init();
     
     
+    /*
+     * Wraps processors of top-level record fields so that time spent
+     * in each of them is accumulated in the metrics.
+     * This is only done when the root is a plain record processor since
+     * format specific processors (e.g. JSON, XML) need direct access to
+     * their children.
+     */
+    protected void addComponentTimers(StreamMetrics metrics)
+    {
+        if (rootProcessor == null || rootProcessor.getClass() != RecordProcessor.class)
+            return;
+        
+        List<AtomProcessor> fieldProcessors = ((RecordProcessor)rootProcessor).fieldProcessors;
+        if (fieldProcessors.size() != dataComponents.getComponentCount())
+            return;
+        
+        for (int i = 0; i < fieldProcessors.size(); i++)
+        {
+            AtomProcessor p = fieldProcessors.get(i);
+            if (!(p instanceof TimedProcessor))
+            {
+                String name = dataComponents.getComponent(i).getName();
+                fieldProcessors.set(i, new TimedProcessor(p, metrics.getComponentTimer(name)));
+            }
+        }
+    }
+    
+    
     protected void addToProcessorTree(AtomProcessor processor)
     {
         // add to parent processor or root
@@ -192,6 +261,25 @@ public abstract class DataBlockProcessor implements DataComponentVisitor
     }
     
     
+    /*
+     * Checks if the datablock structure can change from one record to the
+     * next, i.e. if the component contains choices or variable size arrays
+     */
+    protected static boolean hasVariableStructure(DataComponent comp)
+    {
+        for (DataComponent c: new DataIterator(comp))
+        {
+            if (c instanceof DataChoice)
+                return true;
+            
+            if (c instanceof DataArray && ((DataArray)c).isVariableSize())
+                return true;
+        }
+        
+        return false;
+    }
+    
+    
     @Override
     public void visit(CountRange component)
     {
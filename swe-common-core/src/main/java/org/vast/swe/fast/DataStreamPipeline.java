@@ -0,0 +1,522 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import net.opengis.swe.v20.DataBlock;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.util.Asserts;
+
+
+/**
+ * <p>
+ * Pipeline running stream reads and record decoding on separate threads so
+ * that I/O overlaps with parsing and with the work done by the consumer.<br/>
+ * The reader stage copies raw bytes from the input stream, the decoder stage
+ * runs the parser on these bytes and hands records to the consumer in
+ * batches. Stages are connected by bounded queues so a slow consumer
+ * throttles the source instead of letting memory grow.
+ * </p><p>
+ * Records are consumed in stream order, either by pulling them with
+ * {@link #next()} or by pushing them to a callback with
+ * {@link #forEach(Consumer)}. A writer can be used as the consumer to
+ * re-encode the stream.
+ * </p><p>
+ * Stages run on daemon threads by default and both stop as soon as the
+ * decoder stops, because of the end of records, a decoding error or a call
+ * to {@link #close()}.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DataStreamPipeline implements AutoCloseable
+{
+    public static final int DEFAULT_READ_SIZE = 64 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+
+    static final byte[] END_OF_STREAM = new byte[0];
+    static final List<DataBlock> END_OF_RECORDS = Collections.emptyList();
+
+
+    /**
+     * Behavior of the decoder stage when the consumer doesn't keep up
+     */
+    public enum Backpressure
+    {
+        /** wait for the consumer, which also stops reading the source */
+        BLOCK,
+
+        /** discard new records until the consumer catches up */
+        DROP
+    }
+
+
+    final DataStreamParser parser;
+    ThreadFactory threadFactory = DataStreamPipeline::newDaemonThread;
+    Backpressure backpressure = Backpressure.BLOCK;
+    int readSize = DEFAULT_READ_SIZE;
+    int batchSize = DEFAULT_BATCH_SIZE;
+    int queueSize = DEFAULT_QUEUE_SIZE;
+
+    BlockingQueue<byte[]> rawQueue;
+    BlockingQueue<List<DataBlock>> recordQueue;
+    InputStream input;
+    Thread readerThread;
+    Thread decoderThread;
+    volatile Throwable error;
+    volatile boolean closed;
+    volatile boolean decoderDone;
+    final AtomicLong droppedCount = new AtomicLong();
+
+    // decoder side state
+    List<DataBlock> pendingBatch;
+
+    // consumer side state
+    List<DataBlock> currentBatch;
+    int batchPos;
+    boolean ended;
+
+
+    /*
+     * Input stream fed by the reader stage. Records decoded so far are
+     * handed to the consumer before waiting for more bytes so latency
+     * stays low on slow live streams.
+     */
+    class QueueInputStream extends InputStream
+    {
+        byte[] buf = new byte[0];
+        int pos;
+
+        boolean fill() throws IOException
+        {
+            if (buf == END_OF_STREAM)
+                return false;
+
+            try
+            {
+                byte[] next = rawQueue.poll();
+                if (next == null)
+                {
+                    flushBatch();
+                    next = rawQueue.take();
+                }
+
+                buf = next;
+                pos = 0;
+                return buf != END_OF_STREAM;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Pipeline was closed");
+            }
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            while (pos >= buf.length)
+            {
+                if (!fill())
+                    return -1;
+            }
+
+            return buf[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+
+            while (pos >= buf.length)
+            {
+                if (!fill())
+                    return -1;
+            }
+
+            int n = Math.min(len, buf.length - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available()
+        {
+            return buf.length - pos;
+        }
+    }
+
+
+    static Thread newDaemonThread(Runnable r)
+    {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    }
+
+
+    /**
+     * @param parser parser fully configured with data components and
+     * encoding. It must renew data blocks for each record.
+     */
+    public DataStreamPipeline(DataStreamParser parser)
+    {
+        Asserts.checkNotNull(parser, DataStreamParser.class);
+        this.parser = parser;
+    }
+
+
+    /**
+     * Starts reading and decoding the stream in background threads
+     * @param is input stream, closed when the end of stream is reached or
+     * when the pipeline is closed
+     * @throws IOException if the parser cannot be attached to the stream
+     */
+    public synchronized void start(InputStream is) throws IOException
+    {
+        Asserts.checkNotNull(is, InputStream.class);
+        Asserts.checkState(readerThread == null, "Pipeline already started");
+
+        this.input = is;
+        this.rawQueue = new ArrayBlockingQueue<>(queueSize);
+        this.recordQueue = new ArrayBlockingQueue<>(queueSize);
+
+        parser.setRenewDataBlock(true);
+        parser.setInput(new QueueInputStream());
+
+        readerThread = threadFactory.newThread(this::readStream);
+        readerThread.setName("SWE Stream Reader");
+        decoderThread = threadFactory.newThread(this::decodeRecords);
+        decoderThread.setName("SWE Stream Decoder");
+        readerThread.start();
+        decoderThread.start();
+    }
+
+
+    /*
+     * Reader stage
+     */
+    protected void readStream()
+    {
+        try
+        {
+            while (!closed && !decoderDone)
+            {
+                byte[] buf = new byte[readSize];
+                int n = input.read(buf);
+                if (n < 0)
+                    break;
+                if (n == 0)
+                    continue;
+
+                rawQueue.put(n < buf.length ? Arrays.copyOf(buf, n) : buf);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Throwable e)
+        {
+            // input is closed on purpose when the decoder stops
+            if (!closed && !decoderDone)
+                error = e;
+        }
+        finally
+        {
+            closeInput();
+            signalEndOfStream();
+        }
+    }
+
+
+    /*
+     * Lets the decoder know that no more bytes will come
+     */
+    protected void signalEndOfStream()
+    {
+        try
+        {
+            // pending bytes are useless if the pipeline is closed or broken
+            if (closed || error != null || decoderDone)
+                rawQueue.clear();
+            rawQueue.put(END_OF_STREAM);
+        }
+        catch (InterruptedException e)
+        {
+            // decoder is also interrupted when closing
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /*
+     * Decoder stage
+     */
+    protected void decodeRecords()
+    {
+        try
+        {
+            DataBlock data;
+            while (!closed && (data = parser.parseNextBlock()) != null)
+            {
+                if (pendingBatch == null)
+                    pendingBatch = new ArrayList<>(batchSize);
+
+                pendingBatch.add(data);
+                if (pendingBatch.size() >= batchSize)
+                    flushBatch();
+            }
+
+            flushBatch();
+        }
+        catch (Throwable e)
+        {
+            if (!closed)
+                error = e;
+        }
+        finally
+        {
+            stopReader();
+
+            try
+            {
+                // always signal end of records, even in drop mode
+                if (!closed)
+                    recordQueue.put(END_OF_RECORDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /*
+     * Stops the reader stage once the decoder is done, otherwise it could
+     * stay blocked forever on a full raw queue or on the input stream
+     */
+    protected void stopReader()
+    {
+        decoderDone = true;
+        readerThread.interrupt();
+        closeInput();
+
+        // unblock reader waiting for room in the queue
+        rawQueue.clear();
+    }
+
+
+    /*
+     * Hands the current batch of records to the consumer
+     */
+    protected void flushBatch()
+    {
+        if (pendingBatch == null || closed)
+            return;
+
+        List<DataBlock> records = pendingBatch;
+        pendingBatch = null;
+
+        try
+        {
+            if (backpressure == Backpressure.BLOCK)
+                recordQueue.put(records);
+            else if (!recordQueue.offer(records))
+                droppedCount.addAndGet(records.size());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            parser.stop();
+        }
+    }
+
+
+    /**
+     * Gets the next record, waiting for it to be decoded if needed
+     * @return the next record or null if the end of stream was reached
+     * @throws IOException if the stream cannot be read or decoded
+     */
+    public DataBlock next() throws IOException
+    {
+        Asserts.checkState(recordQueue != null, "Pipeline not started");
+
+        while (currentBatch == null || batchPos >= currentBatch.size())
+        {
+            if (ended)
+                return null;
+
+            try
+            {
+                currentBatch = recordQueue.take();
+                batchPos = 0;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for next record");
+            }
+
+            if (currentBatch == END_OF_RECORDS)
+            {
+                ended = true;
+                checkError();
+            }
+        }
+
+        return currentBatch.get(batchPos++);
+    }
+
+
+    /**
+     * Sends all remaining records to the given consumer, from the calling thread
+     * @param consumer
+     * @throws IOException if the stream cannot be read or decoded
+     */
+    public void forEach(Consumer<DataBlock> consumer) throws IOException
+    {
+        DataBlock data;
+        while ((data = next()) != null)
+            consumer.accept(data);
+    }
+
+
+    protected void checkError() throws IOException
+    {
+        Throwable e = error;
+        if (e == null)
+            return;
+
+        if (e instanceof IOException)
+            throw (IOException)e;
+        throw new IOException("Error in stream pipeline", e);
+    }
+
+
+    protected void closeInput()
+    {
+        try
+        {
+            if (input != null)
+                input.close();
+        }
+        catch (IOException e)
+        {
+            // ignore errors when closing
+        }
+    }
+
+
+    /**
+     * Stops all stages and closes the input stream.<br/>
+     * Records that were not consumed yet are discarded.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (closed)
+            return;
+
+        closed = true;
+        parser.stop();
+
+        if (readerThread != null)
+        {
+            readerThread.interrupt();
+            decoderThread.interrupt();
+            closeInput();
+
+            // wake up consumer if it is waiting
+            recordQueue.clear();
+            recordQueue.offer(END_OF_RECORDS);
+        }
+    }
+
+
+    /**
+     * @return Number of records discarded because the consumer didn't keep up
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+
+    public void setBackpressure(Backpressure backpressure)
+    {
+        Asserts.checkNotNull(backpressure, Backpressure.class);
+        this.backpressure = backpressure;
+    }
+
+
+    /**
+     * @param batchSize Maximum number of records handed to the consumer at once
+     */
+    public void setBatchSize(int batchSize)
+    {
+        Asserts.checkArgument(batchSize > 0, "Batch size must be > 0");
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * @param queueSize Maximum number of byte buffers and record batches
+     * waiting between stages
+     */
+    public void setQueueSize(int queueSize)
+    {
+        Asserts.checkArgument(queueSize > 0, "Queue size must be > 0");
+        this.queueSize = queueSize;
+    }
+
+
+    /**
+     * @param readSize Size of buffers used to read the input stream, in bytes
+     */
+    public void setReadSize(int readSize)
+    {
+        Asserts.checkArgument(readSize > 0, "Read size must be > 0");
+        this.readSize = readSize;
+    }
+
+
+    /**
+     * @param threadFactory Factory used to create the reader and decoder
+     * threads, instead of the default one creating daemon threads
+     */
+    public void setThreadFactory(ThreadFactory threadFactory)
+    {
+        Asserts.checkNotNull(threadFactory, ThreadFactory.class);
+        this.threadFactory = threadFactory;
+    }
+}
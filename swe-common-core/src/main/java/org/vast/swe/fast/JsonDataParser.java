@@ -0,0 +1,753 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import org.vast.data.DataArrayImpl;
+import org.vast.data.DataChoiceImpl;
+import org.vast.swe.SWEDataTypeUtils;
+import org.vast.util.IsoDateTimeCodec;
+import org.vast.util.ReaderException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.opengis.swe.v20.Boolean;
+import net.opengis.swe.v20.Category;
+import net.opengis.swe.v20.CategoryRange;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.CountRange;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.Quantity;
+import net.opengis.swe.v20.QuantityRange;
+import net.opengis.swe.v20.Text;
+import net.opengis.swe.v20.Time;
+import net.opengis.swe.v20.TimeRange;
+import net.opengis.swe.v20.Vector;
+
+
+/**
+ * <p>
+ * New implementation of JSON data parser reading the format produced by
+ * {@link JsonDataWriter}. The parsing tree is pre-computed during init and
+ * values are pulled directly from a streaming JSON reader and stored in the
+ * data block, without building an intermediate object tree.
+ * </p><p>
+ * Record fields must appear in the order defined by the data structure but
+ * unknown fields are ignored. Several records can be wrapped in a JSON array
+ * or simply concatenated, including when the root component is itself an
+ * array, in which case the wrapping array is detected from the nesting depth.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 20, 2018
+ */
+public class JsonDataParser extends AbstractDataParser
+{
+    static final String JSON_ERROR = "Error parsing JSON stream for ";
+    static final String MISSING_FIELD_MSG = "Missing field: ";
+    static final String ARRAY_SIZE_MSG = "Number of array elements doesn't match array size: ";
+
+    protected JsonReader reader;
+    BufferedReader input;
+    boolean streamStarted;
+    boolean multipleRecords;
+
+
+    protected interface JsonParser
+    {
+        String getEltName();
+    }
+
+
+    protected abstract class ValueParser extends BaseProcessor implements JsonParser
+    {
+        String eltName;
+
+        public abstract void readValue(DataBlock data, int index) throws IOException;
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                readValue(data, index);
+                return ++index;
+            }
+            catch (IllegalStateException | NumberFormatException e)
+            {
+                throw new ReaderException(JSON_ERROR + eltName + " value", e);
+            }
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class BooleanParser extends ValueParser
+    {
+        public BooleanParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void readValue(DataBlock data, int index) throws IOException
+        {
+            data.setBooleanValue(index, reader.nextBoolean());
+        }
+    }
+
+
+    protected class IntegerParser extends ValueParser
+    {
+        public IntegerParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void readValue(DataBlock data, int index) throws IOException
+        {
+            data.setIntValue(index, reader.nextInt());
+        }
+    }
+
+
+    protected class DecimalParser extends ValueParser
+    {
+        public DecimalParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void readValue(DataBlock data, int index) throws IOException
+        {
+            double val;
+            JsonToken token = reader.peek();
+
+            // special values are quoted because they are not valid literal values in JSON
+            if (token == JsonToken.STRING)
+                val = SWEDataTypeUtils.parseDoubleOrInf(reader.nextString());
+            else if (token == JsonToken.NULL)
+            {
+                reader.nextNull();
+                val = Double.NaN;
+            }
+            else
+                val = reader.nextDouble();
+
+            data.setDoubleValue(index, val);
+        }
+    }
+
+
+    protected class IsoDateTimeParser extends ValueParser
+    {
+        IsoDateTimeCodec timeCodec = new IsoDateTimeCodec();
+
+        public IsoDateTimeParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void readValue(DataBlock data, int index) throws IOException
+        {
+            String token = reader.nextString();
+
+            try
+            {
+                double val;
+                if (token.endsWith("INF") || "NaN".equals(token))
+                    val = SWEDataTypeUtils.parseDoubleOrInf(token);
+                else
+                    val = timeCodec.parse(token);
+                data.setDoubleValue(index, val);
+            }
+            catch (ParseException e)
+            {
+                throw new ReaderException(JSON_ERROR + eltName + " value", e);
+            }
+        }
+    }
+
+
+    protected class StringParser extends ValueParser
+    {
+        public StringParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void readValue(DataBlock data, int index) throws IOException
+        {
+            if (reader.peek() == JsonToken.NULL)
+            {
+                reader.nextNull();
+                data.setStringValue(index, null);
+            }
+            else
+                data.setStringValue(index, reader.nextString());
+        }
+    }
+
+
+    protected class RangeParser extends RecordProcessor implements JsonParser
+    {
+        String eltName;
+
+        public RangeParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                reader.beginArray();
+                index = fieldProcessors.get(0).process(data, index);
+                index = fieldProcessors.get(1).process(data, index);
+                reader.endArray();
+                return index;
+            }
+            catch (IllegalStateException e)
+            {
+                throw new ReaderException(JSON_ERROR + eltName + " range", e);
+            }
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class RecordParser extends RecordProcessor implements JsonParser
+    {
+        String eltName;
+
+        public RecordParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                reader.beginObject();
+
+                for (AtomProcessor p: fieldProcessors)
+                {
+                    String fieldName = ((JsonParser)p).getEltName();
+                    if (!skipToField(fieldName))
+                        throw new ReaderException(MISSING_FIELD_MSG + fieldName);
+                    index = p.process(data, index);
+                }
+
+                // skip remaining unknown fields
+                skipToField(null);
+                reader.endObject();
+
+                return index;
+            }
+            catch (IllegalStateException e)
+            {
+                throw new ReaderException(JSON_ERROR + eltName + " record", e);
+            }
+        }
+
+        /*
+         * Skips fields until the one with the given name is found.
+         * Returns false if the end of the object was reached before.
+         */
+        protected boolean skipToField(String fieldName) throws IOException
+        {
+            while (reader.hasNext())
+            {
+                if (reader.nextName().equals(fieldName))
+                    return true;
+                reader.skipValue();
+            }
+
+            return false;
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class ArrayParser extends ArrayProcessor implements JsonParser
+    {
+        String eltName;
+
+        public ArrayParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                reader.beginArray();
+                index = parseElements(data, index);
+                if (reader.hasNext())
+                    throw new ReaderException(ARRAY_SIZE_MSG + eltName);
+                reader.endArray();
+
+                return index;
+            }
+            catch (IllegalStateException e)
+            {
+                throw new ReaderException(JSON_ERROR + eltName + " array", e);
+            }
+        }
+
+        protected int parseElements(DataBlock data, int index) throws IOException
+        {
+            for (int i = 0; i < arraySize; i++)
+            {
+                checkHasNext();
+                index = eltProcessor.process(data, index);
+            }
+
+            return index;
+        }
+
+        protected void checkHasNext() throws IOException
+        {
+            if (!reader.hasNext())
+                throw new ReaderException(ARRAY_SIZE_MSG + eltName);
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class VarSizeArrayParser extends ArrayParser
+    {
+        DataArrayImpl array;
+        boolean dynamicElements;
+        ArrayList<DataBlock> eltBlocks;
+
+        public VarSizeArrayParser(DataArrayImpl array)
+        {
+            super(array.getName());
+            this.array = array;
+            if (array.isImplicitSize())
+                this.eltBlocks = new ArrayList<>();
+        }
+
+        @Override
+        protected int parseElements(DataBlock data, int index) throws IOException
+        {
+            if (eltBlocks != null)
+                return parseImplicitSizeElements(data, index);
+
+            // get size from size component already parsed
+            // and resize array datablock if needed
+            array.updateSize();
+            arraySize = array.getComponentCount();
+
+            if (!dynamicElements)
+                return super.parseElements(data, index);
+
+            // if array elements can change structure, parse each of them
+            // to its own datablock since their sizes may differ
+            for (int i = 0; i < arraySize; i++)
+            {
+                checkHasNext();
+                DataBlock eltData = array.getComponent(i).getData();
+                eltProcessor.process(eltData, 0);
+                index += eltData.getAtomCount();
+            }
+
+            return index;
+        }
+
+        /*
+         * Array size is only known once all elements have been read so each
+         * element is parsed to its own datablock first. These datablocks are
+         * reused from one record to the next.
+         */
+        protected int parseImplicitSizeElements(DataBlock data, int index) throws IOException
+        {
+            if (dynamicElements)
+                throw new ReaderException("Implicit size arrays with variable element structure are not supported: " + eltName);
+
+            int numElts = 0;
+            while (reader.hasNext())
+            {
+                if (numElts == eltBlocks.size())
+                    eltBlocks.add(array.getElementType().createDataBlock());
+                eltProcessor.process(eltBlocks.get(numElts), 0);
+                numElts++;
+            }
+
+            array.updateSize(numElts);
+            arraySize = numElts;
+
+            for (int i = 0; i < numElts; i++)
+            {
+                DataBlock eltData = eltBlocks.get(i);
+                for (int j = 0; j < eltData.getAtomCount(); j++)
+                    copyValue(eltData, j, data, index++);
+            }
+
+            return index;
+        }
+    }
+
+
+    protected class ChoiceParser extends ChoiceProcessor implements JsonParser
+    {
+        DataChoiceImpl choice;
+
+        public ChoiceParser(DataChoiceImpl choice)
+        {
+            this.choice = choice;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                reader.beginObject();
+
+                String itemName = reader.nextName();
+                int selectedIndex = choice.getComponentIndex(itemName);
+                if (selectedIndex < 0)
+                    throw new ReaderException(INVALID_CHOICE_MSG + itemName);
+
+                // regenerate choice datablock only if selected item has changed
+                if (choice.getSelected() != selectedIndex)
+                    choice.setSelectedItem(selectedIndex);
+
+                index = super.process(data, ++index, selectedIndex);
+                reader.endObject();
+
+                return index;
+            }
+            catch (IllegalStateException e)
+            {
+                throw new ReaderException(JSON_ERROR + choice.getName() + " choice", e);
+            }
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return choice.getName();
+        }
+    }
+
+
+    protected static void copyValue(DataBlock src, int srcIndex, DataBlock dst, int dstIndex)
+    {
+        switch (src.getDataType(srcIndex))
+        {
+            case BOOLEAN:
+                dst.setBooleanValue(dstIndex, src.getBooleanValue(srcIndex));
+                break;
+
+            case BYTE:
+            case UBYTE:
+            case SHORT:
+            case USHORT:
+            case INT:
+                dst.setIntValue(dstIndex, src.getIntValue(srcIndex));
+                break;
+
+            case UINT:
+            case LONG:
+            case ULONG:
+                dst.setLongValue(dstIndex, src.getLongValue(srcIndex));
+                break;
+
+            case FLOAT:
+                dst.setFloatValue(dstIndex, src.getFloatValue(srcIndex));
+                break;
+
+            case DOUBLE:
+                dst.setDoubleValue(dstIndex, src.getDoubleValue(srcIndex));
+                break;
+
+            default:
+                dst.setStringValue(dstIndex, src.getStringValue(srcIndex));
+        }
+    }
+
+
+    @Override
+    protected void init()
+    {
+        bindComponents = hasVariableStructure(dataComponents);
+    }
+
+
+    @Override
+    protected boolean moreData() throws IOException
+    {
+        try
+        {
+            // detect if records are wrapped in a JSON array
+            if (!streamStarted)
+            {
+                streamStarted = true;
+                if (rootProcessor instanceof ArrayParser ? isWrappedArray() : reader.peek() == JsonToken.BEGIN_ARRAY)
+                {
+                    reader.beginArray();
+                    multipleRecords = true;
+                }
+            }
+
+            if (multipleRecords)
+            {
+                if (reader.hasNext())
+                    return true;
+                reader.endArray();
+                multipleRecords = false;
+            }
+
+            return reader.peek() != JsonToken.END_DOCUMENT;
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+    }
+
+
+    /*
+     * When the root component is an array, records are wrapped in a JSON array
+     * only if the stream starts with more opening brackets than there are
+     * nested arrays at the start of the structure.
+     * This must be called before the JSON reader has consumed any input.
+     */
+    protected boolean isWrappedArray() throws IOException
+    {
+        int arrayDepth = 0;
+        DataComponent comp = dataComponents;
+        while (comp instanceof DataArray)
+        {
+            arrayDepth++;
+            comp = ((DataArray)comp).getElementType();
+        }
+
+        int numBrackets = 0;
+        input.mark(1024);
+        int c;
+        while (numBrackets <= arrayDepth && (c = input.read()) >= 0)
+        {
+            if (c == '[')
+                numBrackets++;
+            else if (!Character.isWhitespace(c))
+                break;
+        }
+        input.reset();
+
+        return numBrackets > arrayDepth;
+    }
+
+
+    @Override
+    public void setInput(InputStream is) throws IOException
+    {
+        // lenient mode allows several concatenated records and NaN literals
+        this.input = new BufferedReader(new InputStreamReader(instrument(is), StandardCharsets.UTF_8));
+        this.reader = new JsonReader(input);
+        this.reader.setLenient(true);
+        this.streamStarted = false;
+        this.multipleRecords = false;
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        if (reader != null)
+            reader.close();
+    }
+
+
+    @Override
+    public void visit(Boolean comp)
+    {
+        addToProcessorTree(new BooleanParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Count comp)
+    {
+        addToProcessorTree(new IntegerParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Quantity comp)
+    {
+        addToProcessorTree(new DecimalParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Time comp)
+    {
+        if (comp.isIsoTime())
+            addToProcessorTree(new IsoDateTimeParser(comp.getName()));
+        else
+            addToProcessorTree(new DecimalParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Category comp)
+    {
+        addToProcessorTree(new StringParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Text comp)
+    {
+        addToProcessorTree(new StringParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(CountRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(QuantityRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(TimeRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(CategoryRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataRecord rec)
+    {
+        addToProcessorTree(new RecordParser(rec.getName()));
+        for (DataComponent field: rec.getFieldList())
+            field.accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(Vector rec)
+    {
+        addToProcessorTree(new RecordParser(rec.getName()));
+        for (DataComponent field: rec.getCoordinateList())
+            field.accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataChoice choice)
+    {
+        addToProcessorTree(new ChoiceParser((DataChoiceImpl)choice));
+        for (DataComponent item: choice.getItemList())
+            item.accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataArray array)
+    {
+        ArrayParser arrayParser;
+
+        if (array.isVariableSize())
+        {
+            VarSizeArrayParser varSizeParser = new VarSizeArrayParser((DataArrayImpl)array);
+            varSizeParser.dynamicElements = hasVariableStructure(array.getElementType());
+            arrayParser = varSizeParser;
+        }
+        else
+        {
+            arrayParser = new ArrayParser(array.getName());
+            arrayParser.setArraySize(array.getComponentCount());
+        }
+
+        addToProcessorTree(arrayParser);
+        array.getElementType().accept(this);
+        processorStack.pop();
+    }
+}
@@ -23,7 +23,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import org.vast.swe.SWEDataTypeUtils;
-import org.vast.util.DateTimeFormat;
+import org.vast.util.DecimalFormatter;
+import org.vast.util.IsoDateTimeCodec;
 import org.vast.util.WriterException;
 import net.opengis.swe.v20.Boolean;
 import net.opengis.swe.v20.Category;
@@ -63,6 +64,7 @@ public class JsonDataWriter extends AbstractDataWriter
     protected int depth;
     boolean multipleRecords;
     boolean firstBlock = true;
+    boolean bindComponents;
     Map<String, IntegerWriter> countWriters = new HashMap<>();
     
     
@@ -136,6 +138,9 @@ public class JsonDataWriter extends AbstractDataWriter
     
     protected class DecimalWriter extends ValueWriter
     {
+        char[] numBuf = new char[DecimalFormatter.MAX_LENGTH];
+        int sigDigits;
+        
         public DecimalWriter(String eltName)
         {
             this.eltName = eltName;
@@ -145,17 +150,17 @@ public class JsonDataWriter extends AbstractDataWriter
         public void writeValue(DataBlock data, int index) throws IOException
         {
             double val = data.getDoubleValue(index);
-            String stringVal = SWEDataTypeUtils.getDoubleOrInfAsString(val);
+            int len = DecimalFormatter.format(val, sigDigits, numBuf, 0);
             
             // need to add quote on special values because they are not valid literal values in JSON
             if (Double.isNaN(val) || Double.isInfinite(val))
             {
                 writer.write('"');
-                writer.write(stringVal);
+                writer.write(numBuf, 0, len);
                 writer.write('"');
             }
             else
-                writer.write(stringVal);
+                writer.write(numBuf, 0, len);
         }
     }
     
@@ -165,13 +170,15 @@ public class JsonDataWriter extends AbstractDataWriter
         public RoundingDecimalWriter(String eltName, int sigDigits)
         {
             super(eltName);
+            this.sigDigits = Math.min(sigDigits, DecimalFormatter.MAX_DIGITS);
         }
     }
     
     
     protected class IsoDateTimeWriter extends ValueWriter
     {
-        DateTimeFormat timeFormat = new DateTimeFormat();
+        IsoDateTimeCodec timeCodec = new IsoDateTimeCodec();
+        char[] timeBuf = new char[IsoDateTimeCodec.MAX_LENGTH];
         
         public IsoDateTimeWriter(String eltName)
         {
@@ -186,7 +193,7 @@ public class JsonDataWriter extends AbstractDataWriter
             if (Double.isNaN(val) || Double.isInfinite(val))
                 writer.write(SWEDataTypeUtils.getDoubleOrInfAsString(val));
             else
-                writer.write(timeFormat.formatIso(val, 0));
+                writer.write(timeBuf, 0, timeCodec.format(val, timeBuf, 0));
             writer.write('"');
         }
     }
@@ -204,7 +211,8 @@ public class JsonDataWriter extends AbstractDataWriter
         {
             String val = data.getStringValue(index);
             writer.write('"');
-            writer.write(val);
+            if (val != null)
+                writeEscaped(val);
             writer.write('"');
         }
     }
@@ -328,6 +336,7 @@ public class JsonDataWriter extends AbstractDataWriter
     {
         String eltName;
         IntegerWriter sizeWriter;
+        DataArray implicitSizeArray;
         boolean onlyScalars = true;
         
         public ArrayWriter(String eltName)
@@ -341,8 +350,12 @@ public class JsonDataWriter extends AbstractDataWriter
             try
             {
                 // retrieve variable array size
+                // implicit size is not part of the datablock so it is
+                // obtained from the component tree bound to it
                 if (sizeWriter != null)
                     arraySize = sizeWriter.val;
+                else if (implicitSizeArray != null)
+                    arraySize = implicitSizeArray.getComponentCount();
                 
                 writer.write('[');
                 
@@ -457,16 +470,40 @@ public class JsonDataWriter extends AbstractDataWriter
     }
     
     
-    protected class ArraySizeScanner extends BaseProcessor
+    /*
+     * Escapes quotes, backslashes and control characters as required by JSON
+     */
+    protected void writeEscaped(String val) throws IOException
     {
-        ArrayProcessor arrayProcessor;
-        
-        @Override
-        public int process(DataBlock data, int index) throws IOException
+        for (int i = 0; i < val.length(); i++)
         {
-            int arraySize = data.getIntValue(index);
-            arrayProcessor.arraySize = arraySize;
-            return ++index;
+            char c = val.charAt(i);
+            switch (c)
+            {
+                case '"':
+                case '\\':
+                    writer.write('\\');
+                    writer.write(c);
+                    break;
+                    
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                    
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                    
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                    
+                default:
+                    if (c < 0x20)
+                        writer.write(String.format("\\u%04x", (int)c));
+                    else
+                        writer.write(c);
+            }
         }
     }
     
@@ -487,19 +524,28 @@ public class JsonDataWriter extends AbstractDataWriter
     @Override
     public void setOutput(OutputStream os)
     {
-        this.writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        this.writer = new OutputStreamWriter(instrument(os), StandardCharsets.UTF_8);
     }
     
     
     @Override
-    public void write(DataBlock data) throws IOException
+    protected void beforeRecord(DataBlock data) throws IOException
     {
         if (!firstBlock)
             writer.write(",\n");
         
-        indent();
-        super.write(data);
+        // bind component tree to datablock so that implicit array sizes can be read
+        initProcessorTree();
+        if (bindComponents)
+            dataComponents.setData(data);
         
+        indent();
+    }
+    
+    
+    @Override
+    protected void afterRecord(DataBlock data) throws IOException
+    {
         if (multipleRecords)
             firstBlock = false;
     }
@@ -698,9 +744,8 @@ public class JsonDataWriter extends AbstractDataWriter
         
         if (array.isImplicitSize())
         {
-            ArraySizeScanner sizeWriter = new ArraySizeScanner();
-            sizeWriter.arrayProcessor = arrayWriter;
-            addToProcessorTree(sizeWriter);
+            arrayWriter.implicitSizeArray = array;
+            bindComponents = true;
         }
         else if (array.isVariableSize())
         {
@@ -0,0 +1,297 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.TextEncoding;
+import org.vast.swe.StreamMetrics;
+import org.vast.util.Asserts;
+
+
+/**
+ * <p>
+ * Parser splitting a text encoded stream in chunks of whole records and
+ * parsing them in parallel on a fork-join pool.<br/>
+ * Chunks are cut right after a block separator so each one can be parsed
+ * independently by a {@link TextDataParser} working on its own copy of the
+ * component tree. Parsed records are handed to the consumer in stream order.
+ * </p><p>
+ * The stream is read ahead by a bounded number of chunks so memory usage
+ * doesn't depend on the stream size. This only works if the block separator
+ * never appears within a record and doesn't overlap itself
+ * (e.g. "\n" or "\r\n" are fine).
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class ParallelTextDataParser
+{
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    final DataComponent dataComponents;
+    final TextEncoding dataEncoding;
+    final byte[] blockSep;
+    final ConcurrentLinkedQueue<TextDataParser> parsers = new ConcurrentLinkedQueue<>();
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    int chunkSize = DEFAULT_CHUNK_SIZE;
+    StreamMetrics metrics;
+
+
+    public ParallelTextDataParser(DataComponent dataComponents, TextEncoding dataEncoding)
+    {
+        Asserts.checkNotNull(dataComponents, DataComponent.class);
+        Asserts.checkNotNull(dataEncoding, TextEncoding.class);
+
+        String sep = dataEncoding.getBlockSeparator();
+        Asserts.checkArgument(sep != null && !sep.isEmpty(), "A block separator is required");
+
+        this.dataComponents = dataComponents;
+        this.dataEncoding = dataEncoding;
+        this.blockSep = sep.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Checks if a stream with the given encoding can be split for parallel parsing
+     * @param encoding
+     * @return true if the encoding is a text encoding with a block separator
+     */
+    public static boolean isSupported(Object encoding)
+    {
+        if (!(encoding instanceof TextEncoding))
+            return false;
+
+        String sep = ((TextEncoding)encoding).getBlockSeparator();
+        return sep != null && !sep.isEmpty();
+    }
+
+
+    /**
+     * Parses all records from the stream
+     * @param is input stream, closed when parsing is done
+     * @param consumer called with each parsed record, in stream order,
+     * from the calling thread
+     * @throws IOException if the stream cannot be read or a record is invalid
+     */
+    public void parse(InputStream is, Consumer<DataBlock> consumer) throws IOException
+    {
+        // keep enough chunks in flight to feed all workers
+        int maxPending = pool.getParallelism() * 2;
+        ArrayDeque<ForkJoinTask<List<DataBlock>>> pending = new ArrayDeque<>(maxPending);
+
+        try
+        {
+            byte[] buf = new byte[chunkSize];
+            int len = 0;
+            boolean eos = false;
+
+            while (!eos)
+            {
+                // fill buffer
+                while (len < buf.length)
+                {
+                    int n = is.read(buf, len, buf.length - len);
+                    if (n < 0)
+                    {
+                        eos = true;
+                        break;
+                    }
+                    len += n;
+                }
+
+                // cut after last block separator, or keep everything at end of stream
+                int cut = eos ? len : lastSeparatorEnd(buf, len);
+                if (cut <= 0)
+                {
+                    // record larger than the buffer
+                    if (!eos)
+                        buf = Arrays.copyOf(buf, buf.length * 2);
+                    continue;
+                }
+
+                final byte[] chunk = buf;
+                final int chunkLen = cut;
+                pending.add(pool.submit(() -> parseChunk(chunk, chunkLen)));
+
+                buf = new byte[Math.max(chunkSize, len - cut)];
+                System.arraycopy(chunk, cut, buf, 0, len - cut);
+                len -= cut;
+
+                // hand out results of the oldest chunk when too many are pending
+                while (pending.size() >= maxPending)
+                    getResults(pending.poll()).forEach(consumer);
+            }
+
+            // hand out results of all remaining chunks
+            while (!pending.isEmpty())
+                getResults(pending.poll()).forEach(consumer);
+        }
+        finally
+        {
+            // tasks are only left here if an error occurred
+            for (ForkJoinTask<?> task: pending)
+                task.cancel(false);
+            is.close();
+        }
+    }
+
+
+    /**
+     * Parses all records from the stream and collects them in a list
+     * @param is input stream, closed when parsing is done
+     * @return list of parsed records, in stream order
+     * @throws IOException if the stream cannot be read or a record is invalid
+     */
+    public List<DataBlock> parse(InputStream is) throws IOException
+    {
+        List<DataBlock> records = new ArrayList<>();
+        parse(is, records::add);
+        return records;
+    }
+
+
+    protected List<DataBlock> parseChunk(byte[] chunk, int len) throws IOException
+    {
+        TextDataParser parser = parsers.poll();
+        if (parser == null)
+        {
+            // each parser binds its own copy of the components
+            parser = new TextDataParser();
+            parser.setDataEncoding(dataEncoding);
+            parser.setDataComponents(dataComponents.copy());
+        }
+
+        // all workers record to the same metrics
+        if (parser.getMetrics() != metrics)
+            parser.setMetrics(metrics);
+
+        List<DataBlock> records = new ArrayList<>();
+        parser.setInput(new ByteArrayInputStream(chunk, 0, len));
+
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            records.add(data);
+
+        // parser is only reused if the whole chunk was parsed successfully
+        parsers.add(parser);
+        return records;
+    }
+
+
+    protected List<DataBlock> getResults(ForkJoinTask<List<DataBlock>> task) throws IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing records", e);
+        }
+        catch (ExecutionException e)
+        {
+            // report the parser error, even if wrapped by the pool
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+            {
+                if (cause instanceof IOException)
+                    throw (IOException)cause;
+            }
+            throw new IOException("Error while parsing records", e.getCause());
+        }
+    }
+
+
+    /*
+     * Gets the position following the last complete block separator, or -1 if none
+     */
+    private int lastSeparatorEnd(byte[] buf, int len)
+    {
+        for (int i = len - blockSep.length; i >= 0; i--)
+        {
+            int j = 0;
+            while (j < blockSep.length && buf[i+j] == blockSep[j])
+                j++;
+            if (j == blockSep.length)
+                return i + blockSep.length;
+        }
+
+        return -1;
+    }
+
+
+    public ForkJoinPool getForkJoinPool()
+    {
+        return pool;
+    }
+
+
+    /**
+     * @param pool pool used to parse chunks (common pool by default)
+     */
+    public void setForkJoinPool(ForkJoinPool pool)
+    {
+        Asserts.checkNotNull(pool, ForkJoinPool.class);
+        this.pool = pool;
+    }
+
+
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+
+    /**
+     * @param chunkSize approximate size of chunks sent to workers, in bytes.
+     * Chunks are made larger when a single record doesn't fit.
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        Asserts.checkArgument(chunkSize > 0, "Chunk size must be > 0");
+        this.chunkSize = chunkSize;
+    }
+
+
+    public StreamMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+
+    /**
+     * @param metrics object collecting statistics about records parsed
+     * by all workers, or null to disable collection
+     */
+    public void setMetrics(StreamMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+}
@@ -21,6 +21,7 @@ import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import net.opengis.swe.v20.Boolean;
 import net.opengis.swe.v20.Category;
 import net.opengis.swe.v20.Count;
@@ -32,7 +33,13 @@ import net.opengis.swe.v20.Quantity;
 import net.opengis.swe.v20.Text;
 import net.opengis.swe.v20.TextEncoding;
 import net.opengis.swe.v20.Time;
-import org.vast.util.DateTimeFormat;
+import org.vast.data.DataBlockDictString;
+import org.vast.data.DataBlockMixed;
+import org.vast.data.DataBlockTuple;
+import org.vast.data.DataValue;
+import org.vast.data.StringDictionary;
+import org.vast.swe.SWEDataTypeUtils;
+import org.vast.util.IsoDateTimeCodec;
 import org.vast.util.ReaderException;
 
 
@@ -48,14 +55,23 @@ import org.vast.util.ReaderException;
  */
 public class TextDataParser extends AbstractDataParser
 {
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
     Reader reader;
-    String tokenSep = ",";
+    char[] tokenSep = ",".toCharArray();
     char[] blockSep = "\n".toCharArray();
     boolean collapseWhiteSpaces = true;
-    StringBuilder tokenBuf = new StringBuilder(32);
-    String[] lastSplit;
-    int tokenIndex = -1;    
-    int blockSepIndex = 0;
+    char[] readBuf = new char[8192];
+    int readPos;
+    int readLimit;
+    char[] tokenBuf = new char[64];
+    int tokenStart;
+    int tokenEnd;
+    boolean tokenPending;
+    boolean endOfRecord;
     
     
     protected class BooleanParser extends BaseProcessor
@@ -63,27 +79,27 @@ public class TextDataParser extends AbstractDataParser
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
-            String token = readToken();
+            readToken();
             boolean val = false;
 
-            if (token.length() == 1)
+            if (tokenEnd - tokenStart == 1)
             {
-                char c = token.charAt(0);
+                char c = tokenBuf[tokenStart];
                 if (c == '0')
                     val = false;
                 else if (c == '1')
                     val = true;
                 else
-                    throw new ReaderException(INVALID_BOOLEAN_MSG + token);
+                    throw new ReaderException(INVALID_BOOLEAN_MSG + getTokenString());
             }
             else
             {
-                if (token.equalsIgnoreCase("false"))
+                if (tokenEqualsIgnoreCase("false"))
                     val = false;
-                else if (token.equalsIgnoreCase("true"))
+                else if (tokenEqualsIgnoreCase("true"))
                     val = true;
                 else
-                    throw new ReaderException(INVALID_BOOLEAN_MSG + token);
+                    throw new ReaderException(INVALID_BOOLEAN_MSG + getTokenString());
             }
             
             data.setBooleanValue(index, val);
@@ -97,18 +113,10 @@ public class TextDataParser extends AbstractDataParser
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
-            String token = readToken();
-            
-            try
-            {
-                int val = Integer.parseInt(token);
-                data.setIntValue(index, val);
-                return ++index;
-            }
-            catch (NumberFormatException e)
-            {
-                throw new ReaderException(INVALID_INTEGER_MSG + token);
-            }            
+            readToken();
+            int val = parseIntToken();
+            data.setIntValue(index, val);
+            return ++index;
         }
     }   
     
@@ -118,42 +126,26 @@ public class TextDataParser extends AbstractDataParser
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
-            String token = readToken();
-            
-            try
-            {
-                double val;
-                
-                if ("INF".equals(token) || "+INF".equals(token))
-                    val = Double.POSITIVE_INFINITY;
-                else if ("-INF".equals(token))
-                    val = Double.NEGATIVE_INFINITY;
-                else
-                    val = Double.parseDouble(token);
-                
-                data.setDoubleValue(index, val);
-                return ++index;
-            }
-            catch (NumberFormatException e)
-            {
-                throw new ReaderException(INVALID_DECIMAL_MSG + token);
-            }
+            readToken();
+            double val = parseDoubleToken();
+            data.setDoubleValue(index, val);
+            return ++index;
         }
     }    
     
     
     protected class IsoDateTimeParser extends BaseProcessor
     {
-        DateTimeFormat timeFormat = new DateTimeFormat();
+        IsoDateTimeCodec timeCodec = new IsoDateTimeCodec();
         
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
-            String token = readToken();
+            readToken();
             
             try
             {
-                double val = timeFormat.parseIso(token);
+                double val = timeCodec.parse(tokenBuf, tokenStart, tokenEnd);
                 data.setDoubleValue(index, val);
                 return ++index;
             }
@@ -167,13 +159,69 @@ public class TextDataParser extends AbstractDataParser
     
     protected class StringParser extends BaseProcessor
     {
+        StringDictionary dictionary;
+        
+        public StringParser(StringDictionary dictionary)
+        {
+            this.dictionary = dictionary;
+        }
+        
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
-            String token = readToken();
-            data.setStringValue(index, token);
+            readToken();
+            
+            // use canonical string from dictionary if any so no
+            // new String is created for values seen before
+            String val = null;
+            if (dictionary != null)
+            {
+                int code = dictionary.getCode(tokenBuf, tokenStart, tokenEnd - tokenStart);
+                if (code != StringDictionary.NO_CODE)
+                {
+                    // store code directly to avoid looking up the string again
+                    if (setCode(data, index, code))
+                        return ++index;
+                    val = dictionary.getString(code);
+                }
+            }
+            
+            if (val == null)
+                val = getTokenString();
+            
+            data.setStringValue(index, val);
             return ++index;
         }
+        
+        
+        /*
+         * Sets the code in the dictionary block holding the value at the
+         * given index, if any and if it uses the same dictionary
+         */
+        protected boolean setCode(DataBlock data, int index, int code)
+        {
+            if (data instanceof DataBlockDictString)
+            {
+                DataBlockDictString dictBlock = (DataBlockDictString)data;
+                if (dictBlock.getDictionary() != dictionary)
+                    return false;
+                dictBlock.setCode(index, code);
+                return true;
+            }
+            else if (data instanceof DataBlockTuple)
+            {
+                DataBlockTuple tuple = (DataBlockTuple)data;
+                return setCode(tuple.getUnderlyingObject()[tuple.getStartIndex() + index], 0, code);
+            }
+            else if (data instanceof DataBlockMixed)
+            {
+                DataBlockMixed mixed = (DataBlockMixed)data;
+                int blockIndex = mixed.getBlockIndex(index);
+                return setCode(mixed.getBlock(blockIndex), index - mixed.getBlockOffset(blockIndex), code);
+            }
+            
+            return false;
+        }
     }  
     
     
@@ -191,11 +239,20 @@ public class TextDataParser extends AbstractDataParser
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
-            String token = readToken();
+            readToken();
+            
+            int selectedIndex = -1;
+            for (int i = 0; i < choiceTokens.size(); i++)
+            {
+                if (tokenEquals(choiceTokens.get(i)))
+                {
+                    selectedIndex = i;
+                    break;
+                }
+            }
             
-            int selectedIndex = choiceTokens.indexOf(token);
             if (selectedIndex < 0)
-                throw new ReaderException(INVALID_CHOICE_MSG + token);
+                throw new ReaderException(INVALID_CHOICE_MSG + getTokenString());
             
             data.setIntValue(index, selectedIndex);
             // TODO set proper datablock for selected choice item
@@ -211,70 +268,89 @@ public class TextDataParser extends AbstractDataParser
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
-            String token = readToken();
-            
-            try
-            {
-                int val = Integer.parseInt(token);
-                arrayProcessor.arraySize = val;
-                data.setIntValue(index, val);
-                return ++index;
-            }
-            catch (NumberFormatException e)
-            {
-                throw new ReaderException(INVALID_INTEGER_MSG + token);
-            } 
+            readToken();
+            int val = parseIntToken();
+            arrayProcessor.arraySize = val;
+            data.setIntValue(index, val);
+            return ++index;
         }
     }
     
     
-    private String readToken() throws IOException
+    /*
+     * Reads next token or throws an exception if end of stream is reached
+     */
+    protected void readToken() throws IOException
+    {
+        if (!readNextToken())
+            throw new ReaderException("Unexpected end of stream");
+    }
+    
+    
+    /*
+     * Scans chars until the next token or block separator and keeps the
+     * token in the token buffer, trimming white spaces if requested.
+     * Returns false if the end of stream was reached before any char was read.
+     */
+    protected boolean readNextToken() throws IOException
     {
+        if (tokenPending)
+        {
+            tokenPending = false;
+            return true;
+        }
+        
         try
         {
-            if (tokenIndex < 0 || tokenIndex >= lastSplit.length)
+            int len = 0;
+            endOfRecord = false;
+            
+            while (true)
             {
-                // read text until next block separator
-                tokenBuf.setLength(0);
-                blockSepIndex = 0;
-                int b;
-                do
+                if (readPos >= readLimit)
                 {
-                    b = reader.read();
-                    if (b < 0)
+                    readLimit = reader.read(readBuf, 0, readBuf.length);
+                    readPos = 0;
+                    if (readLimit < 0)
+                    {
+                        readLimit = 0;
+                        if (len == 0)
+                            return false;
                         break;
-                    
-                    tokenBuf.append((char)b);
-                    
-                    // check if we have a block separator
-                    if (b == blockSep[blockSepIndex])
-                        blockSepIndex++;
-                    else
-                        blockSepIndex = 0;
+                    }
                 }
-                while (blockSepIndex < blockSep.length);
-                
-                // remove trailing separator
-                if (blockSepIndex == blockSep.length)
-                    tokenBuf.setLength(tokenBuf.length()-blockSep.length);
                 
-                // convert to string and trim white spaces if requested
-                String recString = tokenBuf.toString();
-                if (this.collapseWhiteSpaces)
-                    recString.trim();
+                if (len == tokenBuf.length)
+                    tokenBuf = Arrays.copyOf(tokenBuf, len*2);
+                tokenBuf[len++] = readBuf[readPos++];
                 
-                if (recString.isEmpty())
-                    return null;
+                // stop at block or token separator
+                if (endsWith(len, blockSep))
+                {
+                    len -= blockSep.length;
+                    endOfRecord = true;
+                    break;
+                }
                 
-                lastSplit = recString.split(tokenSep);
-                tokenIndex = 0;
+                if (endsWith(len, tokenSep))
+                {
+                    len -= tokenSep.length;
+                    break;
+                }
             }
             
-            // return next token, trimming white spaces if requested
-            String nextToken = lastSplit[tokenIndex++];
-            if (this.collapseWhiteSpaces)
-                nextToken = nextToken.trim();            
-            return nextToken;
+            tokenStart = 0;
+            tokenEnd = len;
+            
+            if (collapseWhiteSpaces)
+            {
+                while (tokenStart < tokenEnd && tokenBuf[tokenStart] <= ' ')
+                    tokenStart++;
+                while (tokenEnd > tokenStart && tokenBuf[tokenEnd-1] <= ' ')
+                    tokenEnd--;
+            }
+            
+            return true;
         }
         catch (IOException e)
         {
@@ -283,10 +359,231 @@ public class TextDataParser extends AbstractDataParser
     }
     
     
+    private boolean endsWith(int len, char[] sep)
+    {
+        int offset = len - sep.length;
+        if (offset < 0)
+            return false;
+        
+        for (int i = 0; i < sep.length; i++)
+        {
+            if (tokenBuf[offset+i] != sep[i])
+                return false;
+        }
+        
+        return true;
+    }
+    
+    
+    private boolean tokenEquals(String s)
+    {
+        int len = tokenEnd - tokenStart;
+        if (s.length() != len)
+            return false;
+        
+        for (int i = 0; i < len; i++)
+        {
+            if (tokenBuf[tokenStart+i] != s.charAt(i))
+                return false;
+        }
+        
+        return true;
+    }
+    
+    
+    private boolean tokenEqualsIgnoreCase(String s)
+    {
+        int len = tokenEnd - tokenStart;
+        if (s.length() != len)
+            return false;
+        
+        for (int i = 0; i < len; i++)
+        {
+            if (Character.toLowerCase(tokenBuf[tokenStart+i]) != Character.toLowerCase(s.charAt(i)))
+                return false;
+        }
+        
+        return true;
+    }
+    
+    
+    /*
+     * Only used when a String object is really needed (text values, errors)
+     */
+    private String getTokenString()
+    {
+        return new String(tokenBuf, tokenStart, tokenEnd - tokenStart);
+    }
+    
+    
+    /*
+     * Parses integer value directly from the token buffer
+     * (same algorithm as Integer.parseInt)
+     */
+    protected int parseIntToken() throws ReaderException
+    {
+        int i = tokenStart;
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        
+        if (i < tokenEnd)
+        {
+            char c = tokenBuf[i];
+            if (c == '-' || c == '+')
+            {
+                if (c == '-')
+                {
+                    negative = true;
+                    limit = Integer.MIN_VALUE;
+                }
+                i++;
+            }
+        }
+        
+        if (i >= tokenEnd)
+            throw new ReaderException(INVALID_INTEGER_MSG + getTokenString());
+        
+        // accumulate negatively to handle MIN_VALUE
+        int multmin = limit / 10;
+        int result = 0;
+        while (i < tokenEnd)
+        {
+            int digit = tokenBuf[i++] - '0';
+            if (digit < 0 || digit > 9 || result < multmin)
+                throw new ReaderException(INVALID_INTEGER_MSG + getTokenString());
+            result *= 10;
+            if (result < limit + digit)
+                throw new ReaderException(INVALID_INTEGER_MSG + getTokenString());
+            result -= digit;
+        }
+        
+        return negative ? result : -result;
+    }
+    
+    
+    /*
+     * Parses decimal value directly from the token buffer when the number
+     * has 15 significant digits or less and a small exponent, since the result
+     * is then exactly rounded. Other values are parsed with Double.parseDouble
+     */
+    protected double parseDoubleToken() throws ReaderException
+    {
+        int i = tokenStart;
+        boolean negative = false;
+        
+        if (i < tokenEnd)
+        {
+            char c = tokenBuf[i];
+            if (c == '-' || c == '+')
+            {
+                negative = (c == '-');
+                i++;
+            }
+        }
+        
+        // infinity as per XML schema
+        if (tokenEnd - i == 3 && tokenBuf[i] == 'I' && tokenBuf[i+1] == 'N' && tokenBuf[i+2] == 'F')
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        
+        long mantissa = 0;
+        int numDigits = 0;
+        int exp10 = 0;
+        boolean hasDigits = false;
+        boolean fastPath = true;
+        
+        // integer part
+        for (; i < tokenEnd; i++)
+        {
+            int digit = tokenBuf[i] - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            hasDigits = true;
+            if (mantissa != 0 || digit != 0)
+            {
+                mantissa = mantissa*10 + digit;
+                numDigits++;
+            }
+        }
+        
+        // fractional part
+        if (i < tokenEnd && tokenBuf[i] == '.')
+        {
+            for (i++; i < tokenEnd; i++)
+            {
+                int digit = tokenBuf[i] - '0';
+                if (digit < 0 || digit > 9)
+                    break;
+                hasDigits = true;
+                if (mantissa != 0 || digit != 0)
+                {
+                    mantissa = mantissa*10 + digit;
+                    numDigits++;
+                }
+                exp10--;
+            }
+        }
+        
+        // exponent
+        if (hasDigits && i < tokenEnd && (tokenBuf[i] == 'e' || tokenBuf[i] == 'E'))
+        {
+            i++;
+            boolean negExp = false;
+            if (i < tokenEnd && (tokenBuf[i] == '-' || tokenBuf[i] == '+'))
+                negExp = (tokenBuf[i++] == '-');
+            
+            int exp = 0;
+            int expStart = i;
+            for (; i < tokenEnd; i++)
+            {
+                int digit = tokenBuf[i] - '0';
+                if (digit < 0 || digit > 9 || exp > 10000)
+                    break;
+                exp = exp*10 + digit;
+            }
+            
+            if (i == expStart)
+                fastPath = false;
+            exp10 += negExp ? -exp : exp;
+        }
+        
+        if (!hasDigits || i != tokenEnd || numDigits > 15)
+            fastPath = false;
+        
+        if (fastPath && (mantissa == 0 || Math.abs(exp10) < POW10.length))
+        {
+            double val;
+            if (mantissa == 0)
+                val = 0.0;
+            else if (exp10 >= 0)
+                val = mantissa * POW10[exp10];
+            else
+                val = mantissa / POW10[-exp10];
+            return negative ? -val : val;
+        }
+        
+        return slowParseDouble();
+    }
+    
+    
+    private double slowParseDouble() throws ReaderException
+    {
+        String token = getTokenString();
+        
+        try
+        {
+            return SWEDataTypeUtils.parseDoubleOrInf(token);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ReaderException(INVALID_DECIMAL_MSG + token);
+        }
+    }
+    
+    
     @Override
     protected void init()
     {
-        this.tokenSep = ((TextEncoding)dataEncoding).getTokenSeparator();
+        this.tokenSep = ((TextEncoding)dataEncoding).getTokenSeparator().toCharArray();
         this.blockSep = ((TextEncoding)dataEncoding).getBlockSeparator().toCharArray();
         //this.decimalSep = ((TextEncoding)dataEncoding).getDecimalSeparator().charAt(0);
         this.collapseWhiteSpaces = ((TextEncoding)dataEncoding).getCollapseWhiteSpaces();   
@@ -296,16 +593,27 @@ public class TextDataParser extends AbstractDataParser
     @Override
     protected boolean moreData() throws IOException
     {
-        String token = readToken();
-        tokenIndex--;
-        return !(token == null);
+        // skip empty lines between records
+        do
+        {
+            if (!readNextToken())
+                return false;
+        }
+        while (tokenStart == tokenEnd && endOfRecord);
+        
+        // keep token for first field of next record
+        tokenPending = true;
+        return true;
     }
     
 
     @Override
     public void setInput(InputStream is) throws IOException
     {
-        this.reader = new InputStreamReader(is, StandardCharsets.UTF_8);     
+        this.reader = new InputStreamReader(instrument(is), StandardCharsets.UTF_8);
+        this.readPos = 0;
+        this.readLimit = 0;
+        this.tokenPending = false;
     }
     
 
@@ -351,14 +659,20 @@ public class TextDataParser extends AbstractDataParser
     @Override
     public void visit(Category comp)
     {
-        addToProcessorTree(new StringParser());
+        addToProcessorTree(new StringParser(getStringDictionary(comp)));
     }
     
     
     @Override
     public void visit(Text comp)
     {
-        addToProcessorTree(new StringParser());
+        addToProcessorTree(new StringParser(getStringDictionary(comp)));
+    }
+    
+    
+    protected StringDictionary getStringDictionary(DataComponent comp)
+    {
+        return (comp instanceof DataValue) ? ((DataValue)comp).getStringDictionary() : null;
     }
     
     
@@ -20,9 +20,8 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import org.vast.swe.SWEDataTypeUtils;
-import org.vast.util.DateTimeFormat;
-import org.vast.util.NumberUtils;
+import org.vast.util.DecimalFormatter;
+import org.vast.util.IsoDateTimeCodec;
 import org.vast.util.WriterException;
 import net.opengis.swe.v20.Boolean;
 import net.opengis.swe.v20.Category;
@@ -84,12 +83,15 @@ public class TextDataWriter extends AbstractDataWriter
     
     protected class DecimalWriter extends BaseProcessor
     {
+        char[] numBuf = new char[DecimalFormatter.MAX_LENGTH];
+        
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
             double val = data.getDoubleValue(index);
             writeSeparator();
-            writer.write(SWEDataTypeUtils.getDoubleOrInfAsString(val));            
+            int len = DecimalFormatter.format(val, numBuf, 0);
+            writer.write(numBuf, 0, len);
             return ++index;
         }
     }
@@ -97,46 +99,21 @@ public class TextDataWriter extends AbstractDataWriter
     
     protected class RoundingDecimalWriter extends BaseProcessor
     {
-        StringBuilder sb = new StringBuilder();
-        long exp = -1;
+        char[] numBuf = new char[DecimalFormatter.MAX_LENGTH];
+        int sigDigits;
         
         public RoundingDecimalWriter(int sigDigits)
         {
-            exp = 1;
-            for (int i = 0; i < sigDigits; i++)
-                exp *= 10;
+            this.sigDigits = Math.min(sigDigits, DecimalFormatter.MAX_DIGITS);
         }        
         
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
             double val = data.getDoubleValue(index);
-            sb.setLength(0);
             writeSeparator();
-            
-            if (Double.isFinite(val))
-            {
-                if (NumberUtils.ulpEquals(val, 0.0))
-                    writer.write('0');
-                else
-                {
-                    double nval = val;
-                    int shift = 0;
-                    while (nval < exp)
-                    {
-                        nval *= 10.;
-                        shift++;
-                    }
-                    
-                    long lval = Math.round(nval);
-                    sb.append(lval);
-                    sb.insert(sb.length()-shift, '.');                
-                    writer.write(sb.toString());
-                }
-            }
-            else
-                writer.write(SWEDataTypeUtils.getDoubleOrInfAsString(val));
-            
+            int len = DecimalFormatter.format(val, sigDigits, numBuf, 0);
+            writer.write(numBuf, 0, len);
             return ++index;
         }
     }
@@ -144,14 +121,16 @@ public class TextDataWriter extends AbstractDataWriter
     
     protected class IsoDateTimeWriter extends BaseProcessor
     {
-        DateTimeFormat timeFormat = new DateTimeFormat();
+        IsoDateTimeCodec timeCodec = new IsoDateTimeCodec();
+        char[] timeBuf = new char[IsoDateTimeCodec.MAX_LENGTH];
         
         @Override
         public int process(DataBlock data, int index) throws IOException
         {
             double val = data.getDoubleValue(index);
             writeSeparator();
-            writer.write(timeFormat.formatIso(val, 0));
+            int len = timeCodec.format(val, timeBuf, 0);
+            writer.write(timeBuf, 0, len);
             return ++index;
         }
     }
@@ -234,15 +213,20 @@ public class TextDataWriter extends AbstractDataWriter
     @Override
     public void setOutput(OutputStream os)
     {
-        this.writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        this.writer = new OutputStreamWriter(instrument(os), StandardCharsets.UTF_8);
     }
     
     
     @Override
-    public void write(DataBlock data) throws IOException
+    protected void beforeRecord(DataBlock data) throws IOException
     {
         firstToken = true;
-        super.write(data);
+    }
+    
+    
+    @Override
+    protected void afterRecord(DataBlock data) throws IOException
+    {
         writer.write(blockSep);
     }
     
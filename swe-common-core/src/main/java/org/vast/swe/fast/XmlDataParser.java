@@ -0,0 +1,819 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.fast;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.vast.data.AbstractArrayImpl;
+import org.vast.data.DataArrayImpl;
+import org.vast.data.DataChoiceImpl;
+import org.vast.swe.SWEDataTypeUtils;
+import org.vast.util.IsoDateTimeCodec;
+import org.vast.util.ReaderException;
+import net.opengis.swe.v20.Boolean;
+import net.opengis.swe.v20.Category;
+import net.opengis.swe.v20.CategoryRange;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.CountRange;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.Quantity;
+import net.opengis.swe.v20.QuantityRange;
+import net.opengis.swe.v20.Text;
+import net.opengis.swe.v20.Time;
+import net.opengis.swe.v20.TimeRange;
+import net.opengis.swe.v20.Vector;
+
+
+/**
+ * <p>
+ * New implementation of XML data parser reading the format produced by
+ * {@link XmlDataWriter}. The parsing tree is pre-computed during init and
+ * records are streamed from a StAX reader directly to data blocks, so that
+ * memory usage doesn't depend on the size of the XML document.
+ * </p><p>
+ * Elements are matched by local name. Child elements must appear in the
+ * order defined by the data structure but unknown elements are skipped.
+ * Records can either be wrapped in a root element, be the document root
+ * element itself or be concatenated without any root element. Reaching the
+ * end of input between two records ends the stream, even if the root element
+ * was never closed, so that flushed but unfinished streams can be read.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 21, 2018
+ */
+public class XmlDataParser extends AbstractDataParser
+{
+    static final String XML_ERROR = "Error parsing XML stream for ";
+    static final String MISSING_ELT_MSG = "Missing XML element: ";
+    static final String ARRAY_SIZE_MSG = "Number of array elements doesn't match array size: ";
+    static final int MAX_PROLOG_SIZE = 1024;
+    static final byte[] WRAPPER_START = "<records>".getBytes(StandardCharsets.US_ASCII);
+
+    protected XMLStreamReader xmlReader;
+    boolean streamStarted;
+    volatile boolean endOfInput;
+
+
+    protected class EndOfInputDetector extends FilterInputStream
+    {
+        public EndOfInputDetector(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b < 0)
+                endOfInput = true;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int count = super.read(b, off, len);
+            if (count < 0)
+                endOfInput = true;
+            return count;
+        }
+    }
+
+
+    protected interface XmlParser
+    {
+        String getEltName();
+    }
+
+
+    protected abstract class ValueParser extends BaseProcessor implements XmlParser
+    {
+        String eltName;
+
+        public abstract void parseValue(DataBlock data, int index, String token) throws IOException;
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                String token = xmlReader.getElementText();
+                parseValue(data, index, token);
+                return ++index;
+            }
+            catch (XMLStreamException e)
+            {
+                throw new ReaderException(XML_ERROR + eltName + " value", e);
+            }
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class BooleanParser extends ValueParser
+    {
+        public BooleanParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void parseValue(DataBlock data, int index, String token) throws IOException
+        {
+            token = token.trim();
+            boolean val;
+
+            if ("true".equals(token) || "1".equals(token))
+                val = true;
+            else if ("false".equals(token) || "0".equals(token))
+                val = false;
+            else
+                throw new ReaderException(INVALID_BOOLEAN_MSG + token);
+
+            data.setBooleanValue(index, val);
+        }
+    }
+
+
+    protected class IntegerParser extends ValueParser
+    {
+        public IntegerParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void parseValue(DataBlock data, int index, String token) throws IOException
+        {
+            try
+            {
+                data.setIntValue(index, Integer.parseInt(token.trim()));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new ReaderException(INVALID_INTEGER_MSG + token);
+            }
+        }
+    }
+
+
+    protected class DecimalParser extends ValueParser
+    {
+        public DecimalParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void parseValue(DataBlock data, int index, String token) throws IOException
+        {
+            try
+            {
+                data.setDoubleValue(index, SWEDataTypeUtils.parseDoubleOrInf(token.trim()));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new ReaderException(INVALID_DECIMAL_MSG + token);
+            }
+        }
+    }
+
+
+    protected class IsoDateTimeParser extends ValueParser
+    {
+        IsoDateTimeCodec timeCodec = new IsoDateTimeCodec();
+
+        public IsoDateTimeParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void parseValue(DataBlock data, int index, String token) throws IOException
+        {
+            try
+            {
+                token = token.trim();
+                double val;
+                if (token.endsWith("INF") || "NaN".equals(token))
+                    val = SWEDataTypeUtils.parseDoubleOrInf(token);
+                else
+                    val = timeCodec.parse(token);
+                data.setDoubleValue(index, val);
+            }
+            catch (ParseException e)
+            {
+                throw new ReaderException(e.getMessage());
+            }
+        }
+    }
+
+
+    protected class StringParser extends ValueParser
+    {
+        public StringParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public void parseValue(DataBlock data, int index, String token) throws IOException
+        {
+            data.setStringValue(index, token);
+        }
+    }
+
+
+    protected class RangeParser extends RecordProcessor implements XmlParser
+    {
+        String eltName;
+
+        public RangeParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                // min and max values are read from the first two child elements
+                for (AtomProcessor p: fieldProcessors)
+                {
+                    if (!nextStartElement())
+                        throw new ReaderException(MISSING_ELT_MSG + eltName + " bound");
+                    index = p.process(data, index);
+                }
+
+                skipToElement(null);
+                return index;
+            }
+            catch (XMLStreamException e)
+            {
+                throw new ReaderException(XML_ERROR + eltName + " range", e);
+            }
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class RecordParser extends RecordProcessor implements XmlParser
+    {
+        String eltName;
+
+        public RecordParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                for (AtomProcessor p: fieldProcessors)
+                {
+                    String fieldName = ((XmlParser)p).getEltName();
+                    if (!skipToElement(fieldName))
+                        throw new ReaderException(MISSING_ELT_MSG + fieldName);
+                    index = p.process(data, index);
+                }
+
+                // skip remaining unknown elements
+                skipToElement(null);
+
+                return index;
+            }
+            catch (XMLStreamException e)
+            {
+                throw new ReaderException(XML_ERROR + eltName + " record", e);
+            }
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class ArrayParser extends ArrayProcessor implements XmlParser
+    {
+        String eltName;
+
+        public ArrayParser(String eltName)
+        {
+            this.eltName = eltName;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                updateArraySize();
+                index = parseElements(data, index);
+                if (nextStartElement())
+                    throw new ReaderException(ARRAY_SIZE_MSG + eltName);
+
+                return index;
+            }
+            catch (XMLStreamException e)
+            {
+                throw new ReaderException(XML_ERROR + eltName + " array", e);
+            }
+        }
+
+        protected void updateArraySize() throws IOException
+        {
+        }
+
+        protected int parseElements(DataBlock data, int index) throws IOException, XMLStreamException
+        {
+            for (int i = 0; i < arraySize; i++)
+            {
+                checkNextElement();
+                index = eltProcessor.process(data, index);
+            }
+
+            return index;
+        }
+
+        protected void checkNextElement() throws IOException, XMLStreamException
+        {
+            if (!nextStartElement())
+                throw new ReaderException(ARRAY_SIZE_MSG + eltName);
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return eltName;
+        }
+    }
+
+
+    protected class VarSizeArrayParser extends ArrayParser
+    {
+        DataArrayImpl array;
+        boolean dynamicElements;
+
+        public VarSizeArrayParser(DataArrayImpl array)
+        {
+            super(array.getName());
+            this.array = array;
+        }
+
+        @Override
+        protected void updateArraySize() throws IOException
+        {
+            // get implicit size from element count attribute or from
+            // size component already parsed and resize array datablock if needed
+            if (array.isImplicitSize())
+            {
+                String sizeAtt = xmlReader.getAttributeValue(null, AbstractArrayImpl.ELT_COUNT_NAME);
+                if (sizeAtt == null)
+                    throw new ReaderException(MISSING_ELT_MSG + "@" + AbstractArrayImpl.ELT_COUNT_NAME);
+
+                try
+                {
+                    array.updateSize(Integer.parseInt(sizeAtt.trim()));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new ReaderException(INVALID_INTEGER_MSG + sizeAtt);
+                }
+            }
+            else
+                array.updateSize();
+
+            arraySize = array.getComponentCount();
+        }
+
+        @Override
+        protected int parseElements(DataBlock data, int index) throws IOException, XMLStreamException
+        {
+            if (!dynamicElements)
+                return super.parseElements(data, index);
+
+            // if array elements can change structure, parse each of them
+            // to its own datablock since their sizes may differ
+            for (int i = 0; i < arraySize; i++)
+            {
+                checkNextElement();
+                DataBlock eltData = array.getComponent(i).getData();
+                eltProcessor.process(eltData, 0);
+                index += eltData.getAtomCount();
+            }
+
+            return index;
+        }
+    }
+
+
+    protected class ChoiceParser extends ChoiceProcessor implements XmlParser
+    {
+        DataChoiceImpl choice;
+
+        public ChoiceParser(DataChoiceImpl choice)
+        {
+            this.choice = choice;
+        }
+
+        @Override
+        public int process(DataBlock data, int index) throws IOException
+        {
+            try
+            {
+                if (!nextStartElement())
+                    throw new ReaderException(MISSING_ELT_MSG + choice.getName() + " item");
+
+                String itemName = xmlReader.getLocalName();
+                int selectedIndex = choice.getComponentIndex(itemName);
+                if (selectedIndex < 0)
+                    throw new ReaderException(INVALID_CHOICE_MSG + itemName);
+
+                // regenerate choice datablock only if selected item has changed
+                if (choice.getSelected() != selectedIndex)
+                    choice.setSelectedItem(selectedIndex);
+
+                index = super.process(data, ++index, selectedIndex);
+                skipToElement(null);
+
+                return index;
+            }
+            catch (XMLStreamException e)
+            {
+                throw new ReaderException(XML_ERROR + choice.getName() + " choice", e);
+            }
+        }
+
+        @Override
+        public String getEltName()
+        {
+            return choice.getName();
+        }
+    }
+
+
+    /*
+     * Moves to the start of the next child element of the current element.
+     * Returns false if the end of the current element was reached before.
+     */
+    protected boolean nextStartElement() throws XMLStreamException
+    {
+        while (xmlReader.hasNext())
+        {
+            int eventType = xmlReader.next();
+            if (eventType == XMLStreamConstants.START_ELEMENT)
+                return true;
+            else if (eventType == XMLStreamConstants.END_ELEMENT)
+                return false;
+        }
+
+        return false;
+    }
+
+
+    /*
+     * Skips child elements until the one with the given local name is found.
+     * Returns false if the end of the current element was reached before.
+     */
+    protected boolean skipToElement(String localName) throws XMLStreamException
+    {
+        while (nextStartElement())
+        {
+            if (xmlReader.getLocalName().equals(localName))
+                return true;
+            skipElement();
+        }
+
+        return false;
+    }
+
+
+    /*
+     * Skips the current element and all its descendants
+     */
+    protected void skipElement() throws XMLStreamException
+    {
+        int depth = 1;
+        while (depth > 0)
+        {
+            int eventType = xmlReader.next();
+            if (eventType == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (eventType == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+
+    @Override
+    protected void init()
+    {
+        bindComponents = hasVariableStructure(dataComponents);
+    }
+
+
+    @Override
+    protected boolean moreData() throws IOException
+    {
+        try
+        {
+            String recordName = dataComponents.getName();
+
+            // if document root element is not a record, it is a wrapper
+            // and records are its children
+            if (!streamStarted)
+            {
+                streamStarted = true;
+                xmlReader.nextTag(); // wrapper inserted by wrapInput()
+                if (!nextStartElement())
+                    return false;
+                if (xmlReader.getLocalName().equals(recordName))
+                    return true;
+            }
+
+            while (nextStartElement())
+            {
+                if (recordName == null || xmlReader.getLocalName().equals(recordName))
+                    return true;
+                skipElement();
+            }
+
+            return false;
+        }
+        catch (XMLStreamException e)
+        {
+            // reaching end of input between records means end of stream,
+            // even if the document root element was never closed
+            if (endOfInput)
+                return false;
+            throw new ReaderException("Error while reading next XML record", e);
+        }
+    }
+
+
+    @Override
+    public void setInput(InputStream is) throws IOException
+    {
+        try
+        {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            endOfInput = false;
+            xmlReader = factory.createXMLStreamReader(wrapInput(instrument(is)));
+            streamStarted = false;
+        }
+        catch (XMLStreamException e)
+        {
+            throw new ReaderException("Error while creating XML stream reader", e);
+        }
+    }
+
+
+    /*
+     * Inserts a wrapper element after the XML declaration, if any, so that
+     * several records can be concatenated without a root element.
+     * The wrapper is never closed since the end of input is detected separately.
+     */
+    protected InputStream wrapInput(InputStream is) throws IOException
+    {
+        BufferedInputStream in = new BufferedInputStream(is);
+        in.mark(MAX_PROLOG_SIZE);
+
+        // skip byte order mark and whitespaces
+        int prologSize = 0;
+        int b = in.read();
+        while (b == 0xEF || b == 0xBB || b == 0xBF || (b >= 0 && Character.isWhitespace(b)))
+        {
+            b = in.read();
+            prologSize++;
+        }
+
+        // look for end of XML declaration
+        int prevByte = -1;
+        if (b == '<' && in.read() == '?')
+        {
+            prologSize += 2;
+            while ((b = in.read()) >= 0 && prologSize < MAX_PROLOG_SIZE)
+            {
+                prologSize++;
+                if (prevByte == '?' && b == '>')
+                    break;
+                prevByte = b;
+            }
+
+            if (b != '>')
+                throw new ReaderException("Invalid XML declaration");
+        }
+        else
+            prologSize = 0;
+
+        in.reset();
+        byte[] prolog = new byte[prologSize];
+        for (int i = 0; i < prologSize; i++)
+            prolog[i] = (byte)in.read();
+
+        return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+            new ByteArrayInputStream(prolog),
+            new ByteArrayInputStream(WRAPPER_START),
+            new EndOfInputDetector(in))));
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if (xmlReader != null)
+                xmlReader.close();
+        }
+        catch (XMLStreamException e)
+        {
+            throw new ReaderException("Error while closing XML stream reader", e);
+        }
+    }
+
+
+    @Override
+    public void visit(Boolean comp)
+    {
+        addToProcessorTree(new BooleanParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Count comp)
+    {
+        addToProcessorTree(new IntegerParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Quantity comp)
+    {
+        addToProcessorTree(new DecimalParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Time comp)
+    {
+        if (comp.isIsoTime())
+            addToProcessorTree(new IsoDateTimeParser(comp.getName()));
+        else
+            addToProcessorTree(new DecimalParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Category comp)
+    {
+        addToProcessorTree(new StringParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(Text comp)
+    {
+        addToProcessorTree(new StringParser(comp.getName()));
+    }
+
+
+    @Override
+    public void visit(CountRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(QuantityRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(TimeRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(CategoryRange range)
+    {
+        addToProcessorTree(new RangeParser(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataRecord rec)
+    {
+        addToProcessorTree(new RecordParser(rec.getName()));
+        for (DataComponent field: rec.getFieldList())
+            field.accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(Vector rec)
+    {
+        addToProcessorTree(new RecordParser(rec.getName()));
+        for (DataComponent field: rec.getCoordinateList())
+            field.accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataChoice choice)
+    {
+        addToProcessorTree(new ChoiceParser((DataChoiceImpl)choice));
+        for (DataComponent item: choice.getItemList())
+            item.accept(this);
+        processorStack.pop();
+    }
+
+
+    @Override
+    public void visit(DataArray array)
+    {
+        ArrayParser arrayParser;
+
+        if (array.isVariableSize())
+        {
+            VarSizeArrayParser varSizeParser = new VarSizeArrayParser((DataArrayImpl)array);
+            varSizeParser.dynamicElements = hasVariableStructure(array.getElementType());
+            arrayParser = varSizeParser;
+        }
+        else
+        {
+            arrayParser = new ArrayParser(array.getName());
+            arrayParser.setArraySize(array.getComponentCount());
+        }
+
+        addToProcessorTree(arrayParser);
+        array.getElementType().accept(this);
+        processorStack.pop();
+    }
+}
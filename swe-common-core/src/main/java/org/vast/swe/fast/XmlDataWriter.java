@@ -22,20 +22,24 @@ import javax.xml.stream.XMLStreamWriter;
 import org.vast.data.AbstractArrayImpl;
 import org.vast.data.XMLEncodingImpl;
 import org.vast.swe.SWEDataTypeUtils;
-import org.vast.util.DateTimeFormat;
+import org.vast.util.IsoDateTimeCodec;
 import org.vast.util.WriterException;
 import org.vast.xml.IndentingXMLStreamWriter;
 import net.opengis.swe.v20.Boolean;
 import net.opengis.swe.v20.Category;
+import net.opengis.swe.v20.CategoryRange;
 import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.CountRange;
 import net.opengis.swe.v20.DataArray;
 import net.opengis.swe.v20.DataBlock;
 import net.opengis.swe.v20.DataChoice;
 import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataRecord;
 import net.opengis.swe.v20.Quantity;
+import net.opengis.swe.v20.QuantityRange;
 import net.opengis.swe.v20.Text;
 import net.opengis.swe.v20.Time;
+import net.opengis.swe.v20.TimeRange;
 import net.opengis.swe.v20.Vector;
 
 
@@ -52,9 +56,12 @@ import net.opengis.swe.v20.Vector;
 public class XmlDataWriter extends AbstractDataWriter
 {
     static final String XML_ERROR = "Error writing XML stream for ";
+    static final String RANGE_MIN = "min";
+    static final String RANGE_MAX = "max";
     protected XMLStreamWriter xmlWriter;
     protected String namespace;
     protected String prefix;
+    boolean bindComponents;
 
     
     protected abstract class ValueWriter extends BaseProcessor
@@ -140,7 +147,8 @@ public class XmlDataWriter extends AbstractDataWriter
     
     protected class IsoDateTimeWriter extends ValueWriter
     {
-        DateTimeFormat timeFormat = new DateTimeFormat();
+        IsoDateTimeCodec timeCodec = new IsoDateTimeCodec();
+        char[] timeBuf = new char[IsoDateTimeCodec.MAX_LENGTH];
         
         public IsoDateTimeWriter(String eltName)
         {
@@ -151,7 +159,8 @@ public class XmlDataWriter extends AbstractDataWriter
         public void writeValue(DataBlock data, int index) throws XMLStreamException
         {
             double val = data.getDoubleValue(index);
-            xmlWriter.writeCharacters(timeFormat.formatIso(val, 0));
+            int len = timeCodec.format(val, timeBuf, 0);
+            xmlWriter.writeCharacters(timeBuf, 0, len);
         }
     }
     
@@ -199,6 +208,23 @@ public class XmlDataWriter extends AbstractDataWriter
     }
     
     
+    protected class RangeWriter extends RecordWriter
+    {
+        public RangeWriter(String eltName)
+        {
+            super(eltName);
+        }
+        
+        @Override
+        public void add(AtomProcessor processor)
+        {
+            // range bounds have no name so use fixed element names
+            ((ValueWriter)processor).eltName = fieldProcessors.isEmpty() ? RANGE_MIN : RANGE_MAX;
+            super.add(processor);
+        }
+    }
+    
+    
     protected class ChoiceWriter extends ChoiceProcessor
     {
         String eltName;
@@ -231,6 +257,7 @@ public class XmlDataWriter extends AbstractDataWriter
     protected class ArrayWriter extends ArrayProcessor
     {
         String eltName;
+        DataArray varSizeArray;
         
         public ArrayWriter(String eltName)
         {
@@ -242,6 +269,11 @@ public class XmlDataWriter extends AbstractDataWriter
         {
             try
             {
+                // variable array size is obtained from the component
+                // tree bound to the datablock
+                if (varSizeArray != null)
+                    arraySize = varSizeArray.getComponentCount();
+                
                 writeStartElement(eltName);
                 xmlWriter.writeAttribute(AbstractArrayImpl.ELT_COUNT_NAME, Integer.toString(arraySize));
                 int newIndex = super.process(data, index);
@@ -256,20 +288,6 @@ public class XmlDataWriter extends AbstractDataWriter
     }
     
     
-    protected class ArraySizeScanner extends BaseProcessor
-    {
-        ArrayProcessor arrayProcessor;
-        
-        @Override
-        public int process(DataBlock data, int index) throws IOException
-        {
-            int arraySize = data.getIntValue(index);
-            arrayProcessor.arraySize = arraySize;
-            return ++index;
-        }
-    }
-    
-    
     protected void writeStartElement(String eltName) throws XMLStreamException
     {
         if (namespace != null)
@@ -298,7 +316,7 @@ public class XmlDataWriter extends AbstractDataWriter
         try
         {
             XMLOutputFactory factory = XMLOutputFactory.newInstance();
-            xmlWriter = factory.createXMLStreamWriter(os);
+            xmlWriter = factory.createXMLStreamWriter(instrument(os));
             xmlWriter = new IndentingXMLStreamWriter(xmlWriter);
             xmlWriter.writeStartElement("root");
         }
@@ -309,6 +327,16 @@ public class XmlDataWriter extends AbstractDataWriter
     }
     
 
+    @Override
+    protected void beforeRecord(DataBlock data) throws IOException
+    {
+        // bind component tree to datablock so that variable array sizes can be read
+        initProcessorTree();
+        if (bindComponents)
+            dataComponents.setData(data);
+    }
+    
+    
     @Override
     public void flush() throws IOException
     {
@@ -330,7 +358,10 @@ public class XmlDataWriter extends AbstractDataWriter
         try
         {
             if (xmlWriter != null)
+            {
+                xmlWriter.writeEndDocument();
                 xmlWriter.close();
+            }
         }
         catch (XMLStreamException e)
         {
@@ -398,6 +429,43 @@ public class XmlDataWriter extends AbstractDataWriter
     }
     
     
+    @Override
+    public void visit(CountRange range)
+    {
+        addRangeWriter(range);
+    }
+    
+    
+    @Override
+    public void visit(QuantityRange range)
+    {
+        addRangeWriter(range);
+    }
+    
+    
+    @Override
+    public void visit(TimeRange range)
+    {
+        addRangeWriter(range);
+    }
+    
+    
+    @Override
+    public void visit(CategoryRange range)
+    {
+        addRangeWriter(range);
+    }
+    
+    
+    protected void addRangeWriter(DataComponent range)
+    {
+        addToProcessorTree(new RangeWriter(range.getName()));
+        range.getComponent(0).accept(this);
+        range.getComponent(1).accept(this);
+        processorStack.pop();
+    }
+    
+    
     @Override
     public void visit(DataRecord rec)
     {
@@ -436,11 +504,10 @@ public class XmlDataWriter extends AbstractDataWriter
     {
         ArrayWriter arrayWriter = new ArrayWriter(array.getName());
         
-        if (array.isImplicitSize())
+        if (array.isVariableSize())
         {
-            ArraySizeScanner sizeWriter = new ArraySizeScanner();
-            sizeWriter.arrayProcessor = arrayWriter;
-            addToProcessorTree(sizeWriter);
+            arrayWriter.varSizeArray = array;
+            bindComponents = true;
         }
         else
             arrayWriter.setArraySize(array.getComponentCount());
@@ -0,0 +1,487 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.util;
+
+import java.math.BigInteger;
+
+
+/**
+ * <p>
+ * Formats floating point values to the shortest decimal string that reads
+ * back to the same value, writing characters directly to a caller provided
+ * buffer. The algorithm is R. Giulietti's Schubfach.
+ * </p><p>
+ * The layout is the same as {@link Double#toString(double)}, except for
+ * infinite values that are written as +INF and -INF as required by SWE
+ * (i.e. XML schema).<br/>
+ * Values can also be rounded to a number of significant digits, in which
+ * case the shortest representation is rounded half-up.
+ * </p><p>
+ * All methods are static and thread-safe.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class DecimalFormatter
+{
+    /**
+     * Maximum number of characters written by the format methods
+     */
+    public static final int MAX_LENGTH = 32;
+
+    /**
+     * Maximum number of significant digits needed to represent a double
+     */
+    public static final int MAX_DIGITS = 17;
+
+    // double format
+    static final int DBL_P = 53;
+    static final int DBL_Q_MIN = -1074;
+    static final long DBL_C_MIN = 1L << (DBL_P - 1);
+    static final long DBL_C_TINY = 3;
+    static final int DBL_BQ_MASK = 0x7FF;
+    static final long DBL_T_MASK = DBL_C_MIN - 1;
+
+    // float format
+    static final int FLT_P = 24;
+    static final int FLT_Q_MIN = -149;
+    static final int FLT_C_MIN = 1 << (FLT_P - 1);
+    static final int FLT_C_TINY = 8;
+    static final int FLT_BQ_MASK = 0xFF;
+    static final int FLT_T_MASK = FLT_C_MIN - 1;
+
+    // 126-bit approximations of powers of 10 split in two 63-bit halves
+    static final int K_MIN = -324;
+    static final int K_MAX = 292;
+    static final long[] G1 = new long[K_MAX - K_MIN + 1];
+    static final long[] G0 = new long[K_MAX - K_MIN + 1];
+    static final long MASK_63 = 0x7FFFFFFFFFFFFFFFL;
+
+    static final long[] POW10 = new long[19];
+
+    static
+    {
+        for (int k = K_MIN; k <= K_MAX; k++)
+        {
+            // g = floor(10^-k / 2^r) + 1 with r chosen so that 2^125 <= g < 2^126
+            int e = -k;
+            int r = flog2pow10(e) - 125;
+            BigInteger g;
+            if (e >= 0)
+            {
+                BigInteger p = BigInteger.TEN.pow(e);
+                g = r >= 0 ? p.shiftRight(r) : p.shiftLeft(-r);
+            }
+            else
+                g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(-e));
+            g = g.add(BigInteger.ONE);
+
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.longValue() & MASK_63;
+        }
+
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i-1] * 10;
+    }
+
+
+    private DecimalFormatter()
+    {
+    }
+
+
+    /**
+     * Formats a double value using the shortest decimal representation
+     * @param v value to format
+     * @param buf destination array with at least {@link #MAX_LENGTH} characters available
+     * @param off index of first character to write in destination array
+     * @return number of characters written
+     */
+    public static int format(double v, char[] buf, int off)
+    {
+        return format(v, 0, buf, off);
+    }
+
+
+    /**
+     * Formats a double value rounded to the given number of significant digits
+     * @param v value to format
+     * @param sigDigits number of significant digits or 0 to use the shortest
+     * representation (i.e. no rounding)
+     * @param buf destination array with at least {@link #MAX_LENGTH} characters available
+     * @param off index of first character to write in destination array
+     * @return number of characters written
+     */
+    public static int format(double v, int sigDigits, char[] buf, int off)
+    {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & DBL_T_MASK;
+        int bq = (int)(bits >>> (DBL_P - 1)) & DBL_BQ_MASK;
+        int pos = off;
+
+        if (bq == DBL_BQ_MASK)
+            return writeSpecial(t != 0, bits < 0, buf, off);
+
+        if (bits < 0)
+            buf[pos++] = '-';
+
+        if (bq != 0)
+        {
+            // normal value
+            int mq = -DBL_Q_MIN + 1 - bq;
+            long c = DBL_C_MIN | t;
+
+            // integer values are exact
+            if (0 < mq && mq < DBL_P)
+            {
+                long f = c >> mq;
+                if (f << mq == c)
+                    return pos - off + writeDecimal(f, 0, sigDigits, buf, pos);
+            }
+
+            return pos - off + toDecimal(-mq, c, 0, c == DBL_C_MIN, sigDigits, buf, pos);
+        }
+
+        if (t != 0)
+        {
+            // subnormal value
+            if (t < DBL_C_TINY)
+                return pos - off + toDecimal(DBL_Q_MIN, 10 * t, -1, false, sigDigits, buf, pos);
+            return pos - off + toDecimal(DBL_Q_MIN, t, 0, false, sigDigits, buf, pos);
+        }
+
+        return pos - off + writeDecimal(0, 0, sigDigits, buf, pos);
+    }
+
+
+    /**
+     * Formats a float value using the shortest decimal representation
+     * that reads back to the same float value
+     * @param v value to format
+     * @param buf destination array with at least {@link #MAX_LENGTH} characters available
+     * @param off index of first character to write in destination array
+     * @return number of characters written
+     */
+    public static int format(float v, char[] buf, int off)
+    {
+        int bits = Float.floatToRawIntBits(v);
+        int t = bits & FLT_T_MASK;
+        int bq = (bits >>> (FLT_P - 1)) & FLT_BQ_MASK;
+        int pos = off;
+
+        if (bq == FLT_BQ_MASK)
+            return writeSpecial(t != 0, bits < 0, buf, off);
+
+        if (bits < 0)
+            buf[pos++] = '-';
+
+        if (bq != 0)
+        {
+            // normal value
+            int mq = -FLT_Q_MIN + 1 - bq;
+            int c = FLT_C_MIN | t;
+
+            // integer values are exact
+            if (0 < mq && mq < FLT_P)
+            {
+                int f = c >> mq;
+                if (f << mq == c)
+                    return pos - off + writeDecimal(f, 0, 0, buf, pos);
+            }
+
+            return pos - off + toDecimal(-mq, c, 0, c == FLT_C_MIN, 0, buf, pos);
+        }
+
+        if (t != 0)
+        {
+            // subnormal value
+            if (t < FLT_C_TINY)
+                return pos - off + toDecimal(FLT_Q_MIN, 10 * t, -1, false, 0, buf, pos);
+            return pos - off + toDecimal(FLT_Q_MIN, t, 0, false, 0, buf, pos);
+        }
+
+        return pos - off + writeDecimal(0, 0, 0, buf, pos);
+    }
+
+
+    private static int writeSpecial(boolean isNaN, boolean negative, char[] buf, int pos)
+    {
+        if (isNaN)
+        {
+            buf[pos] = 'N';
+            buf[pos+1] = 'a';
+            buf[pos+2] = 'N';
+        }
+        else
+        {
+            buf[pos] = negative ? '-' : '+';
+            buf[pos+1] = 'I';
+            buf[pos+2] = 'N';
+            buf[pos+3] = 'F';
+            return 4;
+        }
+
+        return 3;
+    }
+
+
+    /*
+     * Computes the shortest decimal in the rounding interval of c*2^q.
+     * irregular is true when c is a power of 2 so the interval is not
+     * centered on the value.
+     */
+    private static int toDecimal(int q, long c, int dk, boolean irregular, int sigDigits, char[] buf, int pos)
+    {
+        int out = (int)c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        if (!irregular)
+        {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        }
+        else
+        {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        long g1 = G1[k - K_MIN];
+        long g0 = G0[k - K_MIN];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        // try with one less digit first
+        long s = vb >> 2;
+        if (s >= 100)
+        {
+            long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+                return writeDecimal(upin ? sp10 : tp10, k, sigDigits, buf, pos);
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win)
+            return writeDecimal(uin ? s : t, k + dk, sigDigits, buf, pos);
+
+        // both candidates are in the interval, pick the closest one
+        long cmp = vb - (s + t << 1);
+        return writeDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, sigDigits, buf, pos);
+    }
+
+
+    /*
+     * Computes the rounded odd approximation of g*cp/2^127
+     */
+    private static long rop(long g1, long g0, long cp)
+    {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+
+    /*
+     * Writes the decimal value f*10^e with the same layout as Double.toString()
+     */
+    private static int writeDecimal(long f, int e, int sigDigits, char[] buf, int off)
+    {
+        int pos = off;
+
+        if (f == 0)
+        {
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            buf[pos++] = '0';
+            return pos - off;
+        }
+
+        int n = numDigits(f);
+
+        // round half-up to the requested number of significant digits
+        if (sigDigits > 0 && n > sigDigits)
+        {
+            long p = POW10[n - sigDigits];
+            long r = f % p;
+            f /= p;
+            if (r >= (p >> 1) + (p & 1))
+                f++;
+            e += n - sigDigits;
+            n = numDigits(f);
+        }
+
+        // remove trailing zeros
+        while (f % 10 == 0)
+        {
+            f /= 10;
+            e++;
+            n--;
+        }
+
+        // value is 0.d1d2...dn * 10^decExp
+        int decExp = e + n;
+
+        if (decExp > 0 && decExp <= 7)
+        {
+            // plain notation with integer part
+            if (n <= decExp)
+            {
+                writeDigits(f, n, buf, pos);
+                pos += n;
+                for (int i = n; i < decExp; i++)
+                    buf[pos++] = '0';
+                buf[pos++] = '.';
+                buf[pos++] = '0';
+            }
+            else
+            {
+                writeDigits(f, n, buf, pos+1);
+                System.arraycopy(buf, pos+1, buf, pos, decExp);
+                buf[pos+decExp] = '.';
+                pos += n + 1;
+            }
+        }
+        else if (decExp > -3 && decExp <= 0)
+        {
+            // plain notation with leading zeros
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            for (int i = decExp; i < 0; i++)
+                buf[pos++] = '0';
+            writeDigits(f, n, buf, pos);
+            pos += n;
+        }
+        else
+        {
+            // computerized scientific notation
+            writeDigits(f, n, buf, pos+1);
+            buf[pos] = buf[pos+1];
+            buf[pos+1] = '.';
+            if (n == 1)
+            {
+                buf[pos+2] = '0';
+                pos += 3;
+            }
+            else
+                pos += n + 1;
+
+            buf[pos++] = 'E';
+            int exp = decExp - 1;
+            if (exp < 0)
+            {
+                buf[pos++] = '-';
+                exp = -exp;
+            }
+            if (exp >= 100)
+                buf[pos++] = (char)('0' + exp / 100);
+            if (exp >= 10)
+                buf[pos++] = (char)('0' + exp / 10 % 10);
+            buf[pos++] = (char)('0' + exp % 10);
+        }
+
+        return pos - off;
+    }
+
+
+    private static int numDigits(long f)
+    {
+        int n = 1;
+        while (n < POW10.length && f >= POW10[n])
+            n++;
+        return n;
+    }
+
+
+    private static void writeDigits(long f, int n, char[] buf, int pos)
+    {
+        int i = pos + n - 1;
+        while (f > Integer.MAX_VALUE)
+        {
+            long q = f / 10;
+            buf[i--] = (char)('0' + (f - q * 10));
+            f = q;
+        }
+
+        int v = (int)f;
+        while (i >= pos)
+        {
+            int q = v / 10;
+            buf[i--] = (char)('0' + (v - q * 10));
+            v = q;
+        }
+    }
+
+
+    /*
+     * floor(log10(2^e)) for the range of exponents used here
+     */
+    static int flog10pow2(int e)
+    {
+        return (int)(e * 661971961083L >> 41);
+    }
+
+
+    /*
+     * floor(log10(3/4 * 2^e)) for the range of exponents used here
+     */
+    static int flog10threeQuartersPow2(int e)
+    {
+        return (int)(e * 661971961083L + -274743187321L >> 41);
+    }
+
+
+    /*
+     * floor(log2(10^e)) for the range of exponents used here
+     */
+    static int flog2pow10(int e)
+    {
+        return (int)(e * 913124641741L >> 38);
+    }
+
+
+    /*
+     * High 64 bits of the 128-bit product of x and y
+     * (same as Math.multiplyHigh in Java 9+)
+     */
+    static long multiplyHigh(long x, long y)
+    {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
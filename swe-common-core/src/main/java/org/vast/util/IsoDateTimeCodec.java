@@ -0,0 +1,445 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.util;
+
+import java.text.ParseException;
+
+
+/**
+ * <p>
+ * Thread-safe ISO 8601 date/time codec converting directly between
+ * character sequences and epoch time in seconds, without creating
+ * intermediate strings or calendar objects.
+ * </p><p>
+ * Accepted syntax is YYYY-MM-DD[Thh:mm[:ss[.fff...]]][Z|(+|-)hh[[:]mm]],
+ * using the proleptic Gregorian calendar. Formatted values use millisecond
+ * precision and the same layout as {@link DateTimeFormat#formatIso}.
+ * </p><p>
+ * The last decoded and encoded days are cached so that computations are
+ * mostly avoided when processing streams of timestamps that often fall
+ * on the same day.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class IsoDateTimeCodec
+{
+    /**
+     * Maximum number of characters written by the format methods
+     */
+    public static final int MAX_LENGTH = 36;
+
+    static final String INVALID_ISO_MSG = "Invalid ISO 8601 time string: ";
+    static final long SECONDS_PER_DAY = 86400L;
+    static final long MILLIS_PER_DAY = SECONDS_PER_DAY * 1000L;
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+        1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    volatile DayCache parseCache = new DayCache(Long.MIN_VALUE, 0, null);
+    volatile DayCache formatCache = new DayCache(Long.MIN_VALUE, 0, null);
+
+
+    /*
+     * Immutable day info so it can be swapped atomically between threads
+     */
+    static class DayCache
+    {
+        final long key;
+        final long epochDay;
+        final char[] dateChars;
+
+        DayCache(long key, long epochDay, char[] dateChars)
+        {
+            this.key = key;
+            this.epochDay = epochDay;
+            this.dateChars = dateChars;
+        }
+    }
+
+
+    /**
+     * Parses an ISO 8601 date/time string
+     * @param iso ISO 8601 string
+     * @return epoch time in seconds (since 1970-01-01T00:00:00Z)
+     * @throws ParseException if the string is not a valid ISO 8601 date/time
+     */
+    public double parse(CharSequence iso) throws ParseException
+    {
+        return parse(iso, 0, iso.length());
+    }
+
+
+    /**
+     * Parses an ISO 8601 date/time from part of a character sequence
+     * @param iso character sequence containing the ISO 8601 string
+     * @param start index of first character (inclusive)
+     * @param end index of last character (exclusive)
+     * @return epoch time in seconds (since 1970-01-01T00:00:00Z)
+     * @throws ParseException if the characters are not a valid ISO 8601 date/time
+     */
+    public double parse(CharSequence iso, int start, int end) throws ParseException
+    {
+        return doParse(iso, start, end);
+    }
+
+
+    /**
+     * Parses an ISO 8601 date/time from part of a character array
+     * @param buf character array containing the ISO 8601 string
+     * @param start index of first character (inclusive)
+     * @param end index of last character (exclusive)
+     * @return epoch time in seconds (since 1970-01-01T00:00:00Z)
+     * @throws ParseException if the characters are not a valid ISO 8601 date/time
+     */
+    public double parse(char[] buf, int start, int end) throws ParseException
+    {
+        return doParse(buf, start, end);
+    }
+
+
+    /*
+     * Source is either a char[] or a CharSequence so we can share the
+     * parsing code without wrapping arrays in new objects
+     */
+    private static char charAt(Object src, int i)
+    {
+        if (src instanceof char[])
+            return ((char[])src)[i];
+        return ((CharSequence)src).charAt(i);
+    }
+
+
+    private double doParse(Object src, int start, int end) throws ParseException
+    {
+        int pos = start;
+
+        // date
+        pos = expectDigits(src, start, pos, end, 4);
+        int year = readInt(src, pos-4, pos);
+        pos = expectChar(src, start, pos, end, '-');
+        pos = expectDigits(src, start, pos, end, 2);
+        int month = readInt(src, pos-2, pos);
+        pos = expectChar(src, start, pos, end, '-');
+        pos = expectDigits(src, start, pos, end, 2);
+        int day = readInt(src, pos-2, pos);
+        if (month < 1 || month > 12 || day < 1 || day > 31)
+            throw newParseException(src, start, end, start);
+
+        // time of day
+        int secOfDay = 0;
+        long fracDigits = 0;
+        int fracScale = 0;
+        if (pos < end && charAt(src, pos) == 'T')
+        {
+            pos = expectDigits(src, start, pos+1, end, 2);
+            int hour = readInt(src, pos-2, pos);
+            pos = expectChar(src, start, pos, end, ':');
+            pos = expectDigits(src, start, pos, end, 2);
+            int minute = readInt(src, pos-2, pos);
+            int second = 0;
+
+            if (pos < end && charAt(src, pos) == ':')
+            {
+                pos = expectDigits(src, start, pos+1, end, 2);
+                second = readInt(src, pos-2, pos);
+
+                // decimal part of seconds
+                if (pos < end && charAt(src, pos) == '.')
+                {
+                    int fracStart = ++pos;
+                    char c;
+                    while (pos < end && (c = charAt(src, pos)) >= '0' && c <= '9')
+                    {
+                        // ignore digits beyond double precision
+                        if (fracScale < 18)
+                        {
+                            fracDigits = fracDigits*10 + (c - '0');
+                            fracScale++;
+                        }
+                        pos++;
+                    }
+
+                    if (pos == fracStart)
+                        throw newParseException(src, start, end, pos);
+                }
+            }
+
+            // allow 24:00:00 and leap seconds like a lenient calendar
+            if (hour > 24 || minute > 59 || second > 60)
+                throw newParseException(src, start, end, start);
+            secOfDay = hour*3600 + minute*60 + second;
+        }
+
+        // time zone
+        int tzOffset = 0;
+        if (pos < end)
+        {
+            char c = charAt(src, pos);
+            if (c == 'Z')
+            {
+                pos++;
+            }
+            else if (c == '+' || c == '-')
+            {
+                pos = expectDigits(src, start, pos+1, end, 2);
+                tzOffset = readInt(src, pos-2, pos) * 3600;
+
+                if (pos < end)
+                {
+                    if (charAt(src, pos) == ':')
+                        pos++;
+                    pos = expectDigits(src, start, pos, end, 2);
+                    tzOffset += readInt(src, pos-2, pos) * 60;
+                }
+
+                if (c == '-')
+                    tzOffset = -tzOffset;
+            }
+
+            if (pos != end)
+                throw newParseException(src, start, end, pos);
+        }
+
+        long epochSeconds = getEpochDay(year, month, day)*SECONDS_PER_DAY + secOfDay - tzOffset;
+        if (fracScale == 0)
+            return epochSeconds;
+        return epochSeconds + getFraction(fracDigits, fracScale);
+    }
+
+
+    private long getEpochDay(int year, int month, int day)
+    {
+        long key = year*10000L + month*100 + day;
+        DayCache cache = parseCache;
+        if (cache.key == key)
+            return cache.epochDay;
+
+        long epochDay = daysFromCivil(year, month, day);
+        parseCache = new DayCache(key, epochDay, null);
+        return epochDay;
+    }
+
+
+    private static double getFraction(long digits, int scale)
+    {
+        // exact division gives the correctly rounded result
+        if (scale <= 15)
+            return digits / POW10[scale];
+        return (digits / POW10[scale-15]) / POW10[15];
+    }
+
+
+    private static int expectDigits(Object src, int start, int pos, int end, int numDigits) throws ParseException
+    {
+        int last = pos + numDigits;
+        if (last > end)
+            throw newParseException(src, start, end, pos);
+
+        for (int i = pos; i < last; i++)
+        {
+            char c = charAt(src, i);
+            if (c < '0' || c > '9')
+                throw newParseException(src, start, end, i);
+        }
+
+        return last;
+    }
+
+
+    private static int expectChar(Object src, int start, int pos, int end, char expected) throws ParseException
+    {
+        if (pos >= end || charAt(src, pos) != expected)
+            throw newParseException(src, start, end, pos);
+        return pos + 1;
+    }
+
+
+    private static int readInt(Object src, int start, int end)
+    {
+        int val = 0;
+        for (int i = start; i < end; i++)
+            val = val*10 + (charAt(src, i) - '0');
+        return val;
+    }
+
+
+    private static ParseException newParseException(Object src, int start, int end, int errorPos)
+    {
+        String text;
+        if (src instanceof char[])
+            text = new String((char[])src, start, end-start);
+        else
+            text = ((CharSequence)src).subSequence(start, end).toString();
+        return new ParseException(INVALID_ISO_MSG + text, errorPos-start);
+    }
+
+
+    /**
+     * Formats epoch time to an ISO 8601 string in UTC
+     * @param time epoch time in seconds (since 1970-01-01T00:00:00Z)
+     * @return ISO 8601 string
+     */
+    public String format(double time)
+    {
+        char[] buf = new char[MAX_LENGTH];
+        int len = format(time, 0, buf, 0);
+        return new String(buf, 0, len);
+    }
+
+
+    /**
+     * Formats epoch time to an ISO 8601 string in UTC
+     * @param time epoch time in seconds (since 1970-01-01T00:00:00Z)
+     * @param buf destination array with at least {@link #MAX_LENGTH} characters available
+     * @param off index of first character to write in destination array
+     * @return number of characters written
+     */
+    public int format(double time, char[] buf, int off)
+    {
+        return format(time, 0, buf, off);
+    }
+
+
+    /**
+     * Formats epoch time to an ISO 8601 string in the given time zone
+     * @param time epoch time in seconds (since 1970-01-01T00:00:00Z)
+     * @param tzOffsetMinutes offset of time zone from UTC, in minutes
+     * @param buf destination array with at least {@link #MAX_LENGTH} characters available
+     * @param off index of first character to write in destination array
+     * @return number of characters written
+     */
+    public int format(double time, int tzOffsetMinutes, char[] buf, int off)
+    {
+        // same truncation to millis as DateTimeFormat
+        long millis = (long)(time*1e3) + tzOffsetMinutes*60000L;
+        long epochDay = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int)Math.floorMod(millis, MILLIS_PER_DAY);
+        int pos = off;
+
+        // date
+        DayCache cache = formatCache;
+        if (cache.key != epochDay)
+        {
+            cache = new DayCache(epochDay, epochDay, formatDate(epochDay));
+            formatCache = cache;
+        }
+        char[] dateChars = cache.dateChars;
+        System.arraycopy(dateChars, 0, buf, pos, dateChars.length);
+        pos += dateChars.length;
+
+        // time of day
+        int secOfDay = millisOfDay / 1000;
+        buf[pos++] = 'T';
+        pos = write2Digits(secOfDay / 3600, buf, pos);
+        buf[pos++] = ':';
+        pos = write2Digits(secOfDay / 60 % 60, buf, pos);
+        buf[pos++] = ':';
+        pos = write2Digits(secOfDay % 60, buf, pos);
+
+        int ms = millisOfDay % 1000;
+        if (ms != 0)
+        {
+            buf[pos++] = '.';
+            buf[pos++] = (char)('0' + ms / 100);
+            pos = write2Digits(ms % 100, buf, pos);
+        }
+
+        // time zone
+        if (tzOffsetMinutes == 0)
+        {
+            buf[pos++] = 'Z';
+        }
+        else
+        {
+            buf[pos++] = tzOffsetMinutes < 0 ? '-' : '+';
+            int absOffset = Math.abs(tzOffsetMinutes);
+            pos = write2Digits(absOffset / 60, buf, pos);
+            buf[pos++] = ':';
+            pos = write2Digits(absOffset % 60, buf, pos);
+        }
+
+        return pos - off;
+    }
+
+
+    private static char[] formatDate(long epochDay)
+    {
+        long[] ymd = civilFromDays(epochDay);
+        StringBuilder sb = new StringBuilder(16);
+        long year = ymd[0];
+        if (year < 0)
+        {
+            sb.append('-');
+            year = -year;
+        }
+        for (long y = 1000; y > 1 && year < y; y /= 10)
+            sb.append('0');
+        sb.append(year).append('-');
+        if (ymd[1] < 10)
+            sb.append('0');
+        sb.append(ymd[1]).append('-');
+        if (ymd[2] < 10)
+            sb.append('0');
+        sb.append(ymd[2]);
+
+        char[] dateChars = new char[sb.length()];
+        sb.getChars(0, dateChars.length, dateChars, 0);
+        return dateChars;
+    }
+
+
+    private static int write2Digits(int val, char[] buf, int pos)
+    {
+        buf[pos++] = (char)('0' + val / 10);
+        buf[pos++] = (char)('0' + val % 10);
+        return pos;
+    }
+
+
+    /*
+     * Number of days since 1970-01-01 in proleptic Gregorian calendar
+     * (see H. Hinnant's chrono-compatible low-level date algorithms)
+     */
+    static long daysFromCivil(long y, int m, int d)
+    {
+        y -= m <= 2 ? 1 : 0;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+
+    /*
+     * Inverse of daysFromCivil, returns {year, month, day}
+     */
+    static long[] civilFromDays(long z)
+    {
+        z += 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long d = doy - (153 * mp + 2) / 5 + 1;
+        long m = mp + (mp < 10 ? 3 : -9);
+        long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+        return new long[] {y, m, d};
+    }
+}
@@ -0,0 +1,155 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * <p>
+ * Histogram of positive long values (typically durations in nanoseconds)
+ * with log-linear buckets, in the manner of HDR histograms.<br/>
+ * Each power of 2 range is split in 32 linear sub-buckets so values are
+ * recorded with a relative precision of about 3% over the whole long range.
+ * </p><p>
+ * Recording a value doesn't allocate any memory and can be done concurrently
+ * from several threads. Statistics computed while values are being recorded
+ * are only approximately consistent.
+ * </p>
+ *
+ * @author Alex Robin
+ * @since Feb 22, 2018
+ */
+public class LatencyHistogram
+{
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    final AtomicLong totalCount = new AtomicLong();
+    final AtomicLong totalSum = new AtomicLong();
+    final AtomicLong maxValue = new AtomicLong();
+
+
+    /**
+     * Records one occurrence of the given value
+     * @param value value to record, negative values are recorded as 0
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+
+        counts.incrementAndGet(getBucketIndex(value));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(value);
+
+        long max;
+        while (value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value));
+    }
+
+
+    /**
+     * @return Number of values recorded
+     */
+    public long getCount()
+    {
+        return totalCount.get();
+    }
+
+
+    /**
+     * @return Mean of all recorded values or 0 if none was recorded
+     */
+    public double getMean()
+    {
+        long count = totalCount.get();
+        return (count > 0) ? (double)totalSum.get() / count : 0.0;
+    }
+
+
+    /**
+     * @return Largest recorded value
+     */
+    public long getMax()
+    {
+        return maxValue.get();
+    }
+
+
+    /**
+     * Computes the value below which the given percentage of recorded values fall
+     * @param percentile percentage between 0 and 100
+     * @return The highest value equivalent to the percentile bucket (within
+     * the histogram precision), or 0 if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        Asserts.checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+
+        long count = totalCount.get();
+        if (count == 0)
+            return 0;
+
+        long target = Math.max(1, (long)Math.ceil(percentile / 100.0 * count));
+        long cumulatedCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            cumulatedCount += counts.get(i);
+            if (cumulatedCount >= target)
+                return Math.min(getHighestEquivalentValue(i), maxValue.get());
+        }
+
+        return maxValue.get();
+    }
+
+
+    /**
+     * Clears all recorded values
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts.set(i, 0);
+        totalCount.set(0);
+        totalSum.set(0);
+        maxValue.set(0);
+    }
+
+
+    static int getBucketIndex(long value)
+    {
+        // values smaller than the sub-bucket count are recorded exactly
+        if (value < SUB_BUCKET_COUNT)
+            return (int)value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subIndex = (int)(value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subIndex;
+    }
+
+
+    static long getHighestEquivalentValue(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subIndex = index % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subIndex + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,221 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.cdm.common.DataStreamWriter;
+import org.vast.data.JSONEncodingImpl;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.StreamMetrics;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+import org.vast.swe.fast.JsonDataWriter;
+import org.vast.swe.fast.TextDataParser;
+import org.vast.swe.fast.TextDataWriter;
+
+
+public class TestBatchRecords
+{
+    SWEHelper fac = new SWEHelper();
+
+
+    protected DataRecord buildRecord()
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newQuantity());
+        rec.addField("values", fac.newArray(fac.newCount(), "val", fac.newQuantity(DataType.FLOAT)));
+        return rec;
+    }
+
+
+    protected DataBlock[] buildRecords(DataRecord rec, int numRecords)
+    {
+        DataBlock[] records = new DataBlock[numRecords];
+        for (int i = 0; i < numRecords; i++)
+        {
+            DataRecord r = rec.copy();
+            r.assignNewDataBlock();
+            ((DataArray)r.getComponent("values")).updateSize(i % 3 + 1);
+            DataBlock data = r.getData();
+            data.setDoubleValue(0, i);
+            for (int k = 2; k < data.getAtomCount(); k++)
+                data.setDoubleValue(k, i + k);
+            records[i] = data;
+        }
+        return records;
+    }
+
+
+    protected void roundTrip(DataRecord rec, DataEncoding encoding, DataStreamWriter writer, DataStreamParser parser) throws IOException
+    {
+        int numRecords = 100;
+        DataBlock[] records = buildRecords(rec, numRecords);
+
+        // write in uneven batches
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writer.setDataEncoding(encoding);
+        writer.setDataComponents(rec.copy());
+        writer.setOutput(os);
+        writer.write(records, 0, 7);
+        assertTrue(os.size() > 0);
+        writer.write(records, 7, numRecords - 7);
+        writer.close();
+
+        parser.setDataEncoding(encoding);
+        parser.setDataComponents(rec.copy());
+        parser.setInput(new ByteArrayInputStream(os.toByteArray()));
+
+        int i = 0;
+        int count;
+        DataBlock[] batch = new DataBlock[32];
+        while ((count = parser.parseNextBlocks(batch, batch.length)) > 0)
+        {
+            for (int j = 0; j < count; j++, i++)
+            {
+                assertEquals(records[i].getAtomCount(), batch[j].getAtomCount());
+                for (int k = 0; k < batch[j].getAtomCount(); k++)
+                    assertEquals(records[i].getDoubleValue(k), batch[j].getDoubleValue(k), 0.0);
+            }
+        }
+
+        assertEquals(numRecords, i);
+        assertEquals(0, parser.parseNextBlocks(batch, batch.length));
+    }
+
+
+    @Test
+    public void testBinaryBatches() throws IOException
+    {
+        DataRecord rec = buildRecord();
+        roundTrip(rec, SWEHelper.getDefaultBinaryEncoding(rec), new BinaryDataWriter(), new BinaryDataParser());
+    }
+
+
+    @Test
+    public void testTextBatches() throws IOException
+    {
+        // fixed size arrays only with text encoding
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newQuantity());
+        rec.addField("val", fac.newQuantity());
+        rec.addField("count", fac.newCount());
+
+        DataBlock[] records = new DataBlock[50];
+        for (int i = 0; i < records.length; i++)
+        {
+            records[i] = rec.createDataBlock();
+            records[i].setDoubleValue(0, i * 0.5);
+            records[i].setDoubleValue(1, -i);
+            records[i].setIntValue(2, i);
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        TextDataWriter writer = new TextDataWriter();
+        writer.setDataEncoding(fac.newTextEncoding(",", "\n"));
+        writer.setDataComponents(rec);
+        writer.setOutput(os);
+        writer.write(records, 0, records.length);
+
+        TextDataParser parser = new TextDataParser();
+        parser.setDataEncoding(fac.newTextEncoding(",", "\n"));
+        parser.setDataComponents(rec);
+        parser.setInput(new ByteArrayInputStream(os.toByteArray()));
+
+        DataBlock[] batch = new DataBlock[records.length + 10];
+        assertEquals(records.length, parser.parseNextBlocks(batch, batch.length));
+        for (int i = 0; i < records.length; i++)
+        {
+            if (i > 0)
+                assertNotSame(batch[i-1], batch[i]);
+            assertEquals(i * 0.5, batch[i].getDoubleValue(0), 0.0);
+            assertEquals(-i, batch[i].getDoubleValue(1), 0.0);
+            assertEquals(i, batch[i].getIntValue(2));
+        }
+    }
+
+
+    protected byte[] writeJson(DataRecord rec, DataBlock[] records, boolean batch) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        JsonDataWriter writer = new JsonDataWriter();
+        writer.setDataEncoding(new JSONEncodingImpl());
+        writer.setDataComponents(rec.copy());
+        writer.setOutput(os);
+        writer.startStream(true);
+        if (batch)
+        {
+            writer.write(records, 0, 5);
+            writer.write(records, 5, records.length - 5);
+        }
+        else
+        {
+            for (DataBlock data: records)
+                writer.write(data);
+        }
+        writer.endStream();
+        writer.close();
+        return os.toByteArray();
+    }
+
+
+    @Test
+    public void testJsonBatchesMatchSingleWrites() throws IOException
+    {
+        DataRecord rec = buildRecord();
+        DataBlock[] records = buildRecords(rec, 20);
+        String expected = new String(writeJson(rec, records, false));
+        assertEquals(expected, new String(writeJson(rec, records, true)));
+    }
+
+
+    @Test
+    public void testBatchError() throws IOException
+    {
+        DataRecord rec = buildRecord();
+        DataBlock[] records = buildRecords(rec, 10);
+        records[6] = null;
+
+        StreamMetrics metrics = new StreamMetrics();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataEncoding(SWEHelper.getDefaultBinaryEncoding(rec));
+        writer.setDataComponents(rec.copy());
+        writer.setOutput(new ByteArrayOutputStream());
+        writer.setMetrics(metrics);
+
+        try
+        {
+            writer.write(records, 0, records.length);
+            fail("Null record should have been rejected");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("record 6"));
+        }
+
+        // records before the failing one are written, error is counted once
+        assertEquals(6, metrics.getRecordCount());
+        assertEquals(1, metrics.getErrorCount());
+    }
+}
@@ -0,0 +1,255 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.vast.data.DataBlockFloat;
+import org.vast.data.DataBlockMixed;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.BinaryCodecCompiler;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+
+
+public class TestBinaryCodecCompiler
+{
+    SWEHelper fac = new SWEHelper();
+
+
+    @Before
+    public void checkCompiler()
+    {
+        Assume.assumeTrue(BinaryCodecCompiler.getInstance().isAvailable());
+    }
+
+
+    protected DataRecord buildMixedRecord()
+    {
+        DataRecord point = fac.newDataRecord();
+        point.addField("id", fac.newCount(null, null, null, DataType.SHORT));
+        point.addField("val", fac.newQuantity(DataType.FLOAT));
+        DataArray points = fac.newDataArray(4);
+        points.setElementType("point", point);
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("valid", fac.newBoolean(null, null, null));
+        rec.addField("count", fac.newCount(null, null, null, DataType.LONG));
+        rec.addField("location", fac.newVector(null, null, new String[] {"x", "y"}, null, new String[] {"m", "m"}, null));
+        rec.addField("status", fac.newText(null, null, null));
+        rec.addField("points", points);
+        return rec;
+    }
+
+
+    protected DataBlock[] buildRecords(DataComponent rec, int numRecords)
+    {
+        DataBlock[] records = new DataBlock[numRecords];
+        for (int i = 0; i < numRecords; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            for (int k = 0; k < data.getAtomCount(); k++)
+            {
+                switch (data.getDataType(k))
+                {
+                    case BOOLEAN:
+                        data.setBooleanValue(k, (i + k) % 2 == 0);
+                        break;
+
+                    case UTF_STRING:
+                    case ASCII_STRING:
+                        data.setStringValue(k, "rec" + i);
+                        break;
+
+                    default:
+                        data.setDoubleValue(k, i * 10 + k);
+                }
+            }
+            records[i] = data;
+        }
+        return records;
+    }
+
+
+    protected byte[] write(DataComponent rec, BinaryEncoding encoding, DataBlock[] records, boolean compiled) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataComponents(rec);
+        writer.setDataEncoding(encoding);
+        writer.setUseCompiledCodec(compiled);
+        writer.setOutput(os);
+        for (DataBlock data: records)
+            writer.write(data);
+        writer.flush();
+        assertEquals(compiled, writer.isUsingCompiledCodec());
+        return os.toByteArray();
+    }
+
+
+    protected void checkParse(DataComponent rec, BinaryEncoding encoding, DataBlock[] records, byte[] bytes) throws IOException
+    {
+        BinaryDataParser parser = new BinaryDataParser();
+        parser.setDataComponents(rec);
+        parser.setDataEncoding(encoding);
+        parser.setUseCompiledCodec(true);
+        parser.setInput(new ByteArrayInputStream(bytes));
+
+        int i = 0;
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+        {
+            assertTrue(parser.isUsingCompiledCodec());
+            assertEquals(records[i].getAtomCount(), data.getAtomCount());
+            for (int k = 0; k < data.getAtomCount(); k++)
+                assertEquals(records[i].getStringValue(k), data.getStringValue(k));
+            i++;
+        }
+
+        assertEquals(records.length, i);
+    }
+
+
+    @Test
+    public void testMixedRecord() throws IOException
+    {
+        DataRecord rec = buildMixedRecord();
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        DataBlock[] records = buildRecords(rec, 20);
+
+        // generated code must produce exactly the same stream
+        byte[] expected = write(rec, encoding, records, false);
+        byte[] bytes = write(rec, encoding, records, true);
+        assertArrayEquals(expected, bytes);
+
+        checkParse(rec, encoding, records, bytes);
+    }
+
+
+    @Test
+    public void testDirectArrayAccess() throws IOException
+    {
+        // all values are doubles so the datablock array is accessed directly
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("temp", fac.newQuantity(DataType.DOUBLE));
+        rec.addField("press", fac.newQuantity(DataType.DOUBLE));
+
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        DataBlock[] records = buildRecords(rec, 20);
+
+        byte[] expected = write(rec, encoding, records, false);
+        byte[] bytes = write(rec, encoding, records, true);
+        assertArrayEquals(expected, bytes);
+
+        checkParse(rec, encoding, records, bytes);
+    }
+
+
+    @Test
+    public void testConcreteBlockAccess() throws Exception
+    {
+        DataRecord rec = buildMixedRecord();
+        assertTrue(rec.createDataBlock() instanceof DataBlockMixed);
+        SWEHelper.assignBinaryEncoding(rec, SWEHelper.getDefaultBinaryEncoding(rec));
+
+        // child blocks of mixed record are cast to their concrete class
+        // and their primitive arrays are accessed directly
+        String src = BinaryCodecCompiler.getInstance().getSource(rec);
+        assertTrue(src.contains("DataBlockMixed m0 = (DataBlockMixed)data;"));
+        assertTrue(src.contains("DataBlockDouble b1 = (DataBlockDouble)m0.getBlock(0);"));
+        assertTrue(src.contains("double[] a1 = b1.getUnderlyingObject();"));
+        assertTrue(src.contains("a1[s1 + i1++] = in.readDouble();"));
+        assertTrue(src.contains("out.writeDouble(a1[s1 + i1++]);"));
+        assertTrue(src.contains("DataBlockLong b3 = (DataBlockLong)m0.getBlock(2);"));
+        assertTrue(src.contains("out.writeLong(a3[s3 + i3++]);"));
+    }
+
+
+    @Test
+    public void testOtherBlockLayout() throws IOException
+    {
+        DataRecord rec = buildMixedRecord();
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        DataBlock[] records = buildRecords(rec, 10);
+        byte[] expected = write(rec, encoding, records, false);
+
+        // blocks with a layout that differs from the one the codec was
+        // generated for must be processed through the DataBlock interface
+        for (DataBlock data: records)
+        {
+            DataBlockFloat time = new DataBlockFloat(1);
+            time.setDoubleValue(data.getDoubleValue(0));
+            ((DataBlockMixed)data).setBlock(0, time);
+        }
+
+        byte[] bytes = write(rec, encoding, records, true);
+        assertArrayEquals(expected, bytes);
+    }
+
+
+    @Test
+    public void testCodecCache() throws IOException
+    {
+        DataRecord rec = buildMixedRecord();
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        DataBlock[] records = buildRecords(rec, 5);
+        write(rec, encoding, records, true);
+
+        // same structure with different names must reuse the same codec
+        int cacheSize = BinaryCodecCompiler.getInstance().getCacheSize();
+        DataRecord rec2 = buildMixedRecord();
+        rec2.getComponent("status").setName("other");
+        write(rec2, encoding, records, true);
+        assertEquals(cacheSize, BinaryCodecCompiler.getInstance().getCacheSize());
+    }
+
+
+    @Test
+    public void testFallbackWhenUnsupported() throws IOException
+    {
+        // variable size arrays are processed by the generic processor tree
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("values", fac.newArray(fac.newCount(), "val", fac.newQuantity(DataType.FLOAT)));
+
+        DataBlock data = rec.createDataBlock();
+        data.setDoubleValue(0, 1.0);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataComponents(rec);
+        writer.setDataEncoding(SWEHelper.getDefaultBinaryEncoding(rec));
+        writer.setUseCompiledCodec(true);
+        writer.setOutput(os);
+        writer.write(data);
+        writer.flush();
+
+        assertFalse(writer.isUsingCompiledCodec());
+        assertTrue(os.size() > 0);
+    }
+}
@@ -0,0 +1,489 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import net.opengis.swe.v20.BinaryBlock;
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.ByteEncoding;
+import net.opengis.swe.v20.ByteOrder;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.ScalarComponent;
+import org.junit.Test;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.cdm.common.DataStreamWriter;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.BinaryBlockImpl;
+import org.vast.data.DataBlockCompressed;
+import org.vast.data.DataBlockMixed;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.codec.CoreCodecFactory;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+
+
+public class TestBinaryDataParser
+{
+    static final int NUM_RECORDS = 20;
+    SWEHelper fac = new SWEHelper();
+
+
+    protected DataRecord buildScalarRecord()
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("flag", fac.newBoolean());
+        rec.addField("b", fac.newCount(DataType.BYTE));
+        rec.addField("s", fac.newCount(DataType.SHORT));
+        rec.addField("i", fac.newCount(DataType.INT));
+        rec.addField("l", fac.newCount(DataType.LONG));
+        rec.addField("f", fac.newQuantity(DataType.FLOAT));
+        rec.addField("d", fac.newQuantity(DataType.DOUBLE));
+        rec.addField("label", fac.newText());
+        return rec;
+    }
+
+
+    protected List<DataBlock> buildRecords(DataComponent rec, BiConsumer<DataComponent, Integer> shaper)
+    {
+        List<DataBlock> records = new ArrayList<>();
+        rec.clearData();
+        rec.assignNewDataBlock();
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            if (shaper != null)
+                shaper.accept(rec, i);
+            fillValues(rec, i);
+            records.add(rec.getData().clone());
+        }
+        return records;
+    }
+
+
+    /*
+     * Assigns values to all scalars of a component bound to a datablock,
+     * except array sizes which must stay consistent with the structure
+     */
+    protected void fillValues(DataComponent comp, int seed)
+    {
+        if (comp instanceof DataArray)
+        {
+            for (int i = 0; i < comp.getComponentCount(); i++)
+                fillValues(comp.getComponent(i), seed * 7 + i);
+        }
+        else if (comp instanceof DataChoice)
+        {
+            fillValues(((DataChoice)comp).getSelectedItem(), seed);
+        }
+        else if (comp instanceof ScalarComponent)
+        {
+            if (comp.getParent() instanceof DataRecord && isArraySize(comp))
+                return;
+
+            DataBlock data = comp.getData();
+            switch (data.getDataType())
+            {
+                case BOOLEAN:
+                    data.setBooleanValue(seed % 2 == 0);
+                    break;
+
+                case UTF_STRING:
+                case ASCII_STRING:
+                    data.setStringValue("val" + seed);
+                    break;
+
+                case FLOAT:
+                case DOUBLE:
+                    data.setDoubleValue(seed % 100 + 0.25);
+                    break;
+
+                default:
+                    data.setIntValue(seed % 100);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < comp.getComponentCount(); i++)
+                fillValues(comp.getComponent(i), seed * 3 + i);
+        }
+    }
+
+
+    protected boolean isArraySize(DataComponent comp)
+    {
+        DataComponent parent = comp.getParent();
+        for (int i = 0; i < parent.getComponentCount(); i++)
+        {
+            DataComponent c = parent.getComponent(i);
+            if (c instanceof DataArray && ((DataArray)c).getArraySizeComponent() == comp)
+                return true;
+        }
+        return false;
+    }
+
+
+    /*
+     * Gets an unbound copy of the record structure, with empty variable size arrays
+     */
+    protected DataComponent newStructure(DataComponent rec)
+    {
+        DataComponent comp = rec.copy();
+        comp.clearData();
+        return comp;
+    }
+
+
+    protected DataStreamWriter newWriter(boolean fast)
+    {
+        return fast ? new BinaryDataWriter() : new org.vast.swe.BinaryDataWriter();
+    }
+
+
+    protected DataStreamParser newParser(boolean fast)
+    {
+        return fast ? new BinaryDataParser() : new org.vast.swe.BinaryDataParser();
+    }
+
+
+    protected byte[] write(DataComponent rec, BinaryEncoding encoding, List<DataBlock> records, boolean fast) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataStreamWriter writer = newWriter(fast);
+        writer.setDataEncoding(encoding);
+        writer.setDataComponents(newStructure(rec));
+        writer.setOutput(os);
+        for (DataBlock data: records)
+            writer.write(data);
+        writer.close();
+        return os.toByteArray();
+    }
+
+
+    protected List<DataBlock> parse(DataComponent rec, BinaryEncoding encoding, byte[] bytes, boolean fast) throws IOException
+    {
+        DataStreamParser parser = newParser(fast);
+        parser.setDataEncoding(encoding);
+        parser.setDataComponents(newStructure(rec));
+        parser.setInput(new ByteArrayInputStream(bytes));
+
+        List<DataBlock> records = new ArrayList<>();
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            records.add(data.clone());
+        parser.close();
+        return records;
+    }
+
+
+    protected void checkRecords(List<DataBlock> expected, List<DataBlock> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            DataBlock blk1 = expected.get(i);
+            DataBlock blk2 = actual.get(i);
+            assertEquals("Record " + i, blk1.getAtomCount(), blk2.getAtomCount());
+            for (int k = 0; k < blk1.getAtomCount(); k++)
+                assertEquals("Record " + i + ", value " + k, blk1.getStringValue(k), blk2.getStringValue(k));
+        }
+    }
+
+
+    /*
+     * Checks that records written with fast and legacy writers are
+     * identical and can be read back by both fast and legacy parsers
+     */
+    protected void checkRoundTrips(DataComponent rec, BinaryEncoding encoding, List<DataBlock> records) throws IOException
+    {
+        checkRoundTrips(rec, encoding, records, true);
+    }
+
+
+    protected void checkRoundTrips(DataComponent rec, BinaryEncoding encoding, List<DataBlock> records, boolean withLegacyParser) throws IOException
+    {
+        byte[] fastBytes = write(rec, encoding, records, true);
+        byte[] legacyBytes = write(rec, encoding, records, false);
+        assertArrayEquals(legacyBytes, fastBytes);
+
+        checkRecords(records, parse(rec, encoding, fastBytes, true));
+        checkRecords(records, parse(rec, encoding, legacyBytes, true));
+        if (withLegacyParser)
+            checkRecords(records, parse(rec, encoding, fastBytes, false));
+    }
+
+
+    @Test
+    public void testRawBigEndian() throws IOException
+    {
+        DataRecord rec = buildScalarRecord();
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        encoding.setByteOrder(ByteOrder.BIG_ENDIAN);
+        checkRoundTrips(rec, encoding, buildRecords(rec, null));
+    }
+
+
+    @Test
+    public void testRawLittleEndian() throws IOException
+    {
+        DataRecord rec = buildScalarRecord();
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        encoding.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        List<DataBlock> records = buildRecords(rec, null);
+        checkRoundTrips(rec, encoding, records);
+
+        // check byte order of first value
+        byte[] bytes = write(rec, encoding, records, true);
+        BinaryEncoding bigEndian = SWEHelper.getDefaultBinaryEncoding(rec);
+        bigEndian.setByteOrder(ByteOrder.BIG_ENDIAN);
+        byte[] beBytes = write(rec, bigEndian, records, true);
+        for (int i = 0; i < 8; i++)
+            assertEquals(beBytes[i], bytes[7-i]);
+    }
+
+
+    @Test
+    public void testBase64() throws IOException
+    {
+        DataRecord rec = buildScalarRecord();
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        encoding.setByteEncoding(ByteEncoding.BASE_64);
+        List<DataBlock> records = buildRecords(rec, null);
+        checkRoundTrips(rec, encoding, records);
+
+        // output must only contain base64 characters and line breaks
+        for (byte b: write(rec, encoding, records, true))
+            assertTrue(Character.isLetterOrDigit(b) || b == '+' || b == '/' || b == '=' || b == '\n');
+    }
+
+
+    @Test
+    public void testExplicitSizeArray() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        Count size = fac.newCount();
+        size.setId("NUM_VALUES");
+        rec.addField("num", size);
+        DataArray array = fac.newDataArray();
+        array.setElementType("val", fac.newQuantity(DataType.FLOAT));
+        array.setElementCount(size);
+        rec.addField("values", array);
+        rec.addField("label", fac.newText());
+
+        // legacy parser cannot renew datablocks once the size component
+        // has been read so only check it with fast parser
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        checkRoundTrips(rec, encoding, buildRecords(rec, (r, i) -> {
+            ((DataArray)((DataRecord)r).getComponent("values")).updateSize(i % 4);
+        }), false);
+    }
+
+
+    @Test
+    public void testImplicitSizeArray() throws IOException
+    {
+        DataRecord elt = fac.newDataRecord();
+        elt.addField("id", fac.newCount(DataType.SHORT));
+        elt.addField("val", fac.newQuantity(DataType.DOUBLE));
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("values", fac.newArray(fac.newCount(), "elt", elt));
+        rec.addField("label", fac.newText());
+
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        checkRoundTrips(rec, encoding, buildRecords(rec, (r, i) -> {
+            ((DataArray)((DataRecord)r).getComponent("values")).updateSize(i % 5);
+        }));
+    }
+
+
+    @Test
+    public void testChoice() throws IOException
+    {
+        DataRecord pos = fac.newDataRecord();
+        pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+
+        DataChoice choice = fac.newDataChoice();
+        choice.addItem("count", fac.newCount(DataType.INT));
+        choice.addItem("pos", pos);
+        choice.addItem("msg", fac.newText());
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("item", choice);
+        rec.addField("temp", fac.newQuantity(DataType.FLOAT));
+
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        checkRoundTrips(rec, encoding, buildRecords(rec, (r, i) -> {
+            ((DataChoice)((DataRecord)r).getComponent("item")).setSelectedItem(i % 3);
+        }));
+    }
+
+
+    @Test
+    public void testFixedArrayInRecord() throws IOException
+    {
+        DataRecord point = fac.newDataRecord();
+        point.addField("id", fac.newCount(DataType.SHORT));
+        point.addField("x", fac.newQuantity(DataType.FLOAT));
+        point.addField("y", fac.newQuantity(DataType.FLOAT));
+        DataArray points = fac.newDataArray(5);
+        points.setElementType("point", point);
+
+        // homogeneous array that can be processed in bulk
+        DataArray values = fac.newDataArray(10);
+        values.setElementType("val", fac.newQuantity(DataType.DOUBLE));
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("points", points);
+        rec.addField("values", values);
+
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        encoding.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        checkRoundTrips(rec, encoding, buildRecords(rec, null));
+    }
+
+
+    /*
+     * Copies records so that values of the array are each stored in a separate
+     * child block, which forces the per-value path instead of bulk transfers
+     */
+    protected List<DataBlock> splitArrayValues(List<DataBlock> records)
+    {
+        List<DataBlock> splitRecords = new ArrayList<>();
+        for (DataBlock data: records)
+        {
+            DataBlockMixed rec = (DataBlockMixed)data;
+            AbstractDataBlock array = rec.getBlock(1);
+            DataBlockMixed values = new DataBlockMixed(array.getAtomCount());
+            for (int k = 0; k < array.getAtomCount(); k++)
+            {
+                AbstractDataBlock val = array.renew();
+                val.resize(1);
+                if (val.getDataType().isIntegralType())
+                    val.setLongValue(0, array.getLongValue(k));
+                else
+                    val.setDoubleValue(0, array.getDoubleValue(k));
+                values.setBlock(k, val);
+            }
+
+            DataBlockMixed splitRec = new DataBlockMixed(2);
+            splitRec.setBlock(0, rec.getBlock(0));
+            splitRec.setBlock(1, values);
+            splitRecords.add(splitRec);
+        }
+        return splitRecords;
+    }
+
+
+    @Test
+    public void testBulkArraysMatchPerValue() throws IOException
+    {
+        DataType[] dataTypes = {
+            DataType.BYTE, DataType.UBYTE, DataType.SHORT, DataType.USHORT, DataType.INT,
+            DataType.UINT, DataType.LONG, DataType.FLOAT, DataType.DOUBLE
+        };
+
+        for (DataType dataType: dataTypes)
+        {
+            for (ByteOrder byteOrder: new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN})
+            {
+                DataArray values = fac.newDataArray(37);
+                boolean integral = dataType.isIntegralType();
+                values.setElementType("val", integral ? fac.newCount(dataType) : fac.newQuantity(dataType));
+                DataRecord rec = fac.newDataRecord();
+                rec.addField("time", fac.newTimeStampIsoUTC());
+                rec.addField("values", values);
+
+                // values covering all bits of each type, including negative
+                // and unsigned values not representable in signed types
+                List<DataBlock> records = buildRecords(rec, null);
+                for (int i = 0; i < records.size(); i++)
+                {
+                    AbstractDataBlock array = ((DataBlockMixed)records.get(i)).getBlock(1);
+                    assertEquals(dataType, array.getDataType());
+                    for (int k = 0; k < array.getAtomCount(); k++)
+                    {
+                        long bits = (i * 37 + k) * 0x9E3779B97F4A7C15L;
+                        if (integral)
+                            array.setLongValue(k, bits);
+                        else
+                            array.setDoubleValue(k, (bits >> 11) * 1e-7);
+                    }
+                }
+
+                BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+                encoding.setByteOrder(byteOrder);
+                String msg = dataType + ", " + byteOrder;
+
+                byte[] bulkBytes = write(rec, encoding, records, true);
+                byte[] perValueBytes = write(rec, encoding, splitArrayValues(records), true);
+                assertArrayEquals(msg, perValueBytes, bulkBytes);
+
+                // bulk reads must give the same values as the ones written
+                checkRecords(records, parse(rec, encoding, bulkBytes, true));
+            }
+        }
+    }
+
+
+    @Test
+    public void testCompressedMember() throws Exception
+    {
+        DataArray values = fac.newDataArray(200);
+        values.setElementType("val", fac.newQuantity(DataType.FLOAT));
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("values", values);
+        rec.addField("label", fac.newText());
+
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        BinaryBlock block = new BinaryBlockImpl();
+        block.setRef("/values");
+        block.setCompression(CoreCodecFactory.DEFLATE);
+        encoding.addMemberAsBlock(block);
+
+        List<DataBlock> records = buildRecords(rec, null);
+        byte[] bytes = write(rec, encoding, records, true);
+        assertTrue(bytes.length < NUM_RECORDS * 200 * 4);
+        checkRecords(records, parse(rec, encoding, bytes, true));
+
+        // legacy parser keeps compressed data as-is and legacy writer
+        // writes it back unchanged, so fast parser can still decode it
+        List<DataBlock> legacyRecords = parse(rec, encoding, bytes, false);
+        assertEquals(NUM_RECORDS, legacyRecords.size());
+        SWEHelper.assignBinaryEncoding(rec, encoding);
+        DataComponent r = rec.copy();
+        r.setData(legacyRecords.get(0));
+        assertTrue(r.getComponent("values").getData() instanceof DataBlockCompressed);
+        assertArrayEquals(bytes, write(rec, encoding, legacyRecords, false));
+    }
+}
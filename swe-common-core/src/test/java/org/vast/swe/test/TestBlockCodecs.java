@@ -0,0 +1,319 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import net.opengis.swe.v20.BinaryBlock;
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.cdm.common.CompressedStreamParser;
+import org.vast.data.BinaryBlockImpl;
+import org.vast.data.ChunkCodec;
+import org.vast.data.DataBlockCompressed;
+import org.vast.data.DeflateChunkCodec;
+import org.vast.data.LZ4ChunkCodec;
+import org.vast.swe.CodecLookup;
+import org.vast.swe.CodecLookup.CodecStats;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.codec.AbstractBlockCodec;
+import org.vast.swe.codec.CoreCodecFactory;
+import org.vast.swe.codec.DeltaVarintCodec;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+
+
+public class TestBlockCodecs
+{
+    static final int NUM_RECORDS = 20;
+    static final int ARRAY_SIZE = 500;
+
+
+    protected void checkChunkCodec(ChunkCodec codec, byte[] data)
+    {
+        byte[] compressed = codec.compress(data, 0, data.length);
+        byte[] framed = new byte[compressed.length + 3];
+        System.arraycopy(compressed, 0, framed, 3, compressed.length);
+
+        byte[] decompressed = new byte[data.length];
+        codec.decompress(framed, 3, compressed.length, decompressed, data.length);
+        assertArrayEquals(data, decompressed);
+    }
+
+
+    @Test
+    public void testChunkCodecs()
+    {
+        Random random = new Random(42);
+        byte[] noise = new byte[10000];
+        random.nextBytes(noise);
+        byte[] repeated = new byte[100000];
+        for (int i = 0; i < repeated.length; i++)
+            repeated[i] = (byte)(i % 37 + (i / 5000));
+
+        for (ChunkCodec codec: new ChunkCodec[] {LZ4ChunkCodec.DEFAULT, DeflateChunkCodec.DEFAULT})
+        {
+            checkChunkCodec(codec, new byte[0]);
+            checkChunkCodec(codec, new byte[] {1, 2, 3});
+            checkChunkCodec(codec, noise);
+            checkChunkCodec(codec, repeated);
+            assertTrue(codec.compress(repeated, 0, repeated.length).length < repeated.length / 10);
+        }
+    }
+
+
+    protected DataRecord buildRecord(SWEHelper fac)
+    {
+        DataRecord elt = fac.newDataRecord();
+        elt.addField("time", fac.newQuantity(DataType.DOUBLE));
+        elt.addField("count", fac.newCount(DataType.INT));
+        elt.addField("temp", fac.newQuantity(DataType.FLOAT));
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("id", fac.newCount(DataType.INT));
+        Count size = fac.newCount();
+        size.setValue(ARRAY_SIZE);
+        rec.addField("samples", fac.newArray(size, "sample", elt));
+        return rec;
+    }
+
+
+    protected int roundTrip(String compression) throws Exception
+    {
+        SWEHelper fac = new SWEHelper();
+        DataRecord rec = buildRecord(fac);
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        BinaryBlock block = new BinaryBlockImpl();
+        block.setRef("/samples");
+        block.setCompression(compression);
+        encoding.addMemberAsBlock(block);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataEncoding(encoding);
+        writer.setDataComponents(rec.copy());
+        writer.setOutput(os);
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setIntValue(0, i);
+            for (int k = 0; k < ARRAY_SIZE; k++)
+            {
+                data.setDoubleValue(1+k*3, 1.5e9 + i + k*0.1);
+                data.setIntValue(2+k*3, k + i);
+                data.setFloatValue(3+k*3, 20.0f + (k % 7) * 0.5f);
+            }
+            writer.write(data);
+        }
+        writer.close();
+
+        BinaryDataParser parser = new BinaryDataParser();
+        parser.setDataEncoding(encoding);
+        parser.setDataComponents(rec.copy());
+        parser.setInput(new ByteArrayInputStream(os.toByteArray()));
+
+        DataBlock data;
+        int i = 0;
+        while ((data = parser.parseNextBlock()) != null)
+        {
+            assertEquals(1 + ARRAY_SIZE*3, data.getAtomCount());
+            assertEquals(i, data.getIntValue(0));
+            for (int k = 0; k < ARRAY_SIZE; k++)
+            {
+                assertEquals(1.5e9 + i + k*0.1, data.getDoubleValue(1+k*3), 0.0);
+                assertEquals(k + i, data.getIntValue(2+k*3));
+                assertEquals(20.0f + (k % 7) * 0.5f, data.getFloatValue(3+k*3), 0.0f);
+            }
+            i++;
+        }
+
+        assertEquals(NUM_RECORDS, i);
+        return os.size();
+    }
+
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        int rawSize = NUM_RECORDS * (4 + ARRAY_SIZE * 16);
+        assertTrue(roundTrip(CoreCodecFactory.DEFLATE) < rawSize / 2);
+        assertTrue(roundTrip(CoreCodecFactory.DEFLATE + ":1") < rawSize / 2);
+        assertTrue(roundTrip(CoreCodecFactory.LZ4) < rawSize);
+        assertTrue(roundTrip(CoreCodecFactory.DELTA_VARINT) < rawSize / 2);
+    }
+
+
+    @Test
+    public void testComponentsUnchangedByParser() throws Exception
+    {
+        SWEHelper fac = new SWEHelper();
+        DataRecord rec = buildRecord(fac);
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        BinaryBlockImpl block = new BinaryBlockImpl();
+        block.setRef("/samples");
+        block.setCompression(CoreCodecFactory.LZ4);
+        encoding.addMemberAsBlock(block);
+        SWEHelper.assignBinaryEncoding(rec, encoding);
+
+        BinaryDataParser parser = new BinaryDataParser();
+        parser.setDataEncoding(encoding);
+        parser.setDataComponents(rec);
+        parser.setInput(new ByteArrayInputStream(new byte[0]));
+        assertNull(parser.parseNextBlock());
+        assertEquals(-1, parser.getRecordSize());
+        parser.close();
+
+        // decoding on-the-fly must not leak to the component or the encoding
+        assertNull(block.getBlockReader());
+        assertTrue(rec.getComponent("samples").createDataBlock() instanceof DataBlockCompressed);
+    }
+
+
+    @Test
+    public void testParserReuseAfterClose() throws Exception
+    {
+        CodecLookup lookup = CodecLookup.getInstance();
+        lookup.registerFactory(new CoreCodecFactory() {
+            @Override
+            public boolean isStateless(String compressionType)
+            {
+                return false;
+            }
+
+            @Override
+            public AbstractBlockCodec createCodec(String compressionType)
+            {
+                return "test-reuse".equals(compressionType) ? new DeltaVarintCodec() : null;
+            }
+        });
+
+        SWEHelper fac = new SWEHelper();
+        DataRecord rec = buildRecord(fac);
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        BinaryBlock block = new BinaryBlockImpl();
+        block.setRef("/samples");
+        block.setCompression("test-reuse");
+        encoding.addMemberAsBlock(block);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataEncoding(encoding);
+        writer.setDataComponents(rec);
+        writer.setOutput(os);
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setIntValue(0, i);
+            writer.write(data);
+        }
+        writer.close();
+
+        CodecStats stats = lookup.getStatistics("test-reuse");
+        long createCount = stats.getCreateCount();
+        BinaryDataParser parser1 = new BinaryDataParser();
+        parser1.setDataEncoding(encoding);
+        parser1.setDataComponents(rec);
+        assertEquals(NUM_RECORDS, parseAll(parser1, os.toByteArray()));
+        parser1.close();
+        assertEquals(createCount + 1, stats.getCreateCount());
+
+        // second parser gets the decoder released by the first one
+        BinaryDataParser parser2 = new BinaryDataParser();
+        parser2.setDataEncoding(encoding);
+        parser2.setDataComponents(rec);
+        assertEquals(NUM_RECORDS, parseAll(parser2, os.toByteArray()));
+        assertEquals(createCount + 1, stats.getCreateCount());
+
+        // so first parser must not use it anymore when reused
+        assertEquals(NUM_RECORDS, parseAll(parser1, os.toByteArray()));
+        assertEquals(createCount + 2, stats.getCreateCount());
+    }
+
+
+    protected int parseAll(BinaryDataParser parser, byte[] bytes) throws Exception
+    {
+        parser.setInput(new ByteArrayInputStream(bytes));
+        int i = 0;
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            assertEquals(i++, data.getIntValue(0));
+        return i;
+    }
+
+
+    @Test
+    public void testLookup()
+    {
+        CodecLookup lookup = CodecLookup.getInstance();
+        assertTrue(lookup.getAvailableDecoders().containsKey(CoreCodecFactory.LZ4));
+        assertNotNull(lookup.createEncoder("deflate:9"));
+        assertNull(lookup.createDecoder("deflate:12"));
+        assertNull(lookup.createDecoder("unknown"));
+    }
+
+
+    @Test
+    public void testCodecCaching() throws Exception
+    {
+        CodecLookup lookup = CodecLookup.getInstance();
+
+        // stateless codecs are shared
+        CompressedStreamParser decoder = lookup.createDecoder(CoreCodecFactory.LZ4);
+        assertSame(decoder, lookup.createDecoder(CoreCodecFactory.LZ4));
+        assertSame(lookup.createEncoder(CoreCodecFactory.LZ4), lookup.createEncoder(CoreCodecFactory.LZ4));
+
+        // statistics are global so check increments only
+        CodecStats stats = lookup.getStatistics(CoreCodecFactory.LZ4);
+        long encodeCount = stats.getEncodeCount();
+        long decodeCount = stats.getDecodeCount();
+        long createCount = stats.getCreateCount();
+        roundTrip(CoreCodecFactory.LZ4);
+        assertEquals(encodeCount + NUM_RECORDS, stats.getEncodeCount());
+        assertEquals(decodeCount + NUM_RECORDS, stats.getDecodeCount());
+        assertEquals(createCount, stats.getCreateCount());
+        assertTrue(lookup.getStatistics().containsKey(CoreCodecFactory.LZ4));
+
+        // other codecs are pooled
+        lookup.registerFactory(new CoreCodecFactory() {
+            @Override
+            public boolean isStateless(String compressionType)
+            {
+                return false;
+            }
+
+            @Override
+            public AbstractBlockCodec createCodec(String compressionType)
+            {
+                return "test-pooled".equals(compressionType) ? new DeltaVarintCodec() : null;
+            }
+        });
+
+        CompressedStreamParser decoder1 = lookup.createDecoder("test-pooled");
+        CompressedStreamParser decoder2 = lookup.createDecoder("test-pooled");
+        assertNotSame(decoder1, decoder2);
+        lookup.releaseDecoder(decoder2);
+        lookup.releaseDecoder(decoder2);
+        assertSame(decoder2, lookup.createDecoder("test-pooled"));
+        assertNotSame(decoder1, lookup.createDecoder("test-pooled"));
+        assertEquals(3, lookup.getStatistics("test-pooled").getCreateCount());
+        assertEquals(1, lookup.getStatistics("test-pooled").getReuseCount());
+    }
+}
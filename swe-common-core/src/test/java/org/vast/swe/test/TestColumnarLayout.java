@@ -0,0 +1,219 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.data.DataArrayImpl;
+import org.vast.data.DataBlockList;
+import org.vast.data.DataBlockParallel;
+import org.vast.swe.SWEHelper;
+
+
+public class TestColumnarLayout
+{
+    static final int ARRAY_SIZE = 50;
+    static final int NUM_COLUMNS = 7;
+
+    SWEHelper fac = new SWEHelper();
+
+
+    protected DataArrayImpl newArray(boolean columnar)
+    {
+        DataRecord pos = fac.newDataRecord();
+        pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("alt", fac.newQuantity(DataType.FLOAT));
+
+        DataRecord elt = fac.newDataRecord();
+        elt.addField("time", fac.newTimeStampIsoUTC());
+        elt.addField("id", fac.newCount(DataType.INT));
+        elt.addField("pos", pos);
+        elt.addField("valid", fac.newBoolean());
+        elt.addField("name", fac.newText());
+
+        DataArrayImpl array = (DataArrayImpl)fac.newDataArray(ARRAY_SIZE);
+        array.setElementType("elt", elt);
+        array.setColumnarLayout(columnar);
+        return array;
+    }
+
+
+    /*
+     * Fills array through the element components
+     */
+    protected void fillArray(DataArrayImpl array, int seed)
+    {
+        for (int i = 0; i < array.getComponentCount(); i++)
+        {
+            DataRecord elt = (DataRecord)array.getComponent(i);
+            elt.getComponent("time").getData().setDoubleValue(1.5e9 + seed + i);
+            elt.getComponent("id").getData().setIntValue(seed * 1000 + i);
+            DataRecord pos = (DataRecord)elt.getComponent("pos");
+            pos.getComponent("lat").getData().setDoubleValue(45.0 + i / 100.);
+            pos.getComponent("lon").getData().setDoubleValue(-120.0 - i / 100.);
+            pos.getComponent("alt").getData().setFloatValue(seed + i * 0.5f);
+            elt.getComponent("valid").getData().setBooleanValue(i % 2 == 0);
+            elt.getComponent("name").getData().setStringValue("elt" + seed + "_" + i);
+        }
+    }
+
+
+    protected void checkSameValues(DataBlock expected, DataBlock actual)
+    {
+        assertEquals(expected.getAtomCount(), actual.getAtomCount());
+        for (int i = 0; i < expected.getAtomCount(); i++)
+            assertEquals("Value " + i, expected.getStringValue(i), actual.getStringValue(i));
+    }
+
+
+    @Test
+    public void testColumns()
+    {
+        DataArrayImpl array = newArray(true);
+        assertTrue(array.isColumnarLayout());
+        array.assignNewDataBlock();
+        fillArray(array, 1);
+
+        DataBlockParallel data = (DataBlockParallel)array.getData();
+        assertEquals(NUM_COLUMNS, data.getColumnCount());
+        assertEquals(ARRAY_SIZE * NUM_COLUMNS, data.getAtomCount());
+
+        // columns are primitive arrays, including nested record fields
+        assertTrue(data.getColumn(0).getUnderlyingObject() instanceof double[]);
+        assertTrue(data.getColumn(1).getUnderlyingObject() instanceof int[]);
+        assertTrue(data.getColumn(2).getUnderlyingObject() instanceof double[]);
+        assertTrue(data.getColumn(4).getUnderlyingObject() instanceof float[]);
+        assertTrue(data.getColumn(6).getUnderlyingObject() instanceof String[]);
+
+        double[] lat = (double[])data.getColumn(2).getUnderlyingObject();
+        int[] ids = (int[])data.getColumn(1).getUnderlyingObject();
+        assertEquals(ARRAY_SIZE, lat.length);
+        for (int i = 0; i < ARRAY_SIZE; i++)
+        {
+            assertEquals(45.0 + i / 100., lat[i], 0.0);
+            assertEquals(1000 + i, ids[i]);
+        }
+
+        for (int i = 0; i < data.getAtomCount(); i++)
+            assertEquals(data.getColumn(i % NUM_COLUMNS).getDataType(), data.getDataType(i));
+
+        // same values and order as row layout
+        DataArrayImpl rowArray = newArray(false);
+        rowArray.assignNewDataBlock();
+        fillArray(rowArray, 1);
+        assertTrue(rowArray.getData() instanceof DataBlockList);
+        checkSameValues(rowArray.getData(), data);
+    }
+
+
+    @Test
+    public void testElementViews()
+    {
+        DataArrayImpl array = newArray(true);
+        array.assignNewDataBlock();
+        fillArray(array, 2);
+        DataBlockParallel data = (DataBlockParallel)array.getData();
+
+        // columns are shared with the array block
+        double[] lon = (double[])data.getColumn(3).getUnderlyingObject();
+        lon[7] = 12.5;
+
+        for (int i = ARRAY_SIZE - 1; i >= 0; i--)
+        {
+            DataRecord elt = (DataRecord)array.getComponent(i);
+            DataBlock eltData = elt.getData();
+            assertEquals(NUM_COLUMNS, eltData.getAtomCount());
+            assertEquals(1.5e9 + 2 + i, eltData.getDoubleValue(0), 0.0);
+            assertEquals(2000 + i, eltData.getIntValue(1));
+            assertEquals(i % 2 == 0, eltData.getBooleanValue(5));
+            assertEquals("elt2_" + i, eltData.getStringValue(6));
+
+            // nested record view
+            DataBlock posData = elt.getComponent("pos").getData();
+            assertEquals(3, posData.getAtomCount());
+            assertEquals(45.0 + i / 100., posData.getDoubleValue(0), 0.0);
+            assertEquals(i == 7 ? 12.5 : -120.0 - i / 100., posData.getDoubleValue(1), 0.0);
+            assertEquals(2 + i * 0.5f, posData.getFloatValue(2), 0.0f);
+
+            // writes through the element view go to the columns
+            posData.setDoubleValue(0, -i);
+            assertEquals(-i, data.getColumn(2).getDoubleValue(i), 0.0);
+        }
+    }
+
+
+    @Test
+    public void testCloneAndRenew()
+    {
+        DataArrayImpl array = newArray(true);
+        array.assignNewDataBlock();
+        fillArray(array, 3);
+        DataBlockParallel data = (DataBlockParallel)array.getData();
+
+        // clone is a deep copy
+        DataBlockParallel clone = data.clone();
+        checkSameValues(data, clone);
+        for (int c = 0; c < NUM_COLUMNS; c++)
+            assertNotSame(data.getColumn(c).getUnderlyingObject(), clone.getColumn(c).getUnderlyingObject());
+        data.setIntValue(1, -1);
+        assertEquals(3000, clone.getIntValue(1));
+
+        // renew keeps layout but not values
+        DataBlockParallel renewed = data.renew();
+        assertEquals(data.getAtomCount(), renewed.getAtomCount());
+        assertEquals(NUM_COLUMNS, renewed.getColumnCount());
+        for (int i = 0; i < NUM_COLUMNS; i++)
+            assertEquals(data.getDataType(i), renewed.getDataType(i));
+        for (int c = 0; c < NUM_COLUMNS; c++)
+            assertNotSame(data.getColumn(c).getUnderlyingObject(), renewed.getColumn(c).getUnderlyingObject());
+
+        // element views on renewed block
+        array.setData(renewed);
+        fillArray(array, 4);
+        assertEquals(-1, data.getIntValue(1));
+        assertEquals(4000 + 5, renewed.getColumn(1).getIntValue(5));
+        assertEquals("elt4_5", ((DataRecord)array.getComponent(5)).getComponent("name").getData().getStringValue());
+
+        // element views on clone
+        array.setData(clone);
+        DataRecord elt = (DataRecord)array.getComponent(9);
+        assertEquals(3009, elt.getComponent("id").getData().getIntValue());
+        assertEquals(45.09, ((DataRecord)elt.getComponent("pos")).getComponent("lat").getData().getDoubleValue(), 0.0);
+    }
+
+
+    @Test
+    public void testCopyAndFallback()
+    {
+        // option is kept when copying component
+        DataArrayImpl array = newArray(true).copy();
+        assertTrue(array.isColumnarLayout());
+        assertTrue(array.createDataBlock() instanceof DataBlockParallel);
+
+        // elements containing arrays use row layout
+        DataRecord elt = fac.newDataRecord();
+        elt.addField("time", fac.newTimeStampIsoUTC());
+        elt.addField("values", fac.newDataArray(3));
+        ((DataArrayImpl)elt.getComponent("values")).setElementType("val", fac.newQuantity(DataType.DOUBLE));
+        array = (DataArrayImpl)fac.newDataArray(10);
+        array.setElementType("elt", elt);
+        array.setColumnarLayout(true);
+        assertTrue(array.createDataBlock() instanceof DataBlockList);
+    }
+}
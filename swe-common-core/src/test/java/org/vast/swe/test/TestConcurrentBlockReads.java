@@ -0,0 +1,191 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.data.DataBlockDouble;
+import org.vast.data.DataBlockInt;
+import org.vast.data.DataBlockList;
+import org.vast.data.DataBlockLong;
+import org.vast.data.DataBlockMixed;
+import org.vast.data.DataBlockParallel;
+import org.vast.data.DataBlockTuple;
+import org.vast.swe.SWEHelper;
+
+
+public class TestConcurrentBlockReads
+{
+    static final int NUM_THREADS = 8;
+    static final int NUM_PASSES = 200;
+
+    SWEHelper fac = new SWEHelper();
+
+
+    protected void fillValues(DataBlock blk)
+    {
+        for (int i = 0; i < blk.getAtomCount(); i++)
+            blk.setDoubleValue(i, i);
+    }
+
+
+    /*
+     * Reads the same block from several threads, each starting at a
+     * different index, and checks that each value read is the expected one
+     */
+    protected void checkConcurrentReads(final DataBlock blk) throws Exception
+    {
+        final int numAtoms = blk.getAtomCount();
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService exec = Executors.newFixedThreadPool(NUM_THREADS);
+
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; t++)
+            {
+                final int offset = t * numAtoms / NUM_THREADS;
+                results.add(exec.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception
+                    {
+                        startSignal.await();
+                        int errors = 0;
+                        for (int p = 0; p < NUM_PASSES; p++)
+                        {
+                            for (int i = 0; i < numAtoms; i++)
+                            {
+                                int index = (offset + i) % numAtoms;
+                                if (blk.getDoubleValue(index) != index || blk.getIntValue(index) != index)
+                                    errors++;
+                            }
+                        }
+                        return errors;
+                    }
+                }));
+            }
+
+            startSignal.countDown();
+            for (Future<Integer> res: results)
+                assertEquals("Wrong values read", 0, (int)res.get());
+        }
+        finally
+        {
+            exec.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testDataBlockMixed() throws Exception
+    {
+        DataBlockMixed blk = new DataBlockMixed(60);
+        for (int i = 0; i < 60; i++)
+        {
+            if (i % 3 == 0)
+                blk.setBlock(i, new DataBlockDouble(i % 4));
+            else if (i % 3 == 1)
+                blk.setBlock(i, new DataBlockInt(2));
+            else
+                blk.setBlock(i, new DataBlockLong(3));
+        }
+
+        fillValues(blk);
+
+        // offset table will be built by concurrent readers
+        blk.setUnderlyingObject(blk.getUnderlyingObject());
+        checkConcurrentReads(blk);
+    }
+
+
+    @Test
+    public void testDataBlockList() throws Exception
+    {
+        DataRecord pos = fac.newDataRecord();
+        pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+        DataRecord elt = fac.newDataRecord();
+        elt.addField("time", fac.newTimeStampIsoUTC());
+        elt.addField("id", fac.newCount(DataType.INT));
+        elt.addField("pos", pos);
+        elt.addField("count", fac.newCount(DataType.LONG));
+
+        // list of records of equal size
+        DataArray array = fac.newDataArray(200);
+        array.setElementType("elt", elt);
+        DataBlock blk = array.createDataBlock();
+        assertTrue(blk instanceof DataBlockList);
+        fillValues(blk);
+        checkConcurrentReads(blk);
+
+        // list of blocks of different sizes
+        DataBlockList list = new DataBlockList(100);
+        for (int i = 0; i < 100; i++)
+        {
+            DataBlockMixed item = new DataBlockMixed(2);
+            item.setBlock(0, new DataBlockInt(i % 3 + 1));
+            item.setBlock(1, new DataBlockDouble(i % 5));
+            list.add(item);
+        }
+
+        fillValues(list);
+        checkConcurrentReads(list);
+    }
+
+
+    @Test
+    public void testDataBlockParallel() throws Exception
+    {
+        DataBlockParallel blk = new DataBlockParallel(4);
+        blk.setChildBlock(0, new DataBlockDouble(500));
+        blk.setChildBlock(1, new DataBlockInt(500));
+        blk.setChildBlock(2, new DataBlockLong(500));
+        blk.setChildBlock(3, new DataBlockDouble(500));
+        fillValues(blk);
+        checkConcurrentReads(blk);
+    }
+
+
+    @Test
+    public void testDataBlockTuple() throws Exception
+    {
+        // record with scalars of different types is backed by a tuple
+        DataRecord rec = fac.newDataRecord();
+        for (int i = 0; i < 50; i++)
+        {
+            if (i % 2 == 0)
+                rec.addField("f" + i, fac.newQuantity(DataType.DOUBLE));
+            else
+                rec.addField("f" + i, fac.newCount(DataType.INT));
+        }
+
+        DataBlock blk = rec.createDataBlock();
+        assertTrue(blk instanceof DataBlockTuple);
+        assertEquals(50, blk.getAtomCount());
+        fillValues(blk);
+        checkConcurrentReads(blk);
+    }
+}
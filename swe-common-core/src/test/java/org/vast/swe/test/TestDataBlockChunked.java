@@ -0,0 +1,106 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.data.ChunkCache;
+import org.vast.data.DataBlockChunked;
+import org.vast.data.DataBlockShort;
+import org.vast.data.DeflateChunkCodec;
+
+
+public class TestDataBlockChunked
+{
+
+    @Test
+    public void testLazyDecompression()
+    {
+        DataBlockShort src = new DataBlockShort(10000);
+        for (int i = 0; i < src.getAtomCount(); i++)
+            src.setShortValue(i, (short)(i % 100));
+
+        ChunkCache cache = new ChunkCache(1 << 20);
+        DataBlockChunked blk = DataBlockChunked.compress(src, DataType.SHORT, 1000, DeflateChunkCodec.DEFAULT, cache);
+        assertEquals(10, blk.getChunkCount());
+        assertEquals(0, cache.getChunkCount());
+        assertTrue(blk.getCompressedSize() < 20000);
+
+        assertEquals(55, blk.getIntValue(5555));
+        assertEquals(1, cache.getChunkCount());
+        assertEquals(2000, cache.getUsedBytes());
+
+        for (int i = 0; i < blk.getAtomCount(); i++)
+            assertEquals(i % 100, blk.getShortValue(i));
+        assertEquals(10, cache.getChunkCount());
+    }
+
+
+    @Test
+    public void testEvictionAndWrite()
+    {
+        // budget of 2 chunks of 100 doubles
+        ChunkCache cache = new ChunkCache(1600);
+        DataBlockChunked blk = new DataBlockChunked(DataType.DOUBLE, 1050, 100, DeflateChunkCodec.DEFAULT, cache);
+        assertEquals(11, blk.getChunkCount());
+        assertEquals(0.0, blk.getDoubleValue(1049), 0.0);
+
+        for (int i = 0; i < blk.getAtomCount(); i++)
+            blk.setDoubleValue(i, i * 0.5);
+        assertTrue(cache.getUsedBytes() <= 1600);
+        assertTrue(cache.getEvictionCount() >= 9);
+
+        for (int i = 0; i < blk.getAtomCount(); i++)
+            assertEquals(i * 0.5, blk.getDoubleValue(i), 0.0);
+
+        DataBlockChunked clone = blk.clone();
+        blk.setDoubleValue(10, -1.0);
+        assertEquals(5.0, clone.getDoubleValue(10), 0.0);
+        assertEquals(-1.0, blk.copy().getDoubleValue(10), 0.0);
+
+        blk.evictChunks();
+        assertEquals(-1.0, blk.getDoubleValue(10), 0.0);
+    }
+
+
+    @Test
+    public void testSerialization() throws Exception
+    {
+        DataBlockChunked blk = new DataBlockChunked(DataType.UINT, 5000);
+        blk.setLongValue(4999, 0xFFFFFFF0L);
+        blk.setIntValue(0, 12);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(os))
+        {
+            oos.writeObject(blk);
+        }
+
+        DataBlockChunked blk2;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(os.toByteArray())))
+        {
+            blk2 = (DataBlockChunked)ois.readObject();
+        }
+
+        assertEquals(0xFFFFFFF0L, blk2.getLongValue(4999));
+        assertEquals(12, blk2.getIntValue());
+        assertEquals(0, blk2.getIntValue(100));
+    }
+}
@@ -0,0 +1,111 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.AbstractDataBlockDirect;
+import org.vast.data.DataBlockFactory;
+
+
+public class TestDataBlockDirect
+{
+    static final DataType[] TYPES = {DataType.BOOLEAN, DataType.BYTE, DataType.UBYTE, DataType.SHORT,
+        DataType.USHORT, DataType.INT, DataType.UINT, DataType.LONG, DataType.FLOAT, DataType.DOUBLE};
+
+    static final double[] VALUES = {0, 1, -1, 127.6, -129.4, 255, 40000.5, -70000, 3e9, -3e9, 0.25, Double.NaN};
+
+
+    @Test
+    public void testSameAsHeapBlocks()
+    {
+        for (DataType dataType: TYPES)
+        {
+            AbstractDataBlock heap = DataBlockFactory.createBlock(dataType, 3, false);
+            AbstractDataBlock direct = DataBlockFactory.createBlock(dataType, 3, true);
+            assertTrue(direct instanceof AbstractDataBlockDirect);
+            assertEquals(heap.getDataType(), direct.getDataType());
+
+            for (double val: VALUES)
+            {
+                heap.setDoubleValue(1, val);
+                direct.setDoubleValue(1, val);
+                heap.setLongValue(2, (long)val);
+                direct.setLongValue(2, (long)val);
+
+                for (int i = 1; i < 3; i++)
+                {
+                    String msg = dataType + ", " + val;
+                    assertEquals(msg, heap.getBooleanValue(i), direct.getBooleanValue(i));
+                    assertEquals(msg, heap.getByteValue(i), direct.getByteValue(i));
+                    assertEquals(msg, heap.getShortValue(i), direct.getShortValue(i));
+                    assertEquals(msg, heap.getIntValue(i), direct.getIntValue(i));
+                    assertEquals(msg, heap.getLongValue(i), direct.getLongValue(i));
+                    assertEquals(msg, heap.getFloatValue(i), direct.getFloatValue(i), 0.0f);
+                    assertEquals(msg, heap.getDoubleValue(i), direct.getDoubleValue(i), 0.0);
+                    assertEquals(msg, heap.getStringValue(i), direct.getStringValue(i));
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testCopyAndRelease()
+    {
+        AbstractDataBlockDirect block = (AbstractDataBlockDirect)DataBlockFactory.createBlock(DataType.DOUBLE, 10, true);
+        block.setDoubleValue(5, 2.5);
+
+        AbstractDataBlockDirect copy = block.copy();
+        AbstractDataBlockDirect clone = block.clone();
+        copy.setDoubleValue(0, 1.0);
+        clone.setDoubleValue(0, 3.0);
+        assertEquals(1.0, block.getDoubleValue(0), 0.0);
+        assertEquals(2.5, clone.getDoubleValue(5), 0.0);
+
+        block.release();
+        assertTrue(copy.isReleased());
+        assertFalse(clone.isReleased());
+
+        try
+        {
+            copy.getDoubleValue(0);
+            fail("Released block should not be readable");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+        }
+    }
+
+
+    @Test
+    public void testWrapBuffer()
+    {
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        buf.putInt(-1).putFloat(1.5f).putFloat(2.5f).putFloat(3.5f).putFloat(4.5f);
+        buf.position(4);
+
+        AbstractDataBlockDirect block = DataBlockFactory.createBlock(DataType.FLOAT, buf);
+        assertEquals(4, block.getAtomCount());
+        assertEquals(1.5f, block.getFloatValue(0), 0.0f);
+        assertEquals(4.5f, block.getFloatValue(3), 0.0f);
+
+        block.release();
+        assertEquals(2.5f, buf.getFloat(8), 0.0f);
+    }
+}
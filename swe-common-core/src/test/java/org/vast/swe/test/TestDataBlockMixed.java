@@ -0,0 +1,211 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.DataBlockByte;
+import org.vast.data.DataBlockDouble;
+import org.vast.data.DataBlockInt;
+import org.vast.data.DataBlockMixed;
+import org.vast.data.DataBlockString;
+import org.vast.swe.SWEHelper;
+
+
+public class TestDataBlockMixed
+{
+    SWEHelper fac = new SWEHelper();
+
+
+    protected void checkBlockIndexes(DataBlockMixed blk, int[] expectedBlockIndexes)
+    {
+        assertEquals(expectedBlockIndexes.length, blk.getAtomCount());
+        for (int i = 0; i < expectedBlockIndexes.length; i++)
+        {
+            int blockIndex = blk.getBlockIndex(i);
+            assertEquals("Atom " + i, expectedBlockIndexes[i], blockIndex);
+            assertEquals("Atom " + i, blk.getBlock(blockIndex).getDataType(), blk.getDataType(i));
+        }
+    }
+
+
+    @Test
+    public void testEmptyAndNullChildren()
+    {
+        // child 2 is never set, children 1 and 4 are empty
+        DataBlockMixed blk = new DataBlockMixed(7);
+        blk.setBlock(0, new DataBlockDouble(3));
+        blk.setBlock(1, new DataBlockInt(0));
+        blk.setBlock(3, new DataBlockString(2));
+        blk.setBlock(4, new DataBlockDouble(0));
+        blk.setBlock(5, new DataBlockByte(1));
+        blk.setBlock(6, new DataBlockInt(0));
+        assertEquals(6, blk.getAtomCount());
+        checkBlockIndexes(blk, new int[] {0, 0, 0, 3, 3, 5});
+
+        assertEquals(0, blk.getBlockOffset(0));
+        assertEquals(3, blk.getBlockOffset(1));
+        assertEquals(3, blk.getBlockOffset(2));
+        assertEquals(3, blk.getBlockOffset(3));
+        assertEquals(5, blk.getBlockOffset(4));
+        assertEquals(5, blk.getBlockOffset(5));
+        assertEquals(6, blk.getBlockOffset(6));
+
+        for (int i = 0; i < 3; i++)
+            blk.setDoubleValue(i, i + 0.5);
+        blk.setStringValue(3, "s3");
+        blk.setStringValue(4, "s4");
+        blk.setByteValue(5, (byte)5);
+
+        assertEquals(2.5, blk.getBlock(0).getDoubleValue(2), 0.0);
+        assertEquals("s4", blk.getBlock(3).getStringValue(1));
+        assertEquals(5, blk.getBlock(5).getByteValue(0));
+        assertEquals(1.5, blk.getDoubleValue(1), 0.0);
+        assertEquals("s3", blk.getStringValue(3));
+        assertEquals(5, blk.getIntValue(5));
+    }
+
+
+    @Test
+    public void testUniformChildren()
+    {
+        DataBlockMixed blk = new DataBlockMixed(4);
+        for (int i = 0; i < 4; i++)
+            blk.setBlock(i, (i % 2 == 0) ? new DataBlockDouble(2) : new DataBlockInt(2));
+        checkBlockIndexes(blk, new int[] {0, 0, 1, 1, 2, 2, 3, 3});
+
+        // a smaller child must disable the direct computation
+        blk.setBlock(1, new DataBlockInt(1));
+        checkBlockIndexes(blk, new int[] {0, 0, 1, 2, 2, 3, 3});
+
+        // same with an empty first child
+        blk.setBlock(0, new DataBlockDouble(0));
+        blk.setBlock(1, new DataBlockInt(2));
+        checkBlockIndexes(blk, new int[] {1, 1, 2, 2, 3, 3});
+    }
+
+
+    @Test
+    public void testChildBlockAccess()
+    {
+        DataRecord rec = fac.newDataRecord();
+        for (int i = 0; i < 40; i++)
+        {
+            if (i % 3 == 0)
+                rec.addField("f" + i, fac.newQuantity(DataType.DOUBLE));
+            else if (i % 3 == 1)
+                rec.addField("f" + i, fac.newCount(DataType.INT));
+            else
+            {
+                DataRecord pos = fac.newDataRecord();
+                pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+                pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+                pos.addField("alt", fac.newQuantity(DataType.FLOAT));
+                rec.addField("f" + i, pos);
+            }
+        }
+
+        DataBlockMixed blk = (DataBlockMixed)rec.createDataBlock();
+        for (int i = 0; i < blk.getAtomCount(); i++)
+            blk.setDoubleValue(i, i);
+
+        // walking child blocks gives the same values as per atom access
+        int index = 0;
+        for (int b = 0; b < blk.getBlockCount(); b++)
+        {
+            AbstractDataBlock child = blk.getBlock(b);
+            assertEquals(index, blk.getBlockOffset(b));
+            for (int i = 0; i < child.getAtomCount(); i++)
+            {
+                assertEquals(b, blk.getBlockIndex(index));
+                assertEquals(blk.getDoubleValue(index), child.getDoubleValue(i), 0.0);
+                index++;
+            }
+        }
+
+        assertEquals(blk.getAtomCount(), index);
+    }
+
+
+    @Test
+    public void testResizeThroughComponent()
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        Count size = fac.newCount();
+        size.setId("NUM_VALUES");
+        rec.addField("num", size);
+        DataArray array = fac.newDataArray();
+        array.setElementType("val", fac.newQuantity(DataType.DOUBLE));
+        array.setElementCount(size);
+        rec.addField("values", array);
+        rec.addField("label", fac.newText());
+
+        rec.clearData();
+        rec.assignNewDataBlock();
+        DataBlock data = rec.getData();
+        assertTrue(data instanceof DataBlockMixed);
+
+        // build offset table before each resize
+        for (int n: new int[] {3, 10, 0, 1})
+        {
+            String label = "rec" + n;
+            assertNotEquals(label, data.getStringValue(data.getAtomCount() - 1));
+
+            array.updateSize(n);
+            rec.getComponent("label").getData().setStringValue(label);
+            for (int j = 0; j < n; j++)
+                array.getComponent(j).getData().setDoubleValue(j * 0.5);
+
+            assertEquals(n + 3, data.getAtomCount());
+            assertEquals(label, data.getStringValue(n + 2));
+            for (int j = 0; j < n; j++)
+                assertEquals(j * 0.5, data.getDoubleValue(j + 2), 0.0);
+        }
+    }
+
+
+    @Test
+    public void testResizeChildBlock()
+    {
+        DataBlockMixed blk = new DataBlockMixed(3);
+        blk.setBlock(0, new DataBlockInt(1));
+        blk.setBlock(1, new DataBlockDouble(2));
+        blk.setBlock(2, new DataBlockString(1));
+        blk.setStringValue(3, "last");
+        assertEquals("last", blk.getStringValue(3));
+
+        // replaced child
+        blk.setBlock(1, new DataBlockDouble(4));
+        assertEquals(6, blk.getAtomCount());
+        assertEquals(DataType.DOUBLE, blk.getDataType(4));
+        blk.setStringValue(5, "last");
+        assertEquals("last", blk.getStringValue(5));
+
+        // child resized in place, with same total size
+        blk.getBlock(0).resize(3);
+        blk.getBlock(1).resize(2);
+        blk.setUnderlyingObject(blk.getUnderlyingObject());
+        assertEquals(6, blk.getAtomCount());
+        checkBlockIndexes(blk, new int[] {0, 0, 0, 1, 1, 2});
+        assertEquals("last", blk.getStringValue(5));
+    }
+}
@@ -0,0 +1,116 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.data.DataBlockDouble;
+import org.vast.data.DataBlockInt;
+import org.vast.data.DataBlockPool;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+
+
+public class TestDataBlockPool
+{
+
+    @Test
+    public void testReleaseAndRetain()
+    {
+        DataBlockPool pool = new DataBlockPool(2);
+        DataBlock blk = new DataBlockDouble(3);
+
+        assertNull(pool.acquire(DataBlockPool.getStructureKey(blk), blk));
+        assertEquals(1, pool.getMissCount());
+
+        pool.retain(blk);
+        pool.release(blk);
+        assertEquals(0, pool.getPooledCount());
+        pool.release(blk);
+        pool.release(blk);
+        assertEquals(1, pool.getPooledCount());
+
+        DataBlock other = new DataBlockDouble(4);
+        assertNull(pool.acquire(DataBlockPool.getStructureKey(other), other));
+        other = new DataBlockInt(3);
+        assertNull(pool.acquire(DataBlockPool.getStructureKey(other), other));
+
+        // blocks that don't match the template are never returned, even with the same key
+        assertNull(pool.acquire(DataBlockPool.getStructureKey(blk), new DataBlockInt(3)));
+        assertEquals(1, pool.getPooledCount());
+        assertSame(blk, pool.acquire(new DataBlockDouble(3)));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(4, pool.getMissCount());
+    }
+
+
+    @Test
+    public void testParseWithPool() throws Exception
+    {
+        SWEHelper fac = new SWEHelper();
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newQuantity());
+        rec.addField("values", fac.newArray(fac.newCount(), "val", fac.newQuantity(DataType.FLOAT)));
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+
+        // write records with variable array sizes
+        int numRecords = 50;
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataEncoding(encoding);
+        writer.setDataComponents(rec.copy());
+        writer.setOutput(os);
+        for (int i = 0; i < numRecords; i++)
+        {
+            DataRecord r = rec.copy();
+            r.assignNewDataBlock();
+            ((DataArray)r.getComponent("values")).updateSize(i % 3 + 1);
+            DataBlock data = r.getData();
+            for (int k = 0; k < data.getAtomCount(); k++)
+                data.setDoubleValue(k, i + k);
+            writer.write(data);
+        }
+        writer.close();
+
+        DataBlockPool pool = new DataBlockPool();
+        BinaryDataParser parser = new BinaryDataParser();
+        parser.setDataEncoding(encoding);
+        parser.setDataComponents(rec.copy());
+        parser.setDataBlockPool(pool);
+        parser.setInput(new ByteArrayInputStream(os.toByteArray()));
+
+        DataBlock data;
+        int i = 0;
+        while ((data = parser.parseNextBlock()) != null)
+        {
+            assertEquals(i % 3 + 2, data.getAtomCount());
+            for (int k = 0; k < data.getAtomCount(); k++)
+                assertEquals(i + k, data.getDoubleValue(k), 0.0);
+            pool.release(data);
+            i++;
+        }
+
+        assertEquals(numRecords, i);
+        assertEquals(numRecords - 1, pool.getHitCount());
+    }
+}
@@ -0,0 +1,425 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+import org.vast.swe.DataInputByteBuffer;
+import org.vast.swe.DataOutputByteBuffer;
+
+
+public class TestDataByteBuffer
+{
+    static final ByteOrder[] BYTE_ORDERS = {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN};
+    static final int BUFFER_SIZE = 16;
+    static final int MAX_IO_SIZE = 3;
+    static final int NUM_RECORDS = 20;
+    static final int NUM_VALUES = 100;
+    static final String UTF_STRING = "h\u00e9llo \u20ac";
+
+
+    /*
+     * Channel returning at most a few bytes per read
+     */
+    static class ShortReadChannel implements ReadableByteChannel
+    {
+        ByteBuffer src;
+
+        ShortReadChannel(byte[] bytes)
+        {
+            this.src = ByteBuffer.wrap(bytes);
+        }
+
+        @Override
+        public int read(ByteBuffer dst)
+        {
+            if (!src.hasRemaining())
+                return -1;
+
+            int n = Math.min(MAX_IO_SIZE, Math.min(src.remaining(), dst.remaining()));
+            for (int i = 0; i < n; i++)
+                dst.put(src.get());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+
+    /*
+     * Channel accepting at most a few bytes per write
+     */
+    static class ShortWriteChannel implements WritableByteChannel
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        @Override
+        public int write(ByteBuffer src)
+        {
+            int n = Math.min(MAX_IO_SIZE, src.remaining());
+            for (int i = 0; i < n; i++)
+                os.write(src.get());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+
+    /*
+     * Encodes one value of each type with a plain ByteBuffer
+     */
+    protected void putValues(ByteBuffer buf, int r)
+    {
+        byte[] utf = UTF_STRING.getBytes(StandardCharsets.UTF_8);
+        buf.put((byte)(r % 2));
+        buf.put((byte)-r);
+        buf.put((byte)(250 - r));
+        buf.putShort((short)(-1234 * r));
+        buf.putShort((short)(60000 + r));
+        buf.putChar((char)('\u00e9' + r));
+        buf.putInt(-123456789 * r);
+        buf.putInt((int)(4000000000L + r));
+        buf.putLong(-1234567890123L * r);
+        buf.putFloat(1.5f * r);
+        buf.putDouble(-0.1 * r);
+        buf.put(("ascii" + r).getBytes(StandardCharsets.US_ASCII)).put((byte)0);
+        buf.putShort((short)utf.length).put(utf);
+    }
+
+
+    protected byte[] buildValues(ByteOrder byteOrder)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(100 * NUM_RECORDS).order(byteOrder);
+        for (int r = 0; r < NUM_RECORDS; r++)
+            putValues(buf, r);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+
+    protected int getRecordSize(ByteOrder byteOrder, int r)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(100).order(byteOrder);
+        putValues(buf, r);
+        return buf.position();
+    }
+
+
+    @Test
+    public void testReadValues() throws IOException
+    {
+        for (ByteOrder byteOrder: BYTE_ORDERS)
+        {
+            byte[] bytes = buildValues(byteOrder);
+            DataInputByteBuffer input = new DataInputByteBuffer(new ShortReadChannel(bytes), byteOrder, BUFFER_SIZE);
+            assertEquals(byteOrder, input.getByteOrder());
+
+            long pos = 0;
+            for (int r = 0; r < NUM_RECORDS; r++)
+            {
+                assertEquals(pos, input.getPosition());
+                assertEquals(r % 2 != 0, input.readBoolean());
+                assertEquals((byte)-r, input.readByte());
+                assertEquals(250 - r, input.readUnsignedByte());
+                assertEquals((short)(-1234 * r), input.readShort());
+                assertEquals(60000 + r, input.readUnsignedShort());
+                assertEquals((char)('\u00e9' + r), input.readChar());
+                assertEquals(-123456789 * r, input.readInt());
+                assertEquals(4000000000L + r, input.readUnsignedInt());
+                assertEquals(-1234567890123L * r, input.readLong());
+                assertEquals(1.5f * r, input.readFloat(), 0.0f);
+                assertEquals(-0.1 * r, input.readDouble(), 0.0);
+                assertEquals("ascii" + r, input.readASCII());
+                assertEquals(UTF_STRING, input.readUTF());
+                pos += getRecordSize(byteOrder, r);
+            }
+
+            assertEquals(bytes.length, input.getPosition());
+            assertEquals(-1, input.read());
+            input.close();
+        }
+    }
+
+
+    @Test
+    public void testWriteValues() throws IOException
+    {
+        for (ByteOrder byteOrder: BYTE_ORDERS)
+        {
+            ShortWriteChannel channel = new ShortWriteChannel();
+            DataOutputByteBuffer output = new DataOutputByteBuffer(channel, byteOrder, BUFFER_SIZE);
+            assertEquals(byteOrder, output.getByteOrder());
+
+            for (int r = 0; r < NUM_RECORDS; r++)
+            {
+                output.writeBoolean(r % 2 != 0);
+                output.writeByte(-r);
+                output.writeUnsignedByte((short)(250 - r));
+                output.writeShort(-1234 * r);
+                output.writeUnsignedShort(60000 + r);
+                output.writeChar('\u00e9' + r);
+                output.writeInt(-123456789 * r);
+                output.writeUnsignedInt(4000000000L + r);
+                output.writeLong(-1234567890123L * r);
+                output.writeFloat(1.5f * r);
+                output.writeDouble(-0.1 * r);
+                output.writeASCII("ascii" + r);
+                output.writeUTF(UTF_STRING);
+            }
+
+            output.flush();
+            assertArrayEquals(buildValues(byteOrder), channel.os.toByteArray());
+        }
+    }
+
+
+    @Test
+    public void testReadArrays() throws IOException
+    {
+        for (ByteOrder byteOrder: BYTE_ORDERS)
+        {
+            // leading byte so values are not aligned with buffer
+            ByteBuffer buf = ByteBuffer.allocate(1 + NUM_VALUES * 26).order(byteOrder);
+            buf.put((byte)1);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putShort((short)(i - 50));
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putInt(i * 100000);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putLong(i * 10000000000L);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putFloat(i * 0.5f);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putDouble(i * 0.25);
+
+            DataInputByteBuffer input = new DataInputByteBuffer(new ShortReadChannel(buf.array()), byteOrder, BUFFER_SIZE);
+            assertEquals(1, input.readByte());
+
+            // arrays are much larger than the buffer
+            short[] shorts = new short[NUM_VALUES + 2];
+            input.readFully(shorts, 1, NUM_VALUES);
+            assertEquals(1 + NUM_VALUES * 2, input.getPosition());
+            int[] ints = new int[NUM_VALUES];
+            input.readFully(ints, 0, NUM_VALUES);
+            long[] longs = new long[NUM_VALUES];
+            input.readFully(longs, 0, NUM_VALUES);
+            float[] floats = new float[NUM_VALUES];
+            input.readFully(floats, 0, NUM_VALUES);
+            double[] doubles = new double[NUM_VALUES];
+            input.readFully(doubles, 0, NUM_VALUES);
+            assertEquals(buf.capacity(), input.getPosition());
+
+            assertEquals(0, shorts[0]);
+            assertEquals(0, shorts[NUM_VALUES + 1]);
+            for (int i = 0; i < NUM_VALUES; i++)
+            {
+                assertEquals(i - 50, shorts[i + 1]);
+                assertEquals(i * 100000, ints[i]);
+                assertEquals(i * 10000000000L, longs[i]);
+                assertEquals(i * 0.5f, floats[i], 0.0f);
+                assertEquals(i * 0.25, doubles[i], 0.0);
+            }
+        }
+    }
+
+
+    @Test
+    public void testWriteArrays() throws IOException
+    {
+        for (ByteOrder byteOrder: BYTE_ORDERS)
+        {
+            short[] shorts = new short[NUM_VALUES];
+            int[] ints = new int[NUM_VALUES];
+            long[] longs = new long[NUM_VALUES];
+            float[] floats = new float[NUM_VALUES];
+            double[] doubles = new double[NUM_VALUES];
+            ByteBuffer buf = ByteBuffer.allocate(1 + NUM_VALUES * 26).order(byteOrder);
+            buf.put((byte)1);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putShort(shorts[i] = (short)(i - 50));
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putInt(ints[i] = i * 100000);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putLong(longs[i] = i * 10000000000L);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putFloat(floats[i] = i * 0.5f);
+            for (int i = 0; i < NUM_VALUES; i++)
+                buf.putDouble(doubles[i] = i * 0.25);
+
+            ShortWriteChannel channel = new ShortWriteChannel();
+            DataOutputByteBuffer output = new DataOutputByteBuffer(channel, byteOrder, BUFFER_SIZE);
+            output.writeByte(1);
+            output.write(shorts, 0, NUM_VALUES);
+            output.write(ints, 0, NUM_VALUES);
+            output.write(longs, 0, NUM_VALUES);
+            output.write(floats, 0, NUM_VALUES);
+            output.write(doubles, 0, NUM_VALUES);
+            output.close();
+
+            assertArrayEquals(buf.array(), channel.os.toByteArray());
+        }
+    }
+
+
+    @Test
+    public void testMarkResetAcrossRefill() throws IOException
+    {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)i;
+
+        DataInputByteBuffer input = new DataInputByteBuffer(new ShortReadChannel(bytes), ByteOrder.BIG_ENDIAN, BUFFER_SIZE);
+        assertTrue(input.markSupported());
+        input.skipBytes(10);
+
+        // marked bytes are kept when buffer is refilled
+        byte[] b = new byte[12];
+        input.mark(12);
+        input.readFully(b);
+        assertEquals(22, input.getPosition());
+        input.reset();
+        assertEquals(10, input.getPosition());
+        assertEquals(0x0A0B0C0D, input.readInt());
+        input.reset();
+        input.readFully(b);
+        for (int i = 0; i < b.length; i++)
+            assertEquals(10 + i, b[i]);
+
+        // same with a mark set at a later position after reset
+        input.mark(BUFFER_SIZE);
+        assertEquals(0x1617, input.readShort());
+        input.skipBytes(BUFFER_SIZE - 4);
+        input.reset();
+        assertEquals(22, input.getPosition());
+        assertEquals(0x16171819, input.readInt());
+
+        // mark is discarded when reading past the limit requires a refill
+        input.mark(4);
+        input.readFully(new byte[BUFFER_SIZE]);
+        try
+        {
+            input.reset();
+            fail("Mark should be invalid");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+
+        assertEquals(26 + BUFFER_SIZE, input.getPosition());
+        assertEquals(26 + BUFFER_SIZE, input.readUnsignedByte());
+    }
+
+
+    @Test
+    public void testReadFromBuffer() throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(0x01020304).putShort((short)5);
+        buf.flip();
+
+        DataInputByteBuffer input = new DataInputByteBuffer(buf, ByteOrder.LITTLE_ENDIAN);
+        assertEquals(6, input.available());
+        assertEquals(0x01020304, input.readInt());
+        assertEquals(4, input.getPosition());
+
+        input.setByteOrder(ByteOrder.BIG_ENDIAN);
+        assertEquals(0x0500, input.readUnsignedShort());
+        assertEquals(-1, input.read());
+
+        try
+        {
+            input.readByte();
+            fail("Expected EOF");
+        }
+        catch (EOFException e)
+        {
+            // expected
+        }
+    }
+
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedValue() throws IOException
+    {
+        DataInputByteBuffer input = new DataInputByteBuffer(new ShortReadChannel(new byte[6]), ByteOrder.BIG_ENDIAN, BUFFER_SIZE);
+        input.readShort();
+        input.readDouble();
+    }
+
+
+    @Test
+    public void testFixedOutputBuffer() throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(6);
+        DataOutputByteBuffer output = new DataOutputByteBuffer(buf, ByteOrder.LITTLE_ENDIAN);
+        output.writeInt(0x01020304);
+        output.writeByte(5);
+
+        try
+        {
+            output.writeShort(6);
+            fail("Buffer should be full");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+
+        assertEquals(5, buf.position());
+        assertArrayEquals(new byte[] {4, 3, 2, 1, 5}, Arrays.copyOf(buf.array(), 5));
+    }
+
+
+    @Test
+    public void testOutputStream() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataOutputByteBuffer output = new DataOutputByteBuffer(os, ByteOrder.BIG_ENDIAN);
+        output.writeLong(42L);
+        assertEquals(0, os.size());
+
+        output.flush();
+        assertEquals(8, os.size());
+        assertEquals(42L, ByteBuffer.wrap(os.toByteArray()).getLong());
+    }
+}
@@ -0,0 +1,226 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vast.swe.DataSourceMappedFile;
+import org.vast.swe.DataSourceMappedFile.MappedFileInput;
+
+
+public class TestDataSourceMappedFile
+{
+    static final int NUM_VALUES = 10000;
+    static final int FILE_SIZE = NUM_VALUES * 4;
+
+    // not a multiple of value size so values straddle mapped windows
+    static final int WINDOW_SIZE = 1001;
+
+    File file;
+    DataSourceMappedFile source;
+
+
+    @Before
+    public void writeFile() throws IOException
+    {
+        file = File.createTempFile("mapped", ".bin");
+        try (DataOutputStream os = new DataOutputStream(new FileOutputStream(file)))
+        {
+            for (int i = 0; i < NUM_VALUES; i++)
+                os.writeInt(i);
+        }
+
+        source = new DataSourceMappedFile(file, WINDOW_SIZE);
+    }
+
+
+    @After
+    public void deleteFile()
+    {
+        file.delete();
+    }
+
+
+    @Test
+    public void testReadAcrossWindows() throws IOException
+    {
+        try (MappedFileInput input = source.getDataStream())
+        {
+            for (int i = 0; i < NUM_VALUES; i++)
+            {
+                assertEquals(i * 4, input.getPosition());
+                assertEquals(FILE_SIZE - i * 4, input.available());
+                assertEquals(i, input.readInt());
+            }
+
+            assertEquals(FILE_SIZE, input.getPosition());
+            assertEquals(-1, input.read());
+        }
+    }
+
+
+    @Test
+    public void testBulkReadAcrossWindows() throws IOException
+    {
+        try (MappedFileInput input = source.getDataStream())
+        {
+            // bulk reads larger than a window
+            int[] values = new int[NUM_VALUES];
+            input.readFully(values, 0, 700);
+            input.readFully(values, 700, NUM_VALUES - 700);
+            for (int i = 0; i < NUM_VALUES; i++)
+                assertEquals(i, values[i]);
+        }
+
+        try (MappedFileInput input = source.getDataStream())
+        {
+            byte[] bytes = new byte[FILE_SIZE];
+            input.readFully(bytes);
+            assertEquals(1234, ByteBuffer.wrap(bytes).getInt(4 * 1234));
+        }
+    }
+
+
+    @Test
+    public void testMarkResetAcrossWindows() throws IOException
+    {
+        try (MappedFileInput input = source.getDataStream())
+        {
+            input.skipBytes(4 * 240);
+            input.mark(100);
+
+            // values up to 984 are in first window, next ones need a remap
+            for (int i = 240; i < 260; i++)
+                assertEquals(i, input.readInt());
+
+            input.reset();
+            assertEquals(4 * 240, input.getPosition());
+            for (int i = 240; i < 300; i++)
+                assertEquals(i, input.readInt());
+        }
+    }
+
+
+    @Test(expected = EOFException.class)
+    public void testReadPastEnd() throws IOException
+    {
+        try (MappedFileInput input = source.getDataStream(FILE_SIZE - 2))
+        {
+            input.readInt();
+        }
+    }
+
+
+    @Test
+    public void testRandomAccess() throws IOException
+    {
+        for (int i: new int[] {0, 1, 250, 251, 5000, NUM_VALUES - 1})
+        {
+            try (MappedFileInput input = source.getDataStream(i * 4L))
+            {
+                assertEquals(i * 4L, input.getPosition());
+                assertEquals(i, input.readInt());
+                if (i < NUM_VALUES - 1)
+                    assertEquals(i + 1, input.readInt());
+            }
+        }
+
+        // stream starting at end of file is empty
+        try (MappedFileInput input = source.getDataStream(FILE_SIZE))
+        {
+            assertEquals(0, input.available());
+            assertEquals(-1, input.read());
+        }
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testStreamPastEOF() throws IOException
+    {
+        source.getDataStream(FILE_SIZE + 1).close();
+    }
+
+
+    @Test
+    public void testMap() throws IOException
+    {
+        ByteBuffer buf = source.map(4 * 100, 4 * 10);
+        assertEquals(40, buf.remaining());
+        for (int i = 100; i < 110; i++)
+            assertEquals(i, buf.getInt());
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testMapPastEOF() throws IOException
+    {
+        source.map(FILE_SIZE - 10, 20);
+    }
+
+
+    @Test
+    public void testConcurrentReaders() throws Exception
+    {
+        int numThreads = 8;
+        int valuesPerThread = NUM_VALUES / numThreads;
+        ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++)
+            {
+                final int start = t * valuesPerThread;
+                results.add(exec.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception
+                    {
+                        int errors = 0;
+                        try (MappedFileInput input = source.getDataStream(start * 4L))
+                        {
+                            for (int i = start; i < start + valuesPerThread; i++)
+                            {
+                                if (input.readInt() != i)
+                                    errors++;
+                            }
+                        }
+                        return errors;
+                    }
+                }));
+            }
+
+            for (Future<Integer> res: results)
+                assertEquals("Wrong values read", 0, (int)res.get());
+        }
+        finally
+        {
+            exec.shutdown();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import org.junit.Test;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.DataStreamPipeline;
+import org.vast.swe.fast.DataStreamPipeline.Backpressure;
+import org.vast.swe.fast.TextDataParser;
+
+
+public class TestDataStreamPipeline
+{
+    SWEHelper fac = new SWEHelper();
+
+
+    protected DataStreamPipeline createPipeline()
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("id", fac.newCount());
+        rec.addField("val", fac.newQuantity());
+
+        TextDataParser parser = new TextDataParser();
+        parser.setDataComponents(rec);
+        parser.setDataEncoding(fac.newTextEncoding(",", "\n"));
+        return new DataStreamPipeline(parser);
+    }
+
+
+    protected byte[] buildData(int numRecords)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int r = 0; r < numRecords; r++)
+            buf.append(r).append(',').append(r * 0.25).append('\n');
+        return buf.toString().getBytes();
+    }
+
+
+    @Test
+    public void testPullInOrder() throws IOException
+    {
+        int numRecords = 50000;
+        DataStreamPipeline pipeline = createPipeline();
+        pipeline.setReadSize(1000);
+        pipeline.setQueueSize(2);
+        pipeline.start(new ByteArrayInputStream(buildData(numRecords)));
+
+        int count = 0;
+        DataBlock data;
+        while ((data = pipeline.next()) != null)
+        {
+            assertEquals(count, data.getIntValue(0));
+            assertEquals(count * 0.25, data.getDoubleValue(1), 0.0);
+            count++;
+        }
+
+        assertEquals(numRecords, count);
+        assertNull(pipeline.next());
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+
+    @Test
+    public void testDropWhenConsumerIsSlow() throws Exception
+    {
+        int numRecords = 1000;
+        DataStreamPipeline pipeline = createPipeline();
+        pipeline.setBackpressure(Backpressure.DROP);
+        pipeline.setBatchSize(10);
+        pipeline.setQueueSize(1);
+        pipeline.start(new ByteArrayInputStream(buildData(numRecords)));
+
+        // let the decoder fill the queue before consuming
+        Thread.sleep(500);
+        int[] count = new int[1];
+        pipeline.forEach(data -> count[0]++);
+
+        assertTrue(pipeline.getDroppedCount() > 0);
+        assertEquals(numRecords, count[0] + pipeline.getDroppedCount());
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testDecodingError() throws IOException
+    {
+        DataStreamPipeline pipeline = createPipeline();
+        byte[] data = buildData(100);
+        data[data.length / 2] = 'x';
+        pipeline.start(new ByteArrayInputStream(data));
+        pipeline.forEach(rec -> {});
+    }
+
+
+    @Test
+    public void testStagesStopOnDecodingError() throws Exception
+    {
+        // endless stream of malformed records
+        InputStream is = new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                return 'x';
+            }
+        };
+
+        List<Thread> threads = new ArrayList<>();
+        DataStreamPipeline pipeline = createPipeline();
+        pipeline.setReadSize(100);
+        pipeline.setQueueSize(1);
+        pipeline.setThreadFactory(r -> {
+            Thread t = new Thread(r);
+            threads.add(t);
+            return t;
+        });
+        pipeline.start(is);
+
+        try
+        {
+            pipeline.forEach(rec -> {});
+            fail("Decoding error not reported");
+        }
+        catch (IOException e)
+        {
+            assertFalse(e.getMessage().contains("closed"));
+        }
+
+        // reader must not stay blocked on the raw queue
+        assertEquals(2, threads.size());
+        for (Thread t: threads)
+        {
+            t.join(5000);
+            assertFalse(t.getName() + " still running", t.isAlive());
+        }
+    }
+
+
+    @Test
+    public void testDaemonThreads() throws Exception
+    {
+        PipedOutputStream os = new PipedOutputStream();
+        PipedInputStream is = new PipedInputStream(os);
+
+        DataStreamPipeline pipeline = createPipeline();
+        pipeline.start(is);
+        os.write(buildData(1));
+        os.flush();
+        assertEquals(0, pipeline.next().getIntValue(0));
+
+        // threads must not prevent the JVM from exiting
+        for (Thread t: Thread.getAllStackTraces().keySet())
+        {
+            if (t.getName().startsWith("SWE Stream"))
+                assertTrue(t.getName(), t.isDaemon());
+        }
+
+        pipeline.close();
+    }
+
+
+    @Test
+    public void testClose() throws Exception
+    {
+        PipedOutputStream os = new PipedOutputStream();
+        PipedInputStream is = new PipedInputStream(os);
+
+        DataStreamPipeline pipeline = createPipeline();
+        pipeline.start(is);
+        os.write(buildData(10));
+        os.flush();
+
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, pipeline.next().getIntValue(0));
+
+        // consumer must not stay blocked on a stream that never ends
+        new Thread(() -> {
+            try { Thread.sleep(200); } catch (InterruptedException e) { }
+            pipeline.close();
+        }).start();
+        assertNull(pipeline.next());
+    }
+}
@@ -0,0 +1,117 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.util.Random;
+import org.junit.Test;
+import org.vast.util.DecimalFormatter;
+
+
+public class TestDecimalFormatter
+{
+    char[] buf = new char[DecimalFormatter.MAX_LENGTH];
+
+
+    private String format(double v)
+    {
+        return new String(buf, 0, DecimalFormatter.format(v, buf, 0));
+    }
+
+
+    private String format(double v, int sigDigits)
+    {
+        return new String(buf, 0, DecimalFormatter.format(v, sigDigits, buf, 0));
+    }
+
+
+    private String format(float v)
+    {
+        return new String(buf, 0, DecimalFormatter.format(v, buf, 0));
+    }
+
+
+    @Test
+    public void testShortest()
+    {
+        assertEquals("0.0", format(0.0));
+        assertEquals("-0.0", format(-0.0));
+        assertEquals("1.0", format(1.0));
+        assertEquals("0.1", format(0.1));
+        assertEquals("0.3", format(0.3));
+        assertEquals("0.30000000000000004", format(0.1 + 0.2));
+        assertEquals("0.001", format(0.001));
+        assertEquals("1.0E-4", format(0.0001));
+        assertEquals("0.002", format(2e-3));
+        assertEquals("9999999.0", format(9999999.0));
+        assertEquals("1.0E7", format(1e7));
+        assertEquals("1.0E23", format(1e23));
+        assertEquals("-123.456", format(-123.456));
+        assertEquals("4.9E-324", format(Double.MIN_VALUE));
+        assertEquals("1.7976931348623157E308", format(Double.MAX_VALUE));
+        assertEquals("NaN", format(Double.NaN));
+        assertEquals("+INF", format(Double.POSITIVE_INFINITY));
+        assertEquals("-INF", format(Double.NEGATIVE_INFINITY));
+    }
+
+
+    @Test
+    public void testFloat()
+    {
+        assertEquals("0.1", format(0.1f));
+        assertEquals("1.0E10", format(1e10f));
+        assertEquals("3.4028235E38", format(Float.MAX_VALUE));
+        assertEquals("1.4E-45", format(Float.MIN_VALUE));
+        assertEquals("-INF", format(Float.NEGATIVE_INFINITY));
+    }
+
+
+    @Test
+    public void testRoundTrip()
+    {
+        Random rand = new Random(7);
+
+        for (int i = 0; i < 100000; i++)
+        {
+            double v = Double.longBitsToDouble(rand.nextLong());
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                continue;
+
+            String s = format(v);
+            assertEquals(v, Double.parseDouble(s), 0.0);
+            assertTrue(s.length() <= Double.toString(v).length());
+
+            float f = Float.intBitsToFloat(rand.nextInt());
+            if (!Float.isNaN(f) && !Float.isInfinite(f))
+                assertEquals(f, Float.parseFloat(format(f)), 0.0f);
+        }
+    }
+
+
+    @Test
+    public void testSignificantDigits()
+    {
+        assertEquals("12.3", format(12.345, 3));
+        assertEquals("-12.3", format(-12.345, 3));
+        assertEquals("12.35", format(12.345, 4));
+        assertEquals("0.00123", format(0.00123456, 3));
+        assertEquals("1.23E8", format(123456789.0, 3));
+        assertEquals("10.0", format(9.996, 3));
+        assertEquals("100000.0", format(99999.5, 3));
+        assertEquals("0.5", format(0.5, 3));
+        assertEquals("0.0", format(0.0, 3));
+        assertEquals("+INF", format(Double.POSITIVE_INFINITY, 3));
+    }
+}
@@ -0,0 +1,105 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.text.ParseException;
+import java.util.Random;
+import org.junit.Test;
+import org.vast.util.DateTimeFormat;
+import org.vast.util.IsoDateTimeCodec;
+
+
+public class TestIsoDateTimeCodec
+{
+    IsoDateTimeCodec codec = new IsoDateTimeCodec();
+
+
+    @Test
+    public void testParse() throws Exception
+    {
+        assertEquals(0.0, codec.parse("1970-01-01T00:00:00Z"), 0.0);
+        assertEquals(0.0, codec.parse("1970-01-01"), 0.0);
+        assertEquals(951782400.0, codec.parse("2000-02-29T00:00:00Z"), 0.0);
+        assertEquals(1518998400.5, codec.parse("2018-02-19T00:00:00.5Z"), 0.0);
+        assertEquals(1518998400.123, codec.parse("2018-02-19T00:00:00.123"), 0.0);
+        assertEquals(1518998400.0 - 5400, codec.parse("2018-02-19T00:00:00+01:30"), 0.0);
+        assertEquals(1518998400.0 + 18000, codec.parse("2018-02-19T00:00:00-0500"), 0.0);
+        assertEquals(1518998400.0 + 7200, codec.parse("2018-02-19T00:00-02"), 0.0);
+        assertEquals(-62135596800.0, codec.parse("0001-01-01T00:00:00Z"), 0.0);
+
+        char[] buf = " 2018-02-19T12:00:00Z,".toCharArray();
+        assertEquals(1519041600.0, codec.parse(buf, 1, buf.length-1), 0.0);
+        assertEquals(1519041600.0, codec.parse(new StringBuilder().append(buf), 1, buf.length-1), 0.0);
+    }
+
+
+    @Test
+    public void testParseInvalid()
+    {
+        String[] invalid = {"", "2018", "2018-2-19", "2018-13-01", "2018-02-19T1:00:00Z",
+            "2018-02-19T10:00:00.Z", "2018-02-19T10:00:00ZZ", "2018-02-19T10:00:00+1", "NaN"};
+
+        for (String s: invalid)
+        {
+            try
+            {
+                codec.parse(s);
+                fail("Should not parse " + s);
+            }
+            catch (ParseException e)
+            {
+                assertTrue(e.getMessage().endsWith(s));
+            }
+        }
+    }
+
+
+    @Test
+    public void testFormat() throws Exception
+    {
+        assertEquals("1970-01-01T00:00:00Z", codec.format(0.0));
+        assertEquals("2018-02-19T00:00:00.500Z", codec.format(1518998400.5));
+        assertEquals("1969-12-31T23:59:59Z", codec.format(-1.0));
+        assertEquals("0001-01-01T00:00:00Z", codec.format(-62135596800.0));
+
+        char[] buf = new char[IsoDateTimeCodec.MAX_LENGTH + 2];
+        int len = codec.format(1518998400.0, 90, buf, 2);
+        assertEquals("2018-02-19T01:30:00+01:30", new String(buf, 2, len));
+        len = codec.format(1518998400.0, -300, buf, 0);
+        assertEquals("2018-02-18T19:00:00-05:00", new String(buf, 0, len));
+    }
+
+
+    @Test
+    public void testSameAsDateTimeFormat() throws Exception
+    {
+        DateTimeFormat timeFormat = new DateTimeFormat();
+        Random rand = new Random(42);
+
+        double time = 1.5e9;
+        for (int i = 0; i < 10000; i++)
+        {
+            // mostly increasing times with occasional jumps
+            if (i % 100 == 0)
+                time = rand.nextDouble() * 4e9 - 1e9;
+            time += rand.nextInt(10000) / 1000.0;
+
+            String iso = timeFormat.formatIso(time, 0);
+            assertEquals(iso, codec.format(time));
+            assertEquals(timeFormat.parseIso(iso), codec.parse(iso), 0.0);
+        }
+    }
+}
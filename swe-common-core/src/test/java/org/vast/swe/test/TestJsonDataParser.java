@@ -0,0 +1,342 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.data.JSONEncodingImpl;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.JsonDataParser;
+import org.vast.swe.fast.JsonDataWriter;
+
+
+public class TestJsonDataParser
+{
+    SWEHelper fac = new SWEHelper();
+
+
+    protected String write(DataComponent struct, List<DataBlock> records, boolean multipleRecords) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        JsonDataWriter writer = new JsonDataWriter();
+        writer.setDataEncoding(new JSONEncodingImpl());
+        writer.setDataComponents(newStructure(struct));
+        writer.setOutput(os);
+        writer.startStream(multipleRecords);
+        for (DataBlock data: records)
+            writer.write(data);
+        writer.endStream();
+        writer.close();
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
+    protected List<DataBlock> parse(DataComponent struct, String json) throws IOException
+    {
+        JsonDataParser parser = new JsonDataParser();
+        parser.setDataEncoding(new JSONEncodingImpl());
+        parser.setDataComponents(newStructure(struct));
+        parser.setInput(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        List<DataBlock> records = new ArrayList<>();
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            records.add(data.clone());
+        parser.close();
+        return records;
+    }
+
+
+    protected DataComponent newStructure(DataComponent struct)
+    {
+        DataComponent comp = struct.copy();
+        comp.clearData();
+        return comp;
+    }
+
+
+    protected void checkRecords(List<DataBlock> expected, List<DataBlock> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            DataBlock blk1 = expected.get(i);
+            DataBlock blk2 = actual.get(i);
+            assertEquals("Record " + i, blk1.getAtomCount(), blk2.getAtomCount());
+            for (int k = 0; k < blk1.getAtomCount(); k++)
+                assertEquals("Record " + i + ", value " + k, blk1.getStringValue(k), blk2.getStringValue(k));
+        }
+    }
+
+
+    protected void checkRoundTrip(DataComponent struct, List<DataBlock> records) throws IOException
+    {
+        // records wrapped in a JSON array
+        String json = write(struct, records, true);
+        checkRecords(records, parse(struct, json));
+
+        // concatenated records
+        StringBuilder buf = new StringBuilder();
+        for (DataBlock data: records)
+            buf.append(write(struct, Collections.singletonList(data), false)).append('\n');
+        checkRecords(records, parse(struct, buf.toString()));
+    }
+
+
+    @Test
+    public void testNestedRecords() throws IOException
+    {
+        DataRecord pos = fac.newDataRecord();
+        pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+
+        DataRecord att = fac.newDataRecord();
+        att.addField("heading", fac.newQuantity(DataType.FLOAT));
+        DataRecord rates = fac.newDataRecord();
+        rates.addField("yaw", fac.newQuantity(DataType.FLOAT));
+        rates.addField("pitch", fac.newQuantity(DataType.FLOAT));
+        att.addField("rates", rates);
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("id", fac.newCount(DataType.INT));
+        rec.addField("pos", pos);
+        rec.addField("att", att);
+        rec.addField("valid", fac.newBoolean());
+        rec.addField("name", fac.newText());
+
+        List<DataBlock> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setDoubleValue(0, 1.5e9 + i);
+            data.setIntValue(1, i);
+            data.setDoubleValue(2, 45.0 + i/10.);
+            data.setDoubleValue(3, -120.0 - i/10.);
+            data.setFloatValue(4, 10.5f * i);
+            data.setFloatValue(5, 0.25f);
+            data.setFloatValue(6, -0.5f);
+            data.setBooleanValue(7, i % 2 == 0);
+            data.setStringValue(8, "name \"" + i + "\"\\\n");
+            records.add(data);
+        }
+
+        checkRoundTrip(rec, records);
+    }
+
+
+    @Test
+    public void testSpecialValues() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("f", fac.newQuantity(DataType.FLOAT));
+        rec.addField("d", fac.newQuantity(DataType.DOUBLE));
+
+        double[] specials = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        List<DataBlock> records = new ArrayList<>();
+        for (double val: specials)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setDoubleValue(0, val);
+            data.setDoubleValue(1, val);
+            data.setDoubleValue(2, val);
+            records.add(data);
+        }
+
+        // special values must be quoted to produce valid JSON
+        String json = write(rec, records, true);
+        assertTrue(json.contains("\"NaN\""));
+        assertTrue(json.contains("\"+INF\""));
+        assertTrue(json.contains("\"-INF\""));
+        checkRoundTrip(rec, records);
+    }
+
+
+    @Test
+    public void testExplicitSizeArray() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        Count size = fac.newCount();
+        size.setId("NUM_VALUES");
+        rec.addField("num", size);
+        DataArray array = fac.newDataArray();
+        array.setElementType("val", fac.newQuantity(DataType.DOUBLE));
+        array.setElementCount(size);
+        rec.addField("values", array);
+        rec.addField("label", fac.newText());
+
+        List<DataBlock> records = new ArrayList<>();
+        rec.clearData();
+        rec.assignNewDataBlock();
+        for (int i = 0; i < 10; i++)
+        {
+            array.updateSize(i % 4);
+            rec.getComponent("time").getData().setDoubleValue(1.5e9 + i);
+            for (int j = 0; j < array.getComponentCount(); j++)
+                array.getComponent(j).getData().setDoubleValue(i * 10 + j);
+            rec.getComponent("label").getData().setStringValue("rec" + i);
+            records.add(rec.getData().clone());
+        }
+
+        checkRoundTrip(rec, records);
+    }
+
+
+    @Test
+    public void testImplicitSizeArray() throws IOException
+    {
+        DataRecord elt = fac.newDataRecord();
+        elt.addField("id", fac.newCount(DataType.SHORT));
+        elt.addField("val", fac.newQuantity(DataType.DOUBLE));
+
+        DataArray array = fac.newArray(fac.newCount(), "elt", elt);
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("values", array);
+
+        List<DataBlock> records = new ArrayList<>();
+        rec.clearData();
+        rec.assignNewDataBlock();
+        for (int i = 0; i < 10; i++)
+        {
+            array.updateSize(i % 5);
+            rec.getComponent("time").getData().setDoubleValue(1.5e9 + i);
+            for (int j = 0; j < array.getComponentCount(); j++)
+            {
+                DataBlock eltData = array.getComponent(j).getData();
+                eltData.setIntValue(0, j);
+                eltData.setDoubleValue(1, i + j/10.);
+            }
+            records.add(rec.getData().clone());
+        }
+
+        checkRoundTrip(rec, records);
+    }
+
+
+    @Test
+    public void testChoice() throws IOException
+    {
+        DataRecord pos = fac.newDataRecord();
+        pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+
+        DataChoice choice = fac.newDataChoice();
+        choice.addItem("count", fac.newCount(DataType.INT));
+        choice.addItem("pos", pos);
+        choice.addItem("msg", fac.newText());
+
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("item", choice);
+        rec.addField("temp", fac.newQuantity(DataType.FLOAT));
+
+        List<DataBlock> records = new ArrayList<>();
+        rec.clearData();
+        rec.assignNewDataBlock();
+        for (int i = 0; i < 9; i++)
+        {
+            choice.setSelectedItem(i % 3);
+            rec.getComponent("time").getData().setDoubleValue(1.5e9 + i);
+            DataBlock itemData = choice.getSelectedItem().getData();
+            for (int j = 0; j < itemData.getAtomCount(); j++)
+                itemData.setStringValue(j, Integer.toString(i * 10 + j));
+            rec.getComponent("temp").getData().setDoubleValue(20.5 + i);
+            records.add(rec.getData().clone());
+        }
+
+        checkRoundTrip(rec, records);
+    }
+
+
+    @Test
+    public void testTopLevelArray() throws IOException
+    {
+        DataRecord point = fac.newDataRecord();
+        point.addField("x", fac.newQuantity(DataType.DOUBLE));
+        point.addField("y", fac.newQuantity(DataType.DOUBLE));
+        DataArray array = fac.newDataArray(4);
+        array.setElementType("point", point);
+
+        List<DataBlock> records = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            DataBlock data = array.createDataBlock();
+            for (int j = 0; j < data.getAtomCount(); j++)
+                data.setDoubleValue(j, i * 100 + j);
+            records.add(data);
+        }
+
+        // each record is itself a JSON array
+        checkRoundTrip(array, records);
+    }
+
+
+    @Test
+    public void testTruncatedInput() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("val", fac.newQuantity(DataType.DOUBLE));
+        rec.addField("name", fac.newText());
+
+        List<DataBlock> records = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setDoubleValue(0, 1.5e9 + i);
+            data.setDoubleValue(1, i);
+            data.setStringValue(2, "rec" + i);
+            records.add(data);
+        }
+
+        // cut output in the middle of the last record
+        String json = write(rec, records, true);
+        String truncated = json.substring(0, json.lastIndexOf("\"rec2\"") + 3);
+
+        JsonDataParser parser = new JsonDataParser();
+        parser.setDataEncoding(new JSONEncodingImpl());
+        parser.setDataComponents(newStructure(rec));
+        parser.setInput(new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(parser.parseNextBlock());
+        assertNotNull(parser.parseNextBlock());
+
+        try
+        {
+            parser.parseNextBlock();
+            fail("Truncated record should not be parsed");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+}
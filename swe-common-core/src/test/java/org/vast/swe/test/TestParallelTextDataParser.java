@@ -0,0 +1,152 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.TextEncoding;
+import org.junit.Test;
+import org.vast.swe.DataSourceString;
+import org.vast.swe.SWEData;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.ParallelTextDataParser;
+
+
+public class TestParallelTextDataParser
+{
+    static final int ARRAY_SIZE = 3;
+    SWEHelper fac = new SWEHelper();
+
+
+    protected DataRecord buildRecord()
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("temp", fac.newQuantity());
+        rec.addField("num", fac.newCount());
+        DataArray array = fac.newDataArray(ARRAY_SIZE);
+        array.setElementType("val", fac.newCount());
+        rec.addField("values", array);
+        rec.addField("label", fac.newText());
+        return rec;
+    }
+
+
+    protected String buildData(int numRecords, String blockSep)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int r = 0; r < numRecords; r++)
+        {
+            buf.append("2018-02-22T10:00:00Z,").append(r * 0.5).append(',').append(r % 5);
+            for (int i = 0; i < ARRAY_SIZE; i++)
+                buf.append(',').append(r + i);
+            buf.append(",rec").append(r).append(blockSep);
+        }
+        return buf.toString();
+    }
+
+
+    protected void checkRecords(List<DataBlock> records, int numRecords)
+    {
+        assertEquals(numRecords, records.size());
+        for (int r = 0; r < numRecords; r++)
+        {
+            DataBlock data = records.get(r);
+            assertEquals(ARRAY_SIZE + 4, data.getAtomCount());
+            assertEquals(r * 0.5, data.getDoubleValue(1), 0.0);
+            assertEquals(r % 5, data.getIntValue(2));
+            for (int i = 0; i < ARRAY_SIZE; i++)
+                assertEquals(r + i, data.getIntValue(3 + i));
+            assertEquals("rec" + r, data.getStringValue(3 + ARRAY_SIZE));
+        }
+    }
+
+
+    @Test
+    public void testParseInOrder() throws IOException
+    {
+        int numRecords = 20000;
+        String blockSep = "\r\n";
+        TextEncoding encoding = fac.newTextEncoding(",", blockSep);
+        byte[] text = buildData(numRecords, blockSep).getBytes(StandardCharsets.UTF_8);
+
+        ParallelTextDataParser parser = new ParallelTextDataParser(buildRecord(), encoding);
+        parser.setForkJoinPool(new ForkJoinPool(4));
+        parser.setChunkSize(4096);
+        checkRecords(parser.parse(new ByteArrayInputStream(text)), numRecords);
+
+        // chunks smaller than a record
+        parser.setChunkSize(8);
+        checkRecords(parser.parse(new ByteArrayInputStream(text)), numRecords);
+    }
+
+
+    @Test
+    public void testStreamEndsAtChunkBoundary() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("a", fac.newCount());
+        rec.addField("b", fac.newCount());
+
+        ParallelTextDataParser parser = new ParallelTextDataParser(rec, fac.newTextEncoding(",", "\n"));
+        parser.setForkJoinPool(new ForkJoinPool(2));
+        parser.setChunkSize(8);
+
+        // 4 bytes per record so stream length is a multiple of chunk size
+        for (int numRecords: new int[] {2, 4, 8, 16, 100})
+        {
+            StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < numRecords; i++)
+                buf.append(i % 10).append(',').append(i % 10).append('\n');
+
+            List<DataBlock> records = parser.parse(new ByteArrayInputStream(buf.toString().getBytes()));
+            assertEquals(numRecords, records.size());
+            for (int i = 0; i < numRecords; i++)
+                assertEquals(i % 10, records.get(i).getIntValue(1));
+        }
+    }
+
+
+    @Test
+    public void testSWEData() throws IOException
+    {
+        int numRecords = 5000;
+        SWEData sweData = new SWEData();
+        sweData.setElementType("rec", buildRecord());
+        sweData.setEncoding(fac.newTextEncoding(",", "\n"));
+        sweData.parseDataParallel(new DataSourceString(buildData(numRecords, "\n")), ForkJoinPool.commonPool());
+
+        assertEquals(numRecords, sweData.getNumElements());
+        for (int r = 0; r < numRecords; r++)
+            assertEquals("rec" + r, sweData.getComponent(r).getComponent("label").getData().getStringValue());
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testInvalidRecord() throws IOException
+    {
+        String text = buildData(1000, "\n") + "2018-02-22T10:00:00Z,abc,0,1,2,3,x\n";
+        ParallelTextDataParser parser = new ParallelTextDataParser(buildRecord(), fac.newTextEncoding(",", "\n"));
+        parser.setChunkSize(1024);
+        parser.parse(new ByteArrayInputStream(text.getBytes()));
+    }
+}
@@ -0,0 +1,279 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataRecord;
+import org.junit.Test;
+import org.vast.swe.AsciiDataParser;
+import org.vast.swe.DataSourceMappedFile;
+import org.vast.swe.DataSourceMappedFile.MappedFileInput;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.StreamMetrics;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
+import org.vast.swe.fast.TextDataParser;
+import org.vast.util.LatencyHistogram;
+
+
+public class TestStreamMetrics
+{
+    SWEHelper fac = new SWEHelper();
+
+
+    protected DataRecord buildRecord()
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("temp", fac.newQuantity());
+        rec.addField("location", fac.newVector(null, null, new String[] {"x", "y", "z"}, null, new String[] {"m", "m", "m"}, null));
+        return rec;
+    }
+
+
+    protected byte[] buildTextData(int numRecords)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < numRecords; i++)
+            buf.append("2018-02-22T00:00:0").append(i % 10).append("Z,").append(i).append(",1,2,3\n");
+        return buf.toString().getBytes();
+    }
+
+
+    @Test
+    public void testHistogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++)
+            histogram.record(i);
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean(), 1e-6);
+        assertEquals(50000, histogram.getValueAtPercentile(50), 50000 * 0.04);
+        assertEquals(99000, histogram.getValueAtPercentile(99), 99000 * 0.04);
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+
+        // small values are exact
+        histogram.reset();
+        histogram.record(3);
+        histogram.record(7);
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(100));
+    }
+
+
+    @Test
+    public void testBinaryWriteAndParse() throws IOException
+    {
+        int numRecords = 100;
+        DataRecord rec = buildRecord();
+        DataEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+
+        StreamMetrics writeMetrics = new StreamMetrics();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataComponents(rec);
+        writer.setDataEncoding(encoding);
+        writer.setMetrics(writeMetrics);
+        writer.setOutput(os);
+        for (int i = 0; i < numRecords; i++)
+            writer.write(rec.createDataBlock());
+        writer.close();
+
+        assertEquals(numRecords, writeMetrics.getRecordCount());
+        assertEquals(os.size(), writeMetrics.getByteCount());
+        assertEquals(0, writeMetrics.getErrorCount());
+
+        StreamMetrics parseMetrics = new StreamMetrics();
+        BinaryDataParser parser = new BinaryDataParser();
+        parser.setDataComponents(rec);
+        parser.setDataEncoding(encoding);
+        parser.setMetrics(parseMetrics);
+        parser.setInput(new ByteArrayInputStream(os.toByteArray()));
+        while (parser.parseNextBlock() != null);
+
+        assertEquals(numRecords, parseMetrics.getRecordCount());
+        assertEquals(os.size(), parseMetrics.getByteCount());
+        assertTrue(parseMetrics.getMeanLatencyNanos() > 0);
+        assertTrue(parseMetrics.getLatencyPercentileNanos(50) <= parseMetrics.getMaxLatencyNanos());
+
+        // time is accumulated for each top-level field
+        assertEquals(Arrays.asList("time", "temp", "location"), Arrays.asList(parseMetrics.getComponentTimeNanos().keySet().toArray()));
+        assertEquals(writeMetrics.getComponentTimeNanos().keySet(), parseMetrics.getComponentTimeNanos().keySet());
+
+        parseMetrics.reset();
+        assertEquals(0, parseMetrics.getRecordCount());
+        assertEquals(0, parseMetrics.getByteCount());
+        assertEquals(0L, (long)parseMetrics.getComponentTimeNanos().get("time"));
+    }
+
+
+    @Test
+    public void testMappedFile() throws IOException
+    {
+        int numRecords = 1000;
+        DataRecord rec = buildRecord();
+        DataEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+
+        File file = File.createTempFile("records", ".bin");
+        file.deleteOnExit();
+        BinaryDataWriter writer = new BinaryDataWriter();
+        writer.setDataComponents(rec);
+        writer.setDataEncoding(encoding);
+        writer.setOutput(new FileOutputStream(file));
+        for (int i = 0; i < numRecords; i++)
+            writer.write(rec.createDataBlock());
+        writer.close();
+
+        StreamMetrics metrics = new StreamMetrics();
+        BinaryDataParser parser = new BinaryDataParser();
+        parser.setDataComponents(rec);
+        parser.setDataEncoding(encoding);
+        parser.setMetrics(metrics);
+        MappedFileInput input = new DataSourceMappedFile(file).getDataStream();
+        parser.setInput(input);
+
+        // mapped input must still be read directly, without read-ahead
+        int recordSize = parser.getRecordSize();
+        assertNotNull(parser.parseNextBlock());
+        assertEquals(recordSize, input.getPosition());
+        assertEquals(recordSize, metrics.getByteCount());
+
+        while (parser.parseNextBlock() != null);
+        parser.close();
+        assertEquals(numRecords, metrics.getRecordCount());
+        assertEquals(file.length(), metrics.getByteCount());
+    }
+
+
+    @Test
+    public void testParseErrors() throws IOException
+    {
+        StreamMetrics metrics = new StreamMetrics();
+        TextDataParser parser = new TextDataParser();
+        parser.setDataComponents(buildRecord());
+        parser.setDataEncoding(fac.newTextEncoding(",", "\n"));
+        parser.setMetrics(metrics);
+
+        byte[] data = buildTextData(10);
+        data[data.length - 4] = 'x';
+        parser.setInput(new ByteArrayInputStream(data));
+
+        try
+        {
+            while (parser.parseNextBlock() != null);
+            fail("Invalid record should have been reported");
+        }
+        catch (IOException e)
+        {
+            assertEquals(9, metrics.getRecordCount());
+            assertEquals(1, metrics.getErrorCount());
+        }
+    }
+
+
+    @Test
+    public void testLegacyParser() throws IOException
+    {
+        StreamMetrics metrics = new StreamMetrics();
+        AsciiDataParser parser = new AsciiDataParser();
+        parser.setDataComponents(buildRecord());
+        parser.setDataEncoding(fac.newTextEncoding(",", "\n"));
+        parser.setMetrics(metrics);
+
+        byte[] data = buildTextData(20);
+        parser.setInput(new ByteArrayInputStream(data));
+
+        DataBlock dataBlk;
+        int count = 0;
+        while ((dataBlk = parser.parseNextBlock()) != null)
+            assertEquals(count++, dataBlk.getDoubleValue(1), 0.0);
+
+        assertEquals(20, metrics.getRecordCount());
+        assertEquals(data.length, metrics.getByteCount());
+        assertTrue(metrics.getComponentTimeNanos().isEmpty());
+    }
+
+
+    @Test
+    public void testJmx() throws Exception
+    {
+        StreamMetrics metrics = new StreamMetrics();
+        metrics.recordProcessed(1000);
+        metrics.recordProcessed(3000);
+        metrics.recordError();
+
+        ObjectName name = metrics.registerMBean("test feed");
+        try
+        {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(2L, mbs.getAttribute(name, "RecordCount"));
+            assertEquals(1L, mbs.getAttribute(name, "ErrorCount"));
+            assertEquals(3000L, mbs.getAttribute(name, "MaxLatencyNanos"));
+            long median = (Long)mbs.invoke(name, "getLatencyPercentileNanos", new Object[] {50.0}, new String[] {"double"});
+            assertEquals(1000, median, 1000 * 0.04);
+
+            mbs.invoke(name, "reset", null, null);
+            assertEquals(0L, mbs.getAttribute(name, "RecordCount"));
+        }
+        finally
+        {
+            metrics.unregisterMBean();
+        }
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+
+    @Test
+    public void testLatencyAttributes() throws Exception
+    {
+        StreamMetrics metrics = new StreamMetrics();
+        for (int i = 1; i <= 1000; i++)
+            metrics.recordProcessed(i * 1000L);
+
+        assertEquals(500000, metrics.getLatencyP50Nanos(), 500000 * 0.04);
+        assertEquals(990000, metrics.getLatencyP99Nanos(), 990000 * 0.04);
+        assertEquals(1000000L, metrics.getLatencyMaxNanos());
+        assertEquals(metrics.getLatencyPercentileNanos(50.0), metrics.getLatencyP50Nanos());
+        assertEquals(metrics.getLatencyPercentileNanos(99.0), metrics.getLatencyP99Nanos());
+
+        // percentiles are readable as plain attributes through JMX
+        ObjectName name = metrics.registerMBean("latency feed");
+        try
+        {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(metrics.getLatencyP50Nanos(), mbs.getAttribute(name, "LatencyP50Nanos"));
+            assertEquals(metrics.getLatencyP99Nanos(), mbs.getAttribute(name, "LatencyP99Nanos"));
+            assertEquals(1000000L, mbs.getAttribute(name, "LatencyMaxNanos"));
+        }
+        finally
+        {
+            metrics.unregisterMBean();
+        }
+    }
+}
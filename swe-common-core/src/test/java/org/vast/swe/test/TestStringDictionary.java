@@ -0,0 +1,180 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataRecord;
+import org.junit.Test;
+import org.vast.data.CategoryImpl;
+import org.vast.data.DataBlockDictString;
+import org.vast.data.DataBlockMixed;
+import org.vast.data.DataBlockTuple;
+import org.vast.data.StringDictionary;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.TextDataParser;
+
+
+public class TestStringDictionary
+{
+
+    /*
+     * Counts lookups of String objects
+     */
+    static class CountingDictionary extends StringDictionary
+    {
+        int stringLookups;
+
+        CountingDictionary(Collection<String> values)
+        {
+            super(values);
+        }
+
+        @Override
+        public int getCode(String s)
+        {
+            stringLookups++;
+            return super.getCode(s);
+        }
+    }
+
+
+    @Test
+    public void testCodes()
+    {
+        StringDictionary dict = new StringDictionary(Arrays.asList("OK", "WARN"));
+        assertEquals(StringDictionary.NULL_CODE, dict.getCode(null));
+        assertEquals(1, dict.getCode("OK"));
+        assertEquals(2, dict.getCode(new String("WARN")));
+
+        char[] buf = "xxFAILxx".toCharArray();
+        int code = dict.getCode(buf, 2, 4);
+        assertEquals(3, code);
+        assertEquals(code, dict.getCode("FAIL"));
+        assertSame(dict.getString(code), dict.getString(dict.getCode(buf, 2, 4)));
+
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i + 4, dict.getCode("val" + i));
+        assertEquals("val999", dict.getString(1003));
+    }
+
+
+    @Test
+    public void testOverflow()
+    {
+        DataBlockDictString blk = new DataBlockDictString(new StringDictionary(3), 4);
+        blk.setStringValue(0, "A");
+        blk.setStringValue(1, "B");
+        blk.setStringValue(2, "C");
+        blk.setIntValue(3, 12);
+
+        assertEquals("A", blk.getStringValue(0));
+        assertEquals("C", blk.getStringValue(2));
+        assertEquals(12, blk.getIntValue(3));
+        assertEquals(StringDictionary.NO_CODE, blk.getCode(2));
+        assertEquals(2, blk.getCode(1));
+
+        DataBlockDictString clone = blk.clone();
+        blk.setStringValue(2, "A");
+        assertEquals("C", clone.getStringValue(2));
+        assertEquals("A", blk.getStringValue(2));
+    }
+
+
+    @Test
+    public void testTextParser() throws Exception
+    {
+        SWEHelper fac = new SWEHelper();
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newQuantity());
+        CategoryImpl status = (CategoryImpl)fac.newCategory(null, null, null, null);
+        status.setStringDictionary(new StringDictionary(Arrays.asList("OK", "FAIL")));
+        rec.addField("status", status);
+        assertTrue(status.createDataBlock() instanceof DataBlockDictString);
+
+        TextDataParser parser = new TextDataParser();
+        parser.setDataEncoding(fac.newTextEncoding(",", "\n"));
+        parser.setDataComponents(rec);
+        parser.setInput(new ByteArrayInputStream("0,OK\n1,FAIL\n2,OK\n".getBytes()));
+
+        DataBlock data1 = parser.parseNextBlock();
+        DataBlock data2 = parser.parseNextBlock();
+        DataBlock data3 = parser.parseNextBlock();
+        assertEquals("FAIL", data2.getStringValue(1));
+        assertSame(data1.getStringValue(1), data3.getStringValue(1));
+        assertSame(status.getStringDictionary().getString(1), data3.getStringValue(1));
+    }
+
+
+    protected void checkParsedCodes(DataRecord rec, CountingDictionary dict, String text) throws Exception
+    {
+        TextDataParser parser = new TextDataParser();
+        parser.setDataEncoding(new SWEHelper().newTextEncoding(",", "\n"));
+        parser.setDataComponents(rec);
+        parser.setInput(new ByteArrayInputStream(text.getBytes()));
+
+        dict.stringLookups = 0;
+        DataBlock data1 = parser.parseNextBlock();
+        DataBlock data2 = parser.parseNextBlock();
+        DataBlock data3 = parser.parseNextBlock();
+
+        // codes are stored directly, without looking up strings again
+        assertEquals(0, dict.stringLookups);
+        int okCode = dict.getCode("OK");
+        int newCode = dict.getCode("NEW");
+        assertEquals(okCode, getStatusBlock(data1).getCode(0));
+        assertEquals(newCode, getStatusBlock(data2).getCode(0));
+        assertEquals(okCode, getStatusBlock(data3).getCode(0));
+        assertEquals("NEW", data2.getStringValue(1));
+        assertSame(dict.getString(okCode), data3.getStringValue(1));
+    }
+
+
+    protected DataBlockDictString getStatusBlock(DataBlock data)
+    {
+        if (data instanceof DataBlockTuple)
+            return (DataBlockDictString)((DataBlockTuple)data).getUnderlyingObject()[1];
+        else
+            return (DataBlockDictString)((DataBlockMixed)data).getBlock(1);
+    }
+
+
+    @Test
+    public void testTextParserCodes() throws Exception
+    {
+        SWEHelper fac = new SWEHelper();
+        CountingDictionary dict = new CountingDictionary(Arrays.asList("OK", "FAIL"));
+
+        // record of scalars stored in a tuple
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newQuantity());
+        CategoryImpl status = (CategoryImpl)fac.newCategory(null, null, null, null);
+        status.setStringDictionary(dict);
+        rec.addField("status", status);
+        assertTrue(rec.createDataBlock() instanceof DataBlockTuple);
+        checkParsedCodes(rec, dict, "0,OK\n1,NEW\n2,OK\n");
+
+        // record with an array stored in a mixed block
+        DataArray values = fac.newDataArray(2);
+        values.setElementType("val", fac.newQuantity());
+        rec.addField("values", values);
+        assertTrue(rec.createDataBlock() instanceof DataBlockMixed);
+        checkParsedCodes(rec, dict, "0,OK,1,2\n1,NEW,3,4\n2,OK,5,6\n");
+    }
+}
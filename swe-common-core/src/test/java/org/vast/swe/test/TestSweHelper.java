@@ -15,15 +15,31 @@ Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
 package org.vast.swe.test;
 
 import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.ByteEncoding;
+import net.opengis.swe.v20.ByteOrder;
 import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
 import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataEncoding;
 import net.opengis.swe.v20.DataRecord;
 import net.opengis.swe.v20.DataType;
 import org.junit.Test;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.cdm.common.DataStreamWriter;
+import org.vast.cdm.common.ErrorHandler;
+import org.vast.cdm.common.RawDataHandler;
 import org.vast.data.BinaryEncodingImpl;
 import org.vast.swe.SWEUtils;
 import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.BinaryDataParser;
+import org.vast.swe.fast.BinaryDataWriter;
 
 
 public class TestSweHelper
@@ -100,4 +116,142 @@ public class TestSweHelper
         c = SWEHelper.findComponentByPath(rec, "press");
         assertEquals(c.getName(), "press");
     }
+    
+    
+    protected BinaryEncoding createBinaryEncoding(DataComponent rec, ByteOrder byteOrder, ByteEncoding byteEncoding)
+    {
+        BinaryEncoding encoding = SWEHelper.getDefaultBinaryEncoding(rec);
+        encoding.setByteOrder(byteOrder);
+        encoding.setByteEncoding(byteEncoding);
+        return encoding;
+    }
+    
+    
+    protected List<DataBlock> createBinaryRecords(DataRecord rec, int numRecords)
+    {
+        List<DataBlock> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setDoubleValue(0, 1.5e9 + i);
+            data.setIntValue(1, i - 5);
+            data.setDoubleValue(2, i * 0.25);
+            data.setBooleanValue(3, i % 2 == 0);
+            if (data.getAtomCount() > 4)
+                data.setStringValue(4, "rec" + i);
+            records.add(data);
+        }
+        return records;
+    }
+    
+    
+    protected byte[] writeBinary(DataRecord rec, BinaryEncoding encoding, List<DataBlock> records) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataStreamWriter writer = SWEHelper.createDataWriter(encoding);
+        writer.setDataComponents(rec.copy());
+        writer.setOutput(os);
+        for (DataBlock data: records)
+            writer.write(data);
+        writer.flush();
+        return os.toByteArray();
+    }
+    
+    
+    @Test
+    public void testCreateBinaryParserAndWriter() throws Exception
+    {
+        BinaryEncoding encoding = createBinaryEncoding(createWeatherRecord(), ByteOrder.BIG_ENDIAN, ByteEncoding.RAW);
+        assertEquals(BinaryDataParser.class, SWEHelper.createDataParser(encoding).getClass());
+        assertEquals(BinaryDataWriter.class, SWEHelper.createDataWriter(encoding).getClass());
+    }
+    
+    
+    @Test
+    public void testBinaryRoundTrip() throws Exception
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("id", fac.newCount(DataType.INT));
+        rec.addField("val", fac.newQuantity(DataType.DOUBLE));
+        rec.addField("valid", fac.newBoolean());
+        rec.addField("name", fac.newText());
+        List<DataBlock> records = createBinaryRecords(rec, 10);
+        
+        for (ByteOrder byteOrder: ByteOrder.values())
+        {
+            for (ByteEncoding byteEncoding: new ByteEncoding[] {ByteEncoding.RAW, ByteEncoding.BASE_64})
+            {
+                BinaryEncoding encoding = createBinaryEncoding(rec, byteOrder, byteEncoding);
+                byte[] bytes = writeBinary(rec, encoding, records);
+                
+                DataStreamParser parser = SWEHelper.createDataParser(encoding);
+                parser.setDataComponents(rec.copy());
+                parser.setInput(new ByteArrayInputStream(bytes));
+                for (DataBlock expected: records)
+                {
+                    DataBlock data = parser.parseNextBlock();
+                    assertNotNull(data);
+                    assertEquals(expected.getAtomCount(), data.getAtomCount());
+                    for (int i = 0; i < expected.getAtomCount(); i++)
+                        assertEquals(byteOrder + "/" + byteEncoding, expected.getStringValue(i), data.getStringValue(i));
+                }
+                assertNull(parser.parseNextBlock());
+            }
+        }
+    }
+    
+    
+    @Test
+    public void testBinaryHandlers() throws Exception
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("id", fac.newCount(DataType.INT));
+        rec.addField("val", fac.newQuantity(DataType.DOUBLE));
+        rec.addField("valid", fac.newBoolean());
+        List<DataBlock> records = createBinaryRecords(rec, 5);
+        BinaryEncoding encoding = createBinaryEncoding(rec, ByteOrder.LITTLE_ENDIAN, ByteEncoding.RAW);
+        final byte[] bytes = writeBinary(rec, encoding, records);
+        final int recordSize = bytes.length / records.size();
+        assertEquals(8 + 4 + 8 + 1, recordSize);
+        
+        // handlers can be set and retrieved
+        ErrorHandler errorHandler = new ErrorHandler() {};
+        final List<byte[]> rawRecords = new ArrayList<>();
+        RawDataHandler rawHandler = new RawDataHandler() {
+            @Override
+            public void startData(DataComponent info)
+            {
+            }
+            
+            @Override
+            public void endData(DataComponent info, byte[] data)
+            {
+                rawRecords.add(data);
+            }
+        };
+        
+        DataStreamParser parser = SWEHelper.createDataParser(encoding);
+        parser.setDataComponents(rec.copy());
+        parser.setErrorHandler(errorHandler);
+        parser.setRawDataHandler(rawHandler);
+        assertSame(errorHandler, parser.getErrorHandler());
+        assertSame(rawHandler, parser.getRawDataHandler());
+        
+        DataStreamWriter writer = SWEHelper.createDataWriter(encoding);
+        writer.setErrorHandler(errorHandler);
+        writer.setRawDataHandler(rawHandler);
+        assertSame(errorHandler, writer.getErrorHandler());
+        assertSame(rawHandler, writer.getRawDataHandler());
+        
+        // raw handler receives undecoded bytes of each record
+        parser.parse(new ByteArrayInputStream(bytes));
+        assertEquals(records.size(), rawRecords.size());
+        for (int i = 0; i < records.size(); i++)
+        {
+            byte[] expected = Arrays.copyOfRange(bytes, i * recordSize, (i + 1) * recordSize);
+            assertArrayEquals(expected, rawRecords.get(i));
+        }
+    }
 }
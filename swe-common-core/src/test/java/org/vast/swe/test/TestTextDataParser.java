@@ -14,10 +14,17 @@ Copyright (C) 2012-2017 Sensia Software LLC. All Rights Reserved.
 
 package org.vast.swe.test;
 
+import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 import org.junit.Test;
 import org.vast.cdm.common.DataStreamParser;
 import org.vast.cdm.common.DataStreamWriter;
@@ -27,16 +34,263 @@ import org.vast.swe.fast.TextDataWriter;
 import org.vast.util.DateTimeFormat;
 import net.opengis.swe.v20.DataArray;
 import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.TextEncoding;
 
 
 public class TestTextDataParser
 {
+    SWEHelper fac = new SWEHelper();
+    
+    
+    protected List<DataBlock> parse(DataComponent struct, TextEncoding encoding, String text) throws IOException
+    {
+        TextDataParser parser = new TextDataParser();
+        parser.setDataEncoding(encoding);
+        parser.setDataComponents(struct);
+        parser.setInput(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        
+        List<DataBlock> records = new ArrayList<>();
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            records.add(data.clone());
+        parser.close();
+        return records;
+    }
+    
+    
+    protected DataRecord newMixedRecord()
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("id", fac.newCount(DataType.INT));
+        rec.addField("val", fac.newQuantity(DataType.DOUBLE));
+        rec.addField("name", fac.newText());
+        return rec;
+    }
+    
+    
+    protected void checkMixedRecord(DataBlock data, int id, double val, String name)
+    {
+        assertEquals(id, data.getIntValue(0));
+        assertEquals(val, data.getDoubleValue(1), 0.0);
+        assertEquals(name, data.getStringValue(2));
+    }
+    
+    
+    /*
+     * Parses each token as a separate record and checks that the decoded
+     * value is bit for bit the same as the one given by Double.parseDouble
+     */
+    protected void checkDecimals(List<String> tokens) throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.addField("val", fac.newQuantity(DataType.DOUBLE));
+        
+        StringBuilder buf = new StringBuilder();
+        for (String token: tokens)
+            buf.append(token).append('\n');
+        
+        List<DataBlock> records = parse(rec, fac.newTextEncoding(",", "\n"), buf.toString());
+        assertEquals(tokens.size(), records.size());
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            String token = tokens.get(i);
+            double expected = Double.parseDouble(token.replace("INF", "Infinity"));
+            double actual = records.get(i).getDoubleValue(0);
+            assertEquals(token, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+        }
+    }
+    
+    
+    @Test
+    public void testDecimalTokens() throws IOException
+    {
+        List<String> tokens = new ArrayList<>();
+        
+        // fast path
+        tokens.add("0");
+        tokens.add("-0");
+        tokens.add("0.0");
+        tokens.add("-0.000");
+        tokens.add("1");
+        tokens.add("+1");
+        tokens.add("-1");
+        tokens.add("+1.5");
+        tokens.add(".5");
+        tokens.add("5.");
+        tokens.add("-.25");
+        tokens.add("0000123.4500");
+        tokens.add("3.141592653589793");
+        tokens.add("0.1");
+        tokens.add("0.3");
+        tokens.add("1e10");
+        tokens.add("1E10");
+        tokens.add("1e+10");
+        tokens.add("1e-10");
+        tokens.add("+2.5e-3");
+        tokens.add("-2.5E+3");
+        tokens.add("1e0022");
+        tokens.add("1e22");
+        tokens.add("1e-22");
+        tokens.add("123456789012345");
+        tokens.add("-999999999999999");
+        tokens.add("123456789012345e22");
+        tokens.add("123456789012345e-22");
+        tokens.add("1.23456789012345");
+        
+        // more than 15 significant digits
+        tokens.add("1234567890123456");
+        tokens.add("9007199254740993");
+        tokens.add("12345678901234567890");
+        tokens.add("-0.1234567890123456789");
+        tokens.add("3.14159265358979323846");
+        tokens.add("1000000000000000000000000");
+        
+        // exponent too large for exact computation
+        tokens.add("1e23");
+        tokens.add("-1e23");
+        tokens.add("1e-23");
+        tokens.add("8.41e21");
+        tokens.add("9.5e-24");
+        tokens.add("0.000000000000000000000001");
+        tokens.add("1.7976931348623157e308");
+        tokens.add("2.2250738585072014E-308");
+        tokens.add("4.9e-324");
+        tokens.add("1e-400");
+        tokens.add("1e400");
+        tokens.add("-1e400");
+        tokens.add("0e400");
+        tokens.add("1e99999999999");
+        
+        // special values
+        tokens.add("NaN");
+        tokens.add("INF");
+        tokens.add("+INF");
+        tokens.add("-INF");
+        
+        checkDecimals(tokens);
+    }
+    
+    
+    @Test
+    public void testRandomDecimalTokens() throws IOException
+    {
+        Random random = new Random(42);
+        List<String> tokens = new ArrayList<>();
+        
+        for (int i = 0; i < 2000; i++)
+        {
+            double val = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(80) - 40);
+            tokens.add(Double.toString(val));
+            tokens.add(String.format(Locale.ROOT, "%." + random.nextInt(20) + "e", val));
+            tokens.add(String.format(Locale.ROOT, "%." + random.nextInt(20) + "f", val));
+            
+            long mantissa = random.nextLong() % 1000000000000000L;
+            int exp = random.nextInt(60) - 30;
+            tokens.add((mantissa >= 0 && random.nextBoolean() ? "+" : "") + mantissa + "e" + exp);
+        }
+        
+        checkDecimals(tokens);
+    }
+    
+    
+    @Test
+    public void testInvalidDecimalToken() throws IOException
+    {
+        String[] invalidTokens = {"1.5x", "abc", "1e", "--1", "+", "1.2.3"};
+        for (String token: invalidTokens)
+        {
+            try
+            {
+                checkDecimals(Arrays.asList(token));
+                fail("Invalid token should not be parsed: " + token);
+            }
+            catch (IOException e)
+            {
+                // expected
+            }
+        }
+    }
+    
+    
+    @Test
+    public void testMultiCharSeparators() throws IOException
+    {
+        String tokenSep = "<>";
+        String blockSep = "##\n";
+        
+        // use enough records for separators to straddle read buffer boundaries
+        // and put separator chars in text values
+        StringBuilder buf = new StringBuilder();
+        int numRecords = 2000;
+        for (int i = 0; i < numRecords; i++)
+        {
+            buf.append(i).append(tokenSep)
+               .append(i * 0.5).append(tokenSep)
+               .append("a<b>c#" + i + (i % 2 == 0 ? "<" : "#")).append(blockSep);
+        }
+        
+        List<DataBlock> records = parse(newMixedRecord(), fac.newTextEncoding(tokenSep, blockSep), buf.toString());
+        assertEquals(numRecords, records.size());
+        for (int i = 0; i < numRecords; i++)
+            checkMixedRecord(records.get(i), i, i * 0.5, "a<b>c#" + i + (i % 2 == 0 ? "<" : "#"));
+        
+        // last record without block separator
+        records = parse(newMixedRecord(), fac.newTextEncoding(tokenSep, blockSep), "1<>1.5<>one##\n2<>2.5<>two");
+        assertEquals(2, records.size());
+        checkMixedRecord(records.get(0), 1, 1.5, "one");
+        checkMixedRecord(records.get(1), 2, 2.5, "two");
+    }
+    
+    
+    @Test
+    public void testCrlfLineEndings() throws IOException
+    {
+        String text = "1,1.5,one\r\n\r\n2,-2.5e-3,two\r\n3,INF,three\r\n";
+        
+        // CR is trimmed with other white spaces when using LF as block separator
+        List<DataBlock> records = parse(newMixedRecord(), fac.newTextEncoding(",", "\n"), text);
+        assertEquals(3, records.size());
+        checkMixedRecord(records.get(0), 1, 1.5, "one");
+        checkMixedRecord(records.get(1), 2, -2.5e-3, "two");
+        checkMixedRecord(records.get(2), 3, Double.POSITIVE_INFINITY, "three");
+        
+        // CRLF used as block separator
+        TextEncoding encoding = fac.newTextEncoding(",", "\r\n");
+        encoding.setCollapseWhiteSpaces(false);
+        records = parse(newMixedRecord(), encoding, text);
+        assertEquals(3, records.size());
+        checkMixedRecord(records.get(0), 1, 1.5, "one");
+        checkMixedRecord(records.get(1), 2, -2.5e-3, "two");
+        checkMixedRecord(records.get(2), 3, Double.POSITIVE_INFINITY, "three");
+    }
+    
+    
+    @Test
+    public void testCollapseWhiteSpaces() throws IOException
+    {
+        // white spaces around tokens are ignored but not inside text values
+        String text = "  1 ,\t+1.5e1 , one  two \n\t\n 2,2 ,\tthree\t\n";
+        List<DataBlock> records = parse(newMixedRecord(), fac.newTextEncoding(",", "\n"), text);
+        assertEquals(2, records.size());
+        checkMixedRecord(records.get(0), 1, 15.0, "one  two");
+        checkMixedRecord(records.get(1), 2, 2.0, "three");
+        
+        // white spaces are kept when not collapsed
+        TextEncoding encoding = fac.newTextEncoding(",", "\n");
+        encoding.setCollapseWhiteSpaces(false);
+        records = parse(newMixedRecord(), encoding, "1,1.5, one  two \n2,2,\tthree\t\n");
+        assertEquals(2, records.size());
+        checkMixedRecord(records.get(0), 1, 1.5, " one  two ");
+        checkMixedRecord(records.get(1), 2, 2.0, "\tthree\t");
+    }
+    
 
     @Test
     public void test() throws IOException
     {
-        SWEHelper fac = new SWEHelper();
         int arraySize = 5;
         
         DataArray array = fac.newDataArray(arraySize);
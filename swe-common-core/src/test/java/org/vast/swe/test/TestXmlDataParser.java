@@ -0,0 +1,326 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+
+Copyright (C) 2012-2018 Sensia Software LLC. All Rights Reserved.
+
+******************************* END LICENSE BLOCK ***************************/
+
+package org.vast.swe.test;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.opengis.swe.v20.Count;
+import net.opengis.swe.v20.DataArray;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataChoice;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import org.junit.Test;
+import org.vast.cdm.common.DataStreamWriter;
+import org.vast.data.XMLEncodingImpl;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.fast.XmlDataParser;
+import org.vast.swe.fast.XmlDataWriter;
+
+
+public class TestXmlDataParser
+{
+    SWEHelper fac = new SWEHelper();
+
+
+    protected String write(DataComponent struct, List<DataBlock> records, DataStreamWriter writer, boolean close) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writer.setDataEncoding(new XMLEncodingImpl());
+        writer.setDataComponents(newStructure(struct));
+        writer.setOutput(os);
+        for (DataBlock data: records)
+            writer.write(data);
+        if (close)
+            writer.close();
+        else
+            writer.flush();
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
+    protected List<DataBlock> parse(DataComponent struct, String xml) throws IOException
+    {
+        XmlDataParser parser = new XmlDataParser();
+        parser.setDataEncoding(new XMLEncodingImpl());
+        parser.setDataComponents(newStructure(struct));
+        parser.setInput(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+        List<DataBlock> records = new ArrayList<>();
+        DataBlock data;
+        while ((data = parser.parseNextBlock()) != null)
+            records.add(data.clone());
+        parser.close();
+        return records;
+    }
+
+
+    protected DataComponent newStructure(DataComponent struct)
+    {
+        DataComponent comp = struct.copy();
+        comp.clearData();
+        return comp;
+    }
+
+
+    protected void checkRecords(List<DataBlock> expected, List<DataBlock> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            DataBlock blk1 = expected.get(i);
+            DataBlock blk2 = actual.get(i);
+            assertEquals("Record " + i, blk1.getAtomCount(), blk2.getAtomCount());
+            for (int k = 0; k < blk1.getAtomCount(); k++)
+                assertEquals("Record " + i + ", value " + k, blk1.getStringValue(k), blk2.getStringValue(k));
+        }
+    }
+
+
+    protected void checkRoundTrip(DataComponent struct, List<DataBlock> records, boolean withLegacyWriter) throws IOException
+    {
+        // records wrapped in a root element
+        String xml = write(struct, records, new XmlDataWriter(), true);
+        assertTrue(xml.trim().endsWith("</root>"));
+        checkRecords(records, parse(struct, xml));
+
+        // root element not closed
+        xml = write(struct, records, new XmlDataWriter(), false);
+        checkRecords(records, parse(struct, xml));
+
+        // root-less records, with XML declaration
+        xml = write(struct, records, new XmlDataWriter(), true);
+        xml = xml.replaceAll("</?root>", "");
+        checkRecords(records, parse(struct, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xml));
+
+        // single record as document root, produced by legacy writer
+        if (withLegacyWriter)
+        {
+            xml = write(struct, records.subList(0, 1), new org.vast.swe.XmlDataWriter(), true);
+            checkRecords(records.subList(0, 1), parse(struct, xml));
+        }
+    }
+
+
+    @Test
+    public void testRecords() throws IOException
+    {
+        DataRecord pos = fac.newDataRecord();
+        pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+
+        DataRecord rec = fac.newDataRecord();
+        rec.setName("rec");
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("id", fac.newCount(DataType.INT));
+        rec.addField("pos", pos);
+        rec.addField("valid", fac.newBoolean());
+        rec.addField("name", fac.newText());
+
+        List<DataBlock> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setDoubleValue(0, 1.5e9 + i);
+            data.setIntValue(1, i);
+            data.setDoubleValue(2, i == 0 ? Double.NaN : 45.0 + i/10.);
+            data.setDoubleValue(3, i == 0 ? Double.NEGATIVE_INFINITY : -120.0 - i/10.);
+            data.setBooleanValue(4, i % 2 == 0);
+            data.setStringValue(5, "<name> & \"" + i + "\"");
+            records.add(data);
+        }
+
+        checkRoundTrip(rec, records, true);
+    }
+
+
+    @Test
+    public void testRanges() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.setName("rec");
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("period", fac.newTimeRange());
+        rec.addField("count", fac.newCountRange());
+        rec.addField("range", fac.newQuantityRange());
+        rec.addField("cat", fac.newCategoryRange());
+
+        List<DataBlock> records = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setDoubleValue(0, 1.5e9 + i);
+            data.setDoubleValue(1, 1.5e9 + i);
+            data.setDoubleValue(2, 1.5e9 + i + 3600);
+            data.setIntValue(3, i);
+            data.setIntValue(4, i + 10);
+            data.setDoubleValue(5, -i - 0.5);
+            data.setDoubleValue(6, i + 0.5);
+            data.setStringValue(7, "A" + i);
+            data.setStringValue(8, "Z" + i);
+            records.add(data);
+        }
+
+        // legacy writer doesn't know how to write ranges
+        checkRoundTrip(rec, records, false);
+    }
+
+
+    @Test
+    public void testChoice() throws IOException
+    {
+        DataRecord pos = fac.newDataRecord();
+        pos.addField("lat", fac.newQuantity(DataType.DOUBLE));
+        pos.addField("lon", fac.newQuantity(DataType.DOUBLE));
+
+        DataChoice choice = fac.newDataChoice();
+        choice.addItem("count", fac.newCount(DataType.INT));
+        choice.addItem("pos", pos);
+        choice.addItem("msg", fac.newText());
+
+        DataRecord rec = fac.newDataRecord();
+        rec.setName("rec");
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("item", choice);
+        rec.addField("temp", fac.newQuantity(DataType.FLOAT));
+
+        List<DataBlock> records = new ArrayList<>();
+        rec.clearData();
+        rec.assignNewDataBlock();
+        for (int i = 0; i < 9; i++)
+        {
+            choice.setSelectedItem(i % 3);
+            rec.getComponent("time").getData().setDoubleValue(1.5e9 + i);
+            DataBlock itemData = choice.getSelectedItem().getData();
+            for (int j = 0; j < itemData.getAtomCount(); j++)
+                itemData.setStringValue(j, Integer.toString(i * 10 + j));
+            rec.getComponent("temp").getData().setDoubleValue(20.5 + i);
+            records.add(rec.getData().clone());
+        }
+
+        checkRoundTrip(rec, records, true);
+    }
+
+
+    @Test
+    public void testExplicitSizeArray() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.setName("rec");
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        Count size = fac.newCount();
+        size.setId("NUM_VALUES");
+        rec.addField("num", size);
+        DataArray array = fac.newDataArray();
+        array.setElementType("val", fac.newQuantity(DataType.DOUBLE));
+        array.setElementCount(size);
+        rec.addField("values", array);
+        rec.addField("label", fac.newText());
+
+        List<DataBlock> records = new ArrayList<>();
+        rec.clearData();
+        rec.assignNewDataBlock();
+        for (int i = 0; i < 10; i++)
+        {
+            array.updateSize(i % 4);
+            rec.getComponent("time").getData().setDoubleValue(1.5e9 + i);
+            for (int j = 0; j < array.getComponentCount(); j++)
+                array.getComponent(j).getData().setDoubleValue(i * 10 + j);
+            rec.getComponent("label").getData().setStringValue("rec" + i);
+            records.add(rec.getData().clone());
+        }
+
+        checkRoundTrip(rec, records, false);
+    }
+
+
+    @Test
+    public void testImplicitSizeArray() throws IOException
+    {
+        DataRecord elt = fac.newDataRecord();
+        elt.addField("id", fac.newCount(DataType.SHORT));
+        elt.addField("val", fac.newQuantity(DataType.DOUBLE));
+
+        DataArray array = fac.newArray(fac.newCount(), "elt", elt);
+        DataRecord rec = fac.newDataRecord();
+        rec.setName("rec");
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("values", array);
+
+        List<DataBlock> records = new ArrayList<>();
+        rec.clearData();
+        rec.assignNewDataBlock();
+        for (int i = 0; i < 10; i++)
+        {
+            array.updateSize(i % 5);
+            rec.getComponent("time").getData().setDoubleValue(1.5e9 + i);
+            for (int j = 0; j < array.getComponentCount(); j++)
+            {
+                DataBlock eltData = array.getComponent(j).getData();
+                eltData.setIntValue(0, j);
+                eltData.setDoubleValue(1, i + j/10.);
+            }
+            records.add(rec.getData().clone());
+        }
+
+        checkRoundTrip(rec, records, false);
+    }
+
+
+    @Test
+    public void testTruncatedRecord() throws IOException
+    {
+        DataRecord rec = fac.newDataRecord();
+        rec.setName("rec");
+        rec.addField("time", fac.newTimeStampIsoUTC());
+        rec.addField("val", fac.newQuantity(DataType.DOUBLE));
+
+        List<DataBlock> records = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            DataBlock data = rec.createDataBlock();
+            data.setDoubleValue(0, 1.5e9 + i);
+            data.setDoubleValue(1, i);
+            records.add(data);
+        }
+
+        // end of input in the middle of a record is still an error
+        String xml = write(rec, records, new XmlDataWriter(), false);
+        String truncated = xml.substring(0, xml.lastIndexOf("<val>") + 6);
+
+        XmlDataParser parser = new XmlDataParser();
+        parser.setDataEncoding(new XMLEncodingImpl());
+        parser.setDataComponents(newStructure(rec));
+        parser.setInput(new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(parser.parseNextBlock());
+        assertNotNull(parser.parseNextBlock());
+
+        try
+        {
+            parser.parseNextBlock();
+            fail("Truncated record should not be parsed");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+}